@@ -17,6 +17,15 @@ const char *pass = STAPSK;
 
 dht11 DHT11;
 
+// Frame layout of application/vnd.temperature.frame, see GeneralAPIDocumentation.md
+#define FRAME_VERSION 1
+#define FRAME_LENGTH 29
+
+// Device id the server assigned on the first JSON reading; after that readings are sent
+// as 29-byte binary frames instead of JSON
+uint8_t deviceId[16];
+bool hasDeviceId = false;
+
 void initWiFi() {
   WiFi.mode(WIFI_STA);
   WiFi.begin(ssid, pass);
@@ -28,6 +37,41 @@ void initWiFi() {
   Serial.println(WiFi.localIP());
 }
 
+// Reads the 16 id bytes from the "id" of the "device" object in a stored reading
+bool parseDeviceId(const String &payload) {
+  int device = payload.indexOf("\"device\"");
+  int start = device < 0 ? -1 : payload.indexOf("\"id\":\"", device);
+  if (start < 0) {
+    return false;
+  }
+  start += 6;
+  int n = 0;
+  for (int i = start; i < (int)payload.length() && payload[i] != '"' && n < 32; i++) {
+    if (payload[i] == '-') {
+      continue;
+    }
+    char c = payload[i];
+    uint8_t nibble = c <= '9' ? c - '0' : (c | 0x20) - 'a' + 10;
+    deviceId[n / 2] = (n % 2 == 0) ? nibble << 4 : deviceId[n / 2] | nibble;
+    n++;
+  }
+  return n == 32;
+}
+
+// Version, device id, timestamp 0 for the server receive time, then temperature and
+// humidity in hundredths, all big-endian
+void buildFrame(uint8_t *frame, float temperatureC, float humidityPercent) {
+  int16_t temperature = (int16_t)lroundf(temperatureC * 100);
+  uint16_t humidity = (uint16_t)lroundf(humidityPercent * 100);
+  frame[0] = FRAME_VERSION;
+  memcpy(frame + 1, deviceId, 16);
+  memset(frame + 17, 0, 8);
+  frame[25] = (uint8_t)(temperature >> 8);
+  frame[26] = (uint8_t)temperature;
+  frame[27] = (uint8_t)(humidity >> 8);
+  frame[28] = (uint8_t)humidity;
+}
+
 void setup() {
   Serial.begin(115200);
   initWiFi();
@@ -44,11 +88,19 @@ void loop() {
 
     Serial.print("[HTTP] begin...\n");
     if (http.begin(API)) {  // HTTP
-      http.addHeader("Content-Type", "application/json");
-
       Serial.print("[HTTP] POST...\n");
       // start connection and send HTTP header
-      int httpCode = http.POST("{\"temperatureC\":" + String((float)DHT11.temperature, 1) + ", \"humidityPercent\":" + String((float)DHT11.humidity, 1) +  ", \"device\": {\"deviceName\":\"ESP32_1\", \"location\":\"Kevin Room\"}}");
+      int httpCode;
+      if (hasDeviceId) {
+        uint8_t frame[FRAME_LENGTH];
+        buildFrame(frame, (float)DHT11.temperature, (float)DHT11.humidity);
+        http.addHeader("Content-Type", "application/vnd.temperature.frame");
+        httpCode = http.POST(frame, FRAME_LENGTH);
+      } else {
+        // The first reading registers the device and tells its id
+        http.addHeader("Content-Type", "application/json");
+        httpCode = http.POST("{\"temperatureC\":" + String((float)DHT11.temperature, 1) + ", \"humidityPercent\":" + String((float)DHT11.humidity, 1) +  ", \"device\": {\"deviceName\":\"ESP32_1\", \"location\":\"Kevin Room\"}}");
+      }
 
       // httpCode will be negative on error
       if (httpCode > 0) {
@@ -59,6 +111,9 @@ void loop() {
         if (httpCode == HTTP_CODE_OK) {
           String payload = http.getString();
           Serial.println(payload);
+          if (!hasDeviceId) {
+            hasDeviceId = parseDeviceId(payload);
+          }
         }
       } else {
         Serial.printf("[HTTP] POST... failed, error: %s\n", http.errorToString(httpCode).c_str());
@@ -0,0 +1,361 @@
+package temperature.config;
+
+import temperature.model.*;
+
+import org.springframework.data.redis.serializer.GenericJackson2JsonRedisSerializer;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.data.redis.serializer.SerializationException;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+// Binary encoding of the values cached in Redis. Every value starts with a format
+// version byte and a type byte:
+//
+//   type  value
+//      0  anything else, as GenericJackson2JsonRedisSerializer JSON
+//      1  Temperature
+//      2  List of Temperature
+//      3  TemperaturePage
+//      4  ReadingKeys
+//
+// Readings are written as a table of their distinct devices followed by fixed fields per
+// reading that refer to the table, so a page of readings from one device carries its
+// name and API key once. Lengths and counts are unsigned varints, strings are UTF-8 with
+// their length plus one (0 for null), and sorted timestamps are varint deltas. A value
+// written in another format version reads as null, which the caches treat as a miss, so
+// changing the format only costs one reload per key.
+public class CacheValueSerializer implements RedisSerializer<Object> {
+
+    public static final byte VERSION = 2;
+
+    private static final byte JSON = 0;
+    private static final byte TEMPERATURE = 1;
+    private static final byte TEMPERATURE_LIST = 2;
+    private static final byte TEMPERATURE_PAGE = 3;
+    private static final byte READING_KEYS = 4;
+
+    // Presence bits of the optional reading fields
+    private static final int HAS_ID = 1;
+    private static final int HAS_SEQUENCE = 2;
+    private static final int HAS_DEVICE = 4;
+    private static final int HAS_DEVICE_ID = 8;
+    private static final int HAS_BOOT = 16;
+
+    private final GenericJackson2JsonRedisSerializer json = new GenericJackson2JsonRedisSerializer();
+
+    @Override
+    public byte[] serialize(Object value) throws SerializationException {
+        if (value == null) {
+            return new byte[0];
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+        DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            out.writeByte(VERSION);
+            if (value instanceof Temperature) {
+                out.writeByte(TEMPERATURE);
+                writeReadings(out, Arrays.asList((Temperature) value));
+            } else if (value instanceof TemperaturePage) {
+                TemperaturePage page = (TemperaturePage) value;
+                out.writeByte(TEMPERATURE_PAGE);
+                writeString(out, page.getNextCursor());
+                writeString(out, page.getPreviousCursor());
+                writeReadings(out, page.getTemperatures());
+            } else if (value instanceof ReadingKeys) {
+                out.writeByte(READING_KEYS);
+                writeKeys(out, (ReadingKeys) value);
+            } else if (isReadingList(value)) {
+                out.writeByte(TEMPERATURE_LIST);
+                @SuppressWarnings("unchecked")
+                List<Temperature> readings = (List<Temperature>) value;
+                writeReadings(out, readings);
+            } else {
+                out.writeByte(JSON);
+                out.write(json.serialize(value));
+            }
+            out.flush();
+        } catch (IOException e) {
+            throw new SerializationException("Could not encode " + value.getClass().getSimpleName(), e);
+        }
+        return bytes.toByteArray();
+    }
+
+    @Override
+    public Object deserialize(byte[] bytes) throws SerializationException {
+        if (bytes == null || bytes.length == 0) {
+            return null;
+        }
+        if (bytes[0] != VERSION || bytes.length < 2) {
+            return null;
+        }
+        ByteBuffer in = ByteBuffer.wrap(bytes, 2, bytes.length - 2);
+        try {
+            switch (bytes[1]) {
+                case JSON:
+                    return json.deserialize(Arrays.copyOfRange(bytes, 2, bytes.length));
+                case TEMPERATURE:
+                    List<Temperature> readings = readReadings(in);
+                    return readings.isEmpty() ? null : readings.get(0);
+                case TEMPERATURE_LIST:
+                    return readReadings(in);
+                case TEMPERATURE_PAGE:
+                    String nextCursor = readString(in);
+                    String previousCursor = readString(in);
+                    return new TemperaturePage(readReadings(in), nextCursor, previousCursor);
+                case READING_KEYS:
+                    return readKeys(in);
+                default:
+                    throw new SerializationException("Unknown cached value type " + bytes[1]);
+            }
+        } catch (BufferUnderflowException | IllegalArgumentException e) {
+            throw new SerializationException("Truncated or corrupt cached value", e);
+        }
+    }
+
+    private static boolean isReadingList(Object value) {
+        if (!(value instanceof List)) {
+            return false;
+        }
+        for (Object element : (List<?>) value) {
+            if (!(element instanceof Temperature)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // device table: count, then id, name, location and API key per device;
+    // readings: count, then flags, id, timestamp, metrics, sequence, boot and device index each
+    private static void writeReadings(DataOutputStream out, List<Temperature> readings) throws IOException {
+        Map<Device, Integer> devices = new IdentityHashMap<>();
+        Map<UUID, Integer> devicesById = new LinkedHashMap<>();
+        List<Device> table = new ArrayList<>();
+        int[] deviceIndexes = new int[readings.size()];
+        for (int i = 0; i < readings.size(); i++) {
+            Device device = readings.get(i).getDevice();
+            if (device == null) {
+                deviceIndexes[i] = -1;
+                continue;
+            }
+            Integer index = devices.get(device);
+            if (index == null && device.getId() != null) {
+                index = devicesById.get(device.getId());
+            }
+            if (index == null) {
+                index = table.size();
+                table.add(device);
+                if (device.getId() != null) {
+                    devicesById.put(device.getId(), index);
+                }
+            }
+            devices.put(device, index);
+            deviceIndexes[i] = index;
+        }
+
+        writeVarInt(out, table.size());
+        for (Device device : table) {
+            out.writeByte(device.getId() != null ? HAS_DEVICE_ID : 0);
+            if (device.getId() != null) {
+                writeUuid(out, device.getId());
+            }
+            writeString(out, device.getDeviceName());
+            writeString(out, device.getLocation());
+            writeString(out, device.getApiKey());
+        }
+
+        writeVarInt(out, readings.size());
+        for (int i = 0; i < readings.size(); i++) {
+            Temperature reading = readings.get(i);
+            int flags = (reading.getId() != null ? HAS_ID : 0) | (reading.getSequence() != null ? HAS_SEQUENCE : 0)
+                    | (deviceIndexes[i] >= 0 ? HAS_DEVICE : 0) | (reading.getBoot() != null ? HAS_BOOT : 0);
+            out.writeByte(flags);
+            if (reading.getId() != null) {
+                writeUuid(out, reading.getId());
+            }
+            out.writeLong(reading.getTimestamp());
+            out.writeDouble(reading.getTemperatureC());
+            out.writeDouble(reading.getHumidityPercent());
+            out.writeDouble(reading.getDewPoint());
+            if (reading.getSequence() != null) {
+                out.writeLong(reading.getSequence());
+            }
+            if (reading.getBoot() != null) {
+                out.writeLong(reading.getBoot());
+            }
+            if (deviceIndexes[i] >= 0) {
+                writeVarInt(out, deviceIndexes[i]);
+            }
+        }
+    }
+
+    private static List<Temperature> readReadings(ByteBuffer in) {
+        Device[] table = new Device[readCount(in)];
+        for (int i = 0; i < table.length; i++) {
+            Device device = new Device();
+            if ((in.get() & HAS_DEVICE_ID) != 0) {
+                device.setId(readUuid(in));
+            }
+            device.setDeviceName(readString(in));
+            device.setLocation(readString(in));
+            device.setApiKey(readString(in));
+            table[i] = device;
+        }
+
+        int count = readCount(in);
+        List<Temperature> readings = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            int flags = in.get();
+            Temperature reading = new Temperature();
+            if ((flags & HAS_ID) != 0) {
+                reading.setId(readUuid(in));
+            }
+            reading.setTimestamp(in.getLong());
+            reading.setTemperatureC(in.getDouble());
+            reading.setHumidityPercent(in.getDouble());
+            reading.setDewPoint(in.getDouble());
+            if ((flags & HAS_SEQUENCE) != 0) {
+                reading.setSequence(in.getLong());
+            }
+            if ((flags & HAS_BOOT) != 0) {
+                reading.setBoot(in.getLong());
+            }
+            if ((flags & HAS_DEVICE) != 0) {
+                int index = readVarInt(in);
+                if (index >= table.length) {
+                    throw new SerializationException("Device index " + index + " outside a table of " + table.length);
+                }
+                // Also restores the reading's copy of the API key
+                reading.setDevice(table[index]);
+            }
+            readings.add(reading);
+        }
+        return readings;
+    }
+
+    // complete flag, count, timestamp deltas, then the id halves
+    private static void writeKeys(DataOutputStream out, ReadingKeys keys) throws IOException {
+        out.writeBoolean(keys.isComplete());
+        long[] timestamps = keys.getTimestamps();
+        writeVarInt(out, timestamps.length);
+        long previous = 0;
+        for (long timestamp : timestamps) {
+            writeVarLong(out, zigZag(timestamp - previous));
+            previous = timestamp;
+        }
+        for (int i = 0; i < timestamps.length; i++) {
+            out.writeLong(keys.getIdHigh()[i]);
+            out.writeLong(keys.getIdLow()[i]);
+        }
+    }
+
+    private static ReadingKeys readKeys(ByteBuffer in) {
+        boolean complete = in.get() != 0;
+        int count = readCount(in);
+        long[] timestamps = new long[count];
+        long previous = 0;
+        for (int i = 0; i < count; i++) {
+            previous += unZigZag(readVarLong(in));
+            timestamps[i] = previous;
+        }
+        long[] idHigh = new long[count];
+        long[] idLow = new long[count];
+        for (int i = 0; i < count; i++) {
+            idHigh[i] = in.getLong();
+            idLow[i] = in.getLong();
+        }
+        return new ReadingKeys(timestamps, idHigh, idLow, complete);
+    }
+
+    private static void writeUuid(DataOutputStream out, UUID id) throws IOException {
+        out.writeLong(id.getMostSignificantBits());
+        out.writeLong(id.getLeastSignificantBits());
+    }
+
+    private static UUID readUuid(ByteBuffer in) {
+        return new UUID(in.getLong(), in.getLong());
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            writeVarInt(out, 0);
+            return;
+        }
+        byte[] utf8 = value.getBytes(StandardCharsets.UTF_8);
+        writeVarInt(out, utf8.length + 1);
+        out.write(utf8);
+    }
+
+    private static String readString(ByteBuffer in) {
+        int length = readVarInt(in);
+        if (length == 0) {
+            return null;
+        }
+        if (length - 1 > in.remaining()) {
+            throw new BufferUnderflowException();
+        }
+        String value = new String(in.array(), in.arrayOffset() + in.position(), length - 1, StandardCharsets.UTF_8);
+        in.position(in.position() + length - 1);
+        return value;
+    }
+
+    // A count can never exceed the bytes left, which keeps corrupt input from allocating
+    private static int readCount(ByteBuffer in) {
+        int count = readVarInt(in);
+        if (count > in.remaining()) {
+            throw new BufferUnderflowException();
+        }
+        return count;
+    }
+
+    private static void writeVarInt(DataOutputStream out, int value) throws IOException {
+        writeVarLong(out, value & 0xFFFFFFFFL);
+    }
+
+    private static int readVarInt(ByteBuffer in) {
+        long value = readVarLong(in);
+        if (value < 0 || value > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Varint out of range: " + value);
+        }
+        return (int) value;
+    }
+
+    private static void writeVarLong(DataOutputStream out, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.writeByte((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+
+    private static long readVarLong(ByteBuffer in) {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = in.get();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("Varint longer than 10 bytes");
+    }
+
+    private static long zigZag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static long unZigZag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+}
@@ -8,6 +8,7 @@ import static org.springframework.hateoas.server.mvc.WebMvcLinkBuilder.*;
 import org.springframework.hateoas.server.mvc.WebMvcLinkBuilder;
 
 import java.util.List;
+import java.util.UUID;
 import java.util.stream.Collectors;
 
 import org.springframework.hateoas.CollectionModel;
@@ -36,7 +37,7 @@ public class DeviceController {
         List<EntityModel<Device>> devices = deviceRepository.findAll().stream()
                 .filter(device -> device.getApiKey().equals(currentUserApiKey))
                 .map(device -> EntityModel.of(device,
-                        linkTo(methodOn(DeviceController.class).one(device.getId())).withSelfRel(),
+                        linkTo(methodOn(DeviceController.class).one(device.getId().toString())).withSelfRel(),
                         linkTo(methodOn(DeviceController.class).all()).withRel("devices")))
                 .collect(Collectors.toList());
 
@@ -48,7 +49,12 @@ public class DeviceController {
     EntityModel<Device> one(@ApiParam("Device ID") @PathVariable String id) {
         String currentUserApiKey = getCurrentUserApiKey();
 
-        Device device = deviceRepository.findById(id)
+        UUID deviceId = TimeOrderedUuid.parse(id);
+        if (deviceId == null) {
+            throw new DeviceNotFoundException(id);
+        }
+
+        Device device = deviceRepository.findById(deviceId)
                 .filter(d -> d.getApiKey().equals(currentUserApiKey))
                 .orElseThrow(() -> new DeviceNotFoundException(id));
 
@@ -4,9 +4,15 @@ import temperature.exception.*;
 import temperature.model.*;
 import temperature.startup.*;
 import temperature.repository.*;
+import temperature.service.*;
 
 import io.swagger.annotations.ApiOperation;
 import io.swagger.annotations.ApiParam;
+import springfox.documentation.annotations.ApiIgnore;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
 
 import static org.springframework.hateoas.server.mvc.WebMvcLinkBuilder.*;
 import org.springframework.hateoas.server.mvc.WebMvcLinkBuilder;
@@ -17,21 +23,34 @@ import org.springframework.hateoas.EntityModel;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.format.annotation.DateTimeFormat.ISO;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Service;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.cache.annotation.CacheConfig;
 import org.springframework.cache.annotation.Cacheable;
-import org.springframework.cache.annotation.CachePut;
 import org.springframework.cache.annotation.CacheEvict;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.data.redis.core.RedisTemplate;
-import org.springframework.data.redis.core.ValueOperations;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
+import org.springframework.data.jpa.domain.Specification;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.context.request.async.DeferredResult;
 import org.springframework.hateoas.IanaLinkRelations;
-import org.springframework.data.redis.RedisConnectionFailureException;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipException;
 
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
@@ -41,6 +60,7 @@ import java.time.ZonedDateTime;
 import java.time.Instant;
 
 import java.util.OptionalDouble;
+import java.util.Arrays;
 import java.util.function.ToDoubleFunction;
 import java.util.List;
 import java.util.stream.Collectors;
@@ -53,79 +73,124 @@ import java.util.Collections;
 import java.util.Objects;
 import java.util.ArrayList;
 import java.util.Set;
-import java.util.concurrent.TimeUnit;
 
 @RestController
 public class TemperatureController {
 
         private final TemperatureRepository temperatureRepository;
         private final DeviceRepository deviceRepository;
-
-        TemperatureController(TemperatureRepository temperatureRepository, DeviceRepository deviceRepository) {
+        private final TemperatureQueryService temperatureQueryService;
+        private final TemperatureIngestService temperatureIngestService;
+        private final WriteBehindIngestQueue writeBehindIngestQueue;
+        private final StreamingIngestService streamingIngestService;
+        private final TemperatureExportService temperatureExportService;
+        private final TemperatureStatsService temperatureStatsService;
+        private final TemperatureSeriesService temperatureSeriesService;
+        private final TemperatureDownsampleService temperatureDownsampleService;
+        private final LatestReadingCache latestReadingCache;
+        private final LiveReadingHub liveReadingHub;
+        private final TwoTierCache twoTierCache;
+        private final CacheNamespaces cacheNamespaces;
+        private final FilteredResultCache filteredResultCache;
+
+        TemperatureController(TemperatureRepository temperatureRepository, DeviceRepository deviceRepository,
+                        TemperatureQueryService temperatureQueryService,
+                        TemperatureIngestService temperatureIngestService,
+                        WriteBehindIngestQueue writeBehindIngestQueue,
+                        StreamingIngestService streamingIngestService,
+                        TemperatureExportService temperatureExportService,
+                        TemperatureStatsService temperatureStatsService,
+                        TemperatureSeriesService temperatureSeriesService,
+                        TemperatureDownsampleService temperatureDownsampleService,
+                        LatestReadingCache latestReadingCache,
+                        LiveReadingHub liveReadingHub,
+                        TwoTierCache twoTierCache,
+                        CacheNamespaces cacheNamespaces,
+                        FilteredResultCache filteredResultCache) {
                 this.temperatureRepository = temperatureRepository;
                 this.deviceRepository = deviceRepository;
+                this.temperatureQueryService = temperatureQueryService;
+                this.temperatureIngestService = temperatureIngestService;
+                this.writeBehindIngestQueue = writeBehindIngestQueue;
+                this.streamingIngestService = streamingIngestService;
+                this.temperatureExportService = temperatureExportService;
+                this.temperatureStatsService = temperatureStatsService;
+                this.temperatureSeriesService = temperatureSeriesService;
+                this.temperatureDownsampleService = temperatureDownsampleService;
+                this.latestReadingCache = latestReadingCache;
+                this.liveReadingHub = liveReadingHub;
+                this.twoTierCache = twoTierCache;
+                this.cacheNamespaces = cacheNamespaces;
+                this.filteredResultCache = filteredResultCache;
         }
 
         @Autowired
-        private RedisTemplate<String, Object> redisTemplate;
+        private ObjectMapper objectMapper;
 
         // General CRUD Endpoints
 
         @ApiOperation("Add a new temperature reading")
         @PostMapping("/temperatures")
-        @CachePut(value = "temperatures", key = "#result.id")
-        public Temperature newTemperature(@RequestBody Temperature temperatureRequest) {
-                // Check if device is provided in the request
-                if (temperatureRequest.getDevice() == null) {
-                        throw new IllegalArgumentException("Device is required in the request body");
+        public Temperature newTemperature(@RequestBody Temperature temperatureRequest,
+                        @ApiIgnore HttpServletResponse response) {
+                Temperature temperature;
+                if (writeBehindIngestQueue.isEnabled()) {
+                        // In write-behind mode acknowledge as soon as the reading is queued
+                        response.setStatus(HttpServletResponse.SC_ACCEPTED);
+                        temperature = writeBehindIngestQueue.submit(getCurrentUserApiKey(), temperatureRequest);
+                } else {
+                        // Resolve the device, calculate the dew point and store the reading
+                        temperature = temperatureIngestService.ingest(getCurrentUserApiKey(), temperatureRequest);
                 }
 
-                // Get the current user's API key
-                String currentUserApiKey = getCurrentUserApiKey();
-
-                // Find device by name and API key
-                Optional<Device> existingDeviceOptional = deviceRepository.findByDeviceNameAndApiKey(
-                                temperatureRequest.getDevice().getDeviceName(), currentUserApiKey);
-
-                // Create or update the device
-                Device device = existingDeviceOptional.orElse(new Device());
-
-                // Set device properties
-                device.setDeviceName(temperatureRequest.getDevice().getDeviceName());
-                device.setApiKey(currentUserApiKey);
-
-                // Check if the device location is provided and different from the existing
-                // location
-                if (temperatureRequest.getDevice().getLocation() != null &&
-                                !Objects.equals(device.getLocation(), temperatureRequest.getDevice().getLocation())) {
-                        device.setLocation(temperatureRequest.getDevice().getLocation());
+                if (temperature.getId() != null) {
+                        twoTierCache.put("temperatures::" + temperature.getId(), temperature);
                 }
+                return temperature;
+        }
 
-                // Save the device
-                device = deviceRepository.save(device);
-
-                // Associate the device with the temperature
-                temperatureRequest.setDevice(device);
+        @ApiOperation("Add temperature readings as compact binary frames")
+        @PostMapping(path = "/temperatures", consumes = ReadingFrameCodec.CONTENT_TYPE)
+        public ResponseEntity<Map<String, Object>> newTemperatureFrames(@RequestBody byte[] body) {
+                String currentUserApiKey = getCurrentUserApiKey();
 
-                // Generate UUID for the temperature
-                temperatureRequest.setId(UUID.randomUUID().toString());
+                // In write-behind mode queue every decoded frame and acknowledge right away
+                if (writeBehindIngestQueue.isEnabled()) {
+                        List<Temperature> readings = temperatureIngestService.decodeFrames(currentUserApiKey,
+                                        ByteBuffer.wrap(body));
+                        for (Temperature reading : readings) {
+                                writeBehindIngestQueue.submit(currentUserApiKey, reading, reading.getTimestamp());
+                        }
+                        Map<String, Object> responseMap = new HashMap<>();
+                        responseMap.put("accepted", readings.size());
+                        return ResponseEntity.accepted().body(responseMap);
+                }
 
-                // Create a new Temperature object with the provided data
-                Temperature newTemperature = new Temperature(temperatureRequest.getTemperatureC(),
-                                temperatureRequest.getHumidityPercent(), 0, device); // Setting timestamp to 0
-                                                                                     // temporarily
+                List<BatchIngestResult> results = temperatureIngestService.ingestFrames(currentUserApiKey,
+                                ByteBuffer.wrap(body));
+                return ResponseEntity.ok(batchResponse(results));
+        }
 
-                // Calculate and set the dew point
-                newTemperature.calculateAndSetDewPoint();
+        @ApiOperation("Add a batch of temperature readings for one or more devices")
+        @PostMapping("/temperatures/batch")
+        public ResponseEntity<Map<String, Object>> newTemperatureBatch(@ApiIgnore HttpServletRequest request)
+                        throws IOException {
+                List<Temperature> temperatureRequests = readBatch(request);
 
-                // Set the current timestamp
-                newTemperature.setTimestamp(System.currentTimeMillis());
+                List<BatchIngestResult> results = temperatureIngestService.ingestBatch(getCurrentUserApiKey(),
+                                temperatureRequests);
+                return ResponseEntity.ok(batchResponse(results));
+        }
 
-                // Save the temperature
-                newTemperature = temperatureRepository.save(newTemperature);
+        @ApiOperation("Stream newline-delimited temperature readings over one connection")
+        @PostMapping("/temperatures/stream")
+        public void newTemperatureStream(@ApiIgnore HttpServletRequest request,
+                        @ApiIgnore HttpServletResponse response) throws IOException {
+                String currentUserApiKey = getCurrentUserApiKey();
 
-                // Return the saved temperature
-                return newTemperature;
+                // Acknowledgements are streamed back while the request body is still being read
+                response.setContentType(StreamingIngestService.CONTENT_TYPE);
+                streamingIngestService.ingest(currentUserApiKey, request.getInputStream(), response.getOutputStream());
         }
 
         @ApiOperation("Get a temperature by ID")
@@ -133,44 +198,29 @@ public class TemperatureController {
         public EntityModel<Temperature> one(@ApiParam("Temperature ID") @PathVariable String id) {
                 String currentUserApiKey = getCurrentUserApiKey();
 
-                // Check if the data exists in Redis cache
-                ValueOperations<String, Object> operations = redisTemplate.opsForValue();
-                String cacheKey = "temperatures::" + id;
-                boolean existsInCache;
-                Temperature temperature;
+                // Keyed by the parsed id, as written on ingest, so every spelling of an id shares one entry
+                UUID temperatureId = parseTemperatureId(id);
 
-                try {
-                        existsInCache = redisTemplate.hasKey(cacheKey);
-
-                        if (existsInCache) {
-                                // Retrieve data from cache
-                                temperature = (Temperature) operations.get(cacheKey);
-                        } else {
-                                // Retrieve data from database
-                                temperature = temperatureRepository.findById(id)
+                // Served from the two-tier cache, loading from the database on a miss
+                Temperature temperature = twoTierCache.get("temperatures::" + temperatureId, Temperature.class,
+                                () -> temperatureRepository.findById(temperatureId)
                                                 .filter(t -> t.getDevice().getApiKey().equals(currentUserApiKey))
-                                                .orElseThrow(() -> new TemperatureNotFoundException(id));
-
-                                // Store data in cache
-                                operations.set(cacheKey, temperature);
-                                redisTemplate.expire(cacheKey, 1, TimeUnit.HOURS); // Set expiration time (e.g., 1 hour)
-                        }
-                } catch (RedisConnectionFailureException e) {
-                        temperature = temperatureRepository.findById(id)
-                                        .filter(t -> t.getDevice().getApiKey().equals(currentUserApiKey))
-                                        .orElseThrow(() -> new TemperatureNotFoundException(id));
+                                                .orElseThrow(() -> new TemperatureNotFoundException(id)));
+                // Cached entries are shared across tenants, so ownership is checked on every hit
+                if (!temperature.getDevice().getApiKey().equals(currentUserApiKey)) {
+                        throw new TemperatureNotFoundException(id);
                 }
 
                 // Create a link to itself
                 Link selfLink = linkTo(methodOn(TemperatureController.class).one(id)).withSelfRel();
 
                 // Create a link to retrieve all temperatures
-                int defaultPage = 0; // or whatever default page number you want
                 int defaultSize = 10; // or whatever default page size you want
-                Link allLink = linkTo(methodOn(TemperatureController.class).all(defaultPage, defaultSize))
+                Link allLink = linkTo(methodOn(TemperatureController.class).all(null, defaultSize))
                                 .withRel("temperatures");
                 // Create a link to the device associated with this temperature
-                Link deviceLink = linkTo(methodOn(DeviceController.class).one(temperature.getDevice().getId()))
+                Link deviceLink = linkTo(methodOn(DeviceController.class)
+                                .one(temperature.getDevice().getId().toString()))
                                 .withRel("device");
 
                 // Create an EntityModel for the temperature
@@ -179,70 +229,42 @@ public class TemperatureController {
                 return entityModel;
         }
 
-        @ApiOperation("Get all temperatures with pagination")
+        @ApiOperation("Get all temperatures with cursor pagination")
         @GetMapping("/temperatures")
         public ResponseEntity<CollectionModel<EntityModel<Temperature>>> all(
-                        @RequestParam(defaultValue = "0") int page,
+                        @ApiParam("Cursor from a next or prev link") @RequestParam(required = false) String cursor,
                         @RequestParam(defaultValue = "10") int size) {
 
                 String currentUserApiKey = getCurrentUserApiKey();
+                TemperatureFilter filter = new TemperatureFilter(currentUserApiKey, null, null, null, null, null,
+                                null, null, null, null, null);
 
-                List<EntityModel<Temperature>> temperatures = new ArrayList<>();
-                Page<Temperature> temperaturePage = null;
-
-                try {
-                        // Check if the page exists in the cache
-                        String cachePageKey = "temperatures::page::" + page + "::size::" + size;
-                        if (redisTemplate.hasKey(cachePageKey)) {
-                                // If found in cache, retrieve it from cache
-                                List<Temperature> cachedTemperatures = (List<Temperature>) redisTemplate.opsForValue()
-                                                .get(cachePageKey);
-                                for (Temperature temperature : cachedTemperatures) {
-                                        temperatures.add(buildTemperatureEntityModel(temperature));
-                                }
-                        } else {
-                                // If not found in cache, retrieve it from the database
-                                temperaturePage = temperatureRepository.findAll(PageRequest.of(page, size));
-                                List<Temperature> temperatureList = temperaturePage.getContent();
-                                for (Temperature temperature : temperatureList) {
-                                        temperatures.add(buildTemperatureEntityModel(temperature));
-                                }
-                                // Store page data in cache
-                                redisTemplate.opsForValue().set(cachePageKey, temperatureList);
-                                redisTemplate.expire(cachePageKey, 1, TimeUnit.HOURS);
-                        }
-
-                        // Add pagination links
-                        CollectionModel<EntityModel<Temperature>> model = CollectionModel.of(temperatures,
-                                        linkTo(methodOn(TemperatureController.class).all(page, size)).withSelfRel());
-
-                        if (temperaturePage != null && temperaturePage.hasNext()) {
-                                model.add(linkTo(methodOn(TemperatureController.class).all(page + 1, size))
-                                                .withRel(IanaLinkRelations.NEXT));
-                        }
-                        if (temperaturePage != null && temperaturePage.hasPrevious()) {
-                                model.add(linkTo(methodOn(TemperatureController.class).all(page - 1, size))
-                                                .withRel(IanaLinkRelations.PREVIOUS));
-                        }
-
-                        return ResponseEntity.ok(model);
+                String cachePageKey = "temperatures::page::" + currentUserApiKey + "::"
+                                + cacheNamespaces.tenant(currentUserApiKey) + "::cursor::" + cursor + "::size::" + size;
+                TemperaturePage temperaturePage = twoTierCache.get(cachePageKey, TemperaturePage.class,
+                                () -> temperatureQueryService.findPage(filter, cursor, size));
 
-                } catch (RedisConnectionFailureException e) {
-                        e.printStackTrace();
+                List<EntityModel<Temperature>> temperatures = new ArrayList<>();
+                for (Temperature temperature : temperaturePage.getTemperatures()) {
+                        temperatures.add(buildTemperatureEntityModel(temperature));
+                }
 
-                        // If Redis is unavailable, retrieve data from the database directly
-                        List<Temperature> temperatureList = temperatureRepository.findAll(PageRequest.of(page, size))
-                                        .getContent();
-                        for (Temperature temperature : temperatureList) {
-                                if (temperature.getDevice().getApiKey().equals(currentUserApiKey)) {
-                                        temperatures.add(buildTemperatureEntityModel(temperature));
-                                }
-                        }
+                // Add pagination links
+                CollectionModel<EntityModel<Temperature>> model = CollectionModel.of(temperatures,
+                                linkTo(methodOn(TemperatureController.class).all(cursor, size)).withSelfRel());
 
-                        // Return response without pagination since Redis is unavailable
-                        CollectionModel<EntityModel<Temperature>> model = CollectionModel.of(temperatures);
-                        return ResponseEntity.ok(model);
+                if (temperaturePage.getNextCursor() != null) {
+                        model.add(linkTo(methodOn(TemperatureController.class)
+                                        .all(temperaturePage.getNextCursor(), size))
+                                        .withRel(IanaLinkRelations.NEXT));
                 }
+                if (temperaturePage.getPreviousCursor() != null) {
+                        model.add(linkTo(methodOn(TemperatureController.class)
+                                        .all(temperaturePage.getPreviousCursor(), size))
+                                        .withRel(IanaLinkRelations.PREV));
+                }
+
+                return ResponseEntity.ok(model);
         }
 
         @ApiOperation("Get all temperatures with filters")
@@ -257,102 +279,132 @@ public class TemperatureController {
                         @RequestParam(required = false) String deviceName,
                         @RequestParam(required = false) String deviceId,
                         @RequestParam(required = false) String location,
-                        @RequestParam(defaultValue = "0") int page,
+                        @RequestParam(required = false) String tz,
+                        @ApiParam("Cursor from a next or prev link") @RequestParam(required = false) String cursor,
                         @RequestParam(defaultValue = "10") int size) {
 
-                List<Temperature> filteredTemperatures = null;
+                // Every page is a slice of one cached result for the filter
+                TemperaturePage temperaturePage = filteredResultCache.findPage(buildFilter(year, month, day, hour,
+                                startTimestamp, endTimestamp, deviceName, deviceId, location, tz), cursor, size);
 
-                try {
-                        // Check if the filtered data exists in the cache
-                        String cacheKey = constructCacheKey(year, month, day, hour, startTimestamp, endTimestamp,
-                                        deviceName, deviceId, location, page, size);
-                        if (redisTemplate.hasKey(cacheKey)) {
-                                // If found in cache, retrieve it from cache
-                                filteredTemperatures = (List<Temperature>) redisTemplate.opsForValue().get(cacheKey);
-                        } else {
-                                // If not found in cache, fetch from the database
-                                filteredTemperatures = filterTemperatures(year, month, day, hour, startTimestamp,
-                                                endTimestamp, deviceName, deviceId, location);
-                                // Store filtered data in cache
-                                redisTemplate.opsForValue().set(cacheKey, filteredTemperatures);
-                                redisTemplate.expire(cacheKey, 1, TimeUnit.HOURS); // Cache expiration time
-                        }
-                } catch (Exception e) {
-                        // Log the exception
-                        e.printStackTrace();
-                        // Fallback to fetching data from the database
-                        filteredTemperatures = fetchFromDatabase(year, month, day, hour, startTimestamp, endTimestamp,
-                                        deviceName, deviceId, location);
+                List<EntityModel<Temperature>> temperatures = new ArrayList<>();
+                for (Temperature temperature : temperaturePage.getTemperatures()) {
+                        temperatures.add(buildTemperatureEntityModel(temperature));
                 }
 
-                List<EntityModel<Temperature>> temperatures = paginateData(filteredTemperatures, page, size);
-
                 // Add pagination links
                 CollectionModel<EntityModel<Temperature>> model = constructModel(temperatures, year, month, day, hour,
-                                startTimestamp, endTimestamp, deviceName, deviceId, location, page, size);
+                                startTimestamp, endTimestamp, deviceName, deviceId, location, tz, cursor, size,
+                                temperaturePage);
                 return ResponseEntity.ok(model);
         }
 
-        private String constructCacheKey(Integer year, Integer month, Integer day, Integer hour, Long startTimestamp,
-                        Long endTimestamp, String deviceName, String deviceId, String location, int page, int size) {
-                return String.format(
-                                "temperatures::filtered::year::%d::month::%d::day::%d::hour::%d::startTimestamp::%d::endTimestamp::%d::deviceName::%s::deviceId::%s::location::%s::page::%d::size::%d",
-                                year != null ? year : -1,
-                                month != null ? month : -1,
-                                day != null ? day : -1,
-                                hour != null ? hour : -1,
-                                startTimestamp != null ? startTimestamp : -1,
-                                endTimestamp != null ? endTimestamp : -1,
-                                deviceName != null ? deviceName : "null",
-                                deviceId != null ? deviceId : "null",
-                                location != null ? location : "null",
-                                page, size);
-        }
-
-        private List<Temperature> fetchFromDatabase(Integer year, Integer month, Integer day, Integer hour,
-                        Long startTimestamp, Long endTimestamp, String deviceName, String deviceId, String location) {
-                return filterTemperatures(year, month, day, hour, startTimestamp, endTimestamp, deviceName, deviceId,
-                                location);
-        }
-
-        private List<EntityModel<Temperature>> paginateData(List<Temperature> data, int page, int size) {
-                int startIndex = page * size;
-                int endIndex = Math.min(startIndex + size, data.size());
-                List<Temperature> paginatedData = data.subList(startIndex, endIndex);
-
-                List<EntityModel<Temperature>> paginatedModels = new ArrayList<>();
-                for (Temperature temperature : paginatedData) {
-                        paginatedModels.add(EntityModel.of(temperature,
-                                        linkTo(methodOn(TemperatureController.class).one(temperature.getId()))
-                                                        .withSelfRel(),
-                                        linkTo(methodOn(TemperatureController.class).allFiltered(null, null, null, null,
-                                                        null, null, null, null, null, page, size))
-                                                        .withRel("filteredTemperatures")));
-                }
+        @ApiOperation("Get at most N points per device that preserve the shape of the series")
+        @GetMapping("/temperatures/downsample")
+        public ResponseEntity<Map<String, Object>> downsample(
+                        @RequestParam(required = false) Integer year,
+                        @RequestParam(required = false) Integer month,
+                        @RequestParam(required = false) Integer day,
+                        @RequestParam(required = false) Integer hour,
+                        @RequestParam(required = false) Long startTimestamp,
+                        @RequestParam(required = false) Long endTimestamp,
+                        @RequestParam(required = false) String deviceName,
+                        @RequestParam(required = false) String deviceId,
+                        @RequestParam(required = false) String location,
+                        @RequestParam(required = false) String tz,
+                        @ApiParam("Points per device, at least 3") @RequestParam(defaultValue = "500") int points,
+                        @ApiParam("temperatureC, humidityPercent or dewPoint")
+                        @RequestParam(defaultValue = "temperatureC") String metric) {
 
-                return paginatedModels;
+                List<DownsampledSeries> series = temperatureDownsampleService.downsample(buildFilter(year, month,
+                                day, hour, startTimestamp, endTimestamp, deviceName, deviceId, location, tz), metric,
+                                points);
+
+                // Build JSON response
+                Map<String, Object> responseMap = new HashMap<>();
+                responseMap.put("metric", metric);
+                responseMap.put("points", points);
+                responseMap.put("devices", series);
+
+                // Build self link with parameters if they exist
+                UriComponentsBuilder uriBuilder = WebMvcLinkBuilder
+                                .linkTo(methodOn(TemperatureController.class)
+                                                .downsample(year, month, day, hour, startTimestamp, endTimestamp,
+                                                                deviceName, deviceId, location, tz, points, metric))
+                                .toUriComponentsBuilder();
+                String selfLink = uriBuilder.build().toUriString();
+
+                // Include self link in the response
+                responseMap.put("self", selfLink);
+
+                return ResponseEntity.ok(responseMap);
+        }
+
+        @ApiOperation("Export matching temperatures as CSV or NDJSON")
+        @GetMapping("/temperatures/export")
+        public ResponseEntity<StreamingResponseBody> export(
+                        @RequestParam(required = false) Integer year,
+                        @RequestParam(required = false) Integer month,
+                        @RequestParam(required = false) Integer day,
+                        @RequestParam(required = false) Integer hour,
+                        @RequestParam(required = false) Long startTimestamp,
+                        @RequestParam(required = false) Long endTimestamp,
+                        @RequestParam(required = false) String deviceName,
+                        @RequestParam(required = false) String deviceId,
+                        @RequestParam(required = false) String location,
+                        @RequestParam(required = false) String tz,
+                        @ApiParam("csv or ndjson") @RequestParam(defaultValue = "csv") String format,
+                        @RequestParam(defaultValue = "false") boolean gzip) {
+
+                TemperatureExportService.Format exportFormat = TemperatureExportService.Format.of(format);
+
+                // Resolve the filter on the request thread, where the caller's api key is known and
+                // an invalid filter can still be reported as 400
+                Specification<Temperature> specification = temperatureQueryService.specification(buildFilter(year,
+                                month, day, hour, startTimestamp, endTimestamp, deviceName, deviceId, location, tz));
+
+                StreamingResponseBody body = out -> {
+                        OutputStream target = gzip ? new GZIPOutputStream(out, 64 * 1024) : out;
+                        temperatureExportService.export(specification, exportFormat, target);
+                        if (gzip) {
+                                ((GZIPOutputStream) target).finish();
+                        }
+                };
+
+                ResponseEntity.BodyBuilder response = ResponseEntity.ok()
+                                .contentType(MediaType.parseMediaType(exportFormat.getContentType()))
+                                .header(HttpHeaders.CONTENT_DISPOSITION,
+                                                "attachment; filename=\"temperatures." + exportFormat.getExtension()
+                                                                + "\"");
+                if (gzip) {
+                        response.header(HttpHeaders.CONTENT_ENCODING, "gzip");
+                }
+                return response.body(body);
         }
 
         private CollectionModel<EntityModel<Temperature>> constructModel(List<EntityModel<Temperature>> temperatures,
                         Integer year, Integer month, Integer day, Integer hour, Long startTimestamp, Long endTimestamp,
-                        String deviceName, String deviceId, String location, int page, int size) {
+                        String deviceName, String deviceId, String location, String tz, String cursor, int size,
+                        TemperaturePage temperaturePage) {
                 CollectionModel<EntityModel<Temperature>> model = CollectionModel.of(temperatures,
                                 linkTo(methodOn(TemperatureController.class).allFiltered(year, month, day, hour,
                                                 startTimestamp,
-                                                endTimestamp, deviceName, deviceId, location, page, size))
+                                                endTimestamp, deviceName, deviceId, location, tz, cursor, size))
                                                 .withSelfRel());
 
-                if (temperatures.size() > (page + 1) * size) {
+                if (temperaturePage.getNextCursor() != null) {
                         model.add(linkTo(methodOn(TemperatureController.class).allFiltered(year, month, day, hour,
                                         startTimestamp,
-                                        endTimestamp, deviceName, deviceId, location, page + 1, size))
+                                        endTimestamp, deviceName, deviceId, location, tz,
+                                        temperaturePage.getNextCursor(), size))
                                         .withRel(IanaLinkRelations.NEXT));
                 }
-                if (page > 0) {
+                if (temperaturePage.getPreviousCursor() != null) {
                         model.add(linkTo(methodOn(TemperatureController.class).allFiltered(year, month, day, hour,
                                         startTimestamp,
-                                        endTimestamp, deviceName, deviceId, location, page - 1, size))
-                                        .withRel(IanaLinkRelations.PREVIOUS));
+                                        endTimestamp, deviceName, deviceId, location, tz,
+                                        temperaturePage.getPreviousCursor(), size))
+                                        .withRel(IanaLinkRelations.PREV));
                 }
                 return model;
         }
@@ -360,13 +412,13 @@ public class TemperatureController {
         @ApiOperation("Delete a temperature by ID")
         @DeleteMapping("/temperatures/{id}")
         void deleteTemperature(@ApiParam("Temperature ID") @PathVariable String id) {
-                // Check if the temperature exists
-                if (temperatureRepository.existsById(id)) {
-                        // Delete the temperature by ID
-                        temperatureRepository.deleteById(id);
-                } else {
+                UUID temperatureId = parseTemperatureId(id);
+
+                // Delete the temperature by ID, keeping the rollups in step
+                if (!temperatureIngestService.delete(temperatureId)) {
                         throw new TemperatureNotFoundException(id);
                 }
+                twoTierCache.evict("temperatures::" + temperatureId);
         }
 
         // Statistical Endpoints
@@ -378,9 +430,8 @@ public class TemperatureController {
                                                                    // user's API key
 
                 // Retrieve the latest temperature record associated with the current user's API
-                // key
-                Temperature latestTemperature = temperatureRepository
-                                .findFirstByDevice_ApiKeyOrderByTimestampDesc(currentUserApiKey)
+                // key, served from memory
+                Temperature latestTemperature = latestReadingCache.latest(currentUserApiKey)
                                 .orElseThrow(() -> new TemperatureNotFoundException(
                                                 "No temperature records found for the current user"));
 
@@ -391,9 +442,11 @@ public class TemperatureController {
 
                 // Create links for HATEOAS
                 Link selfLink = linkTo(methodOn(TemperatureController.class).getLatestTemperature()).withSelfRel();
-                Link temperatureLink = linkTo(methodOn(TemperatureController.class).one(latestTemperature.getId()))
+                Link temperatureLink = linkTo(methodOn(TemperatureController.class)
+                                .one(latestTemperature.getId().toString()))
                                 .withRel("temperature");
-                Link deviceLink = linkTo(methodOn(DeviceController.class).one(latestTemperature.getDevice().getId()))
+                Link deviceLink = linkTo(methodOn(DeviceController.class)
+                                .one(latestTemperature.getDevice().getId().toString()))
                                 .withRel("device");
 
                 // Create an EntityModel for the latest temperature record including links
@@ -408,9 +461,145 @@ public class TemperatureController {
                 return ResponseEntity.ok(temperatureEntityModel);
         }
 
-        @ApiOperation("Get average temperatureC, humidity percentage, and dew point")
-        @GetMapping("/temperatures/average")
-        public ResponseEntity<Map<String, Object>> getAverage(
+        @ApiOperation("Get the latest temperature record of every device")
+        @GetMapping("/temperatures/latest/devices")
+        public ResponseEntity<Map<String, Object>> getLatestTemperatures() {
+                List<Temperature> latestTemperatures = latestReadingCache.latestByDevice(getCurrentUserApiKey());
+
+                // Build JSON response
+                Map<String, Object> responseMap = new HashMap<>();
+                responseMap.put("count", latestTemperatures.size());
+                responseMap.put("temperatures", latestTemperatures);
+                responseMap.put("self", linkTo(methodOn(TemperatureController.class).getLatestTemperatures())
+                                .toUri().toString());
+
+                return ResponseEntity.ok(responseMap);
+        }
+
+        @ApiOperation("Stream new temperature readings as Server-Sent Events")
+        @GetMapping(path = "/temperatures/live", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+        public SseEmitter liveTemperatures(
+                        @RequestParam(required = false) String deviceId,
+                        @RequestParam(required = false) String deviceName) {
+                return liveReadingHub.subscribe(getCurrentUserApiKey(), parseDeviceFilter(deviceId), deviceName);
+        }
+
+        @ApiOperation("Wait for new temperature readings (long poll)")
+        @GetMapping("/temperatures/live/poll")
+        public DeferredResult<ResponseEntity<Map<String, Object>>> pollTemperatures(
+                        @ApiParam("Return at once with readings newer than this timestamp")
+                        @RequestParam(required = false) Long since,
+                        @RequestParam(required = false) String deviceId,
+                        @RequestParam(required = false) String deviceName,
+                        @ApiParam("How long to wait in milliseconds, at most 120000")
+                        @RequestParam(defaultValue = "30000") long timeoutMs) {
+                String currentUserApiKey = getCurrentUserApiKey();
+                UUID device = parseDeviceFilter(deviceId);
+
+                // Subscribe before looking for missed readings so none can slip in between
+                DeferredResult<ResponseEntity<Map<String, Object>>> result = liveReadingHub.poll(currentUserApiKey,
+                                device, deviceName, timeoutMs);
+                if (since != null) {
+                        List<Temperature> missed = new ArrayList<>();
+                        for (Temperature latest : latestReadingCache.latestByDevice(currentUserApiKey)) {
+                                if (latest.getTimestamp() > since
+                                                && (device == null || device.equals(latest.getDevice().getId()))
+                                                && (deviceName == null || deviceName.equalsIgnoreCase(
+                                                                latest.getDevice().getDeviceName()))) {
+                                        missed.add(latest);
+                                }
+                        }
+                        if (!missed.isEmpty()) {
+                                result.setResult(ResponseEntity.ok(LiveReadingHub.pollBody(missed)));
+                        }
+                }
+                return result;
+        }
+
+        @ApiOperation("Get count, mean, min, max, variance and percentiles in one pass")
+        @GetMapping("/temperatures/stats")
+        public ResponseEntity<Map<String, Object>> getStats(
+                        @RequestParam(required = false) Integer year,
+                        @RequestParam(required = false) Integer month,
+                        @RequestParam(required = false) Integer day,
+                        @RequestParam(required = false) Integer hour,
+                        @RequestParam(required = false) Long startTimestamp,
+                        @RequestParam(required = false) Long endTimestamp,
+                        @RequestParam(required = false) String deviceName,
+                        @RequestParam(required = false) String deviceId,
+                        @RequestParam(required = false) String location,
+                        @RequestParam(required = false) String tz,
+                        @ApiParam("Percentiles to include, e.g. 50,95") @RequestParam(required = false) double[] p) {
+
+                ReadingStats stats = stats(year, month, day, hour, startTimestamp, endTimestamp, deviceName,
+                                deviceId, location, tz, p != null ? p : new double[0]);
+
+                // Build JSON response
+                Map<String, Object> responseMap = new HashMap<>();
+                responseMap.put("count", stats.getCount());
+                responseMap.put("temperatureC", stats.getTemperatureC());
+                responseMap.put("humidityPercent", stats.getHumidityPercent());
+                responseMap.put("dewPoint", stats.getDewPoint());
+
+                // Build self link with parameters if they exist
+                UriComponentsBuilder uriBuilder = WebMvcLinkBuilder
+                                .linkTo(methodOn(TemperatureController.class)
+                                                .getStats(year, month, day, hour, startTimestamp, endTimestamp,
+                                                                deviceName, deviceId, location, tz, p))
+                                .toUriComponentsBuilder();
+                String selfLink = uriBuilder.build().toUriString();
+
+                // Include self link in the response
+                responseMap.put("self", selfLink);
+
+                return ResponseEntity.ok(responseMap);
+        }
+
+        @ApiOperation("Get exact or approximate percentiles of temperatureC, humidity percentage, and dew point")
+        @GetMapping("/temperatures/percentiles")
+        public ResponseEntity<Map<String, Object>> getPercentiles(
+                        @RequestParam(required = false) Integer year,
+                        @RequestParam(required = false) Integer month,
+                        @RequestParam(required = false) Integer day,
+                        @RequestParam(required = false) Integer hour,
+                        @RequestParam(required = false) Long startTimestamp,
+                        @RequestParam(required = false) Long endTimestamp,
+                        @RequestParam(required = false) String deviceName,
+                        @RequestParam(required = false) String deviceId,
+                        @RequestParam(required = false) String location,
+                        @RequestParam(required = false) String tz,
+                        @ApiParam("Percentiles, e.g. 50,95,99") @RequestParam(defaultValue = "50") double[] p,
+                        @ApiParam("Estimate with a t-digest instead of loading every value")
+                        @RequestParam(defaultValue = "false") boolean approx) {
+
+                ReadingStats stats = temperatureStatsService.stats(buildFilter(year, month, day, hour,
+                                startTimestamp, endTimestamp, deviceName, deviceId, location, tz), approx, p);
+
+                // Build JSON response
+                Map<String, Object> responseMap = new HashMap<>();
+                responseMap.put("count", stats.getCount());
+                responseMap.put("approx", approx);
+                responseMap.put("temperatureC", stats.getTemperatureC().getPercentiles());
+                responseMap.put("humidityPercent", stats.getHumidityPercent().getPercentiles());
+                responseMap.put("dewPoint", stats.getDewPoint().getPercentiles());
+
+                // Build self link with parameters if they exist
+                UriComponentsBuilder uriBuilder = WebMvcLinkBuilder
+                                .linkTo(methodOn(TemperatureController.class)
+                                                .getPercentiles(year, month, day, hour, startTimestamp, endTimestamp,
+                                                                deviceName, deviceId, location, tz, p, approx))
+                                .toUriComponentsBuilder();
+                String selfLink = uriBuilder.build().toUriString();
+
+                // Include self link in the response
+                responseMap.put("self", selfLink);
+
+                return ResponseEntity.ok(responseMap);
+        }
+
+        @ApiOperation("Get count, mean, min and max per device and time bucket")
+        @GetMapping("/temperatures/series")
+        public ResponseEntity<Map<String, Object>> getSeries(
                         @RequestParam(required = false) Integer year,
                         @RequestParam(required = false) Integer month,
                         @RequestParam(required = false) Integer day,
@@ -419,37 +608,62 @@ public class TemperatureController {
                         @RequestParam(required = false) Long endTimestamp,
                         @RequestParam(required = false) String deviceName,
                         @RequestParam(required = false) String deviceId,
-                        @RequestParam(required = false) String location) {
+                        @RequestParam(required = false) String location,
+                        @RequestParam(required = false) String tz,
+                        @ApiParam("Bucket length, e.g. 5m, 1h or 1d")
+                        @RequestParam(defaultValue = "1h") String interval) {
+
+                List<DeviceSeries> series = temperatureSeriesService.series(buildFilter(year, month, day, hour,
+                                startTimestamp, endTimestamp, deviceName, deviceId, location, tz), interval);
+
+                // Build JSON response
+                Map<String, Object> responseMap = new HashMap<>();
+                responseMap.put("interval", interval);
+                responseMap.put("tz", temperatureQueryService.resolveZone(tz).getId());
+                responseMap.put("devices", series);
 
-                List<Temperature> filteredTemperatures = filterTemperatures(year, month, day, hour, startTimestamp,
-                                endTimestamp, deviceName, deviceId, location);
+                // Build self link with parameters if they exist
+                UriComponentsBuilder uriBuilder = WebMvcLinkBuilder
+                                .linkTo(methodOn(TemperatureController.class)
+                                                .getSeries(year, month, day, hour, startTimestamp, endTimestamp,
+                                                                deviceName, deviceId, location, tz, interval))
+                                .toUriComponentsBuilder();
+                String selfLink = uriBuilder.build().toUriString();
 
-                // Calculate average temperatureC
-                OptionalDouble averageTemperatureC = filteredTemperatures.stream()
-                                .mapToDouble(Temperature::getTemperatureC)
-                                .average();
+                // Include self link in the response
+                responseMap.put("self", selfLink);
 
-                // Calculate average humidity percentage
-                OptionalDouble averageHumidityPercent = filteredTemperatures.stream()
-                                .mapToDouble(Temperature::getHumidityPercent)
-                                .average();
+                return ResponseEntity.ok(responseMap);
+        }
+
+        @ApiOperation("Get average temperatureC, humidity percentage, and dew point")
+        @GetMapping("/temperatures/average")
+        public ResponseEntity<Map<String, Object>> getAverage(
+                        @RequestParam(required = false) Integer year,
+                        @RequestParam(required = false) Integer month,
+                        @RequestParam(required = false) Integer day,
+                        @RequestParam(required = false) Integer hour,
+                        @RequestParam(required = false) Long startTimestamp,
+                        @RequestParam(required = false) Long endTimestamp,
+                        @RequestParam(required = false) String deviceName,
+                        @RequestParam(required = false) String deviceId,
+                        @RequestParam(required = false) String location,
+                        @RequestParam(required = false) String tz) {
 
-                // Calculate average dew point
-                OptionalDouble averageDewPoint = filteredTemperatures.stream()
-                                .mapToDouble(Temperature::getDewPoint)
-                                .average();
+                ReadingStats stats = stats(year, month, day, hour, startTimestamp, endTimestamp, deviceName,
+                                deviceId, location, tz);
 
                 // Create the response map
                 Map<String, Object> responseMap = new HashMap<>();
-                responseMap.put("averageTemperatureC", Math.round(averageTemperatureC.orElse(0.0) * 10.0) / 10.0);
-                responseMap.put("averageHumidityPercent", Math.round(averageHumidityPercent.orElse(0.0) * 10.0) / 10.0);
-                responseMap.put("averageDewPoint", Math.round(averageDewPoint.orElse(0.0) * 10.0) / 10.0);
+                responseMap.put("averageTemperatureC", round(stats.getTemperatureC().getMean()));
+                responseMap.put("averageHumidityPercent", round(stats.getHumidityPercent().getMean()));
+                responseMap.put("averageDewPoint", round(stats.getDewPoint().getMean()));
 
                 // Build self link with parameters if they exist
                 UriComponentsBuilder uriBuilder = WebMvcLinkBuilder
                                 .linkTo(methodOn(TemperatureController.class)
                                                 .getAverage(year, month, day, hour, startTimestamp, endTimestamp,
-                                                                deviceName, deviceId, location))
+                                                                deviceName, deviceId, location, tz))
                                 .toUriComponentsBuilder();
                 String selfLink = uriBuilder.build().toUriString();
 
@@ -470,37 +684,23 @@ public class TemperatureController {
                         @RequestParam(required = false) Long endTimestamp,
                         @RequestParam(required = false) String deviceName,
                         @RequestParam(required = false) String deviceId,
-                        @RequestParam(required = false) String location) {
-
-                List<Temperature> filteredTemperatures = filterTemperatures(year, month, day, hour, startTimestamp,
-                                endTimestamp, deviceName, deviceId, location);
-
-                // Calculate minimum temperatureC
-                OptionalDouble minTemperatureC = filteredTemperatures.stream()
-                                .mapToDouble(Temperature::getTemperatureC)
-                                .min();
-
-                // Calculate minimum humidity percentage
-                OptionalDouble minHumidityPercent = filteredTemperatures.stream()
-                                .mapToDouble(Temperature::getHumidityPercent)
-                                .min();
+                        @RequestParam(required = false) String location,
+                        @RequestParam(required = false) String tz) {
 
-                // Calculate minimum dew point
-                OptionalDouble minDewPoint = filteredTemperatures.stream()
-                                .mapToDouble(Temperature::getDewPoint)
-                                .min();
+                ReadingStats stats = stats(year, month, day, hour, startTimestamp, endTimestamp, deviceName,
+                                deviceId, location, tz);
 
                 // Build JSON response
                 Map<String, Object> minimums = new HashMap<>();
-                minimums.put("minTemperatureC", minTemperatureC.orElse(0.0));
-                minimums.put("minHumidityPercent", minHumidityPercent.orElse(0.0));
-                minimums.put("minDewPoint", minDewPoint.orElse(0.0));
+                minimums.put("minTemperatureC", orZero(stats.getTemperatureC().getMin()));
+                minimums.put("minHumidityPercent", orZero(stats.getHumidityPercent().getMin()));
+                minimums.put("minDewPoint", orZero(stats.getDewPoint().getMin()));
 
                 // Build self link with parameters if they exist
                 UriComponentsBuilder uriBuilder = WebMvcLinkBuilder
                                 .linkTo(methodOn(TemperatureController.class)
                                                 .getMinimum(year, month, day, hour, startTimestamp, endTimestamp,
-                                                                deviceName, deviceId, location))
+                                                                deviceName, deviceId, location, tz))
                                 .toUriComponentsBuilder();
                 String selfLink = uriBuilder.build().toUriString();
 
@@ -521,37 +721,23 @@ public class TemperatureController {
                         @RequestParam(required = false) Long endTimestamp,
                         @RequestParam(required = false) String deviceName,
                         @RequestParam(required = false) String deviceId,
-                        @RequestParam(required = false) String location) {
-
-                List<Temperature> filteredTemperatures = filterTemperatures(year, month, day, hour, startTimestamp,
-                                endTimestamp, deviceName, deviceId, location);
-
-                // Calculate maximum temperatureC
-                OptionalDouble maxTemperatureC = filteredTemperatures.stream()
-                                .mapToDouble(Temperature::getTemperatureC)
-                                .max();
-
-                // Calculate maximum humidity percentage
-                OptionalDouble maxHumidityPercent = filteredTemperatures.stream()
-                                .mapToDouble(Temperature::getHumidityPercent)
-                                .max();
+                        @RequestParam(required = false) String location,
+                        @RequestParam(required = false) String tz) {
 
-                // Calculate maximum dew point
-                OptionalDouble maxDewPoint = filteredTemperatures.stream()
-                                .mapToDouble(Temperature::getDewPoint)
-                                .max();
+                ReadingStats stats = stats(year, month, day, hour, startTimestamp, endTimestamp, deviceName,
+                                deviceId, location, tz);
 
                 // Build JSON response
                 Map<String, Object> maximums = new HashMap<>();
-                maximums.put("maxTemperatureC", maxTemperatureC.orElse(0.0));
-                maximums.put("maxHumidityPercent", maxHumidityPercent.orElse(0.0));
-                maximums.put("maxDewPoint", maxDewPoint.orElse(0.0));
+                maximums.put("maxTemperatureC", orZero(stats.getTemperatureC().getMax()));
+                maximums.put("maxHumidityPercent", orZero(stats.getHumidityPercent().getMax()));
+                maximums.put("maxDewPoint", orZero(stats.getDewPoint().getMax()));
 
                 // Build self link with parameters if they exist
                 UriComponentsBuilder uriBuilder = WebMvcLinkBuilder
                                 .linkTo(methodOn(TemperatureController.class)
                                                 .getMaximum(year, month, day, hour, startTimestamp, endTimestamp,
-                                                                deviceName, deviceId, location))
+                                                                deviceName, deviceId, location, tz))
                                 .toUriComponentsBuilder();
                 String selfLink = uriBuilder.build().toUriString();
 
@@ -572,46 +758,23 @@ public class TemperatureController {
                         @RequestParam(required = false) Long endTimestamp,
                         @RequestParam(required = false) String deviceName,
                         @RequestParam(required = false) String deviceId,
-                        @RequestParam(required = false) String location) {
-
-                List<Temperature> filteredTemperatures = filterTemperatures(year, month, day, hour, startTimestamp,
-                                endTimestamp, deviceName, deviceId, location);
-
-                // Calculate median temperatureC
-                OptionalDouble medianTemperatureC = filteredTemperatures.stream()
-                                .mapToDouble(Temperature::getTemperatureC)
-                                .sorted()
-                                .skip(filteredTemperatures.size() / 2)
-                                .limit(1)
-                                .findFirst();
-
-                // Calculate median humidity percentage
-                OptionalDouble medianHumidityPercent = filteredTemperatures.stream()
-                                .mapToDouble(Temperature::getHumidityPercent)
-                                .sorted()
-                                .skip(filteredTemperatures.size() / 2)
-                                .limit(1)
-                                .findFirst();
-
-                // Calculate median dew point
-                OptionalDouble medianDewPoint = filteredTemperatures.stream()
-                                .mapToDouble(Temperature::getDewPoint)
-                                .sorted()
-                                .skip(filteredTemperatures.size() / 2)
-                                .limit(1)
-                                .findFirst();
+                        @RequestParam(required = false) String location,
+                        @RequestParam(required = false) String tz) {
+
+                ReadingStats stats = stats(year, month, day, hour, startTimestamp, endTimestamp, deviceName,
+                                deviceId, location, tz, 50);
 
                 // Build JSON response
                 Map<String, Object> medians = new HashMap<>();
-                medians.put("medianTemperatureC", medianTemperatureC.orElse(0.0));
-                medians.put("medianHumidityPercent", medianHumidityPercent.orElse(0.0));
-                medians.put("medianDewPoint", medianDewPoint.orElse(0.0));
+                medians.put("medianTemperatureC", orZero(stats.getTemperatureC().getPercentile(50)));
+                medians.put("medianHumidityPercent", orZero(stats.getHumidityPercent().getPercentile(50)));
+                medians.put("medianDewPoint", orZero(stats.getDewPoint().getPercentile(50)));
 
                 // Build self link with parameters if they exist
                 UriComponentsBuilder uriBuilder = WebMvcLinkBuilder
                                 .linkTo(methodOn(TemperatureController.class)
                                                 .getMedian(year, month, day, hour, startTimestamp, endTimestamp,
-                                                                deviceName, deviceId, location))
+                                                                deviceName, deviceId, location, tz))
                                 .toUriComponentsBuilder();
                 String selfLink = uriBuilder.build().toUriString();
 
@@ -623,59 +786,78 @@ public class TemperatureController {
 
         // HELPERS
 
-        private List<Temperature> filterTemperatures(Integer year, Integer month, Integer day, Integer hour,
+        private ReadingStats stats(Integer year, Integer month, Integer day, Integer hour,
                         Long startTimestamp, Long endTimestamp,
-                        String deviceName, String deviceId, String location) {
-                String currentUserApiKey = getCurrentUserApiKey();
-                List<Temperature> allTemperatures = temperatureRepository.findAll();
-                Stream<Temperature> temperatureStream = allTemperatures.stream();
-
-                // Apply filters based on parameters
-                temperatureStream = temperatureStream.filter(t -> t.getDevice().getApiKey().equals(currentUserApiKey));
+                        String deviceName, String deviceId, String location, String tz, double... percentiles) {
+                return temperatureStatsService.stats(buildFilter(year, month, day, hour, startTimestamp,
+                                endTimestamp, deviceName, deviceId, location, tz), percentiles);
+        }
 
-                if (year != null)
-                        temperatureStream = temperatureStream
-                                        .filter(t -> getYearFromTimestamp(t.getTimestamp()) == year);
-                if (month != null)
-                        temperatureStream = temperatureStream
-                                        .filter(t -> getMonthFromTimestamp(t.getTimestamp()) == month);
-                if (day != null)
-                        temperatureStream = temperatureStream.filter(t -> getDayFromTimestamp(t.getTimestamp()) == day);
-                if (hour != null)
-                        temperatureStream = temperatureStream
-                                        .filter(t -> getHourFromTimestamp(t.getTimestamp()) == hour);
-                if (deviceName != null)
-                        temperatureStream = temperatureStream
-                                        .filter(t -> t.getDevice().getDeviceName().equalsIgnoreCase(deviceName));
-                if (deviceId != null)
-                        temperatureStream = temperatureStream
-                                        .filter(t -> t.getDevice().getId().equalsIgnoreCase(deviceId));
-                if (location != null)
-                        temperatureStream = temperatureStream
-                                        .filter(t -> t.getDevice().getLocation().equalsIgnoreCase(location));
+        // Statistics of an empty selection are reported as 0.0
+        private static double orZero(Double value) {
+                return value != null ? value : 0.0;
+        }
 
-                // Filter temperatures between start and end timestamps
-                if (startTimestamp != null && endTimestamp != null)
-                        temperatureStream = temperatureStream.filter(
-                                        t -> t.getTimestamp() >= startTimestamp && t.getTimestamp() <= endTimestamp);
+        private static double round(Double value) {
+                return Math.round(orZero(value) * 10.0) / 10.0;
+        }
 
-                return temperatureStream.collect(Collectors.toList());
+        private TemperatureFilter buildFilter(Integer year, Integer month, Integer day, Integer hour,
+                        Long startTimestamp, Long endTimestamp,
+                        String deviceName, String deviceId, String location, String tz) {
+                return new TemperatureFilter(getCurrentUserApiKey(), year, month, day, hour, startTimestamp,
+                                endTimestamp, deviceName, deviceId, location, tz);
         }
 
-        private int getYearFromTimestamp(long timestamp) {
-                return LocalDateTime.ofInstant(Instant.ofEpochMilli(timestamp), ZoneId.systemDefault()).getYear();
+        // Reports the outcome of every row in request order
+        private Map<String, Object> batchResponse(List<BatchIngestResult> results) {
+                long created = results.stream()
+                                .filter(result -> BatchIngestResult.CREATED.equals(result.getStatus()))
+                                .count();
+                long duplicates = results.stream()
+                                .filter(result -> BatchIngestResult.DUPLICATE.equals(result.getStatus()))
+                                .count();
+
+                Map<String, Object> responseMap = new HashMap<>();
+                responseMap.put("created", created);
+                responseMap.put("duplicates", duplicates);
+                responseMap.put("rejected", results.size() - created - duplicates);
+                responseMap.put("results", results);
+                return responseMap;
         }
 
-        private int getMonthFromTimestamp(long timestamp) {
-                return LocalDateTime.ofInstant(Instant.ofEpochMilli(timestamp), ZoneId.systemDefault()).getMonthValue();
+        // Reads a JSON array of readings, gunzipping the body when Content-Encoding is gzip
+        private List<Temperature> readBatch(HttpServletRequest request) throws IOException {
+                InputStream body = request.getInputStream();
+                try {
+                        if ("gzip".equalsIgnoreCase(request.getHeader(HttpHeaders.CONTENT_ENCODING))) {
+                                body = new GZIPInputStream(body);
+                        }
+                        return objectMapper.readValue(body, new TypeReference<List<Temperature>>() {
+                        });
+                } catch (JsonProcessingException | ZipException e) {
+                        throw new InvalidReadingException("Malformed batch body: " + e.getMessage());
+                }
         }
 
-        private int getDayFromTimestamp(long timestamp) {
-                return LocalDateTime.ofInstant(Instant.ofEpochMilli(timestamp), ZoneId.systemDefault()).getDayOfMonth();
+        // Accepts both time-ordered ids and the random ids issued before them
+        private UUID parseTemperatureId(String id) {
+                UUID temperatureId = TimeOrderedUuid.parse(id);
+                if (temperatureId == null) {
+                        throw new TemperatureNotFoundException(id);
+                }
+                return temperatureId;
         }
 
-        private int getHourFromTimestamp(long timestamp) {
-                return LocalDateTime.ofInstant(Instant.ofEpochMilli(timestamp), ZoneId.systemDefault()).getHour();
+        private UUID parseDeviceFilter(String deviceId) {
+                if (deviceId == null) {
+                        return null;
+                }
+                UUID device = TimeOrderedUuid.parse(deviceId);
+                if (device == null) {
+                        throw new InvalidFilterException("Invalid device id: " + deviceId);
+                }
+                return device;
         }
 
         private String getCurrentUserApiKey() {
@@ -693,10 +875,12 @@ public class TemperatureController {
         // Helper method to create EntityModel for temperature with necessary links
         private EntityModel<Temperature> buildTemperatureEntityModel(Temperature temperature) {
                 // Create a link to the temperature's details
-                Link selfLink = linkTo(methodOn(TemperatureController.class).one(temperature.getId())).withSelfRel();
+                Link selfLink = linkTo(methodOn(TemperatureController.class).one(temperature.getId().toString()))
+                                .withSelfRel();
 
                 // Create a link to the device associated with this temperature
-                Link deviceLink = linkTo(methodOn(DeviceController.class).one(temperature.getDevice().getId()))
+                Link deviceLink = linkTo(methodOn(DeviceController.class)
+                                .one(temperature.getDevice().getId().toString()))
                                 .withRel("device");
 
                 // Create an EntityModel for the temperature including links
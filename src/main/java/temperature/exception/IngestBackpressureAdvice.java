@@ -0,0 +1,18 @@
+package temperature.exception;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.ControllerAdvice;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+
+@ControllerAdvice
+class IngestBackpressureAdvice {
+
+	@ExceptionHandler(IngestBackpressureException.class)
+	ResponseEntity<String> ingestBackpressureHandler(IngestBackpressureException ex) {
+		return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+				.header(HttpHeaders.RETRY_AFTER, String.valueOf(ex.getRetryAfterSeconds()))
+				.body(ex.getMessage());
+	}
+}
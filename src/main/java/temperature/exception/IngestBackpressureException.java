@@ -0,0 +1,15 @@
+package temperature.exception;
+
+public class IngestBackpressureException extends RuntimeException {
+
+    private final long retryAfterSeconds;
+
+    public IngestBackpressureException(long retryAfterSeconds) {
+        super("Ingest queue is full, retry later");
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+
+    public long getRetryAfterSeconds() {
+        return retryAfterSeconds;
+    }
+}
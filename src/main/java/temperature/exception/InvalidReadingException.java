@@ -0,0 +1,11 @@
+package temperature.exception;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+@ResponseStatus(HttpStatus.BAD_REQUEST)
+public class InvalidReadingException extends RuntimeException {
+    public InvalidReadingException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,72 @@
+package temperature.model;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonInclude.Include;
+
+// Outcome of one reading in a batch ingest request, in request order
+@JsonInclude(Include.NON_NULL)
+public class BatchIngestResult {
+    public static final String CREATED = "created";
+    public static final String REJECTED = "rejected";
+    public static final String DUPLICATE = "duplicate";
+
+    private int index;
+    private String status;
+    private String id;
+    private String error;
+
+    public BatchIngestResult() {
+    }
+
+    public BatchIngestResult(int index, String status, String id, String error) {
+        this.index = index;
+        this.status = status;
+        this.id = id;
+        this.error = error;
+    }
+
+    public static BatchIngestResult created(int index, String id) {
+        return new BatchIngestResult(index, CREATED, id, null);
+    }
+
+    // The reading was already stored under the same device sequence; id is the original
+    public static BatchIngestResult duplicate(int index, String id) {
+        return new BatchIngestResult(index, DUPLICATE, id, null);
+    }
+
+    public static BatchIngestResult rejected(int index, String error) {
+        return new BatchIngestResult(index, REJECTED, null, error);
+    }
+
+    public int getIndex() {
+        return index;
+    }
+
+    public void setIndex(int index) {
+        this.index = index;
+    }
+
+    public String getStatus() {
+        return status;
+    }
+
+    public void setStatus(String status) {
+        this.status = status;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public void setId(String id) {
+        this.id = id;
+    }
+
+    public String getError() {
+        return error;
+    }
+
+    public void setError(String error) {
+        this.error = error;
+    }
+}
@@ -6,22 +6,32 @@ import javax.persistence.Entity;
 import javax.persistence.GeneratedValue;
 import javax.persistence.Id;
 import javax.persistence.Column;
+import javax.persistence.Index;
+import javax.persistence.Table;
 
 import java.util.UUID;
 import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import com.fasterxml.jackson.annotation.JsonInclude.Include;
 @Entity
+@Table(name = "device", indexes = {
+        @Index(name = "uk_device_api_key_device_name", columnList = "api_key, device_name", unique = true)
+})
 @JsonInclude(Include.NON_NULL)
 public class Device {
     @Id
-    @GeneratedValue(generator = "uuid2")
-    @GenericGenerator(name = "uuid2", strategy = "org.hibernate.id.UUIDGenerator")
-    @Column(name = "id", updatable = false, nullable = false, columnDefinition = "VARCHAR(36)")
-    private String id;
+    @GeneratedValue(generator = "uuid7")
+    @GenericGenerator(name = "uuid7", strategy = "temperature.model.TimeOrderedUuidGenerator")
+    @Column(name = "id", updatable = false, nullable = false, columnDefinition = "BINARY(16)")
+    private UUID id; // Time-ordered UUIDv7 stored as 16 bytes
 
+    // Explicit names because the unique index above lists physical column names
+    @Column(name = "device_name")
     private String deviceName;
+
     private String location;
+
+    @Column(name = "api_key")
     private String apiKey;
 
     public Device() {
@@ -38,11 +48,11 @@ public class Device {
         this.apiKey = apiKey;
     }
 
-    public String getId() {
+    public UUID getId() {
         return id;
     }
 
-    public void setId(String id) {
+    public void setId(UUID id) {
         this.id = id;
     }
 
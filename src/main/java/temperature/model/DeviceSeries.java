@@ -0,0 +1,43 @@
+package temperature.model;
+
+import java.util.List;
+
+// Non-empty buckets of one device, oldest first
+public class DeviceSeries {
+    private String deviceId;
+    private String deviceName;
+    private List<SeriesPoint> points;
+
+    public DeviceSeries() {
+    }
+
+    public DeviceSeries(String deviceId, String deviceName, List<SeriesPoint> points) {
+        this.deviceId = deviceId;
+        this.deviceName = deviceName;
+        this.points = points;
+    }
+
+    public String getDeviceId() {
+        return deviceId;
+    }
+
+    public void setDeviceId(String deviceId) {
+        this.deviceId = deviceId;
+    }
+
+    public String getDeviceName() {
+        return deviceName;
+    }
+
+    public void setDeviceName(String deviceName) {
+        this.deviceName = deviceName;
+    }
+
+    public List<SeriesPoint> getPoints() {
+        return points;
+    }
+
+    public void setPoints(List<SeriesPoint> points) {
+        this.points = points;
+    }
+}
@@ -0,0 +1,62 @@
+package temperature.model;
+
+// Points kept for one device by the downsampler, as parallel arrays in timestamp order
+public class DownsampledSeries {
+    private String deviceId;
+    private String deviceName;
+    private long count;
+    private long[] timestamps;
+    private double[] values;
+
+    public DownsampledSeries() {
+    }
+
+    public DownsampledSeries(String deviceId, String deviceName, long count, long[] timestamps, double[] values) {
+        this.deviceId = deviceId;
+        this.deviceName = deviceName;
+        this.count = count;
+        this.timestamps = timestamps;
+        this.values = values;
+    }
+
+    public String getDeviceId() {
+        return deviceId;
+    }
+
+    public void setDeviceId(String deviceId) {
+        this.deviceId = deviceId;
+    }
+
+    public String getDeviceName() {
+        return deviceName;
+    }
+
+    public void setDeviceName(String deviceName) {
+        this.deviceName = deviceName;
+    }
+
+    // Number of readings the points were chosen from
+    public long getCount() {
+        return count;
+    }
+
+    public void setCount(long count) {
+        this.count = count;
+    }
+
+    public long[] getTimestamps() {
+        return timestamps;
+    }
+
+    public void setTimestamps(long[] timestamps) {
+        this.timestamps = timestamps;
+    }
+
+    public double[] getValues() {
+        return values;
+    }
+
+    public void setValues(double[] values) {
+        this.values = values;
+    }
+}
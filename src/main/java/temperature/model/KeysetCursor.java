@@ -0,0 +1,76 @@
+package temperature.model;
+
+import java.nio.ByteBuffer;
+import java.util.Base64;
+import java.util.UUID;
+
+// Position between two readings in (timestamp, id) order. Encoded as opaque URL-safe
+// base64 so clients pass it back unchanged; backward cursors page towards older readings.
+public final class KeysetCursor {
+    private static final int ENCODED_LENGTH = 1 + 8 + 16;
+
+    private final long timestamp;
+    private final UUID id;
+    private final boolean backward;
+
+    public KeysetCursor(long timestamp, UUID id, boolean backward) {
+        this.timestamp = timestamp;
+        this.id = id;
+        this.backward = backward;
+    }
+
+    public static KeysetCursor after(Temperature temperature) {
+        return new KeysetCursor(temperature.getTimestamp(), temperature.getId(), false);
+    }
+
+    public static KeysetCursor before(Temperature temperature) {
+        return new KeysetCursor(temperature.getTimestamp(), temperature.getId(), true);
+    }
+
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    public UUID getId() {
+        return id;
+    }
+
+    public boolean isBackward() {
+        return backward;
+    }
+
+    public String encode() {
+        ByteBuffer buffer = ByteBuffer.allocate(ENCODED_LENGTH);
+        buffer.put((byte) (backward ? 1 : 0));
+        buffer.putLong(timestamp);
+        buffer.putLong(id.getMostSignificantBits());
+        buffer.putLong(id.getLeastSignificantBits());
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(buffer.array());
+    }
+
+    // Returns null for malformed input
+    public static KeysetCursor decode(String cursor) {
+        if (cursor == null) {
+            return null;
+        }
+        byte[] bytes;
+        try {
+            bytes = Base64.getUrlDecoder().decode(cursor);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+        if (bytes.length != ENCODED_LENGTH || (bytes[0] != 0 && bytes[0] != 1)) {
+            return null;
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        boolean backward = buffer.get() == 1;
+        long timestamp = buffer.getLong();
+        UUID id = new UUID(buffer.getLong(), buffer.getLong());
+        return new KeysetCursor(timestamp, id, backward);
+    }
+
+    @Override
+    public String toString() {
+        return (backward ? "before(" : "after(") + timestamp + ", " + id + ")";
+    }
+}
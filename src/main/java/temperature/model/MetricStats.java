@@ -0,0 +1,91 @@
+package temperature.model;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonInclude.Include;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// Summary of one metric (temperatureC, humidityPercent or dewPoint) over the matching
+// readings. Variance is the population variance. All values are null when nothing matched.
+@JsonInclude(Include.NON_NULL)
+public class MetricStats {
+    private Double mean;
+    private Double min;
+    private Double max;
+    private Double variance;
+    private Map<String, Double> percentiles;
+
+    public MetricStats() {
+    }
+
+    // Builds the summary from the running sums that SQL and the in-memory pass both produce
+    public static MetricStats of(long count, double sum, double sumOfSquares, double min, double max) {
+        MetricStats stats = new MetricStats();
+        if (count == 0) {
+            return stats;
+        }
+        double mean = sum / count;
+        stats.mean = mean;
+        stats.min = min;
+        stats.max = max;
+        stats.variance = Math.max(0.0, sumOfSquares / count - mean * mean);
+        return stats;
+    }
+
+    public void putPercentile(double p, double value) {
+        if (percentiles == null) {
+            percentiles = new LinkedHashMap<>();
+        }
+        percentiles.put(percentileKey(p), value);
+    }
+
+    public Double getPercentile(double p) {
+        return percentiles != null ? percentiles.get(percentileKey(p)) : null;
+    }
+
+    // 50 -> "p50", 99.9 -> "p99.9"
+    public static String percentileKey(double p) {
+        return p == Math.rint(p) ? "p" + (long) p : "p" + p;
+    }
+
+    public Double getMean() {
+        return mean;
+    }
+
+    public void setMean(Double mean) {
+        this.mean = mean;
+    }
+
+    public Double getMin() {
+        return min;
+    }
+
+    public void setMin(Double min) {
+        this.min = min;
+    }
+
+    public Double getMax() {
+        return max;
+    }
+
+    public void setMax(Double max) {
+        this.max = max;
+    }
+
+    public Double getVariance() {
+        return variance;
+    }
+
+    public void setVariance(Double variance) {
+        this.variance = variance;
+    }
+
+    public Map<String, Double> getPercentiles() {
+        return percentiles;
+    }
+
+    public void setPercentiles(Map<String, Double> percentiles) {
+        this.percentiles = percentiles;
+    }
+}
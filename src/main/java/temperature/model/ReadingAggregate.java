@@ -0,0 +1,87 @@
+package temperature.model;
+
+// Mergeable count, sum, sum of squares, min and max of the three metrics. Partial
+// aggregates from rollup buckets and raw rows combine into the same totals as one
+// aggregate over all rows would give.
+public class ReadingAggregate {
+    public static final int TEMPERATURE_C = 0;
+    public static final int HUMIDITY_PERCENT = 1;
+    public static final int DEW_POINT = 2;
+
+    private static final int METRICS = 3;
+
+    private long count;
+    private final double[] sum = new double[METRICS];
+    private final double[] sumOfSquares = new double[METRICS];
+    private final double[] min = new double[METRICS];
+    private final double[] max = new double[METRICS];
+
+    public ReadingAggregate() {
+        for (int metric = 0; metric < METRICS; metric++) {
+            min[metric] = Double.POSITIVE_INFINITY;
+            max[metric] = Double.NEGATIVE_INFINITY;
+        }
+    }
+
+    public void add(double temperatureC, double humidityPercent, double dewPoint) {
+        count++;
+        addValue(TEMPERATURE_C, temperatureC);
+        addValue(HUMIDITY_PERCENT, humidityPercent);
+        addValue(DEW_POINT, dewPoint);
+    }
+
+    // Adds the totals of one metric; call once per metric after addCount
+    public void addMetric(int metric, double sum, double sumOfSquares, double min, double max) {
+        this.sum[metric] += sum;
+        this.sumOfSquares[metric] += sumOfSquares;
+        this.min[metric] = Math.min(this.min[metric], min);
+        this.max[metric] = Math.max(this.max[metric], max);
+    }
+
+    public void addCount(long count) {
+        this.count += count;
+    }
+
+    public void merge(ReadingAggregate other) {
+        count += other.count;
+        for (int metric = 0; metric < METRICS; metric++) {
+            addMetric(metric, other.sum[metric], other.sumOfSquares[metric], other.min[metric], other.max[metric]);
+        }
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public double getSum(int metric) {
+        return sum[metric];
+    }
+
+    public double getSumOfSquares(int metric) {
+        return sumOfSquares[metric];
+    }
+
+    public double getMin(int metric) {
+        return min[metric];
+    }
+
+    public double getMax(int metric) {
+        return max[metric];
+    }
+
+    public ReadingStats toStats() {
+        return new ReadingStats(count, metricStats(TEMPERATURE_C), metricStats(HUMIDITY_PERCENT),
+                metricStats(DEW_POINT));
+    }
+
+    private MetricStats metricStats(int metric) {
+        return MetricStats.of(count, sum[metric], sumOfSquares[metric], min[metric], max[metric]);
+    }
+
+    private void addValue(int metric, double value) {
+        sum[metric] += value;
+        sumOfSquares[metric] += value * value;
+        min[metric] = Math.min(min[metric], value);
+        max[metric] = Math.max(max[metric], value);
+    }
+}
@@ -0,0 +1,77 @@
+package temperature.model;
+
+import java.util.Arrays;
+
+// Column-oriented view of temperature readings backed by primitive arrays, used by
+// the statistics endpoints so they never have to materialize Temperature entities
+public class ReadingColumns {
+    private long[] timestamps;
+    private double[] temperatureC;
+    private double[] humidityPercent;
+    private double[] dewPoint;
+    private int size;
+
+    public ReadingColumns() {
+        this(16);
+    }
+
+    public ReadingColumns(int capacity) {
+        int initialCapacity = Math.max(capacity, 1);
+        this.timestamps = new long[initialCapacity];
+        this.temperatureC = new double[initialCapacity];
+        this.humidityPercent = new double[initialCapacity];
+        this.dewPoint = new double[initialCapacity];
+    }
+
+    public void add(long timestamp, double temperatureC, double humidityPercent, double dewPoint) {
+        if (size == timestamps.length) {
+            int newCapacity = size * 2;
+            this.timestamps = Arrays.copyOf(this.timestamps, newCapacity);
+            this.temperatureC = Arrays.copyOf(this.temperatureC, newCapacity);
+            this.humidityPercent = Arrays.copyOf(this.humidityPercent, newCapacity);
+            this.dewPoint = Arrays.copyOf(this.dewPoint, newCapacity);
+        }
+        this.timestamps[size] = timestamp;
+        this.temperatureC[size] = temperatureC;
+        this.humidityPercent[size] = humidityPercent;
+        this.dewPoint[size] = dewPoint;
+        size++;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public long getTimestamp(int index) {
+        return timestamps[index];
+    }
+
+    public double getTemperatureC(int index) {
+        return temperatureC[index];
+    }
+
+    public double getHumidityPercent(int index) {
+        return humidityPercent[index];
+    }
+
+    public double getDewPoint(int index) {
+        return dewPoint[index];
+    }
+
+    // Copies are trimmed to size so callers may sort or partition them in place
+    public double[] temperatureCValues() {
+        return Arrays.copyOf(temperatureC, size);
+    }
+
+    public double[] humidityPercentValues() {
+        return Arrays.copyOf(humidityPercent, size);
+    }
+
+    public double[] dewPointValues() {
+        return Arrays.copyOf(dewPoint, size);
+    }
+}
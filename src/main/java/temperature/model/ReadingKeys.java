@@ -0,0 +1,95 @@
+package temperature.model;
+
+import java.util.UUID;
+
+// The (timestamp, id) keys of a set of readings in (timestamp, id) order, as parallel
+// primitive arrays with the ids split into their two halves. Incomplete when the set
+// was cut off at a size limit, in which case the arrays may be empty.
+public class ReadingKeys {
+    private long[] timestamps;
+    private long[] idHigh;
+    private long[] idLow;
+    private boolean complete;
+
+    public ReadingKeys() {
+    }
+
+    public ReadingKeys(long[] timestamps, long[] idHigh, long[] idLow, boolean complete) {
+        this.timestamps = timestamps;
+        this.idHigh = idHigh;
+        this.idLow = idLow;
+        this.complete = complete;
+    }
+
+    public static ReadingKeys incomplete() {
+        return new ReadingKeys(new long[0], new long[0], new long[0], false);
+    }
+
+    public int size() {
+        return timestamps.length;
+    }
+
+    public UUID id(int index) {
+        return new UUID(idHigh[index], idLow[index]);
+    }
+
+    // Index of the first key after (timestamp, id), or at or after it when inclusive; ids
+    // compare as unsigned bytes, like the BINARY(16) column
+    public int indexAfter(long timestamp, UUID id, boolean inclusive) {
+        int low = 0;
+        int high = timestamps.length;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            int comparison = compare(middle, timestamp, id);
+            if (comparison < 0 || (comparison == 0 && !inclusive)) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    private int compare(int index, long timestamp, UUID id) {
+        int comparison = Long.compare(timestamps[index], timestamp);
+        if (comparison == 0) {
+            comparison = Long.compareUnsigned(idHigh[index], id.getMostSignificantBits());
+        }
+        if (comparison == 0) {
+            comparison = Long.compareUnsigned(idLow[index], id.getLeastSignificantBits());
+        }
+        return comparison;
+    }
+
+    public long[] getTimestamps() {
+        return timestamps;
+    }
+
+    public void setTimestamps(long[] timestamps) {
+        this.timestamps = timestamps;
+    }
+
+    public long[] getIdHigh() {
+        return idHigh;
+    }
+
+    public void setIdHigh(long[] idHigh) {
+        this.idHigh = idHigh;
+    }
+
+    public long[] getIdLow() {
+        return idLow;
+    }
+
+    public void setIdLow(long[] idLow) {
+        this.idLow = idLow;
+    }
+
+    public boolean isComplete() {
+        return complete;
+    }
+
+    public void setComplete(boolean complete) {
+        this.complete = complete;
+    }
+}
@@ -0,0 +1,51 @@
+package temperature.model;
+
+// Count and per-metric summaries of the readings matching a filter
+public class ReadingStats {
+    private long count;
+    private MetricStats temperatureC;
+    private MetricStats humidityPercent;
+    private MetricStats dewPoint;
+
+    public ReadingStats() {
+    }
+
+    public ReadingStats(long count, MetricStats temperatureC, MetricStats humidityPercent, MetricStats dewPoint) {
+        this.count = count;
+        this.temperatureC = temperatureC;
+        this.humidityPercent = humidityPercent;
+        this.dewPoint = dewPoint;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public void setCount(long count) {
+        this.count = count;
+    }
+
+    public MetricStats getTemperatureC() {
+        return temperatureC;
+    }
+
+    public void setTemperatureC(MetricStats temperatureC) {
+        this.temperatureC = temperatureC;
+    }
+
+    public MetricStats getHumidityPercent() {
+        return humidityPercent;
+    }
+
+    public void setHumidityPercent(MetricStats humidityPercent) {
+        this.humidityPercent = humidityPercent;
+    }
+
+    public MetricStats getDewPoint() {
+        return dewPoint;
+    }
+
+    public void setDewPoint(MetricStats dewPoint) {
+        this.dewPoint = dewPoint;
+    }
+}
@@ -0,0 +1,40 @@
+package temperature.model;
+
+import java.util.UUID;
+
+// Partial aggregate of one device's readings in one bucket of bucketMs milliseconds
+// starting at bucketStart
+public class RollupBucket {
+    private final long bucketMs;
+    private final UUID deviceId;
+    private final long bucketStart;
+    private final String apiKey;
+    private final ReadingAggregate aggregate = new ReadingAggregate();
+
+    public RollupBucket(long bucketMs, UUID deviceId, long bucketStart, String apiKey) {
+        this.bucketMs = bucketMs;
+        this.deviceId = deviceId;
+        this.bucketStart = bucketStart;
+        this.apiKey = apiKey;
+    }
+
+    public long getBucketMs() {
+        return bucketMs;
+    }
+
+    public UUID getDeviceId() {
+        return deviceId;
+    }
+
+    public long getBucketStart() {
+        return bucketStart;
+    }
+
+    public String getApiKey() {
+        return apiKey;
+    }
+
+    public ReadingAggregate getAggregate() {
+        return aggregate;
+    }
+}
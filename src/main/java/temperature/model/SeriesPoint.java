@@ -0,0 +1,72 @@
+package temperature.model;
+
+// Aggregates of one device's readings in the bucket [start, end)
+public class SeriesPoint {
+    private long start;
+    private long end;
+    private long count;
+    private MetricStats temperatureC;
+    private MetricStats humidityPercent;
+    private MetricStats dewPoint;
+
+    public SeriesPoint() {
+    }
+
+    public SeriesPoint(long start, long end, ReadingAggregate aggregate) {
+        ReadingStats stats = aggregate.toStats();
+        this.start = start;
+        this.end = end;
+        this.count = stats.getCount();
+        this.temperatureC = stats.getTemperatureC();
+        this.humidityPercent = stats.getHumidityPercent();
+        this.dewPoint = stats.getDewPoint();
+    }
+
+    public long getStart() {
+        return start;
+    }
+
+    public void setStart(long start) {
+        this.start = start;
+    }
+
+    public long getEnd() {
+        return end;
+    }
+
+    public void setEnd(long end) {
+        this.end = end;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public void setCount(long count) {
+        this.count = count;
+    }
+
+    public MetricStats getTemperatureC() {
+        return temperatureC;
+    }
+
+    public void setTemperatureC(MetricStats temperatureC) {
+        this.temperatureC = temperatureC;
+    }
+
+    public MetricStats getHumidityPercent() {
+        return humidityPercent;
+    }
+
+    public void setHumidityPercent(MetricStats humidityPercent) {
+        this.humidityPercent = humidityPercent;
+    }
+
+    public MetricStats getDewPoint() {
+        return dewPoint;
+    }
+
+    public void setDewPoint(MetricStats dewPoint) {
+        this.dewPoint = dewPoint;
+    }
+}
@@ -5,26 +5,39 @@ import org.hibernate.annotations.GenericGenerator;
 import javax.persistence.Entity;
 import javax.persistence.GeneratedValue;
 import javax.persistence.Id;
+import javax.persistence.JoinColumn;
 import javax.persistence.ManyToOne;
 import javax.persistence.Column;
+import javax.persistence.Index;
+import javax.persistence.Table;
 
 import java.util.UUID;
 import com.fasterxml.jackson.annotation.JsonTypeInfo;
 import com.fasterxml.jackson.annotation.JsonTypeName;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import com.fasterxml.jackson.annotation.JsonInclude.Include;
 
 @Entity
+@Table(name = "temperature", indexes = {
+        @Index(name = "idx_temperature_device_timestamp", columnList = "device_id, timestamp"),
+        @Index(name = "idx_temperature_timestamp", columnList = "timestamp"),
+        @Index(name = "idx_temperature_api_key_timestamp", columnList = "api_key, timestamp"),
+        @Index(name = "uk_temperature_device_sequence", columnList = "device_id, device_boot, device_sequence",
+                unique = true)
+})
 @JsonInclude(Include.NON_NULL)
 public class Temperature {
     @Id
-    @GeneratedValue(generator = "uuid2")
-    @GenericGenerator(name = "uuid2", strategy = "org.hibernate.id.UUIDGenerator")
-    @Column(name = "id", updatable = false, nullable = false, columnDefinition = "VARCHAR(36)")
-    private String id; // Use String type for UUID
+    @GeneratedValue(generator = "uuid7")
+    @GenericGenerator(name = "uuid7", strategy = "temperature.model.TimeOrderedUuidGenerator")
+    @Column(name = "id", updatable = false, nullable = false, columnDefinition = "BINARY(16)")
+    private UUID id; // Time-ordered UUIDv7 stored as 16 bytes
 
+    // The naming strategy would map this to temperaturec, the name before V4
+    @Column(name = "temperature_c")
     private double temperatureC;
     private double humidityPercent;
 
@@ -32,9 +45,24 @@ public class Temperature {
 
     private long timestamp;
 
+    // Optional increasing number assigned by the device, used to drop retried readings
+    @Column(name = "device_sequence")
+    private Long sequence;
+
+    // Boot counter or id of a device whose sequence restarts when it reboots; 0 when a
+    // sequenced reading does not say
+    @Column(name = "device_boot")
+    private Long boot;
+
     @ManyToOne
+    @JoinColumn(name = "device_id", columnDefinition = "BINARY(16)")
     private Device device;
 
+    // Copy of device.apiKey so tenant-scoped queries can skip the device join
+    @JsonIgnore
+    @Column(name = "api_key")
+    private String apiKey;
+
     // Constructors
     public Temperature() {
     }
@@ -43,14 +71,14 @@ public class Temperature {
         this.temperatureC = temperatureC;
         this.humidityPercent = humidityPercent;
         this.timestamp = timestamp;
-        this.device = device;
+        setDevice(device);
     }
 
-    public String getId() {
+    public UUID getId() {
         return id;
     }
 
-    public void setId(String id) {
+    public void setId(UUID id) {
         this.id = id;
     }
 
@@ -100,12 +128,37 @@ public class Temperature {
         this.timestamp = timestamp;
     }
 
+    public Long getSequence() {
+        return sequence;
+    }
+
+    public void setSequence(Long sequence) {
+        this.sequence = sequence;
+    }
+
+    public Long getBoot() {
+        return boot;
+    }
+
+    public void setBoot(Long boot) {
+        this.boot = boot;
+    }
+
     public Device getDevice() {
         return device;
     }
 
     public void setDevice(Device device) {
         this.device = device;
+        this.apiKey = device != null ? device.getApiKey() : null;
+    }
+
+    public String getApiKey() {
+        return apiKey;
+    }
+
+    public void setApiKey(String apiKey) {
+        this.apiKey = apiKey;
     }
 
     @Override
@@ -116,6 +169,8 @@ public class Temperature {
                 ", humidityPercent=" + humidityPercent +
                 ", dewPoint=" + dewPoint +
                 ", timestamp=" + timestamp +
+                ", sequence=" + sequence +
+                ", boot=" + boot +
                 ", device=" + deviceToString() +
                 '}';
     }
@@ -0,0 +1,127 @@
+package temperature.model;
+
+// Query parameters shared by the filtered listing and the statistics endpoints
+public class TemperatureFilter {
+    private String apiKey;
+    private Integer year;
+    private Integer month;
+    private Integer day;
+    private Integer hour;
+    private Long startTimestamp;
+    private Long endTimestamp;
+    private String deviceName;
+    private String deviceId;
+    private String location;
+    private String timeZone;
+
+    public TemperatureFilter() {
+    }
+
+    public TemperatureFilter(String apiKey, Integer year, Integer month, Integer day, Integer hour,
+            Long startTimestamp, Long endTimestamp, String deviceName, String deviceId, String location,
+            String timeZone) {
+        this.apiKey = apiKey;
+        this.year = year;
+        this.month = month;
+        this.day = day;
+        this.hour = hour;
+        this.startTimestamp = startTimestamp;
+        this.endTimestamp = endTimestamp;
+        this.deviceName = deviceName;
+        this.deviceId = deviceId;
+        this.location = location;
+        this.timeZone = timeZone;
+    }
+
+    public boolean hasCalendarFields() {
+        return year != null || month != null || day != null || hour != null;
+    }
+
+    public String getApiKey() {
+        return apiKey;
+    }
+
+    public void setApiKey(String apiKey) {
+        this.apiKey = apiKey;
+    }
+
+    public Integer getYear() {
+        return year;
+    }
+
+    public void setYear(Integer year) {
+        this.year = year;
+    }
+
+    public Integer getMonth() {
+        return month;
+    }
+
+    public void setMonth(Integer month) {
+        this.month = month;
+    }
+
+    public Integer getDay() {
+        return day;
+    }
+
+    public void setDay(Integer day) {
+        this.day = day;
+    }
+
+    public Integer getHour() {
+        return hour;
+    }
+
+    public void setHour(Integer hour) {
+        this.hour = hour;
+    }
+
+    public Long getStartTimestamp() {
+        return startTimestamp;
+    }
+
+    public void setStartTimestamp(Long startTimestamp) {
+        this.startTimestamp = startTimestamp;
+    }
+
+    public Long getEndTimestamp() {
+        return endTimestamp;
+    }
+
+    public void setEndTimestamp(Long endTimestamp) {
+        this.endTimestamp = endTimestamp;
+    }
+
+    public String getDeviceName() {
+        return deviceName;
+    }
+
+    public void setDeviceName(String deviceName) {
+        this.deviceName = deviceName;
+    }
+
+    public String getDeviceId() {
+        return deviceId;
+    }
+
+    public void setDeviceId(String deviceId) {
+        this.deviceId = deviceId;
+    }
+
+    public String getLocation() {
+        return location;
+    }
+
+    public void setLocation(String location) {
+        this.location = location;
+    }
+
+    public String getTimeZone() {
+        return timeZone;
+    }
+
+    public void setTimeZone(String timeZone) {
+        this.timeZone = timeZone;
+    }
+}
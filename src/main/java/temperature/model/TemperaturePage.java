@@ -0,0 +1,44 @@
+package temperature.model;
+
+import java.util.List;
+
+// One keyset page of readings, oldest first, with the cursors of the neighbouring
+// pages; a null cursor means there is no page in that direction
+public class TemperaturePage {
+    private List<Temperature> temperatures;
+    private String nextCursor;
+    private String previousCursor;
+
+    public TemperaturePage() {
+    }
+
+    public TemperaturePage(List<Temperature> temperatures, String nextCursor, String previousCursor) {
+        this.temperatures = temperatures;
+        this.nextCursor = nextCursor;
+        this.previousCursor = previousCursor;
+    }
+
+    public List<Temperature> getTemperatures() {
+        return temperatures;
+    }
+
+    public void setTemperatures(List<Temperature> temperatures) {
+        this.temperatures = temperatures;
+    }
+
+    public String getNextCursor() {
+        return nextCursor;
+    }
+
+    public void setNextCursor(String nextCursor) {
+        this.nextCursor = nextCursor;
+    }
+
+    public String getPreviousCursor() {
+        return previousCursor;
+    }
+
+    public void setPreviousCursor(String previousCursor) {
+        this.previousCursor = previousCursor;
+    }
+}
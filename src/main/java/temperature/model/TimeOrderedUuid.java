@@ -0,0 +1,65 @@
+package temperature.model;
+
+import java.nio.ByteBuffer;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+
+// UUIDv7 identifiers: 48-bit Unix millisecond timestamp, a 12-bit counter that keeps
+// ids monotonic within one millisecond, and 62 random bits. New rows therefore land
+// at the end of the clustered index instead of at random positions.
+public final class TimeOrderedUuid {
+
+    private static long lastMillis;
+    private static int counter;
+
+    private TimeOrderedUuid() {
+    }
+
+    public static synchronized UUID next() {
+        long now = System.currentTimeMillis();
+        if (now > lastMillis) {
+            lastMillis = now;
+            // Start low in the counter space so many ids fit in the same millisecond
+            counter = ThreadLocalRandom.current().nextInt(0x400);
+        } else if (++counter > 0xFFF) {
+            // Counter exhausted or clock moved backwards: borrow the next millisecond
+            lastMillis++;
+            counter = 0;
+        }
+
+        long mostSigBits = (lastMillis << 16) | 0x7000L | counter;
+        long leastSigBits = (ThreadLocalRandom.current().nextLong() & 0x3FFFFFFFFFFFFFFFL) | 0x8000000000000000L;
+        return new UUID(mostSigBits, leastSigBits);
+    }
+
+    // Epoch milliseconds embedded in a version 7 id
+    public static long timestampOf(UUID id) {
+        return id.getMostSignificantBits() >>> 16;
+    }
+
+    // Parses any textual UUID, including the random version 4 ids issued before;
+    // returns null for malformed input
+    public static UUID parse(String id) {
+        if (id == null) {
+            return null;
+        }
+        try {
+            return UUID.fromString(id);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    // The BINARY(16) column representation, for plain JDBC access
+    public static byte[] toBytes(UUID id) {
+        return ByteBuffer.allocate(16)
+                .putLong(id.getMostSignificantBits())
+                .putLong(id.getLeastSignificantBits())
+                .array();
+    }
+
+    public static UUID fromBytes(byte[] bytes) {
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        return new UUID(buffer.getLong(), buffer.getLong());
+    }
+}
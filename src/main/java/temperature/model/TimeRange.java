@@ -0,0 +1,66 @@
+package temperature.model;
+
+// Half-open interval [start, end) of epoch milliseconds. A daily range only covers the
+// instants inside it whose time of the UTC day lies in [hourStart, hourStart + one hour),
+// i.e. one local hour a day while the zone keeps the same offset.
+public class TimeRange {
+    public static final long HOUR_MS = 60 * 60 * 1000L;
+    public static final long DAY_MS = 24 * HOUR_MS;
+
+    private final long start;
+    private final long end;
+    // Time of the UTC day the hour starts at, or -1 when every instant of the interval counts
+    private final long hourStart;
+
+    public TimeRange(long start, long end) {
+        this(start, end, -1);
+    }
+
+    private TimeRange(long start, long end, long hourStart) {
+        this.start = start;
+        this.end = end;
+        this.hourStart = hourStart;
+    }
+
+    public static TimeRange daily(long start, long end, long hourStart) {
+        if (hourStart < 0 || hourStart >= DAY_MS) {
+            throw new IllegalArgumentException("hourStart must lie within a day: " + hourStart);
+        }
+        return new TimeRange(start, end, hourStart);
+    }
+
+    // The same hours a day, if any, within other bounds
+    public TimeRange withBounds(long start, long end) {
+        return new TimeRange(start, end, hourStart);
+    }
+
+    public long getStart() {
+        return start;
+    }
+
+    public long getEnd() {
+        return end;
+    }
+
+    public boolean isDaily() {
+        return hourStart >= 0;
+    }
+
+    public long getHourStart() {
+        return hourStart;
+    }
+
+    public boolean isEmpty() {
+        return end <= start;
+    }
+
+    public boolean contains(long timestamp) {
+        return timestamp >= start && timestamp < end
+                && (hourStart < 0 || Math.floorMod(timestamp - hourStart, DAY_MS) < HOUR_MS);
+    }
+
+    @Override
+    public String toString() {
+        return "[" + start + ", " + end + ")" + (hourStart >= 0 ? " daily from " + hourStart : "");
+    }
+}
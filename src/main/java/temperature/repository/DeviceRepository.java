@@ -4,15 +4,16 @@ import temperature.model.Device;
 
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.stereotype.Repository;
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
+import java.util.UUID;
 
 @Repository
-public interface DeviceRepository extends JpaRepository<Device, String> {
-    Optional<Device> findByDeviceName(String deviceName);
-
+public interface DeviceRepository extends JpaRepository<Device, UUID> {
     Optional<Device> findByDeviceNameAndApiKey(String deviceName, String apiKey);
 
-    Optional<Device> findByApiKey(String apiKey);
+    List<Device> findAllByApiKey(String apiKey);
 
-    Optional<Device> findByLocation(String location);
+    List<Device> findByApiKeyAndDeviceNameIn(String apiKey, Collection<String> deviceNames);
 }
@@ -6,12 +6,37 @@ import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
 
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
-public interface TemperatureRepository extends JpaRepository<Temperature, String> {
+// Queries by device compare t.device.id, which is the device_id column itself; derived
+// queries on DeviceId outer-join device and filter on the joined id, so no temperature
+// index can be used
+public interface TemperatureRepository extends JpaRepository<Temperature, UUID>,
+        JpaSpecificationExecutor<Temperature>, TemperatureRepositoryCustom {
     List<Temperature> findByTimestampBetween(long startTimestamp, long endTimestamp);
 
-    Optional<Temperature> findFirstByDevice_ApiKeyOrderByTimestampDesc(String apiKey);
+    Optional<Temperature> findFirstByApiKeyOrderByTimestampDesc(String apiKey);
 
-    Optional<Temperature> findFirstByOrderByTimestampDesc();
+    Optional<Temperature> findFirstByApiKeyOrderByTimestampAsc(String apiKey);
+
+    @Query("select t.id from Temperature t "
+            + "where t.device.id = :deviceId and t.boot = :boot and t.sequence = :sequence")
+    Optional<UUID> findIdBySequence(@Param("deviceId") UUID deviceId, @Param("boot") long boot,
+            @Param("sequence") long sequence);
+
+    // Highest sequence stored for the device in the given boot, or null
+    @Query("select max(t.sequence) from Temperature t where t.device.id = :deviceId and t.boot = :boot")
+    Long findMaxSequence(@Param("deviceId") UUID deviceId, @Param("boot") long boot);
+
+    @Query("select t from Temperature t where t.device.id = :deviceId order by t.timestamp desc, t.id desc")
+    List<Temperature> findNewestByDeviceId(@Param("deviceId") UUID deviceId, Pageable pageable);
+
+    default Optional<Temperature> findLatestByDeviceId(UUID deviceId) {
+        return findNewestByDeviceId(deviceId, PageRequest.of(0, 1)).stream().findFirst();
+    }
 }
@@ -0,0 +1,40 @@
+package temperature.repository;
+
+import temperature.model.*;
+
+import org.springframework.data.jpa.domain.Specification;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+public interface TemperatureRepositoryCustom {
+    // Projects only the numeric columns of the matching rows, in no particular order,
+    // scrolling fetchSize rows at a time into the primitive columns
+    ReadingColumns findReadingColumns(Specification<Temperature> specification, int fetchSize);
+
+    // Count, sum, sum of squares, min and max of every metric in one aggregate query
+    ReadingAggregate findAggregate(Specification<Temperature> specification);
+
+    // Number of matching rows per device id
+    Map<UUID, Long> countByDevice(Specification<Temperature> specification);
+
+    // Reads up to limit rows past the cursor in (timestamp, id) order, starting from the
+    // oldest row when the cursor is null. Backward cursors return the rows newest first.
+    List<Temperature> findPage(Specification<Temperature> specification, KeysetCursor cursor, int limit);
+
+    // Reads the (timestamp, id) of at most limit matching rows in (timestamp, id) order;
+    // the keys are incomplete when more rows match
+    ReadingKeys findKeys(Specification<Temperature> specification, int limit);
+
+    // Streams the matching rows, oldest first, through a forward-only JDBC cursor
+    // without loading entities; only fetchSize rows are buffered at a time
+    void forEachReading(Specification<Temperature> specification, int fetchSize, ReadingRowHandler handler)
+            throws IOException;
+
+    interface ReadingRowHandler {
+        void onRow(UUID id, long timestamp, UUID deviceId, String deviceName, double temperatureC,
+                double humidityPercent, double dewPoint) throws IOException;
+    }
+}
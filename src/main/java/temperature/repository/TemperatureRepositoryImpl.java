@@ -0,0 +1,264 @@
+package temperature.repository;
+
+import temperature.model.*;
+
+import org.hibernate.ScrollMode;
+import org.hibernate.ScrollableResults;
+import org.hibernate.Session;
+import org.hibernate.query.Query;
+import org.springframework.data.jpa.domain.Specification;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import javax.persistence.Tuple;
+import javax.persistence.criteria.CriteriaBuilder;
+import javax.persistence.criteria.CriteriaQuery;
+import javax.persistence.criteria.Join;
+import javax.persistence.criteria.Path;
+import javax.persistence.criteria.Predicate;
+import javax.persistence.criteria.Root;
+import javax.persistence.criteria.Selection;
+
+import java.io.IOException;
+import java.sql.DatabaseMetaData;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+class TemperatureRepositoryImpl implements TemperatureRepositoryCustom {
+
+    // In ReadingAggregate metric order
+    private static final String[] METRICS = { "temperatureC", "humidityPercent", "dewPoint" };
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    // Whether the driver buffers whole result sets unless told to stream; set on first use
+    private volatile Boolean bufferingDriver;
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public ReadingColumns findReadingColumns(Specification<Temperature> specification, int fetchSize) {
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+        CriteriaQuery<Object[]> query = cb.createQuery(Object[].class);
+        Root<Temperature> root = query.from(Temperature.class);
+
+        query.multiselect(
+                root.get("timestamp"),
+                root.get("temperatureC"),
+                root.get("humidityPercent"),
+                root.get("dewPoint"));
+
+        Predicate predicate = specification.toPredicate(root, query, cb);
+        if (predicate != null) {
+            query.where(predicate);
+        }
+
+        // No ORDER BY: the percentiles select over the values in any order, and without it
+        // the database can return rows in index order instead of sorting them first
+        Query<Object[]> hibernateQuery = entityManager.createQuery(query).unwrap(Query.class);
+        hibernateQuery.setFetchSize(isBufferingDriver() ? Integer.MIN_VALUE : fetchSize);
+        hibernateQuery.setReadOnly(true);
+
+        // Straight into the primitive columns, without a list of boxed rows in between
+        ReadingColumns columns = new ReadingColumns(fetchSize);
+        try (ScrollableResults rows = hibernateQuery.scroll(ScrollMode.FORWARD_ONLY)) {
+            while (rows.next()) {
+                Object[] row = row(rows);
+                columns.add((Long) row[0], (Double) row[1], (Double) row[2], (Double) row[3]);
+            }
+        }
+        return columns;
+    }
+
+    @Override
+    public ReadingAggregate findAggregate(Specification<Temperature> specification) {
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+        CriteriaQuery<Tuple> query = cb.createTupleQuery();
+        Root<Temperature> root = query.from(Temperature.class);
+
+        List<Selection<?>> selections = new ArrayList<>();
+        selections.add(cb.count(root));
+        for (String metric : METRICS) {
+            Path<Double> value = root.get(metric);
+            selections.add(cb.sum(value));
+            selections.add(cb.sum(cb.prod(value, value)));
+            selections.add(cb.min(value));
+            selections.add(cb.max(value));
+        }
+        query.multiselect(selections);
+
+        Predicate predicate = specification.toPredicate(root, query, cb);
+        if (predicate != null) {
+            query.where(predicate);
+        }
+
+        Tuple row = entityManager.createQuery(query).getSingleResult();
+        ReadingAggregate aggregate = new ReadingAggregate();
+        long count = row.get(0, Long.class);
+        if (count == 0) {
+            return aggregate;
+        }
+        aggregate.addCount(count);
+        for (int metric = 0; metric < METRICS.length; metric++) {
+            int column = 1 + metric * 4;
+            aggregate.addMetric(metric, number(row, column), number(row, column + 1), number(row, column + 2),
+                    number(row, column + 3));
+        }
+        return aggregate;
+    }
+
+    @Override
+    public Map<UUID, Long> countByDevice(Specification<Temperature> specification) {
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+        CriteriaQuery<Tuple> query = cb.createTupleQuery();
+        Root<Temperature> root = query.from(Temperature.class);
+        Path<UUID> deviceId = root.get("device").get("id");
+
+        query.multiselect(deviceId, cb.count(root));
+        Predicate predicate = specification.toPredicate(root, query, cb);
+        if (predicate != null) {
+            query.where(predicate);
+        }
+        query.groupBy(deviceId);
+
+        Map<UUID, Long> counts = new HashMap<>();
+        for (Tuple row : entityManager.createQuery(query).getResultList()) {
+            counts.put(row.get(0, UUID.class), row.get(1, Long.class));
+        }
+        return counts;
+    }
+
+    private static double number(Tuple row, int column) {
+        return ((Number) row.get(column)).doubleValue();
+    }
+
+    @Override
+    public List<Temperature> findPage(Specification<Temperature> specification, KeysetCursor cursor, int limit) {
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+        CriteriaQuery<Temperature> query = cb.createQuery(Temperature.class);
+        Root<Temperature> root = query.from(Temperature.class);
+
+        List<Predicate> predicates = new ArrayList<>();
+        Predicate predicate = specification.toPredicate(root, query, cb);
+        if (predicate != null) {
+            predicates.add(predicate);
+        }
+
+        Path<Long> timestamp = root.get("timestamp");
+        Path<UUID> id = root.get("id");
+        boolean backward = cursor != null && cursor.isBackward();
+        if (cursor != null) {
+            // Row-value comparison (timestamp, id) > or < the cursor, spelled out so the
+            // (api_key, timestamp) and (device_id, timestamp) indexes can seek to it
+            predicates.add(backward
+                    ? cb.or(cb.lessThan(timestamp, cursor.getTimestamp()),
+                            cb.and(cb.equal(timestamp, cursor.getTimestamp()), cb.lessThan(id, cursor.getId())))
+                    : cb.or(cb.greaterThan(timestamp, cursor.getTimestamp()),
+                            cb.and(cb.equal(timestamp, cursor.getTimestamp()), cb.greaterThan(id, cursor.getId()))));
+        }
+
+        query.where(predicates.toArray(new Predicate[0]));
+        query.orderBy(backward
+                ? Arrays.asList(cb.desc(timestamp), cb.desc(id))
+                : Arrays.asList(cb.asc(timestamp), cb.asc(id)));
+
+        return entityManager.createQuery(query)
+                .setMaxResults(limit)
+                .getResultList();
+    }
+
+    @Override
+    public ReadingKeys findKeys(Specification<Temperature> specification, int limit) {
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+        CriteriaQuery<Tuple> query = cb.createTupleQuery();
+        Root<Temperature> root = query.from(Temperature.class);
+
+        query.multiselect(root.get("timestamp"), root.get("id"));
+
+        Predicate predicate = specification.toPredicate(root, query, cb);
+        if (predicate != null) {
+            query.where(predicate);
+        }
+        query.orderBy(cb.asc(root.get("timestamp")), cb.asc(root.get("id")));
+
+        // One row past the limit tells whether the set was cut off
+        List<Tuple> rows = entityManager.createQuery(query)
+                .setMaxResults(limit + 1)
+                .getResultList();
+        int size = Math.min(rows.size(), limit);
+        long[] timestamps = new long[size];
+        long[] idHigh = new long[size];
+        long[] idLow = new long[size];
+        for (int i = 0; i < size; i++) {
+            Tuple row = rows.get(i);
+            UUID id = row.get(1, UUID.class);
+            timestamps[i] = row.get(0, Long.class);
+            idHigh[i] = id.getMostSignificantBits();
+            idLow[i] = id.getLeastSignificantBits();
+        }
+        return new ReadingKeys(timestamps, idHigh, idLow, rows.size() <= limit);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public void forEachReading(Specification<Temperature> specification, int fetchSize, ReadingRowHandler handler)
+            throws IOException {
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+        CriteriaQuery<Object[]> query = cb.createQuery(Object[].class);
+        Root<Temperature> root = query.from(Temperature.class);
+        Join<Temperature, Device> device = root.join("device");
+
+        query.multiselect(
+                root.get("id"),
+                root.get("timestamp"),
+                device.get("id"),
+                device.get("deviceName"),
+                root.get("temperatureC"),
+                root.get("humidityPercent"),
+                root.get("dewPoint"));
+
+        Predicate predicate = specification.toPredicate(root, query, cb);
+        if (predicate != null) {
+            query.where(predicate);
+        }
+        query.orderBy(cb.asc(root.get("timestamp")), cb.asc(root.get("id")));
+
+        Query<Object[]> hibernateQuery = entityManager.createQuery(query).unwrap(Query.class);
+        hibernateQuery.setFetchSize(isBufferingDriver() ? Integer.MIN_VALUE : fetchSize);
+        hibernateQuery.setReadOnly(true);
+
+        try (ScrollableResults rows = hibernateQuery.scroll(ScrollMode.FORWARD_ONLY)) {
+            while (rows.next()) {
+                Object[] row = row(rows);
+                handler.onRow((UUID) row[0], (Long) row[1], (UUID) row[2], (String) row[3], (Double) row[4],
+                        (Double) row[5], (Double) row[6]);
+            }
+        }
+    }
+
+    // Scrolling a multiselect returns each row wrapped in a one-element array
+    private static Object[] row(ScrollableResults rows) {
+        Object[] row = rows.get();
+        return row.length == 1 && row[0] instanceof Object[] ? (Object[]) row[0] : row;
+    }
+
+    // MySQL Connector/J ignores the fetch size and reads the whole result into memory
+    // unless the JDBC URL sets useCursorFetch=true. Without it, a fetch size of
+    // Integer.MIN_VALUE on a forward-only, read-only result streams it row by row.
+    private boolean isBufferingDriver() {
+        Boolean buffering = bufferingDriver;
+        if (buffering == null) {
+            buffering = entityManager.unwrap(Session.class).doReturningWork(connection -> {
+                DatabaseMetaData metaData = connection.getMetaData();
+                return "MySQL".equalsIgnoreCase(metaData.getDatabaseProductName())
+                        && !metaData.getURL().contains("useCursorFetch=true");
+            });
+            bufferingDriver = buffering;
+        }
+        return buffering;
+    }
+}
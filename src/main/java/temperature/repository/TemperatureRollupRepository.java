@@ -0,0 +1,188 @@
+package temperature.repository;
+
+import temperature.model.*;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+// Plain JDBC access to temperature_rollup: the upsert needs ON DUPLICATE KEY UPDATE,
+// which has no JPA equivalent, and the table is never loaded as entities
+@Repository
+public class TemperatureRollupRepository {
+
+    private static final String METRIC_COLUMNS = "temperature_c_sum, temperature_c_sum_sq, temperature_c_min, "
+            + "temperature_c_max, humidity_percent_sum, humidity_percent_sum_sq, humidity_percent_min, "
+            + "humidity_percent_max, dew_point_sum, dew_point_sum_sq, dew_point_min, dew_point_max";
+
+    private static final String UPSERT = "INSERT INTO temperature_rollup (bucket_ms, device_id, bucket_start, "
+            + "api_key, reading_count, " + METRIC_COLUMNS + ") "
+            + "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?) "
+            + "ON DUPLICATE KEY UPDATE reading_count = reading_count + VALUES(reading_count), "
+            + mergeColumn("temperature_c") + ", " + mergeColumn("humidity_percent") + ", "
+            + mergeColumn("dew_point");
+
+    private static final String DELETE_BUCKET = "DELETE FROM temperature_rollup "
+            + "WHERE bucket_ms = ? AND device_id = ? AND bucket_start = ?";
+
+    private static final String RECOMPUTE_BUCKET = "INSERT INTO temperature_rollup (bucket_ms, device_id, "
+            + "bucket_start, api_key, reading_count, " + METRIC_COLUMNS + ") "
+            + "SELECT ?, device_id, ?, MIN(api_key), COUNT(*), "
+            + "SUM(temperature_c), SUM(temperature_c * temperature_c), MIN(temperature_c), MAX(temperature_c), "
+            + "SUM(humidity_percent), SUM(humidity_percent * humidity_percent), MIN(humidity_percent), "
+            + "MAX(humidity_percent), "
+            + "SUM(dew_point), SUM(dew_point * dew_point), MIN(dew_point), MAX(dew_point) "
+            + "FROM temperature WHERE device_id = ? AND timestamp >= ? AND timestamp < ? GROUP BY device_id";
+
+    private static final String AGGREGATE = "SELECT SUM(r.reading_count), "
+            + "SUM(r.temperature_c_sum), SUM(r.temperature_c_sum_sq), MIN(r.temperature_c_min), "
+            + "MAX(r.temperature_c_max), "
+            + "SUM(r.humidity_percent_sum), SUM(r.humidity_percent_sum_sq), MIN(r.humidity_percent_min), "
+            + "MAX(r.humidity_percent_max), "
+            + "SUM(r.dew_point_sum), SUM(r.dew_point_sum_sq), MIN(r.dew_point_min), MAX(r.dew_point_max) "
+            + "FROM temperature_rollup r";
+
+    private static final String SELECT_BUCKETS = "SELECT r.device_id, r.bucket_start, r.reading_count, "
+            + "r.temperature_c_sum, r.temperature_c_sum_sq, r.temperature_c_min, r.temperature_c_max, "
+            + "r.humidity_percent_sum, r.humidity_percent_sum_sq, r.humidity_percent_min, r.humidity_percent_max, "
+            + "r.dew_point_sum, r.dew_point_sum_sq, r.dew_point_min, r.dew_point_max "
+            + "FROM temperature_rollup r";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public TemperatureRollupRepository(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    // Adds the partial aggregates to their buckets. Callers pass the buckets in a fixed
+    // order so concurrent writers lock rows in the same order.
+    public void addAll(List<RollupBucket> buckets) {
+        List<Object[]> rows = new ArrayList<>(buckets.size());
+        for (RollupBucket bucket : buckets) {
+            ReadingAggregate aggregate = bucket.getAggregate();
+            Object[] row = new Object[17];
+            row[0] = bucket.getBucketMs();
+            row[1] = TimeOrderedUuid.toBytes(bucket.getDeviceId());
+            row[2] = bucket.getBucketStart();
+            row[3] = bucket.getApiKey();
+            row[4] = aggregate.getCount();
+            for (int metric = 0; metric < 3; metric++) {
+                int column = 5 + metric * 4;
+                row[column] = aggregate.getSum(metric);
+                row[column + 1] = aggregate.getSumOfSquares(metric);
+                row[column + 2] = aggregate.getMin(metric);
+                row[column + 3] = aggregate.getMax(metric);
+            }
+            rows.add(row);
+        }
+        jdbcTemplate.batchUpdate(UPSERT, rows);
+    }
+
+    // Rebuilds one bucket from the raw readings, e.g. after a reading was deleted; min and
+    // max cannot be maintained by subtraction
+    public void recompute(long bucketMs, UUID deviceId, long bucketStart) {
+        byte[] device = TimeOrderedUuid.toBytes(deviceId);
+        jdbcTemplate.update(DELETE_BUCKET, bucketMs, device, bucketStart);
+        jdbcTemplate.update(RECOMPUTE_BUCKET, bucketMs, bucketStart, device, bucketStart, bucketStart + bucketMs);
+    }
+
+    // Sums the buckets of one size that match the filter and start inside one of the
+    // ranges; the ranges, and the hour of daily ones, must be aligned to the bucket size.
+    // Null ranges means all buckets.
+    public ReadingAggregate aggregate(TemperatureFilter filter, UUID deviceId, long bucketMs,
+            List<TimeRange> ranges) {
+        StringBuilder sql = new StringBuilder(AGGREGATE);
+        List<Object> args = new ArrayList<>();
+        appendWhere(sql, args, filter, deviceId, bucketMs, ranges);
+
+        return jdbcTemplate.queryForObject(sql.toString(), (rs, rowNum) -> {
+            ReadingAggregate aggregate = new ReadingAggregate();
+            long count = rs.getLong(1);
+            if (count == 0) {
+                return aggregate;
+            }
+            aggregate.addCount(count);
+            for (int metric = 0; metric < 3; metric++) {
+                int column = 2 + metric * 4;
+                aggregate.addMetric(metric, rs.getDouble(column), rs.getDouble(column + 1),
+                        rs.getDouble(column + 2), rs.getDouble(column + 3));
+            }
+            return aggregate;
+        }, args.toArray());
+    }
+
+    // Hands every matching bucket row to the handler, one device and bucket at a time
+    public void forEachBucket(TemperatureFilter filter, UUID deviceId, long bucketMs, List<TimeRange> ranges,
+            BucketHandler handler) {
+        StringBuilder sql = new StringBuilder(SELECT_BUCKETS);
+        List<Object> args = new ArrayList<>();
+        appendWhere(sql, args, filter, deviceId, bucketMs, ranges);
+
+        jdbcTemplate.query(sql.toString(), rs -> {
+            ReadingAggregate aggregate = new ReadingAggregate();
+            aggregate.addCount(rs.getLong(3));
+            for (int metric = 0; metric < 3; metric++) {
+                int column = 4 + metric * 4;
+                aggregate.addMetric(metric, rs.getDouble(column), rs.getDouble(column + 1),
+                        rs.getDouble(column + 2), rs.getDouble(column + 3));
+            }
+            handler.onBucket(TimeOrderedUuid.fromBytes(rs.getBytes(1)), rs.getLong(2), aggregate);
+        }, args.toArray());
+    }
+
+    public interface BucketHandler {
+        void onBucket(UUID deviceId, long bucketStart, ReadingAggregate aggregate);
+    }
+
+    private static void appendWhere(StringBuilder sql, List<Object> args, TemperatureFilter filter, UUID deviceId,
+            long bucketMs, List<TimeRange> ranges) {
+        if (filter.getDeviceName() != null || filter.getLocation() != null) {
+            sql.append(" JOIN device d ON d.id = r.device_id");
+        }
+        sql.append(" WHERE r.bucket_ms = ? AND r.api_key = ?");
+        args.add(bucketMs);
+        args.add(filter.getApiKey());
+
+        if (deviceId != null) {
+            sql.append(" AND r.device_id = ?");
+            args.add(TimeOrderedUuid.toBytes(deviceId));
+        }
+        if (filter.getDeviceName() != null) {
+            sql.append(" AND LOWER(d.device_name) = ?");
+            args.add(filter.getDeviceName().toLowerCase());
+        }
+        if (filter.getLocation() != null) {
+            sql.append(" AND LOWER(d.location) = ?");
+            args.add(filter.getLocation().toLowerCase());
+        }
+
+        if (ranges != null) {
+            sql.append(" AND (");
+            for (int i = 0; i < ranges.size(); i++) {
+                TimeRange range = ranges.get(i);
+                sql.append(i == 0 ? "" : " OR ").append("(r.bucket_start >= ? AND r.bucket_start < ?");
+                args.add(range.getStart());
+                args.add(range.getEnd());
+                if (range.isDaily()) {
+                    // Buckets tile the hour, so a bucket is in it when its start is
+                    sql.append(" AND MOD(r.bucket_start + ?, ?) < ?");
+                    args.add(TimeRange.DAY_MS - range.getHourStart());
+                    args.add(TimeRange.DAY_MS);
+                    args.add(TimeRange.HOUR_MS);
+                }
+                sql.append(")");
+            }
+            sql.append(")");
+        }
+    }
+
+    private static String mergeColumn(String metric) {
+        return metric + "_sum = " + metric + "_sum + VALUES(" + metric + "_sum), "
+                + metric + "_sum_sq = " + metric + "_sum_sq + VALUES(" + metric + "_sum_sq), "
+                + metric + "_min = LEAST(" + metric + "_min, VALUES(" + metric + "_min)), "
+                + metric + "_max = GREATEST(" + metric + "_max, VALUES(" + metric + "_max))";
+    }
+}
@@ -0,0 +1,71 @@
+package temperature.repository;
+
+import temperature.model.*;
+
+import org.springframework.data.jpa.domain.Specification;
+
+import javax.persistence.criteria.CriteriaBuilder;
+import javax.persistence.criteria.Expression;
+import javax.persistence.criteria.Join;
+import javax.persistence.criteria.Path;
+import javax.persistence.criteria.Predicate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+public final class TemperatureSpecifications {
+
+    private TemperatureSpecifications() {
+    }
+
+    // Translates the tenant, device and location filters plus the compiled time ranges
+    // into a single WHERE clause so only matching rows leave the database. A null list
+    // leaves the timestamp unbounded, an empty list matches nothing.
+    public static Specification<Temperature> matching(TemperatureFilter filter, List<TimeRange> timeRanges) {
+        return (root, query, cb) -> {
+            List<Predicate> predicates = new ArrayList<>();
+
+            // The tenant key and device id live on the temperature row itself
+            predicates.add(cb.equal(root.get("apiKey"), filter.getApiKey()));
+
+            if (filter.getDeviceId() != null) {
+                UUID deviceId = TimeOrderedUuid.parse(filter.getDeviceId());
+                predicates.add(deviceId != null ? cb.equal(root.get("device").get("id"), deviceId) : cb.disjunction());
+            }
+
+            // Only name and location filters need the device join
+            if (filter.getDeviceName() != null || filter.getLocation() != null) {
+                Join<Temperature, Device> device = root.join("device");
+                if (filter.getDeviceName() != null)
+                    predicates.add(cb.equal(cb.lower(device.get("deviceName")),
+                            filter.getDeviceName().toLowerCase()));
+                if (filter.getLocation() != null)
+                    predicates.add(cb.equal(cb.lower(device.get("location")), filter.getLocation().toLowerCase()));
+            }
+
+            if (timeRanges != null) {
+                Path<Long> timestamp = root.get("timestamp");
+                List<Predicate> rangePredicates = new ArrayList<>();
+                for (TimeRange range : timeRanges) {
+                    Predicate bounds = cb.and(
+                            cb.greaterThanOrEqualTo(timestamp, range.getStart()),
+                            cb.lessThan(timestamp, range.getEnd()));
+                    rangePredicates.add(range.isDaily() ? cb.and(bounds, dailyHour(cb, timestamp, range)) : bounds);
+                }
+                predicates.add(rangePredicates.isEmpty() ? cb.disjunction()
+                        : cb.or(rangePredicates.toArray(new Predicate[0])));
+            }
+
+            return cb.and(predicates.toArray(new Predicate[0]));
+        };
+    }
+
+    // Checked on the rows the timestamp range reads, which is what keeps it off the index.
+    // Shifted by a day so MOD sees no negative argument for readings after 1970.
+    private static Predicate dailyHour(CriteriaBuilder cb, Path<Long> timestamp, TimeRange range) {
+        Expression<Long> timeOfDay = cb.function("mod", Long.class,
+                cb.sum(timestamp, TimeRange.DAY_MS - range.getHourStart()), cb.literal(TimeRange.DAY_MS));
+        return cb.lessThan(timeOfDay, TimeRange.HOUR_MS);
+    }
+}
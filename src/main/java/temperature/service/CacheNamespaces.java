@@ -0,0 +1,242 @@
+package temperature.service;
+
+import temperature.model.*;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import javax.annotation.PostConstruct;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+// Version numbers that scope cached query results to the data they were computed from.
+// Every tenant has a namespace, and so does each of its devices, by id and by name. A
+// committed insert or delete increments the namespaces it touches in Redis, so cache keys
+// built from the new versions miss and the entries under the old versions are simply
+// left to expire; nothing is ever scanned or deleted. Versions are kept in memory and the
+// increments are published over Redis pub/sub, so building a key costs no round trip.
+// An increment that cannot reach Redis advances a global epoch, part of every namespace,
+// as soon as Redis is back, since the writes it missed are not known any more.
+@Service
+public class CacheNamespaces {
+
+    private static final Logger log = LoggerFactory.getLogger(CacheNamespaces.class);
+
+    static final String CHANNEL = "temperature:cache:versions";
+    private static final String PREFIX = "temperature:cache:version:";
+    private static final String EPOCH = PREFIX + "epoch";
+
+    // KEYS namespaces; ARGV channel. Publishes {"key": version, ...} with the new versions.
+    private static final RedisScript<Long> INCREMENT = new DefaultRedisScript<>(
+            "local versions = {} "
+                    + "for _, key in ipairs(KEYS) do versions[key] = redis.call('INCR', key) end "
+                    + "redis.call('PUBLISH', ARGV[1], cjson.encode(versions)) "
+                    + "return #KEYS",
+            Long.class);
+
+    private final StringRedisTemplate redisTemplate;
+    private final RedisMessageListenerContainer listenerContainer;
+    private final ObjectMapper objectMapper;
+    private final RedisCircuitBreaker circuitBreaker;
+
+    // Set when an increment was lost and the epoch has yet to be advanced
+    private final AtomicBoolean missedIncrement = new AtomicBoolean();
+
+    // Bounds how long an instance can use a version whose increment it missed
+    @Value("${temperature.cache.l1.ttl-ms:30000}")
+    private long ttlMs;
+
+    @Value("${temperature.cache.l1.max-entries:10000}")
+    private int maxEntries;
+
+    private final Map<String, Version> versions = new ConcurrentHashMap<>();
+
+    public CacheNamespaces(StringRedisTemplate redisTemplate, RedisMessageListenerContainer listenerContainer,
+            ObjectMapper objectMapper, RedisCircuitBreaker circuitBreaker) {
+        this.redisTemplate = redisTemplate;
+        this.listenerContainer = listenerContainer;
+        this.objectMapper = objectMapper;
+        this.circuitBreaker = circuitBreaker;
+    }
+
+    @PostConstruct
+    void subscribe() {
+        listenerContainer.addMessageListener(this::onMessage, new ChannelTopic(CHANNEL));
+        circuitBreaker.onRecovery(() -> {
+            if (missedIncrement.get()) {
+                advance(new LinkedHashSet<>());
+            }
+        });
+    }
+
+    // Namespace of everything the tenant can see
+    public String tenant(String apiKey) {
+        return "v" + version(EPOCH) + "." + version(PREFIX + apiKey);
+    }
+
+    // Namespace of a single device's readings; either argument may be null. Falls back
+    // to the tenant namespace when neither identifies a device. Names match ignoring case,
+    // like the deviceName filter.
+    public String device(String apiKey, String deviceId, String deviceName) {
+        UUID id = TimeOrderedUuid.parse(deviceId);
+        if (id != null) {
+            return "d" + version(EPOCH) + "." + version(deviceIdKey(apiKey, id));
+        }
+        if (deviceName != null) {
+            return "n" + version(EPOCH) + "." + version(deviceNameKey(apiKey, deviceName));
+        }
+        return tenant(apiKey);
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onStored(ReadingsStoredEvent event) {
+        increment(event.getReadings());
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onDeleted(ReadingDeletedEvent event) {
+        List<Temperature> readings = new ArrayList<>();
+        readings.add(event.getReading());
+        increment(readings);
+    }
+
+    private void increment(List<Temperature> readings) {
+        Set<String> keys = new LinkedHashSet<>();
+        for (Temperature reading : readings) {
+            if (reading.getApiKey() == null) {
+                continue;
+            }
+            keys.add(PREFIX + reading.getApiKey());
+            Device device = reading.getDevice();
+            if (device != null && device.getId() != null) {
+                keys.add(deviceIdKey(reading.getApiKey(), device.getId()));
+            }
+            if (device != null && device.getDeviceName() != null) {
+                keys.add(deviceNameKey(reading.getApiKey(), device.getDeviceName()));
+            }
+        }
+        if (!keys.isEmpty()) {
+            advance(keys);
+        }
+    }
+
+    private void advance(Set<String> keys) {
+        if (missedIncrement.getAndSet(false)) {
+            keys.add(EPOCH);
+        }
+        if (keys.isEmpty()) {
+            return;
+        }
+        if (!circuitBreaker.allowRequest()) {
+            missedIncrement.set(true);
+        } else {
+            try {
+                redisTemplate.execute(INCREMENT, new ArrayList<>(keys), CHANNEL);
+                circuitBreaker.recordSuccess();
+            } catch (RuntimeException e) {
+                circuitBreaker.recordFailure(e);
+                missedIncrement.set(true);
+                log.warn("Could not advance {} cache namespaces: {}", keys.size(), e.getMessage());
+            }
+        }
+        // Reread on next use rather than wait for this instance's own message
+        for (String key : keys) {
+            versions.remove(key);
+        }
+    }
+
+    private void onMessage(Message message, byte[] pattern) {
+        try {
+            JsonNode update = objectMapper.readTree(new String(message.getBody(), StandardCharsets.UTF_8));
+            Iterator<Map.Entry<String, JsonNode>> fields = update.fields();
+            while (fields.hasNext()) {
+                Map.Entry<String, JsonNode> field = fields.next();
+                offer(field.getKey(), field.getValue().asLong());
+            }
+        } catch (IOException e) {
+            log.warn("Ignoring malformed cache version update: {}", e.getMessage());
+        }
+    }
+
+    private long version(String key) {
+        Version cached = versions.get(key);
+        if (cached != null && System.currentTimeMillis() - cached.loadedAt <= ttlMs) {
+            return cached.value;
+        }
+
+        // Results cached under a made-up version are never served again
+        if (!circuitBreaker.allowRequest()) {
+            return -System.nanoTime();
+        }
+        long value;
+        try {
+            String stored = redisTemplate.opsForValue().get(key);
+            value = stored != null ? Long.parseLong(stored) : 0;
+            circuitBreaker.recordSuccess();
+        } catch (RuntimeException e) {
+            circuitBreaker.recordFailure(e);
+            log.warn("Could not read cache namespace {}: {}", key, e.getMessage());
+            return -System.nanoTime();
+        }
+        return offer(key, value);
+    }
+
+    // Versions only move forward, whatever order the reads and messages complete in
+    private long offer(String key, long value) {
+        if (versions.size() >= maxEntries) {
+            evictExpired();
+        }
+        return versions.merge(key, new Version(value),
+                (current, offered) -> current.value > offered.value ? current : offered).value;
+    }
+
+    private void evictExpired() {
+        long now = System.currentTimeMillis();
+        versions.values().removeIf(version -> now - version.loadedAt > ttlMs);
+        // Approximate bound when everything is fresh: drop arbitrary entries
+        Iterator<Version> entries = versions.values().iterator();
+        while (versions.size() >= maxEntries && entries.hasNext()) {
+            entries.next();
+            entries.remove();
+        }
+    }
+
+    private static String deviceIdKey(String apiKey, UUID deviceId) {
+        return PREFIX + apiKey + ":id:" + deviceId;
+    }
+
+    private static String deviceNameKey(String apiKey, String deviceName) {
+        return PREFIX + apiKey + ":name:" + deviceName.toLowerCase();
+    }
+
+    private static final class Version {
+        private final long value;
+        private final long loadedAt;
+
+        Version(long value) {
+            this.value = value;
+            this.loadedAt = System.currentTimeMillis();
+        }
+    }
+}
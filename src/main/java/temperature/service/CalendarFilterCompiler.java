@@ -0,0 +1,156 @@
+package temperature.service;
+
+import temperature.exception.*;
+import temperature.model.*;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.time.ZoneId;
+import java.time.zone.ZoneOffsetTransition;
+import java.time.zone.ZoneRules;
+import java.util.ArrayList;
+import java.util.List;
+
+// Compiles any combination of year/month/day/hour into the sorted, non-overlapping
+// set of [start, end) epoch-millisecond ranges covering the matching local times,
+// so the filter becomes a range scan on Temperature.timestamp. An hour without a day
+// does not expand into one range per day: it becomes a daily range per year or month,
+// split where the zone's offset changes, which keeps e.g. ?hour=5 over years of data to
+// a few ranges whose rows are narrowed by their time of day.
+public final class CalendarFilterCompiler {
+
+    // Only reachable by a day without a month over most of a century
+    static final int MAX_RANGES = 1000;
+
+    private CalendarFilterCompiler() {
+    }
+
+    public static List<TimeRange> compile(Integer year, Integer month, Integer day, Integer hour, ZoneId zone,
+            TimeRange bounds) {
+        validate(year, month, day, hour);
+
+        List<TimeRange> ranges = new ArrayList<>();
+        if (bounds.isEmpty()) {
+            return ranges;
+        }
+
+        int firstYear = year != null ? year : Instant.ofEpochMilli(bounds.getStart()).atZone(zone).getYear();
+        int lastYear = year != null ? year : Instant.ofEpochMilli(bounds.getEnd() - 1).atZone(zone).getYear();
+
+        for (int y = firstYear; y <= lastYear; y++) {
+            // Nothing finer than the year was requested, so the whole year is one range
+            if (month == null && day == null && hour == null) {
+                addRange(ranges, new TimeRange(startOf(LocalDate.of(y, 1, 1), zone),
+                        startOf(LocalDate.of(y + 1, 1, 1), zone)), bounds);
+                continue;
+            }
+
+            if (month == null && day == null) {
+                addDaily(ranges, startOf(LocalDate.of(y, 1, 1), zone), startOf(LocalDate.of(y + 1, 1, 1), zone),
+                        hour, zone, bounds);
+                continue;
+            }
+
+            int firstMonth = month != null ? month : 1;
+            int lastMonth = month != null ? month : 12;
+            for (int m = firstMonth; m <= lastMonth; m++) {
+                YearMonth yearMonth = YearMonth.of(y, m);
+                long monthStart = startOf(yearMonth.atDay(1), zone);
+                long monthEnd = startOf(yearMonth.plusMonths(1).atDay(1), zone);
+
+                // Skip months that cannot intersect the bounds before looking at their days
+                if (monthEnd <= bounds.getStart() || monthStart >= bounds.getEnd()) {
+                    continue;
+                }
+                if (day == null) {
+                    if (hour == null) {
+                        addRange(ranges, new TimeRange(monthStart, monthEnd), bounds);
+                    } else {
+                        addDaily(ranges, monthStart, monthEnd, hour, zone, bounds);
+                    }
+                    continue;
+                }
+                if (day > yearMonth.lengthOfMonth()) {
+                    continue;
+                }
+
+                LocalDate date = yearMonth.atDay(day);
+                if (hour == null) {
+                    addRange(ranges, new TimeRange(startOf(date, zone), startOf(date.plusDays(1), zone)), bounds);
+                } else {
+                    // A local hour skipped by a DST gap yields an empty range and is dropped,
+                    // a repeated local hour covers both occurrences
+                    LocalDateTime localHour = date.atTime(hour, 0);
+                    addRange(ranges, new TimeRange(epochMilli(localHour, zone),
+                            epochMilli(localHour.plusHours(1), zone)), bounds);
+                }
+            }
+        }
+        return ranges;
+    }
+
+    private static void validate(Integer year, Integer month, Integer day, Integer hour) {
+        if (year != null && (year < 1 || year > 9999))
+            throw new InvalidFilterException("year must be between 1 and 9999");
+        if (month != null && (month < 1 || month > 12))
+            throw new InvalidFilterException("month must be between 1 and 12");
+        if (day != null && (day < 1 || day > 31))
+            throw new InvalidFilterException("day must be between 1 and 31");
+        if (hour != null && (hour < 0 || hour > 23))
+            throw new InvalidFilterException("hour must be between 0 and 23");
+    }
+
+    // The local hour on every day of [start, end), one daily range per stretch of constant
+    // UTC offset. At a DST gap the stretch before ends where the skipped hour would start
+    // and the one after begins past it, so that day has no match; at an overlap both
+    // stretches keep their occurrence of the repeated hour.
+    private static void addDaily(List<TimeRange> ranges, long start, long end, int hour, ZoneId zone,
+            TimeRange bounds) {
+        ZoneRules rules = zone.getRules();
+        long from = Math.max(start, bounds.getStart());
+        long to = Math.min(end, bounds.getEnd());
+        while (from < to) {
+            Instant instant = Instant.ofEpochMilli(from);
+            ZoneOffsetTransition transition = rules.nextTransition(instant);
+            long stretchEnd = transition != null ? Math.min(to, transition.getInstant().toEpochMilli()) : to;
+            long offset = rules.getOffset(instant).getTotalSeconds() * 1000L;
+            addRange(ranges, TimeRange.daily(from, stretchEnd, Math.floorMod(hour * TimeRange.HOUR_MS - offset,
+                    TimeRange.DAY_MS)), bounds);
+            from = stretchEnd;
+        }
+    }
+
+    // Clips the range to the bounds and merges it with the previous range when they touch
+    // and cover the same hours of the day
+    private static void addRange(List<TimeRange> ranges, TimeRange range, TimeRange bounds) {
+        long clippedStart = Math.max(range.getStart(), bounds.getStart());
+        long clippedEnd = Math.min(range.getEnd(), bounds.getEnd());
+        if (clippedEnd <= clippedStart) {
+            return;
+        }
+
+        if (!ranges.isEmpty()) {
+            TimeRange last = ranges.get(ranges.size() - 1);
+            if (last.getEnd() >= clippedStart && last.getHourStart() == range.getHourStart()) {
+                ranges.set(ranges.size() - 1, last.withBounds(last.getStart(), Math.max(last.getEnd(), clippedEnd)));
+                return;
+            }
+        }
+
+        if (ranges.size() == MAX_RANGES) {
+            throw new InvalidFilterException("The year/month/day/hour filter expands to more than " + MAX_RANGES
+                    + " time ranges; narrow it with year or startTimestamp/endTimestamp");
+        }
+        ranges.add(range.withBounds(clippedStart, clippedEnd));
+    }
+
+    private static long startOf(LocalDate date, ZoneId zone) {
+        return date.atStartOfDay(zone).toInstant().toEpochMilli();
+    }
+
+    private static long epochMilli(LocalDateTime dateTime, ZoneId zone) {
+        return dateTime.atZone(zone).toInstant().toEpochMilli();
+    }
+}
@@ -0,0 +1,225 @@
+package temperature.service;
+
+import temperature.model.*;
+import temperature.repository.*;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Bounded in-memory (apiKey, deviceName) -> Device map that serves the per-reading
+// device lookup from memory and only writes back when a device is new or its location
+// changed. Cached devices are treated as immutable snapshots and replaced, never mutated.
+// Call it before opening a transaction: registration commits on its own so the device
+// can be cached at once, and a lost registration race is recovered by reading the winner.
+@Service
+public class DeviceRegistry {
+
+    private static final int LOCK_STRIPES = 64;
+
+    private final DeviceRepository deviceRepository;
+    private final TransactionTemplate transactionTemplate;
+
+    private final Map<DeviceKey, CachedDevice> devices = new ConcurrentHashMap<>();
+    private final Map<UUID, CachedDevice> devicesById = new ConcurrentHashMap<>();
+    private final Object[] locks = new Object[LOCK_STRIPES];
+
+    @Value("${temperature.device-cache.max-size:100000}")
+    private int maxSize;
+
+    // Bounds how long another instance's location change can go unnoticed
+    @Value("${temperature.device-cache.ttl-ms:600000}")
+    private long ttlMs;
+
+    public DeviceRegistry(DeviceRepository deviceRepository, PlatformTransactionManager transactionManager) {
+        this.deviceRepository = deviceRepository;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        for (int i = 0; i < LOCK_STRIPES; i++) {
+            locks[i] = new Object();
+        }
+    }
+
+    // Returns the device registered under the name, creating it or updating its
+    // location when needed. A null location never overwrites a stored one.
+    public Device resolve(String apiKey, String deviceName, String location) {
+        DeviceKey key = new DeviceKey(apiKey, deviceName);
+
+        Device cached = getFresh(key);
+        if (cached != null && !locationChanged(cached, location)) {
+            return cached;
+        }
+
+        // Serialize first contact and location updates per device
+        synchronized (lockFor(key)) {
+            Device device = getFresh(key);
+            if (device == null) {
+                device = deviceRepository.findByDeviceNameAndApiKey(deviceName, apiKey)
+                        .orElseGet(() -> create(apiKey, deviceName, location));
+            }
+            if (locationChanged(device, location)) {
+                device = updateLocation(device, location);
+            }
+            put(key, device);
+            return device;
+        }
+    }
+
+    // Resolves every requested device (name -> requested details), loading all cache
+    // misses with a single query before falling back to per-device registration
+    public Map<String, Device> resolveAll(String apiKey, Map<String, Device> requestedDevices) {
+        Map<String, Device> resolved = new HashMap<>();
+        List<String> misses = new ArrayList<>();
+        for (Device requested : requestedDevices.values()) {
+            Device cached = getFresh(new DeviceKey(apiKey, requested.getDeviceName()));
+            if (cached != null && !locationChanged(cached, requested.getLocation())) {
+                resolved.put(requested.getDeviceName(), cached);
+            } else if (cached == null) {
+                misses.add(requested.getDeviceName());
+            }
+        }
+
+        if (!misses.isEmpty()) {
+            for (Device device : deviceRepository.findByApiKeyAndDeviceNameIn(apiKey, misses)) {
+                putIfAbsent(new DeviceKey(apiKey, device.getDeviceName()), device);
+            }
+        }
+
+        for (Device requested : requestedDevices.values()) {
+            if (!resolved.containsKey(requested.getDeviceName())) {
+                resolved.put(requested.getDeviceName(),
+                        resolve(apiKey, requested.getDeviceName(), requested.getLocation()));
+            }
+        }
+        return resolved;
+    }
+
+    // Looks a device up by the id it was issued at registration, for clients that only
+    // send a device handle. Devices of other tenants are not visible.
+    public Optional<Device> findById(String apiKey, UUID deviceId) {
+        CachedDevice cached = devicesById.get(deviceId);
+        if (cached != null && System.currentTimeMillis() - cached.loadedAt <= ttlMs) {
+            return Objects.equals(cached.device.getApiKey(), apiKey) ? Optional.of(cached.device) : Optional.empty();
+        }
+
+        Optional<Device> device = deviceRepository.findById(deviceId);
+        device.ifPresent(d -> put(new DeviceKey(d.getApiKey(), d.getDeviceName()), d));
+        return device.filter(d -> Objects.equals(d.getApiKey(), apiKey));
+    }
+
+    private Device create(String apiKey, String deviceName, String location) {
+        try {
+            return transactionTemplate.execute(
+                    status -> deviceRepository.saveAndFlush(new Device(deviceName, location, apiKey)));
+        } catch (DataIntegrityViolationException e) {
+            // Another instance registered the same device first
+            return deviceRepository.findByDeviceNameAndApiKey(deviceName, apiKey)
+                    .orElseThrow(() -> e);
+        }
+    }
+
+    private Device updateLocation(Device device, String location) {
+        Device updated = new Device(device.getDeviceName(), location, device.getApiKey());
+        updated.setId(device.getId());
+        return transactionTemplate.execute(status -> deviceRepository.save(updated));
+    }
+
+    private static boolean locationChanged(Device device, String location) {
+        return location != null && !Objects.equals(device.getLocation(), location);
+    }
+
+    private Device getFresh(DeviceKey key) {
+        CachedDevice cached = devices.get(key);
+        if (cached == null) {
+            return null;
+        }
+        if (System.currentTimeMillis() - cached.loadedAt > ttlMs) {
+            devices.remove(key, cached);
+            devicesById.remove(cached.device.getId(), cached);
+            return null;
+        }
+        return cached.device;
+    }
+
+    private void put(DeviceKey key, Device device) {
+        CachedDevice cached = new CachedDevice(device);
+        devices.put(key, cached);
+        devicesById.put(device.getId(), cached);
+        evictOverflow();
+    }
+
+    private void putIfAbsent(DeviceKey key, Device device) {
+        CachedDevice cached = new CachedDevice(device);
+        if (devices.putIfAbsent(key, cached) == null) {
+            devicesById.put(device.getId(), cached);
+        }
+        evictOverflow();
+    }
+
+    // Approximate bound: drop arbitrary entries once the maps grow past their limit
+    private void evictOverflow() {
+        Iterator<CachedDevice> entries = devices.values().iterator();
+        while (devices.size() > maxSize && entries.hasNext()) {
+            CachedDevice evicted = entries.next();
+            entries.remove();
+            devicesById.remove(evicted.device.getId(), evicted);
+        }
+        Iterator<CachedDevice> byId = devicesById.values().iterator();
+        while (devicesById.size() > maxSize && byId.hasNext()) {
+            byId.next();
+            byId.remove();
+        }
+    }
+
+    private Object lockFor(DeviceKey key) {
+        return locks[(key.hashCode() & 0x7fffffff) % LOCK_STRIPES];
+    }
+
+    private static class CachedDevice {
+        private final Device device;
+        private final long loadedAt;
+
+        CachedDevice(Device device) {
+            this.device = device;
+            this.loadedAt = System.currentTimeMillis();
+        }
+    }
+
+    private static final class DeviceKey {
+        private final String apiKey;
+        private final String deviceName;
+
+        DeviceKey(String apiKey, String deviceName) {
+            this.apiKey = apiKey;
+            this.deviceName = deviceName;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof DeviceKey)) {
+                return false;
+            }
+            DeviceKey other = (DeviceKey) o;
+            return Objects.equals(apiKey, other.apiKey) && Objects.equals(deviceName, other.deviceName);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(apiKey, deviceName);
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package temperature.service;
+
+import temperature.model.*;
+import temperature.repository.*;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+// Pages of filtered readings served from one cached result per filter. The first
+// request for a filter caches the (timestamp, id) keys of every matching reading, keyed
+// by the normalized filter and its cache namespace but not by cursor or size, so every
+// page of the query in any size is a slice of the same entry and only the readings on
+// the page are loaded, by primary key. Results larger than the cap are not cached; the
+// cache only remembers that they are too large and their pages are read with index seeks.
+@Service
+@Transactional(readOnly = true)
+public class FilteredResultCache {
+
+    private final TemperatureRepository temperatureRepository;
+    private final TemperatureQueryService temperatureQueryService;
+    private final TwoTierCache twoTierCache;
+    private final CacheNamespaces cacheNamespaces;
+
+    // About 24 bytes per reading
+    @Value("${temperature.cache.filtered.max-readings:10000}")
+    private int maxReadings;
+
+    public FilteredResultCache(TemperatureRepository temperatureRepository,
+            TemperatureQueryService temperatureQueryService, TwoTierCache twoTierCache,
+            CacheNamespaces cacheNamespaces) {
+        this.temperatureRepository = temperatureRepository;
+        this.temperatureQueryService = temperatureQueryService;
+        this.twoTierCache = twoTierCache;
+        this.cacheNamespaces = cacheNamespaces;
+    }
+
+    // Same pages and cursors as TemperatureQueryService.findPage
+    public TemperaturePage findPage(TemperatureFilter filter, String cursor, int size) {
+        KeysetCursor position = TemperatureQueryService.pagePosition(cursor, size);
+        ReadingKeys keys = twoTierCache.get(cacheKey(filter), ReadingKeys.class, () -> {
+            ReadingKeys found = temperatureRepository.findKeys(temperatureQueryService.specification(filter),
+                    maxReadings);
+            return found.isComplete() ? found : ReadingKeys.incomplete();
+        });
+        if (!keys.isComplete()) {
+            return temperatureQueryService.findPage(filter, cursor, size);
+        }
+
+        int from;
+        int to;
+        if (position == null) {
+            from = 0;
+            to = Math.min(size, keys.size());
+        } else if (position.isBackward()) {
+            to = keys.indexAfter(position.getTimestamp(), position.getId(), true);
+            from = Math.max(0, to - size);
+        } else {
+            from = keys.indexAfter(position.getTimestamp(), position.getId(), false);
+            to = Math.min(from + size, keys.size());
+        }
+        List<Temperature> temperatures = load(keys, from, to);
+        if (temperatures.isEmpty()) {
+            return new TemperaturePage(temperatures, null, null);
+        }
+
+        boolean hasNext = to < keys.size();
+        boolean hasPrevious = from > 0;
+        return new TemperaturePage(temperatures,
+                hasNext ? KeysetCursor.after(temperatures.get(temperatures.size() - 1)).encode() : null,
+                hasPrevious ? KeysetCursor.before(temperatures.get(0)).encode() : null);
+    }
+
+    // Readings deleted since the keys were cached are left out
+    private List<Temperature> load(ReadingKeys keys, int from, int to) {
+        List<UUID> ids = new ArrayList<>(to - from);
+        for (int i = from; i < to; i++) {
+            ids.add(keys.id(i));
+        }
+        Map<UUID, Temperature> byId = new HashMap<>();
+        for (Temperature temperature : temperatureRepository.findAllById(ids)) {
+            byId.put(temperature.getId(), temperature);
+        }
+        List<Temperature> temperatures = new ArrayList<>(ids.size());
+        for (UUID id : ids) {
+            Temperature temperature = byId.get(id);
+            if (temperature != null) {
+                temperatures.add(temperature);
+            }
+        }
+        return temperatures;
+    }
+
+    // Filters that select the same readings share a key: names and locations match
+    // ignoring case, and the time zone only matters to the calendar fields
+    private String cacheKey(TemperatureFilter filter) {
+        UUID deviceId = TimeOrderedUuid.parse(filter.getDeviceId());
+        String zone = filter.hasCalendarFields()
+                ? temperatureQueryService.resolveZone(filter.getTimeZone()).getId() : null;
+        return String.join("::", "temperatures::filtered", filter.getApiKey(),
+                cacheNamespaces.device(filter.getApiKey(), filter.getDeviceId(), filter.getDeviceName()),
+                String.valueOf(filter.getYear()), String.valueOf(filter.getMonth()),
+                String.valueOf(filter.getDay()), String.valueOf(filter.getHour()),
+                String.valueOf(filter.getStartTimestamp()), String.valueOf(filter.getEndTimestamp()),
+                lower(filter.getDeviceName()),
+                deviceId != null ? deviceId.toString() : lower(filter.getDeviceId()),
+                lower(filter.getLocation()), String.valueOf(zone));
+    }
+
+    private static String lower(String value) {
+        return value != null ? value.toLowerCase() : "null";
+    }
+}
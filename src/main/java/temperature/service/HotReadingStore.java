@@ -0,0 +1,696 @@
+package temperature.service;
+
+import temperature.model.*;
+import temperature.repository.*;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.jpa.domain.Specification;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+// Keeps the last window-hours of every device's readings in memory so dashboard queries
+// over recent data never reach the database. Each device has a ring buffer of parallel
+// primitive arrays (timestamps as long, metrics as double, 32 bytes per reading) in
+// timestamp order, so answers match the database exactly. Buffers grow while the shared
+// byte budget allows and then overwrite their oldest readings, after which that device
+// is only answered from the point where its buffer still starts. Filled from the
+// database on startup and from committed changes afterwards; changes committed on other
+// instances arrive over Redis pub/sub. While Redis is unreachable those can be missed,
+// so queries go to the database and the tier is reloaded once Redis is back.
+@Service
+public class HotReadingStore {
+
+    private static final Logger log = LoggerFactory.getLogger(HotReadingStore.class);
+
+    static final String CHANNEL = "temperature:hot-tier:changes";
+    static final int BYTES_PER_READING = Long.BYTES + 3 * Double.BYTES;
+    private static final int INITIAL_CAPACITY = 64;
+
+    // Tells this instance's own messages apart from the other instances'
+    private final String instanceId = UUID.randomUUID().toString();
+
+    private final TemperatureRepository temperatureRepository;
+    private final DeviceRepository deviceRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final StringRedisTemplate redisTemplate;
+    private final RedisMessageListenerContainer listenerContainer;
+    private final ObjectMapper objectMapper;
+    private final RedisCircuitBreaker circuitBreaker;
+    private final Counter hits;
+    private final Counter misses;
+
+    @Value("${temperature.hot-tier.enabled:true}")
+    private boolean enabled;
+
+    @Value("${temperature.hot-tier.window-hours:24}")
+    private int windowHours;
+
+    @Value("${temperature.hot-tier.max-bytes:67108864}")
+    private long maxBytes;
+
+    @Value("${temperature.export.fetch-size:1000}")
+    private int fetchSize;
+
+    private final Map<UUID, DeviceBuffer> buffers = new ConcurrentHashMap<>();
+    private final AtomicLong usedBytes = new AtomicLong();
+
+    // Changes committed while a load runs are replayed once it finishes. Changes are
+    // applied under the read lock; a load takes the write lock to empty the buffers and
+    // again to replay the backlog.
+    private final ReadWriteLock loadLock = new ReentrantReadWriteLock();
+    private final List<Object> loadBacklog = new ArrayList<>();
+    private volatile boolean loading;
+    private volatile boolean ready;
+    private final AtomicBoolean reloadPending = new AtomicBoolean();
+
+    // Set when changes could not be published; the next message asks the others to reload
+    private final AtomicBoolean missedPublish = new AtomicBoolean();
+
+    private ExecutorService loader;
+    private ScheduledExecutorService sweeper;
+
+    public HotReadingStore(TemperatureRepository temperatureRepository, DeviceRepository deviceRepository,
+            PlatformTransactionManager transactionManager, StringRedisTemplate redisTemplate,
+            RedisMessageListenerContainer listenerContainer, ObjectMapper objectMapper,
+            RedisCircuitBreaker circuitBreaker, MeterRegistry meterRegistry) {
+        this.temperatureRepository = temperatureRepository;
+        this.deviceRepository = deviceRepository;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.transactionTemplate.setReadOnly(true);
+        this.redisTemplate = redisTemplate;
+        this.listenerContainer = listenerContainer;
+        this.objectMapper = objectMapper;
+        this.circuitBreaker = circuitBreaker;
+        this.hits = Counter.builder("temperature.hot_tier.queries").tag("result", "hit").register(meterRegistry);
+        this.misses = Counter.builder("temperature.hot_tier.queries").tag("result", "miss").register(meterRegistry);
+        Gauge.builder("temperature.hot_tier.hit_ratio", this, HotReadingStore::hitRatio).register(meterRegistry);
+        Gauge.builder("temperature.hot_tier.bytes", usedBytes, AtomicLong::get).register(meterRegistry);
+    }
+
+    @PostConstruct
+    void start() {
+        if (!enabled) {
+            return;
+        }
+        // Releases memory held for readings that aged out of the window
+        sweeper = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "hot-tier-sweeper");
+            thread.setDaemon(true);
+            return thread;
+        });
+        sweeper.scheduleWithFixedDelay(this::sweep, 1, 1, TimeUnit.MINUTES);
+        loader = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "hot-tier-loader");
+            thread.setDaemon(true);
+            return thread;
+        });
+        listenerContainer.addMessageListener(this::onMessage, new ChannelTopic(CHANNEL));
+        circuitBreaker.onRecovery(this::reload);
+    }
+
+    @PreDestroy
+    void stop() {
+        if (sweeper != null) {
+            sweeper.shutdownNow();
+            loader.shutdownNow();
+        }
+    }
+
+    // Loads the window from the database in the background; queries go to the database
+    // until it has finished
+    @EventListener(ApplicationReadyEvent.class)
+    public void load() {
+        if (!enabled) {
+            return;
+        }
+        loader.execute(this::loadWindow);
+    }
+
+    // Starts over from the database, e.g. after changes from other instances were missed
+    private void reload() {
+        if (!reloadPending.compareAndSet(false, true)) {
+            return;
+        }
+        log.info("Reloading the hot tier from the database");
+        loader.execute(() -> {
+            reloadPending.set(false);
+            loadWindow();
+        });
+    }
+
+    private void loadWindow() {
+        loadLock.writeLock().lock();
+        try {
+            ready = false;
+            loading = true;
+            for (UUID deviceId : buffers.keySet()) {
+                buffers.computeIfPresent(deviceId, (key, buffer) -> {
+                    buffer.clear();
+                    return null;
+                });
+            }
+        } finally {
+            loadLock.writeLock().unlock();
+        }
+
+        long since = windowStart();
+        Specification<Temperature> recent = (root, query, cb) -> cb.greaterThanOrEqualTo(root.get("timestamp"),
+                since);
+        Set<UUID> loadedIds = new HashSet<>();
+        try {
+            transactionTemplate.execute(status -> {
+                try {
+                    temperatureRepository.forEachReading(recent, fetchSize,
+                            (id, timestamp, deviceId, deviceName, t, h, d) -> {
+                                loadedIds.add(id);
+                                insert(deviceId, null, timestamp, t, h, d);
+                            });
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                for (Device device : deviceRepository.findAllById(new ArrayList<>(buffers.keySet()))) {
+                    DeviceBuffer buffer = buffers.get(device.getId());
+                    if (buffer != null) {
+                        buffer.describe(device);
+                    }
+                }
+                return null;
+            });
+        } catch (RuntimeException e) {
+            log.error("Could not load the hot tier; recent queries stay on the database", e);
+            loadLock.writeLock().lock();
+            try {
+                loadBacklog.clear();
+                loading = false;
+            } finally {
+                loadLock.writeLock().unlock();
+            }
+            return;
+        }
+
+        loadLock.writeLock().lock();
+        try {
+            for (Object event : loadBacklog) {
+                if (event instanceof ReadingsStoredEvent) {
+                    // Skip readings the load already saw
+                    List<Temperature> unseen = new ArrayList<>();
+                    for (Temperature reading : ((ReadingsStoredEvent) event).getReadings()) {
+                        if (!loadedIds.contains(reading.getId())) {
+                            unseen.add(reading);
+                        }
+                    }
+                    storeAll(unseen);
+                } else {
+                    remove(((ReadingDeletedEvent) event).getReading());
+                }
+            }
+            loadBacklog.clear();
+            loading = false;
+            ready = true;
+        } finally {
+            loadLock.writeLock().unlock();
+        }
+        log.info("Hot tier loaded {} devices using {} bytes", buffers.size(), usedBytes.get());
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onStored(ReadingsStoredEvent event) {
+        if (!enabled) {
+            return;
+        }
+        accept(event);
+        publish(false, event.getReadings());
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onDeleted(ReadingDeletedEvent event) {
+        if (!enabled) {
+            return;
+        }
+        accept(event);
+        publish(true, Collections.singletonList(event.getReading()));
+    }
+
+    // Applies a committed change, or queues it while a load runs. Without a finished load
+    // the tier answers no queries, so the change is not needed.
+    private void accept(Object event) {
+        loadLock.readLock().lock();
+        try {
+            if (ready) {
+                if (event instanceof ReadingsStoredEvent) {
+                    storeAll(((ReadingsStoredEvent) event).getReadings());
+                } else {
+                    remove(((ReadingDeletedEvent) event).getReading());
+                }
+            } else if (loading) {
+                synchronized (loadBacklog) {
+                    loadBacklog.add(event);
+                }
+            }
+        } finally {
+            loadLock.readLock().unlock();
+        }
+    }
+
+    // Relays the changes inside the window to the other instances
+    private void publish(boolean deleted, List<Temperature> readings) {
+        long since = windowStart();
+        List<Map<String, Object>> changes = new ArrayList<>();
+        for (Temperature reading : readings) {
+            Device device = reading.getDevice();
+            if (reading.getTimestamp() < since || device == null || device.getId() == null) {
+                continue;
+            }
+            Map<String, Object> change = new LinkedHashMap<>();
+            change.put("id", reading.getId());
+            change.put("deviceId", device.getId());
+            change.put("apiKey", device.getApiKey());
+            change.put("deviceName", device.getDeviceName());
+            change.put("location", device.getLocation());
+            change.put("timestamp", reading.getTimestamp());
+            change.put("temperatureC", reading.getTemperatureC());
+            change.put("humidityPercent", reading.getHumidityPercent());
+            change.put("dewPoint", reading.getDewPoint());
+            changes.add(change);
+        }
+        if (changes.isEmpty()) {
+            return;
+        }
+        if (!circuitBreaker.allowRequest()) {
+            missedPublish.set(true);
+            return;
+        }
+
+        boolean missed = missedPublish.getAndSet(false);
+        try {
+            Map<String, Object> message = new LinkedHashMap<>();
+            message.put("origin", instanceId);
+            message.put("reload", missed);
+            message.put("deleted", deleted);
+            message.put("readings", changes);
+            redisTemplate.convertAndSend(CHANNEL, objectMapper.writeValueAsString(message));
+            circuitBreaker.recordSuccess();
+        } catch (RuntimeException e) {
+            circuitBreaker.recordFailure(e);
+            missedPublish.set(true);
+            log.warn("Could not publish hot tier changes to other instances: {}", e.getMessage());
+        } catch (JsonProcessingException e) {
+            missedPublish.set(true);
+            log.warn("Could not publish hot tier changes to other instances: {}", e.getMessage());
+        }
+    }
+
+    private void onMessage(Message message, byte[] pattern) {
+        try {
+            JsonNode update = objectMapper.readTree(new String(message.getBody(), StandardCharsets.UTF_8));
+            if (instanceId.equals(update.path("origin").asText())) {
+                return;
+            }
+            if (update.path("reload").asBoolean()) {
+                // The sender could not publish some of its changes
+                reload();
+            }
+            List<Temperature> readings = new ArrayList<>();
+            for (JsonNode change : update.path("readings")) {
+                Device device = new Device(change.path("deviceName").textValue(), change.path("location").textValue(),
+                        change.path("apiKey").textValue());
+                device.setId(UUID.fromString(change.path("deviceId").asText()));
+                Temperature reading = new Temperature(change.path("temperatureC").asDouble(),
+                        change.path("humidityPercent").asDouble(), change.path("timestamp").asLong(), device);
+                reading.setDewPoint(change.path("dewPoint").asDouble());
+                if (change.hasNonNull("id")) {
+                    reading.setId(UUID.fromString(change.path("id").asText()));
+                }
+                readings.add(reading);
+            }
+            if (!update.path("deleted").asBoolean()) {
+                accept(new ReadingsStoredEvent(readings));
+                return;
+            }
+            for (Temperature reading : readings) {
+                accept(new ReadingDeletedEvent(reading));
+            }
+        } catch (IOException | IllegalArgumentException e) {
+            log.warn("Ignoring malformed hot tier change: {}", e.getMessage());
+        }
+    }
+
+    private void storeAll(List<Temperature> readings) {
+        long since = windowStart();
+        for (Temperature reading : readings) {
+            if (reading.getTimestamp() < since || reading.getDevice() == null) {
+                continue;
+            }
+            insert(reading.getDevice().getId(), reading.getDevice(), reading.getTimestamp(),
+                    reading.getTemperatureC(), reading.getHumidityPercent(), reading.getDewPoint());
+        }
+    }
+
+    // Runs inside compute so the sweeper cannot release the buffer in between
+    private void insert(UUID deviceId, Device device, long timestamp, double t, double h, double d) {
+        buffers.compute(deviceId, (key, buffer) -> {
+            if (buffer == null) {
+                buffer = new DeviceBuffer();
+            }
+            if (device != null) {
+                buffer.describe(device);
+            }
+            buffer.insert(timestamp, t, h, d);
+            return buffer;
+        });
+    }
+
+    private void remove(Temperature reading) {
+        if (reading.getDevice() == null) {
+            return;
+        }
+        DeviceBuffer buffer = buffers.get(reading.getDevice().getId());
+        if (buffer != null) {
+            buffer.remove(reading.getTimestamp(), reading.getTemperatureC(), reading.getHumidityPercent(),
+                    reading.getDewPoint());
+        }
+    }
+
+    // Whether every reading the filter could match inside the ranges is held, i.e. the
+    // ranges are bounded and start inside the window and no matching device has dropped
+    // readings from that point on. Counts towards the hit ratio, so callers ask once per
+    // query and then read with forEachReading or countByDevice.
+    public boolean covers(TemperatureFilter filter, List<TimeRange> ranges) {
+        boolean covered = isCovered(filter, ranges);
+        (covered ? hits : misses).increment();
+        return covered;
+    }
+
+    // Hands every reading matching the filter inside the ranges to the handler, device by
+    // device and oldest first within a device
+    public void forEachReading(TemperatureFilter filter, List<TimeRange> ranges, HotReadingHandler handler) {
+        UUID deviceId = filter.getDeviceId() != null ? TimeOrderedUuid.parse(filter.getDeviceId()) : null;
+        for (Map.Entry<UUID, DeviceBuffer> entry : buffers.entrySet()) {
+            DeviceBuffer buffer = entry.getValue();
+            if (matches(filter, deviceId, entry.getKey(), buffer)) {
+                buffer.forEach(entry.getKey(), ranges, handler);
+            }
+        }
+    }
+
+    public Map<UUID, Long> countByDevice(TemperatureFilter filter, List<TimeRange> ranges) {
+        UUID deviceId = filter.getDeviceId() != null ? TimeOrderedUuid.parse(filter.getDeviceId()) : null;
+        Map<UUID, Long> counts = new HashMap<>();
+        for (Map.Entry<UUID, DeviceBuffer> entry : buffers.entrySet()) {
+            DeviceBuffer buffer = entry.getValue();
+            if (matches(filter, deviceId, entry.getKey(), buffer)) {
+                long count = buffer.count(ranges);
+                if (count > 0) {
+                    counts.put(entry.getKey(), count);
+                }
+            }
+        }
+        return counts;
+    }
+
+    private boolean isCovered(TemperatureFilter filter, List<TimeRange> ranges) {
+        // Changes from other instances may be missing while Redis is unreachable
+        if (!ready || ranges == null || !circuitBreaker.allowRequest()) {
+            return false;
+        }
+        if (ranges.isEmpty()) {
+            return true;
+        }
+        long start = Long.MAX_VALUE;
+        for (TimeRange range : ranges) {
+            start = Math.min(start, range.getStart());
+        }
+        if (start < windowStart()) {
+            return false;
+        }
+
+        UUID deviceId = filter.getDeviceId() != null ? TimeOrderedUuid.parse(filter.getDeviceId()) : null;
+        for (Map.Entry<UUID, DeviceBuffer> entry : buffers.entrySet()) {
+            DeviceBuffer buffer = entry.getValue();
+            if (matches(filter, deviceId, entry.getKey(), buffer) && start < buffer.coveredFrom()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean matches(TemperatureFilter filter, UUID deviceId, UUID bufferDeviceId,
+            DeviceBuffer buffer) {
+        if (filter.getDeviceId() != null && !bufferDeviceId.equals(deviceId)) {
+            return false;
+        }
+        if (!filter.getApiKey().equals(buffer.apiKey)) {
+            return false;
+        }
+        if (filter.getDeviceName() != null && !filter.getDeviceName().equalsIgnoreCase(buffer.deviceName)) {
+            return false;
+        }
+        return filter.getLocation() == null || filter.getLocation().equalsIgnoreCase(buffer.location);
+    }
+
+    private double hitRatio() {
+        double total = hits.count() + misses.count();
+        return total == 0 ? 0 : hits.count() / total;
+    }
+
+    private long windowStart() {
+        return System.currentTimeMillis() - TimeUnit.HOURS.toMillis(windowHours);
+    }
+
+    private void sweep() {
+        try {
+            long since = windowStart();
+            for (UUID deviceId : buffers.keySet()) {
+                buffers.computeIfPresent(deviceId, (key, buffer) -> buffer.trim(since) ? null : buffer);
+            }
+        } catch (RuntimeException e) {
+            log.warn("Hot tier sweep failed", e);
+        }
+    }
+
+    public interface HotReadingHandler {
+        void onReading(UUID deviceId, String deviceName, long timestamp, double temperatureC,
+                double humidityPercent, double dewPoint);
+    }
+
+    // Ring of readings in timestamp order; logical index i lives at (head + i) % capacity
+    private final class DeviceBuffer {
+        private volatile String apiKey;
+        private volatile String deviceName;
+        private volatile String location;
+
+        private long[] timestamps = new long[0];
+        private double[] temperatureC = new double[0];
+        private double[] humidityPercent = new double[0];
+        private double[] dewPoint = new double[0];
+        private int head;
+        private int size;
+        // Readings before this were overwritten to stay within the budget
+        private long coveredFrom = Long.MIN_VALUE;
+
+        void describe(Device device) {
+            apiKey = device.getApiKey();
+            deviceName = device.getDeviceName();
+            location = device.getLocation();
+        }
+
+        synchronized long coveredFrom() {
+            return coveredFrom;
+        }
+
+        synchronized void insert(long timestamp, double t, double h, double d) {
+            if (size == timestamps.length && !resize(Math.max(INITIAL_CAPACITY, size * 2))) {
+                if (size == 0 || timestamp < timestamps[head]) {
+                    // Older than anything kept and nowhere to put it
+                    coveredFrom = Math.max(coveredFrom, timestamp + 1);
+                    return;
+                }
+                coveredFrom = Math.max(coveredFrom, timestamps[head] + 1);
+                head = (head + 1) % timestamps.length;
+                size--;
+            }
+
+            // Readings nearly always arrive in order, so the shift is usually empty
+            int position = size;
+            while (position > 0 && timestamps[physical(position - 1)] > timestamp) {
+                int from = physical(position - 1);
+                int to = physical(position);
+                timestamps[to] = timestamps[from];
+                temperatureC[to] = temperatureC[from];
+                humidityPercent[to] = humidityPercent[from];
+                dewPoint[to] = dewPoint[from];
+                position--;
+            }
+            int slot = physical(position);
+            timestamps[slot] = timestamp;
+            temperatureC[slot] = t;
+            humidityPercent[slot] = h;
+            dewPoint[slot] = d;
+            size++;
+        }
+
+        synchronized void remove(long timestamp, double t, double h, double d) {
+            for (int i = lowerBound(timestamp); i < size && timestamps[physical(i)] == timestamp; i++) {
+                int slot = physical(i);
+                if (temperatureC[slot] == t && humidityPercent[slot] == h && dewPoint[slot] == d) {
+                    for (int j = i; j < size - 1; j++) {
+                        int to = physical(j);
+                        int from = physical(j + 1);
+                        timestamps[to] = timestamps[from];
+                        temperatureC[to] = temperatureC[from];
+                        humidityPercent[to] = humidityPercent[from];
+                        dewPoint[to] = dewPoint[from];
+                    }
+                    size--;
+                    return;
+                }
+            }
+        }
+
+        synchronized void forEach(UUID deviceId, List<TimeRange> ranges, HotReadingHandler handler) {
+            for (TimeRange range : ranges) {
+                for (int i = lowerBound(range.getStart()); i < size; i++) {
+                    int slot = physical(i);
+                    if (timestamps[slot] >= range.getEnd()) {
+                        break;
+                    }
+                    if (range.isDaily() && !range.contains(timestamps[slot])) {
+                        continue;
+                    }
+                    handler.onReading(deviceId, deviceName, timestamps[slot], temperatureC[slot],
+                            humidityPercent[slot], dewPoint[slot]);
+                }
+            }
+        }
+
+        synchronized long count(List<TimeRange> ranges) {
+            long count = 0;
+            for (TimeRange range : ranges) {
+                if (!range.isDaily()) {
+                    count += lowerBound(range.getEnd()) - lowerBound(range.getStart());
+                    continue;
+                }
+                for (int i = lowerBound(range.getStart()), end = lowerBound(range.getEnd()); i < end; i++) {
+                    if (range.contains(timestamps[physical(i)])) {
+                        count++;
+                    }
+                }
+            }
+            return count;
+        }
+
+        // Drops every reading and gives back the memory
+        synchronized void clear() {
+            head = 0;
+            size = 0;
+            resize(0);
+        }
+
+        // Drops readings older than since and gives back unused capacity. Returns true
+        // when the buffer is empty and has been released.
+        synchronized boolean trim(long since) {
+            while (size > 0 && timestamps[head] < since) {
+                head = (head + 1) % timestamps.length;
+                size--;
+            }
+            if (size == 0) {
+                resize(0);
+                return true;
+            }
+            if (size < timestamps.length / 4 && timestamps.length > INITIAL_CAPACITY) {
+                resize(Math.max(INITIAL_CAPACITY, timestamps.length / 2));
+            }
+            return false;
+        }
+
+        private int lowerBound(long timestamp) {
+            int low = 0;
+            int high = size;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (timestamps[physical(mid)] < timestamp) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+
+        private int physical(int index) {
+            return (head + index) % timestamps.length;
+        }
+
+        // Copies the readings into arrays of the new capacity, charging or refunding the
+        // difference against the budget; fails when growing would exceed it
+        private boolean resize(int capacity) {
+            long delta = (long) (capacity - timestamps.length) * BYTES_PER_READING;
+            if (delta > 0 && usedBytes.addAndGet(delta) > maxBytes) {
+                usedBytes.addAndGet(-delta);
+                return false;
+            }
+            if (delta < 0) {
+                usedBytes.addAndGet(delta);
+            }
+
+            long[] newTimestamps = new long[capacity];
+            double[] newTemperatureC = new double[capacity];
+            double[] newHumidityPercent = new double[capacity];
+            double[] newDewPoint = new double[capacity];
+            for (int i = 0; i < size; i++) {
+                int slot = physical(i);
+                newTimestamps[i] = timestamps[slot];
+                newTemperatureC[i] = temperatureC[slot];
+                newHumidityPercent[i] = humidityPercent[slot];
+                newDewPoint[i] = dewPoint[slot];
+            }
+            timestamps = newTimestamps;
+            temperatureC = newTemperatureC;
+            humidityPercent = newHumidityPercent;
+            dewPoint = newDewPoint;
+            head = 0;
+            return true;
+        }
+    }
+}
@@ -0,0 +1,346 @@
+package temperature.service;
+
+import temperature.model.*;
+import temperature.repository.*;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import javax.annotation.PostConstruct;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Latest reading of every device, per tenant, held in memory so the latest endpoints
+// never query the database. Instances agree through Redis: a hash per tenant holds the
+// newest reading of each device, replaced only by a newer one inside a Lua script, and
+// every accepted change is published so the other instances apply it as well. Newer
+// means a later timestamp, ties broken by the id string, the same rule on every instance
+// and in Redis, so all copies converge whatever order the updates arrive in. A tenant is
+// loaded from the hash on first use, or from the database when the hash is incomplete.
+// Updates skipped while Redis is down mark the tenant's hash incomplete once it is back.
+@Service
+public class LatestReadingCache {
+
+    private static final Logger log = LoggerFactory.getLogger(LatestReadingCache.class);
+
+    static final String CHANNEL = "temperature:latest:updates";
+    private static final String HASH_PREFIX = "temperature:latest:";
+    // Present once every device of the tenant has been written to the hash
+    private static final String COMPLETE = "_complete";
+
+    // KEYS[1] hash; ARGV device id, timestamp, reading id, reading, channel, message
+    private static final RedisScript<Long> PUT_IF_NEWER = new DefaultRedisScript<>(
+            "local current = redis.call('HGET', KEYS[1], ARGV[1]) "
+                    + "if current then "
+                    + "  local c = cjson.decode(current) "
+                    + "  local ts = tonumber(c['timestamp']) "
+                    + "  local newTs = tonumber(ARGV[2]) "
+                    + "  if ts > newTs or (ts == newTs and c['id'] >= ARGV[3]) then return 0 end "
+                    + "end "
+                    + "redis.call('HSET', KEYS[1], ARGV[1], ARGV[4]) "
+                    + "redis.call('PUBLISH', ARGV[5], ARGV[6]) "
+                    + "return 1",
+            Long.class);
+
+    // KEYS[1] hash; ARGV device id, replaced reading id, replacement ('' to remove), channel, message
+    private static final RedisScript<Long> REPLACE = new DefaultRedisScript<>(
+            "local current = redis.call('HGET', KEYS[1], ARGV[1]) "
+                    + "if not current or cjson.decode(current)['id'] ~= ARGV[2] then return 0 end "
+                    + "if ARGV[3] == '' then redis.call('HDEL', KEYS[1], ARGV[1]) "
+                    + "else redis.call('HSET', KEYS[1], ARGV[1], ARGV[3]) end "
+                    + "redis.call('PUBLISH', ARGV[4], ARGV[5]) "
+                    + "return 1",
+            Long.class);
+
+    private final StringRedisTemplate redisTemplate;
+    private final RedisMessageListenerContainer listenerContainer;
+    private final ObjectMapper objectMapper;
+    private final TemperatureRepository temperatureRepository;
+    private final DeviceRepository deviceRepository;
+    private final RedisCircuitBreaker circuitBreaker;
+
+    private final Map<String, TenantReadings> tenants = new ConcurrentHashMap<>();
+    // Tenants whose hash missed updates while Redis was unreachable
+    private final Set<String> staleTenants = ConcurrentHashMap.newKeySet();
+
+    public LatestReadingCache(StringRedisTemplate redisTemplate, RedisMessageListenerContainer listenerContainer,
+            ObjectMapper objectMapper, TemperatureRepository temperatureRepository,
+            DeviceRepository deviceRepository, RedisCircuitBreaker circuitBreaker) {
+        this.redisTemplate = redisTemplate;
+        this.listenerContainer = listenerContainer;
+        this.objectMapper = objectMapper;
+        this.temperatureRepository = temperatureRepository;
+        this.deviceRepository = deviceRepository;
+        this.circuitBreaker = circuitBreaker;
+    }
+
+    @PostConstruct
+    void subscribe() {
+        listenerContainer.addMessageListener(this::onMessage, new ChannelTopic(CHANNEL));
+        circuitBreaker.onRecovery(this::invalidateStaleTenants);
+    }
+
+    public Optional<Temperature> latest(String apiKey) {
+        return Optional.ofNullable(tenant(apiKey).latest);
+    }
+
+    // Current reading of every device of the tenant that has one, by device name
+    public List<Temperature> latestByDevice(String apiKey) {
+        List<Temperature> readings = new ArrayList<>(tenant(apiKey).byDevice.values());
+        readings.sort((a, b) -> String.valueOf(a.getDevice().getDeviceName())
+                .compareToIgnoreCase(String.valueOf(b.getDevice().getDeviceName())));
+        return readings;
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onStored(ReadingsStoredEvent event) {
+        // Only the newest reading of each device in the batch can change anything
+        Map<UUID, Temperature> newest = new LinkedHashMap<>();
+        for (Temperature reading : event.getReadings()) {
+            if (reading.getDevice() == null || reading.getId() == null) {
+                continue;
+            }
+            newest.merge(reading.getDevice().getId(), reading, (a, b) -> isNewer(b, a) ? b : a);
+        }
+        for (Temperature reading : newest.values()) {
+            TenantReadings tenant = tenants.get(reading.getApiKey());
+            if (tenant != null) {
+                tenant.offer(reading);
+            }
+            putIfNewer(reading.getApiKey(), reading);
+        }
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onDeleted(ReadingDeletedEvent event) {
+        Temperature deleted = event.getReading();
+        if (deleted.getDevice() == null) {
+            return;
+        }
+        UUID deviceId = deleted.getDevice().getId();
+        TenantReadings tenant = tenants.get(deleted.getApiKey());
+        if (tenant != null) {
+            Temperature current = tenant.byDevice.get(deviceId);
+            if (current == null || !current.getId().equals(deleted.getId())) {
+                return;
+            }
+        }
+
+        Temperature replacement = temperatureRepository.findLatestByDeviceId(deviceId)
+                .orElse(null);
+        if (tenant != null) {
+            tenant.replace(deviceId, deleted.getId().toString(), replacement);
+        }
+        if (!circuitBreaker.allowRequest()) {
+            staleTenants.add(deleted.getApiKey());
+            return;
+        }
+        try {
+            String message = message(deleted.getApiKey(), deviceId, deleted.getId().toString(), replacement);
+            redisTemplate.execute(REPLACE, Collections.singletonList(HASH_PREFIX + deleted.getApiKey()),
+                    deviceId.toString(), deleted.getId().toString(),
+                    replacement != null ? objectMapper.writeValueAsString(replacement) : "", CHANNEL, message);
+            circuitBreaker.recordSuccess();
+        } catch (RuntimeException e) {
+            circuitBreaker.recordFailure(e);
+            staleTenants.add(deleted.getApiKey());
+            log.warn("Could not replace the latest reading of device {} in Redis: {}", deviceId, e.getMessage());
+        } catch (JsonProcessingException e) {
+            log.warn("Could not replace the latest reading of device {} in Redis: {}", deviceId, e.getMessage());
+        }
+    }
+
+    // Deleting the complete marker makes the next instance to load the tenant rebuild the
+    // hash from the database
+    private void invalidateStaleTenants() {
+        for (String apiKey : new ArrayList<>(staleTenants)) {
+            try {
+                redisTemplate.opsForHash().delete(HASH_PREFIX + apiKey, COMPLETE);
+                staleTenants.remove(apiKey);
+            } catch (RuntimeException e) {
+                circuitBreaker.recordFailure(e);
+                log.warn("Could not mark the latest readings of a tenant incomplete in Redis: {}", e.getMessage());
+                return;
+            }
+        }
+    }
+
+    private void onMessage(Message message, byte[] pattern) {
+        try {
+            JsonNode update = objectMapper.readTree(new String(message.getBody(), StandardCharsets.UTF_8));
+            TenantReadings tenant = tenants.get(update.path("apiKey").asText());
+            if (tenant == null) {
+                return;
+            }
+            JsonNode readingNode = update.get("reading");
+            Temperature reading = readingNode == null || readingNode.isNull() ? null
+                    : objectMapper.treeToValue(readingNode, Temperature.class);
+            JsonNode replaces = update.get("replaces");
+            if (replaces == null || replaces.isNull()) {
+                if (reading != null) {
+                    tenant.offer(reading);
+                }
+            } else {
+                tenant.replace(UUID.fromString(update.path("deviceId").asText()), replaces.asText(), reading);
+            }
+        } catch (IOException | IllegalArgumentException e) {
+            log.warn("Ignoring malformed latest-reading update: {}", e.getMessage());
+        }
+    }
+
+    private TenantReadings tenant(String apiKey) {
+        TenantReadings tenant = tenants.computeIfAbsent(apiKey, key -> new TenantReadings());
+        if (!tenant.loaded) {
+            // Updates that arrive meanwhile are applied to the tenant as usual and win
+            // over older loaded readings
+            synchronized (tenant.loadLock) {
+                if (!tenant.loaded) {
+                    load(apiKey, tenant);
+                    tenant.loaded = true;
+                }
+            }
+        }
+        return tenant;
+    }
+
+    private void load(String apiKey, TenantReadings tenant) {
+        Map<Object, Object> entries = null;
+        try {
+            if (circuitBreaker.allowRequest()) {
+                entries = redisTemplate.opsForHash().entries(HASH_PREFIX + apiKey);
+                circuitBreaker.recordSuccess();
+            }
+        } catch (RuntimeException e) {
+            circuitBreaker.recordFailure(e);
+            log.warn("Could not read the latest readings of a tenant from Redis: {}", e.getMessage());
+        }
+        if (entries != null && entries.containsKey(COMPLETE)) {
+            for (Map.Entry<Object, Object> entry : entries.entrySet()) {
+                if (COMPLETE.equals(entry.getKey())) {
+                    continue;
+                }
+                try {
+                    tenant.offer(objectMapper.readValue((String) entry.getValue(), Temperature.class));
+                } catch (JsonProcessingException e) {
+                    log.warn("Ignoring malformed latest reading of device {}", entry.getKey());
+                }
+            }
+            return;
+        }
+
+        // Uses the (device_id, timestamp) index once per device
+        for (Device device : deviceRepository.findAllByApiKey(apiKey)) {
+            temperatureRepository.findLatestByDeviceId(device.getId()).ifPresent(reading -> {
+                tenant.offer(reading);
+                putIfNewer(apiKey, reading);
+            });
+        }
+        if (!circuitBreaker.allowRequest()) {
+            return;
+        }
+        try {
+            redisTemplate.opsForHash().putIfAbsent(HASH_PREFIX + apiKey, COMPLETE, "1");
+        } catch (RuntimeException e) {
+            circuitBreaker.recordFailure(e);
+            log.warn("Could not mark the latest readings of a tenant complete in Redis: {}", e.getMessage());
+        }
+    }
+
+    private void putIfNewer(String apiKey, Temperature reading) {
+        UUID deviceId = reading.getDevice().getId();
+        if (!circuitBreaker.allowRequest()) {
+            staleTenants.add(apiKey);
+            return;
+        }
+        try {
+            redisTemplate.execute(PUT_IF_NEWER, Collections.singletonList(HASH_PREFIX + apiKey),
+                    deviceId.toString(), Long.toString(reading.getTimestamp()), reading.getId().toString(),
+                    objectMapper.writeValueAsString(reading), CHANNEL, message(apiKey, deviceId, null, reading));
+            circuitBreaker.recordSuccess();
+        } catch (RuntimeException e) {
+            circuitBreaker.recordFailure(e);
+            staleTenants.add(apiKey);
+            log.warn("Could not publish the latest reading of device {}: {}", deviceId, e.getMessage());
+        } catch (JsonProcessingException e) {
+            log.warn("Could not publish the latest reading of device {}: {}", deviceId, e.getMessage());
+        }
+    }
+
+    private String message(String apiKey, UUID deviceId, String replaces, Temperature reading)
+            throws JsonProcessingException {
+        Map<String, Object> message = new LinkedHashMap<>();
+        message.put("apiKey", apiKey);
+        message.put("deviceId", deviceId.toString());
+        message.put("replaces", replaces);
+        message.put("reading", reading);
+        return objectMapper.writeValueAsString(message);
+    }
+
+    static boolean isNewer(Temperature candidate, Temperature current) {
+        if (candidate.getTimestamp() != current.getTimestamp()) {
+            return candidate.getTimestamp() > current.getTimestamp();
+        }
+        return candidate.getId().toString().compareTo(current.getId().toString()) > 0;
+    }
+
+    private static final class TenantReadings {
+        private final Map<UUID, Temperature> byDevice = new ConcurrentHashMap<>();
+        private volatile Temperature latest;
+        private final Object loadLock = new Object();
+        private volatile boolean loaded;
+
+        synchronized void offer(Temperature reading) {
+            UUID deviceId = reading.getDevice().getId();
+            Temperature current = byDevice.get(deviceId);
+            if (current != null && !isNewer(reading, current)) {
+                return;
+            }
+            byDevice.put(deviceId, reading);
+            if (latest == null || isNewer(reading, latest)) {
+                latest = reading;
+            }
+        }
+
+        // Swaps in the replacement (null: none) only if the replaced reading is still current
+        synchronized void replace(UUID deviceId, String replacedId, Temperature replacement) {
+            Temperature current = byDevice.get(deviceId);
+            if (current == null || !current.getId().toString().equals(replacedId)) {
+                return;
+            }
+            if (replacement == null) {
+                byDevice.remove(deviceId);
+            } else {
+                byDevice.put(deviceId, replacement);
+            }
+
+            Temperature newest = null;
+            for (Temperature reading : byDevice.values()) {
+                if (newest == null || isNewer(reading, newest)) {
+                    newest = reading;
+                }
+            }
+            latest = newest;
+        }
+    }
+}
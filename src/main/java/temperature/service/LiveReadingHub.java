@@ -0,0 +1,456 @@
+package temperature.service;
+
+import temperature.model.*;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.web.context.request.async.DeferredResult;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Pushes committed readings to live subscribers, either as Server-Sent Events or as the
+// answer to a long poll. Both are async requests, so an idle subscriber holds no servlet
+// thread. Ingest only offers readings to each matching subscriber's bounded queue, and a
+// small dispatch pool drains the queues. A subscriber whose queue is full is
+// disconnected instead of slowing ingest, and its client reconnects and catches up
+// through /temperatures/latest. So is a subscriber whose write has been blocked for
+// longer than the send timeout, which frees the dispatch thread it held. Readings
+// committed on other instances arrive over Redis pub/sub.
+@Service
+public class LiveReadingHub {
+
+    private static final Logger log = LoggerFactory.getLogger(LiveReadingHub.class);
+
+    static final String CHANNEL = "temperature:live:readings";
+    static final long MAX_POLL_MS = 120_000L;
+
+    // Tells this instance's own messages apart from the other instances'
+    private final String instanceId = UUID.randomUUID().toString();
+
+    private final StringRedisTemplate redisTemplate;
+    private final RedisMessageListenerContainer listenerContainer;
+    private final ObjectMapper objectMapper;
+    private final RedisCircuitBreaker circuitBreaker;
+    private final Counter dropped;
+
+    @Value("${temperature.live.queue-capacity:256}")
+    private int queueCapacity;
+
+    @Value("${temperature.live.dispatch-threads:4}")
+    private int dispatchThreads;
+
+    @Value("${temperature.live.sse-timeout-ms:1800000}")
+    private long sseTimeoutMs;
+
+    @Value("${temperature.live.heartbeat-ms:15000}")
+    private long heartbeatMs;
+
+    @Value("${temperature.live.send-timeout-ms:10000}")
+    private long sendTimeoutMs;
+
+    private final Map<String, Set<Subscriber>> subscribers = new ConcurrentHashMap<>();
+    private final AtomicInteger subscriberCount = new AtomicInteger();
+
+    private ExecutorService dispatcher;
+    private ScheduledExecutorService heartbeat;
+
+    public LiveReadingHub(StringRedisTemplate redisTemplate, RedisMessageListenerContainer listenerContainer,
+            ObjectMapper objectMapper, RedisCircuitBreaker circuitBreaker, MeterRegistry meterRegistry) {
+        this.redisTemplate = redisTemplate;
+        this.listenerContainer = listenerContainer;
+        this.objectMapper = objectMapper;
+        this.circuitBreaker = circuitBreaker;
+        this.dropped = Counter.builder("temperature.live.dropped_subscribers").register(meterRegistry);
+        Gauge.builder("temperature.live.subscribers", subscriberCount, AtomicInteger::get).register(meterRegistry);
+    }
+
+    @PostConstruct
+    void start() {
+        AtomicInteger threadNumber = new AtomicInteger();
+        dispatcher = Executors.newFixedThreadPool(dispatchThreads, runnable -> {
+            Thread thread = new Thread(runnable, "live-dispatch-" + threadNumber.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        });
+        heartbeat = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "live-heartbeat");
+            thread.setDaemon(true);
+            return thread;
+        });
+        heartbeat.scheduleWithFixedDelay(this::sendHeartbeats, heartbeatMs, heartbeatMs, TimeUnit.MILLISECONDS);
+        long stallCheckMs = Math.max(100, sendTimeoutMs / 4);
+        heartbeat.scheduleWithFixedDelay(this::closeStalledSubscribers, stallCheckMs, stallCheckMs,
+                TimeUnit.MILLISECONDS);
+        listenerContainer.addMessageListener(this::onMessage, new ChannelTopic(CHANNEL));
+    }
+
+    @PreDestroy
+    void stop() {
+        heartbeat.shutdownNow();
+        dispatcher.shutdownNow();
+        for (Set<Subscriber> tenantSubscribers : subscribers.values()) {
+            for (Subscriber subscriber : tenantSubscribers) {
+                subscriber.close();
+            }
+        }
+    }
+
+    // deviceId and deviceName narrow the stream to one device; both may be null
+    public SseEmitter subscribe(String apiKey, UUID deviceId, String deviceName) {
+        SseEmitter emitter = new SseEmitter(sseTimeoutMs);
+        SseSubscriber subscriber = new SseSubscriber(apiKey, deviceId, deviceName, emitter);
+        emitter.onCompletion(() -> remove(subscriber));
+        emitter.onTimeout(() -> remove(subscriber));
+        emitter.onError(e -> remove(subscriber));
+        add(subscriber);
+        return emitter;
+    }
+
+    // Completes with the next matching readings, or with 204 No Content after timeoutMs
+    // (at most MAX_POLL_MS)
+    public DeferredResult<ResponseEntity<Map<String, Object>>> poll(String apiKey, UUID deviceId, String deviceName,
+            long timeoutMs) {
+        DeferredResult<ResponseEntity<Map<String, Object>>> result = new DeferredResult<>(
+                Math.max(1, Math.min(timeoutMs, MAX_POLL_MS)), ResponseEntity.noContent().build());
+        PollSubscriber subscriber = new PollSubscriber(apiKey, deviceId, deviceName, result);
+        result.onCompletion(() -> remove(subscriber));
+        add(subscriber);
+        return result;
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onStored(ReadingsStoredEvent event) {
+        Map<String, List<Temperature>> byApiKey = new LinkedHashMap<>();
+        for (Temperature reading : event.getReadings()) {
+            byApiKey.computeIfAbsent(reading.getApiKey(), key -> new ArrayList<>()).add(reading);
+        }
+        for (Map.Entry<String, List<Temperature>> entry : byApiKey.entrySet()) {
+            deliver(entry.getKey(), entry.getValue());
+            // Subscribers on other instances miss these and catch up through /temperatures/latest
+            if (!circuitBreaker.allowRequest()) {
+                continue;
+            }
+            try {
+                Map<String, Object> message = new LinkedHashMap<>();
+                message.put("origin", instanceId);
+                message.put("apiKey", entry.getKey());
+                message.put("readings", entry.getValue());
+                redisTemplate.convertAndSend(CHANNEL, objectMapper.writeValueAsString(message));
+                circuitBreaker.recordSuccess();
+            } catch (RuntimeException e) {
+                circuitBreaker.recordFailure(e);
+                log.warn("Could not publish live readings to other instances: {}", e.getMessage());
+            } catch (JsonProcessingException e) {
+                log.warn("Could not publish live readings to other instances: {}", e.getMessage());
+            }
+        }
+    }
+
+    private void onMessage(Message message, byte[] pattern) {
+        try {
+            JsonNode update = objectMapper.readTree(new String(message.getBody(), StandardCharsets.UTF_8));
+            if (instanceId.equals(update.path("origin").asText())) {
+                return;
+            }
+            String apiKey = update.path("apiKey").asText();
+            if (!subscribers.containsKey(apiKey)) {
+                return;
+            }
+            List<Temperature> readings = new ArrayList<>();
+            for (JsonNode reading : update.path("readings")) {
+                readings.add(objectMapper.treeToValue(reading, Temperature.class));
+            }
+            deliver(apiKey, readings);
+        } catch (IOException e) {
+            log.warn("Ignoring malformed live readings message: {}", e.getMessage());
+        }
+    }
+
+    // Never blocks: readings are queued and the dispatch pool does the writing
+    private void deliver(String apiKey, List<Temperature> readings) {
+        Set<Subscriber> tenantSubscribers = subscribers.get(apiKey);
+        if (tenantSubscribers == null) {
+            return;
+        }
+        for (Subscriber subscriber : tenantSubscribers) {
+            List<Temperature> matching = new ArrayList<>();
+            for (Temperature reading : readings) {
+                if (subscriber.matches(reading)) {
+                    matching.add(reading);
+                }
+            }
+            if (!matching.isEmpty()) {
+                subscriber.offer(matching);
+            }
+        }
+    }
+
+    public static Map<String, Object> pollBody(List<Temperature> readings) {
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("count", readings.size());
+        body.put("temperatures", readings);
+        return body;
+    }
+
+    private void sendHeartbeats() {
+        for (Set<Subscriber> tenantSubscribers : subscribers.values()) {
+            for (Subscriber subscriber : tenantSubscribers) {
+                subscriber.heartbeat();
+            }
+        }
+    }
+
+    private void closeStalledSubscribers() {
+        long now = System.currentTimeMillis();
+        for (Set<Subscriber> tenantSubscribers : subscribers.values()) {
+            for (Subscriber subscriber : tenantSubscribers) {
+                subscriber.closeIfStalled(now);
+            }
+        }
+    }
+
+    private void add(Subscriber subscriber) {
+        subscribers.computeIfAbsent(subscriber.apiKey, key -> ConcurrentHashMap.newKeySet()).add(subscriber);
+        subscriberCount.incrementAndGet();
+    }
+
+    private void remove(Subscriber subscriber) {
+        subscribers.computeIfPresent(subscriber.apiKey, (key, tenantSubscribers) -> {
+            if (tenantSubscribers.remove(subscriber)) {
+                subscriberCount.decrementAndGet();
+            }
+            return tenantSubscribers.isEmpty() ? null : tenantSubscribers;
+        });
+    }
+
+    private abstract class Subscriber {
+        final String apiKey;
+        private final UUID deviceId;
+        private final String deviceName;
+
+        Subscriber(String apiKey, UUID deviceId, String deviceName) {
+            this.apiKey = apiKey;
+            this.deviceId = deviceId;
+            this.deviceName = deviceName;
+        }
+
+        boolean matches(Temperature reading) {
+            Device device = reading.getDevice();
+            if (device == null) {
+                return false;
+            }
+            if (deviceId != null && !deviceId.equals(device.getId())) {
+                return false;
+            }
+            return deviceName == null || deviceName.equalsIgnoreCase(device.getDeviceName());
+        }
+
+        abstract void offer(List<Temperature> readings);
+
+        void heartbeat() {
+        }
+
+        void closeIfStalled(long now) {
+        }
+
+        abstract void close();
+    }
+
+    private final class SseSubscriber extends Subscriber {
+        private final SseEmitter emitter;
+        private final BlockingQueue<Temperature> queue = new ArrayBlockingQueue<>(queueCapacity);
+        private final AtomicBoolean scheduled = new AtomicBoolean();
+        private volatile boolean heartbeatDue;
+        private volatile boolean closed;
+
+        // The dispatch thread blocked in emitter.send and since when; guarded by sendLock
+        private final Object sendLock = new Object();
+        private Thread sender;
+        private long sendStartedAt;
+        private volatile boolean stalled;
+        // Set when the stream was closed off the dispatch thread, which then completes the emitter
+        private volatile boolean abandoned;
+        private final AtomicBoolean completed = new AtomicBoolean();
+
+        SseSubscriber(String apiKey, UUID deviceId, String deviceName, SseEmitter emitter) {
+            super(apiKey, deviceId, deviceName);
+            this.emitter = emitter;
+        }
+
+        @Override
+        void offer(List<Temperature> readings) {
+            for (Temperature reading : readings) {
+                if (!queue.offer(reading)) {
+                    // Too far behind; the client reconnects and catches up from /temperatures/latest
+                    dropped.increment();
+                    abandon();
+                    return;
+                }
+            }
+            schedule();
+        }
+
+        @Override
+        void heartbeat() {
+            heartbeatDue = true;
+            schedule();
+        }
+
+        private void schedule() {
+            if (!closed && scheduled.compareAndSet(false, true)) {
+                dispatcher.execute(this::drain);
+            }
+        }
+
+        private void drain() {
+            try {
+                boolean sent = false;
+                Temperature reading;
+                while (!closed && (reading = queue.poll()) != null) {
+                    send(SseEmitter.event()
+                            .name("temperature")
+                            .id(reading.getId().toString())
+                            .data(reading));
+                    sent = true;
+                }
+                if (!closed && heartbeatDue && !sent) {
+                    // Keeps proxies from closing an idle stream and detects dead clients
+                    send(SseEmitter.event().comment("heartbeat"));
+                }
+                heartbeatDue = false;
+            } catch (IOException | IllegalStateException e) {
+                close();
+            } finally {
+                scheduled.set(false);
+            }
+            if (abandoned) {
+                // abandon left this to the dispatch thread, the one that may have been blocked in send
+                complete();
+                return;
+            }
+            if (!closed && !queue.isEmpty()) {
+                schedule();
+            }
+        }
+
+        private void send(SseEmitter.SseEventBuilder event) throws IOException {
+            synchronized (sendLock) {
+                sender = Thread.currentThread();
+                sendStartedAt = System.currentTimeMillis();
+            }
+            try {
+                emitter.send(event);
+            } finally {
+                synchronized (sendLock) {
+                    sender = null;
+                    // Clears an interrupt from closeIfStalled so it cannot hit the thread's next task
+                    Thread.interrupted();
+                }
+            }
+        }
+
+        // Closes the stream when a write has been blocked past the send timeout, e.g. by a
+        // client that stopped reading, and interrupts the blocked write
+        @Override
+        void closeIfStalled(long now) {
+            synchronized (sendLock) {
+                if (sender == null || stalled || now - sendStartedAt <= sendTimeoutMs) {
+                    return;
+                }
+                stalled = true;
+                sender.interrupt();
+            }
+            dropped.increment();
+            abandon();
+        }
+
+        // Closes the stream without emitter.complete(), which would wait for a blocked send to
+        // release the emitter, and has the dispatch thread complete it once it is done sending
+        private void abandon() {
+            abandoned = true;
+            closed = true;
+            queue.clear();
+            remove(this);
+            if (scheduled.compareAndSet(false, true)) {
+                try {
+                    dispatcher.execute(this::drain);
+                } catch (RejectedExecutionException e) {
+                    // Shutting down; the container closes the stream
+                }
+            }
+        }
+
+        private void complete() {
+            if (completed.compareAndSet(false, true)) {
+                emitter.complete();
+            }
+        }
+
+        @Override
+        void close() {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            queue.clear();
+            remove(this);
+            complete();
+        }
+    }
+
+    private final class PollSubscriber extends Subscriber {
+        private final DeferredResult<ResponseEntity<Map<String, Object>>> result;
+
+        PollSubscriber(String apiKey, UUID deviceId, String deviceName,
+                DeferredResult<ResponseEntity<Map<String, Object>>> result) {
+            super(apiKey, deviceId, deviceName);
+            this.result = result;
+        }
+
+        @Override
+        void offer(List<Temperature> readings) {
+            // Only the first batch answers the poll; setResult ignores later ones
+            result.setResult(ResponseEntity.ok(pollBody(readings)));
+        }
+
+        @Override
+        void close() {
+            result.setResult(ResponseEntity.noContent().build());
+        }
+    }
+}
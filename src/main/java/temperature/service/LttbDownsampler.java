@@ -0,0 +1,198 @@
+package temperature.service;
+
+import java.util.Arrays;
+
+// Largest-Triangle-Three-Buckets over a stream of (timestamp, value) points in timestamp
+// order. The first and last points are always kept; the points between them are split
+// into threshold - 2 buckets of equal count, and from each bucket the point forming the
+// largest triangle with the previously kept point and the mean of the following bucket is
+// kept. Only the bucket being decided and the one after it are held, in primitive arrays.
+public final class LttbDownsampler {
+
+    private final int threshold;
+    private final boolean passThrough;
+    // Points per bucket
+    private final double every;
+
+    private long[] keptTimestamps;
+    private double[] keptValues;
+    private int keptSize;
+
+    // Bucket being decided and the bucket after it
+    private int bucket;
+    private long[] bucketTimestamps;
+    private double[] bucketValues;
+    private int bucketSize;
+    private long[] nextTimestamps;
+    private double[] nextValues;
+    private int nextSize;
+
+    private long seen;
+    // Bucket of the latest point and the index where it ends
+    private int target;
+    private long targetEnd;
+
+    // count is the expected number of points; a stream that turns out shorter or longer
+    // is still downsampled correctly, with less even buckets
+    public LttbDownsampler(long count, int threshold) {
+        if (threshold < 3) {
+            throw new IllegalArgumentException("threshold must be at least 3");
+        }
+        this.threshold = threshold;
+        this.passThrough = count <= threshold;
+        this.every = passThrough ? 1 : (double) (count - 2) / (threshold - 2);
+
+        int keptCapacity = passThrough ? (int) Math.max(count, 1) : threshold;
+        keptTimestamps = new long[keptCapacity];
+        keptValues = new double[keptCapacity];
+        this.targetEnd = (long) Math.floor(every) + 1;
+
+        int bucketCapacity = (int) Math.ceil(every) + 1;
+        bucketTimestamps = new long[bucketCapacity];
+        bucketValues = new double[bucketCapacity];
+        nextTimestamps = new long[bucketCapacity];
+        nextValues = new double[bucketCapacity];
+    }
+
+    public void add(long timestamp, double value) {
+        long index = seen++;
+        if (passThrough || index == 0) {
+            keep(timestamp, value);
+            return;
+        }
+
+        // Bucket i holds the points with index in [floor(i * every) + 1, floor((i + 1) * every) + 1)
+        while (index >= targetEnd && target < threshold - 3) {
+            target++;
+            targetEnd = (long) Math.floor((target + 1) * every) + 1;
+        }
+        if (target > bucket + 1) {
+            // The bucket after the pending one is complete, so the pending one can be decided
+            selectFrom(bucketTimestamps, bucketValues, bucketSize,
+                    mean(nextTimestamps, nextSize), mean(nextValues, nextSize));
+            shift();
+        }
+        if (target == bucket) {
+            bucketSize = append(bucketTimestamps, bucketValues, bucketSize, timestamp, value, true);
+        } else {
+            nextSize = append(nextTimestamps, nextValues, nextSize, timestamp, value, false);
+        }
+    }
+
+    // Decides the remaining buckets and keeps the final point
+    public void finish() {
+        if (passThrough || seen < 2) {
+            return;
+        }
+
+        // The most recently added point closes the series
+        long lastTimestamp;
+        double lastValue;
+        if (nextSize > 0) {
+            nextSize--;
+            lastTimestamp = nextTimestamps[nextSize];
+            lastValue = nextValues[nextSize];
+        } else {
+            bucketSize--;
+            lastTimestamp = bucketTimestamps[bucketSize];
+            lastValue = bucketValues[bucketSize];
+        }
+
+        if (nextSize > 0) {
+            selectFrom(bucketTimestamps, bucketValues, bucketSize,
+                    mean(nextTimestamps, nextSize), mean(nextValues, nextSize));
+            shift();
+        }
+        selectFrom(bucketTimestamps, bucketValues, bucketSize, lastTimestamp, lastValue);
+        keep(lastTimestamp, lastValue);
+    }
+
+    public long[] getTimestamps() {
+        return Arrays.copyOf(keptTimestamps, keptSize);
+    }
+
+    public double[] getValues() {
+        return Arrays.copyOf(keptValues, keptSize);
+    }
+
+    private void selectFrom(long[] timestamps, double[] values, int size, double nextTimestamp, double nextValue) {
+        if (size == 0) {
+            return;
+        }
+        // Relative to the previously kept point so the products stay well inside double precision
+        long anchorTimestamp = keptTimestamps[keptSize - 1];
+        double anchorValue = keptValues[keptSize - 1];
+        double cx = nextTimestamp - anchorTimestamp;
+        double cy = nextValue - anchorValue;
+
+        int best = 0;
+        double bestArea = -1;
+        for (int i = 0; i < size; i++) {
+            double bx = timestamps[i] - anchorTimestamp;
+            double by = values[i] - anchorValue;
+            double area = Math.abs(bx * cy - cx * by);
+            if (area > bestArea) {
+                bestArea = area;
+                best = i;
+            }
+        }
+        keep(timestamps[best], values[best]);
+    }
+
+    private void shift() {
+        long[] timestamps = bucketTimestamps;
+        double[] values = bucketValues;
+        bucketTimestamps = nextTimestamps;
+        bucketValues = nextValues;
+        bucketSize = nextSize;
+        nextTimestamps = timestamps;
+        nextValues = values;
+        nextSize = 0;
+        bucket++;
+    }
+
+    private int append(long[] timestamps, double[] values, int size, long timestamp, double value,
+            boolean pending) {
+        if (size == timestamps.length) {
+            // Only reached when the stream is longer than the expected count
+            timestamps = Arrays.copyOf(timestamps, size * 2);
+            values = Arrays.copyOf(values, size * 2);
+            if (pending) {
+                bucketTimestamps = timestamps;
+                bucketValues = values;
+            } else {
+                nextTimestamps = timestamps;
+                nextValues = values;
+            }
+        }
+        timestamps[size] = timestamp;
+        values[size] = value;
+        return size + 1;
+    }
+
+    private void keep(long timestamp, double value) {
+        if (keptSize == keptTimestamps.length) {
+            keptTimestamps = Arrays.copyOf(keptTimestamps, keptSize * 2);
+            keptValues = Arrays.copyOf(keptValues, keptSize * 2);
+        }
+        keptTimestamps[keptSize] = timestamp;
+        keptValues[keptSize] = value;
+        keptSize++;
+    }
+
+    private static double mean(long[] values, int size) {
+        double sum = 0;
+        for (int i = 0; i < size; i++) {
+            sum += values[i];
+        }
+        return sum / size;
+    }
+
+    private static double mean(double[] values, int size) {
+        double sum = 0;
+        for (int i = 0; i < size; i++) {
+            sum += values[i];
+        }
+        return sum / size;
+    }
+}
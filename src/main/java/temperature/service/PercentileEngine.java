@@ -0,0 +1,100 @@
+package temperature.service;
+
+import java.util.Arrays;
+
+// Exact percentiles by selection instead of sorting. Percentile p of n values is the
+// linearly interpolated value at rank p / 100 * (n - 1), so p50 of an even count is the
+// mean of the two middle values.
+public final class PercentileEngine {
+
+    private PercentileEngine() {
+    }
+
+    // Returns the requested percentiles in the order given. Reorders values in place.
+    public static double[] exact(double[] values, double... percentiles) {
+        double[] results = new double[percentiles.length];
+        if (values.length == 0) {
+            Arrays.fill(results, Double.NaN);
+            return results;
+        }
+
+        // Answer the ranks in increasing order so each selection only has to look to the
+        // right of the previous one
+        Integer[] order = new Integer[percentiles.length];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> Double.compare(percentiles[a], percentiles[b]));
+
+        int from = 0;
+        for (int i : order) {
+            double rank = percentiles[i] / 100.0 * (values.length - 1);
+            int lower = (int) Math.floor(rank);
+            double fraction = rank - lower;
+
+            double lowerValue = select(values, from, values.length - 1, lower);
+            from = lower;
+            if (fraction == 0 || lower + 1 >= values.length) {
+                results[i] = lowerValue;
+                continue;
+            }
+            // After selecting lower, everything to its right is >= it, so the next order
+            // statistic is the minimum of that part
+            double upperValue = values[lower + 1];
+            for (int j = lower + 2; j < values.length; j++) {
+                upperValue = Math.min(upperValue, values[j]);
+            }
+            results[i] = lowerValue + (upperValue - lowerValue) * fraction;
+        }
+        return results;
+    }
+
+    // Hoare-style quickselect with a median-of-three pivot; leaves the k-th smallest value
+    // of values[left..right] at index k with smaller values before it and larger after it
+    static double select(double[] values, int left, int right, int k) {
+        while (left < right) {
+            int middle = (left + right) >>> 1;
+            if (values[middle] < values[left]) {
+                swap(values, left, middle);
+            }
+            if (values[right] < values[left]) {
+                swap(values, left, right);
+            }
+            if (values[right] < values[middle]) {
+                swap(values, middle, right);
+            }
+            double pivot = values[middle];
+
+            int i = left;
+            int j = right;
+            while (i <= j) {
+                while (values[i] < pivot) {
+                    i++;
+                }
+                while (values[j] > pivot) {
+                    j--;
+                }
+                if (i <= j) {
+                    swap(values, i, j);
+                    i++;
+                    j--;
+                }
+            }
+
+            if (k <= j) {
+                right = j;
+            } else if (k >= i) {
+                left = i;
+            } else {
+                return values[k];
+            }
+        }
+        return values[k];
+    }
+
+    private static void swap(double[] values, int i, int j) {
+        double tmp = values[i];
+        values[i] = values[j];
+        values[j] = tmp;
+    }
+}
@@ -0,0 +1,203 @@
+package temperature.service;
+
+import temperature.repository.*;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+// Suppresses readings a device sends twice, e.g. when it retries after a timeout. A reading
+// is identified by its device, the boot it was sent in and its sequence within that boot,
+// so a device that restarts its counter on reboot only has to send a new boot. Per device
+// and boot it keeps the highest committed sequence and a bitmap of the WINDOW sequences
+// below it, so the duplicate check for new readings is a few bit operations. Only
+// sequences older than the window (or older than what was stored before this instance
+// saw the boot) and actual duplicates go to the database; the unique (device_id,
+// device_boot, device_sequence) index is the backstop across instances, and a reading it
+// rejects is answered with the stored one.
+@Service
+public class ReadingDeduplicator {
+
+    static final int WINDOW = 1024;
+
+    private final TemperatureRepository temperatureRepository;
+
+    private final Map<WindowKey, SequenceWindow> windows = new ConcurrentHashMap<>();
+
+    @Value("${temperature.ingest.dedup.max-devices:100000}")
+    private int maxDevices;
+
+    public ReadingDeduplicator(TemperatureRepository temperatureRepository) {
+        this.temperatureRepository = temperatureRepository;
+    }
+
+    // Returns the id of the reading already stored for (device, boot, sequence). Otherwise
+    // calls store, which persists the reading and returns its id, and returns null. The
+    // sequence is marked when the surrounding transaction commits and released if it rolls back.
+    public UUID storeOnce(UUID deviceId, long boot, long sequence, Supplier<UUID> store) {
+        SequenceWindow window = windowFor(deviceId, boot);
+        synchronized (window) {
+            UUID existing = window.pending.get(sequence);
+            if (existing != null) {
+                return existing;
+            }
+            if (window.mayContain(sequence)) {
+                existing = temperatureRepository.findIdBySequence(deviceId, boot, sequence).orElse(null);
+                if (existing != null) {
+                    return existing;
+                }
+            }
+
+            UUID id = store.get();
+            window.pending.put(sequence, id);
+            afterCompletion(window, sequence);
+            return null;
+        }
+    }
+
+    // Returns the id of the reading stored for (device, boot, sequence) after the unique
+    // index rejected an insert, i.e. another instance stored it first, and remembers it as seen
+    public UUID findCommitted(UUID deviceId, long boot, long sequence) {
+        UUID existing = temperatureRepository.findIdBySequence(deviceId, boot, sequence).orElse(null);
+        if (existing != null) {
+            SequenceWindow window = windowFor(deviceId, boot);
+            synchronized (window) {
+                window.mark(sequence);
+            }
+        }
+        return existing;
+    }
+
+    private void afterCompletion(SequenceWindow window, long sequence) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            synchronized (window) {
+                window.pending.remove(sequence);
+                window.mark(sequence);
+            }
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                synchronized (window) {
+                    window.pending.remove(sequence);
+                    if (status == STATUS_COMMITTED) {
+                        window.mark(sequence);
+                    }
+                }
+            }
+        });
+    }
+
+    private SequenceWindow windowFor(UUID deviceId, long boot) {
+        WindowKey key = new WindowKey(deviceId, boot);
+        SequenceWindow window = windows.get(key);
+        if (window != null) {
+            return window;
+        }
+
+        // Sequences up to the highest one already stored are unknown to this instance; a
+        // boot the device has just started has none
+        Long stored = temperatureRepository.findMaxSequence(deviceId, boot);
+        long floor = stored != null ? stored : -1L;
+        window = windows.computeIfAbsent(key, k -> new SequenceWindow(floor));
+        evictOverflow();
+        return window;
+    }
+
+    // Approximate bound; an evicted device and boot reloads its floor on the next reading
+    private void evictOverflow() {
+        Iterator<SequenceWindow> entries = windows.values().iterator();
+        while (windows.size() > maxDevices && entries.hasNext()) {
+            entries.next();
+            entries.remove();
+        }
+    }
+
+    private static final class WindowKey {
+        private final UUID deviceId;
+        private final long boot;
+
+        WindowKey(UUID deviceId, long boot) {
+            this.deviceId = deviceId;
+            this.boot = boot;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof WindowKey)) {
+                return false;
+            }
+            WindowKey other = (WindowKey) o;
+            return boot == other.boot && deviceId.equals(other.deviceId);
+        }
+
+        @Override
+        public int hashCode() {
+            return deviceId.hashCode() * 31 + Long.hashCode(boot);
+        }
+    }
+
+    private static final class SequenceWindow {
+        // Highest sequence not covered by the bitmap; anything at or below needs the database
+        private final long floor;
+        private long highWater;
+        // Bit (s % WINDOW) is set when sequence s in (highWater - WINDOW, highWater] was committed
+        private final long[] seen = new long[WINDOW / 64];
+        // Sequences stored by transactions that have not completed yet
+        private final Map<Long, UUID> pending = new HashMap<>();
+
+        SequenceWindow(long floor) {
+            this.floor = floor;
+            this.highWater = floor;
+        }
+
+        boolean mayContain(long sequence) {
+            if (sequence <= floor || sequence <= highWater - WINDOW) {
+                return true;
+            }
+            return sequence <= highWater && isSet(sequence);
+        }
+
+        void mark(long sequence) {
+            if (sequence <= highWater - WINDOW) {
+                return;
+            }
+            if (sequence > highWater) {
+                // Slide the window forward, clearing the slots it passes over
+                long cleared = Math.min(sequence - highWater, WINDOW);
+                for (long s = highWater + 1; s <= highWater + cleared; s++) {
+                    clear(s);
+                }
+                highWater = sequence;
+            }
+            set(sequence);
+        }
+
+        private boolean isSet(long sequence) {
+            int bit = (int) Math.floorMod(sequence, (long) WINDOW);
+            return (seen[bit >>> 6] & (1L << bit)) != 0;
+        }
+
+        private void set(long sequence) {
+            int bit = (int) Math.floorMod(sequence, (long) WINDOW);
+            seen[bit >>> 6] |= 1L << bit;
+        }
+
+        private void clear(long sequence) {
+            int bit = (int) Math.floorMod(sequence, (long) WINDOW);
+            seen[bit >>> 6] &= ~(1L << bit);
+        }
+    }
+}
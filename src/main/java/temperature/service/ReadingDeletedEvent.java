@@ -0,0 +1,16 @@
+package temperature.service;
+
+import temperature.model.*;
+
+// Published by TemperatureIngestService inside the delete transaction
+public class ReadingDeletedEvent {
+    private final Temperature reading;
+
+    public ReadingDeletedEvent(Temperature reading) {
+        this.reading = reading;
+    }
+
+    public Temperature getReading() {
+        return reading;
+    }
+}
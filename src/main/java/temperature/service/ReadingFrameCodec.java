@@ -0,0 +1,56 @@
+package temperature.service;
+
+import temperature.exception.*;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.UUID;
+
+// Fixed-layout binary ingest frame for constrained sensors. A request body carries one
+// or more 29-byte frames back to back, all fields big-endian:
+//
+//   offset  size  field
+//        0     1  version, currently 1
+//        1    16  device id returned in device.id when the device first reported
+//       17     8  timestamp in epoch milliseconds, 0 to use the server receive time
+//       25     2  temperature in hundredths of a degree Celsius, signed
+//       27     2  relative humidity in hundredths of a percent, unsigned
+//
+// Frames are decoded straight from the buffer into the visitor's primitive arguments.
+public final class ReadingFrameCodec {
+
+    public static final String CONTENT_TYPE = "application/vnd.temperature.frame";
+
+    public static final byte VERSION = 1;
+    public static final int FRAME_LENGTH = 29;
+
+    private ReadingFrameCodec() {
+    }
+
+    public interface FrameVisitor {
+        void onFrame(int index, UUID deviceId, long timestamp, double temperatureC, double humidityPercent);
+    }
+
+    public static int frameCount(ByteBuffer body) {
+        if (body.remaining() == 0 || body.remaining() % FRAME_LENGTH != 0) {
+            throw new InvalidReadingException("Body must contain whole " + FRAME_LENGTH + "-byte frames");
+        }
+        return body.remaining() / FRAME_LENGTH;
+    }
+
+    public static void decode(ByteBuffer body, FrameVisitor visitor) {
+        int frames = frameCount(body);
+        ByteBuffer buffer = body.duplicate().order(ByteOrder.BIG_ENDIAN);
+        for (int i = 0; i < frames; i++) {
+            byte version = buffer.get();
+            if (version != VERSION) {
+                throw new InvalidReadingException("Unsupported frame version " + version + " in frame " + i);
+            }
+            UUID deviceId = new UUID(buffer.getLong(), buffer.getLong());
+            long timestamp = buffer.getLong();
+            double temperatureC = buffer.getShort() / 100.0;
+            double humidityPercent = (buffer.getShort() & 0xFFFF) / 100.0;
+            visitor.onFrame(i, deviceId, timestamp, temperatureC, humidityPercent);
+        }
+    }
+}
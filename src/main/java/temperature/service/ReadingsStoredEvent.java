@@ -0,0 +1,19 @@
+package temperature.service;
+
+import temperature.model.*;
+
+import java.util.List;
+
+// Published by TemperatureIngestService inside the ingest transaction; listeners that
+// must only see committed readings use @TransactionalEventListener
+public class ReadingsStoredEvent {
+    private final List<Temperature> readings;
+
+    public ReadingsStoredEvent(List<Temperature> readings) {
+        this.readings = readings;
+    }
+
+    public List<Temperature> getReadings() {
+        return readings;
+    }
+}
@@ -0,0 +1,134 @@
+package temperature.service;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.dao.QueryTimeoutException;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+// Tracks whether Redis is reachable so the cache layer can skip it during an outage
+// instead of making every request wait for a connection timeout. Closed: calls go
+// through. After failureThreshold consecutive connection failures or timeouts the
+// breaker opens and calls are skipped at once. While open, a background probe pings
+// Redis every probe interval, moving to half-open for the attempt; a successful ping
+// closes the breaker again and tells the registered recovery listeners, so no request
+// ever pays for finding out that Redis is back.
+@Service
+public class RedisCircuitBreaker {
+
+    private static final Logger log = LoggerFactory.getLogger(RedisCircuitBreaker.class);
+
+    public enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    private final RedisConnectionFactory connectionFactory;
+    private final AtomicReference<State> state = new AtomicReference<>(State.CLOSED);
+    private final AtomicInteger consecutiveFailures = new AtomicInteger();
+    private final List<Runnable> recoveryListeners = new CopyOnWriteArrayList<>();
+
+    @Value("${temperature.redis.breaker.failure-threshold:3}")
+    private int failureThreshold;
+
+    @Value("${temperature.redis.breaker.probe-interval-ms:5000}")
+    private long probeIntervalMs;
+
+    private ScheduledExecutorService probe;
+
+    public RedisCircuitBreaker(RedisConnectionFactory connectionFactory, MeterRegistry meterRegistry) {
+        this.connectionFactory = connectionFactory;
+        Gauge.builder("temperature.redis.breaker.state", state, current -> current.get().ordinal())
+                .description("0 closed, 1 open, 2 half-open")
+                .register(meterRegistry);
+    }
+
+    @PostConstruct
+    void start() {
+        probe = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "redis-probe");
+            thread.setDaemon(true);
+            return thread;
+        });
+        probe.scheduleWithFixedDelay(this::probe, probeIntervalMs, probeIntervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    void stop() {
+        probe.shutdownNow();
+    }
+
+    // False while Redis is known to be down; the caller should go straight to its fallback
+    public boolean allowRequest() {
+        return state.get() == State.CLOSED;
+    }
+
+    public State getState() {
+        return state.get();
+    }
+
+    public void recordSuccess() {
+        consecutiveFailures.set(0);
+    }
+
+    // Only failures to reach Redis count; errors such as a corrupt value do not
+    public void recordFailure(RuntimeException e) {
+        if (!(e instanceof DataAccessResourceFailureException) && !(e instanceof QueryTimeoutException)) {
+            return;
+        }
+        if (consecutiveFailures.incrementAndGet() >= failureThreshold
+                && state.compareAndSet(State.CLOSED, State.OPEN)) {
+            log.warn("Redis unreachable after {} consecutive failures, bypassing it until a probe succeeds: {}",
+                    consecutiveFailures.get(), e.getMessage());
+        }
+    }
+
+    // Runs on the probe thread each time the breaker closes after an outage
+    public void onRecovery(Runnable listener) {
+        recoveryListeners.add(listener);
+    }
+
+    private void probe() {
+        if (!state.compareAndSet(State.OPEN, State.HALF_OPEN)) {
+            return;
+        }
+        try {
+            RedisConnection connection = connectionFactory.getConnection();
+            try {
+                connection.ping();
+            } finally {
+                connection.close();
+            }
+        } catch (RuntimeException e) {
+            state.set(State.OPEN);
+            log.debug("Redis probe failed: {}", e.getMessage());
+            return;
+        }
+
+        consecutiveFailures.set(0);
+        state.set(State.CLOSED);
+        log.info("Redis reachable again, caching resumed");
+        for (Runnable listener : recoveryListeners) {
+            try {
+                listener.run();
+            } catch (RuntimeException e) {
+                log.warn("Redis recovery listener failed: {}", e.getMessage());
+            }
+        }
+    }
+}
@@ -0,0 +1,227 @@
+package temperature.service;
+
+import temperature.model.*;
+import temperature.repository.*;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+// Keeps the minute/hour/day rollups in step with the raw readings and answers aggregate
+// queries from them. A time range is split into the largest whole buckets it contains,
+// coarsest first; only the partial minutes at its edges are read from raw rows.
+@Service
+public class RollupService {
+
+    public static final long MINUTE = 60_000L;
+    public static final long HOUR = 60 * MINUTE;
+    public static final long DAY = 24 * HOUR;
+
+    // Coarsest first
+    static final long[] BUCKET_SIZES = { DAY, HOUR, MINUTE };
+
+    // Order in which record and remove write buckets, finest first, so concurrent ingests
+    // and deletes touching the same buckets lock them in the same order
+    static final long[] WRITE_ORDER = { MINUTE, HOUR, DAY };
+
+    private final TemperatureRollupRepository rollupRepository;
+    private final TemperatureRepository temperatureRepository;
+
+    // Turn off to answer every aggregate from raw rows, e.g. on a database without the
+    // rollup table; rollups are then also not maintained
+    @Value("${temperature.rollup.enabled:true}")
+    private boolean enabled;
+
+    public RollupService(TemperatureRollupRepository rollupRepository,
+            TemperatureRepository temperatureRepository) {
+        this.rollupRepository = rollupRepository;
+        this.temperatureRepository = temperatureRepository;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    // Adds newly stored readings to their buckets; runs in the ingest transaction
+    public void record(Collection<Temperature> readings) {
+        if (!enabled || readings.isEmpty()) {
+            return;
+        }
+
+        Map<BucketKey, RollupBucket> buckets = new HashMap<>();
+        for (Temperature reading : readings) {
+            UUID deviceId = reading.getDevice().getId();
+            for (long bucketMs : BUCKET_SIZES) {
+                long bucketStart = floor(reading.getTimestamp(), bucketMs);
+                buckets.computeIfAbsent(new BucketKey(bucketMs, deviceId, bucketStart),
+                        key -> new RollupBucket(bucketMs, deviceId, bucketStart, reading.getApiKey()))
+                        .getAggregate()
+                        .add(reading.getTemperatureC(), reading.getHumidityPercent(), reading.getDewPoint());
+            }
+        }
+
+        // WRITE_ORDER, then device and start, keeps concurrent writers from deadlocking
+        List<RollupBucket> ordered = new ArrayList<>(buckets.values());
+        ordered.sort(Comparator.comparingLong(RollupBucket::getBucketMs)
+                .thenComparing(RollupBucket::getDeviceId)
+                .thenComparingLong(RollupBucket::getBucketStart));
+        rollupRepository.addAll(ordered);
+    }
+
+    // Rebuilds the buckets that contained a deleted reading; runs in the delete transaction
+    public void remove(Temperature reading) {
+        if (!enabled || reading.getDevice() == null) {
+            return;
+        }
+        for (long bucketMs : WRITE_ORDER) {
+            rollupRepository.recompute(bucketMs, reading.getDevice().getId(),
+                    floor(reading.getTimestamp(), bucketMs));
+        }
+    }
+
+    // Aggregates the readings matching the filter within the ranges (null: unbounded)
+    public ReadingAggregate aggregate(TemperatureFilter filter, List<TimeRange> timeRanges) {
+        if (!enabled) {
+            return temperatureRepository.findAggregate(TemperatureSpecifications.matching(filter, timeRanges));
+        }
+
+        ReadingAggregate aggregate = new ReadingAggregate();
+        UUID deviceId = null;
+        if (filter.getDeviceId() != null) {
+            deviceId = TimeOrderedUuid.parse(filter.getDeviceId());
+            if (deviceId == null) {
+                return aggregate;
+            }
+        }
+
+        // Every reading lies in exactly one day bucket
+        if (timeRanges == null) {
+            aggregate.merge(rollupRepository.aggregate(filter, deviceId, DAY, null));
+            return aggregate;
+        }
+
+        Map<Long, List<TimeRange>> bucketRanges = new HashMap<>();
+        List<TimeRange> rawRanges = new ArrayList<>();
+        for (TimeRange range : timeRanges) {
+            if (range.isDaily()) {
+                decomposeDaily(range, bucketRanges, rawRanges);
+            } else {
+                decompose(range.getStart(), range.getEnd(), 0, bucketRanges, rawRanges);
+            }
+        }
+
+        for (long bucketMs : BUCKET_SIZES) {
+            List<TimeRange> ranges = bucketRanges.get(bucketMs);
+            if (ranges != null) {
+                aggregate.merge(rollupRepository.aggregate(filter, deviceId, bucketMs, ranges));
+            }
+        }
+        if (!rawRanges.isEmpty()) {
+            aggregate.merge(temperatureRepository.findAggregate(
+                    TemperatureSpecifications.matching(filter, rawRanges)));
+        }
+        return aggregate;
+    }
+
+    // Splits [start, end) into whole buckets of BUCKET_SIZES[level], recursing into finer
+    // sizes for the parts before the first and after the last whole bucket
+    static void decompose(long start, long end, int level, Map<Long, List<TimeRange>> bucketRanges,
+            List<TimeRange> rawRanges) {
+        if (start >= end) {
+            return;
+        }
+        if (level == BUCKET_SIZES.length) {
+            rawRanges.add(new TimeRange(start, end));
+            return;
+        }
+
+        long bucketMs = BUCKET_SIZES[level];
+        long alignedStart = ceil(start, bucketMs);
+        long alignedEnd = floor(end, bucketMs);
+        if (alignedStart >= alignedEnd) {
+            decompose(start, end, level + 1, bucketRanges, rawRanges);
+            return;
+        }
+        bucketRanges.computeIfAbsent(bucketMs, size -> new ArrayList<>())
+                .add(new TimeRange(alignedStart, alignedEnd));
+        decompose(start, alignedStart, level + 1, bucketRanges, rawRanges);
+        decompose(alignedEnd, end, level + 1, bucketRanges, rawRanges);
+    }
+
+    // A range narrowed to one hour a day reads the hour or minute buckets that tile that
+    // hour; its edges, and an hour that starts off the minute, are read raw
+    static void decomposeDaily(TimeRange range, Map<Long, List<TimeRange>> bucketRanges,
+            List<TimeRange> rawRanges) {
+        long bucketMs = dailyBucketMs(range, HOUR);
+        long alignedStart = bucketMs > 0 ? ceil(range.getStart(), bucketMs) : range.getEnd();
+        long alignedEnd = bucketMs > 0 ? floor(range.getEnd(), bucketMs) : range.getEnd();
+        if (alignedStart >= alignedEnd) {
+            rawRanges.add(range);
+            return;
+        }
+        bucketRanges.computeIfAbsent(bucketMs, size -> new ArrayList<>())
+                .add(range.withBounds(alignedStart, alignedEnd));
+        if (range.getStart() < alignedStart) {
+            rawRanges.add(range.withBounds(range.getStart(), alignedStart));
+        }
+        if (alignedEnd < range.getEnd()) {
+            rawRanges.add(range.withBounds(alignedEnd, range.getEnd()));
+        }
+    }
+
+    // The largest bucket size up to maxBucketMs that tiles the hour of a daily range, or 0
+    static long dailyBucketMs(TimeRange range, long maxBucketMs) {
+        for (long bucketMs : BUCKET_SIZES) {
+            if (bucketMs <= maxBucketMs && bucketMs <= HOUR && range.getHourStart() % bucketMs == 0) {
+                return bucketMs;
+            }
+        }
+        return 0;
+    }
+
+    // Open-ended bounds stay open so they never produce a raw edge
+    static long floor(long timestamp, long bucketMs) {
+        return timestamp == Long.MAX_VALUE ? timestamp : Math.floorDiv(timestamp, bucketMs) * bucketMs;
+    }
+
+    static long ceil(long timestamp, long bucketMs) {
+        return timestamp == Long.MIN_VALUE ? timestamp : -Math.floorDiv(-timestamp, bucketMs) * bucketMs;
+    }
+
+    private static final class BucketKey {
+        private final long bucketMs;
+        private final UUID deviceId;
+        private final long bucketStart;
+
+        BucketKey(long bucketMs, UUID deviceId, long bucketStart) {
+            this.bucketMs = bucketMs;
+            this.deviceId = deviceId;
+            this.bucketStart = bucketStart;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof BucketKey)) {
+                return false;
+            }
+            BucketKey other = (BucketKey) o;
+            return bucketMs == other.bucketMs && bucketStart == other.bucketStart
+                    && deviceId.equals(other.deviceId);
+        }
+
+        @Override
+        public int hashCode() {
+            return (Long.hashCode(bucketMs) * 31 + deviceId.hashCode()) * 31 + Long.hashCode(bucketStart);
+        }
+    }
+}
@@ -0,0 +1,274 @@
+package temperature.service;
+
+import temperature.model.*;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Reads newline-delimited JSON readings from a long-lived request body and stores them in
+// micro-batches while the upload continues. After each commit an acknowledgement line with
+// the sequence (1-based line number) of the last committed reading is written back, so a
+// gateway knows where to resume.
+//
+// A batch is committed once it is full or its oldest line has waited max-delay-ms. The body
+// is read on a separate thread that hands parsed lines over through a queue of at most one
+// batch, so the request thread can wait for the next line with a timeout and still commit
+// on time while the client is idle; a blocking servlet read has no timeout of its own.
+@Service
+public class StreamingIngestService {
+
+    public static final String CONTENT_TYPE = "application/x-ndjson";
+
+    private static final int END_OF_STREAM = -1;
+    private static final int LINE_TOO_LONG = -2;
+
+    private final TemperatureIngestService temperatureIngestService;
+    private final ObjectMapper objectMapper;
+    private ExecutorService readers;
+
+    @Value("${temperature.ingest.stream.batch-size:200}")
+    private int batchSize;
+
+    @Value("${temperature.ingest.stream.max-delay-ms:1000}")
+    private long maxDelayMs;
+
+    @Value("${temperature.ingest.stream.max-line-bytes:8192}")
+    private int maxLineBytes;
+
+    public StreamingIngestService(TemperatureIngestService temperatureIngestService, ObjectMapper objectMapper) {
+        this.temperatureIngestService = temperatureIngestService;
+        this.objectMapper = objectMapper;
+    }
+
+    @PostConstruct
+    void start() {
+        AtomicInteger threadNumber = new AtomicInteger();
+        readers = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "stream-reader-" + threadNumber.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PreDestroy
+    void stop() {
+        readers.shutdownNow();
+    }
+
+    public void ingest(String apiKey, InputStream body, OutputStream acks) throws IOException {
+        BlockingQueue<Line> lines = new ArrayBlockingQueue<>(batchSize);
+        Future<?> reader = readers.submit(() -> readLines(body, lines));
+
+        List<Temperature> batch = new ArrayList<>(batchSize);
+        List<Long> batchSequences = new ArrayList<>(batchSize);
+        List<Map<String, Object>> rejected = new ArrayList<>();
+        long sequence = 0;
+        long batchStartedAt = 0;
+        boolean finished = false;
+
+        try {
+            while (true) {
+                Line next;
+                if (batch.isEmpty() && rejected.isEmpty()) {
+                    next = lines.take();
+                } else {
+                    long wait = batchStartedAt + maxDelayMs - System.currentTimeMillis();
+                    next = wait > 0 ? lines.poll(wait, TimeUnit.MILLISECONDS) : lines.poll();
+                }
+
+                if (next == null) {
+                    // The oldest pending line has waited max-delay-ms and nothing else arrived
+                    commit(apiKey, batch, batchSequences, rejected, sequence, false, acks);
+                    continue;
+                }
+                if (next == Line.END) {
+                    break;
+                }
+                if (next.failure != null) {
+                    throw next.failure;
+                }
+
+                if (batch.isEmpty() && rejected.isEmpty()) {
+                    batchStartedAt = System.currentTimeMillis();
+                }
+                sequence++;
+                if (next.reading != null) {
+                    batch.add(next.reading);
+                    batchSequences.add(sequence);
+                } else {
+                    rejected.add(rejection(sequence, next.error));
+                }
+
+                boolean due = batch.size() >= batchSize || rejected.size() >= batchSize
+                        || System.currentTimeMillis() - batchStartedAt >= maxDelayMs;
+                if (due) {
+                    commit(apiKey, batch, batchSequences, rejected, sequence, false, acks);
+                }
+            }
+
+            commit(apiKey, batch, batchSequences, rejected, sequence, true, acks);
+            finished = true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for the next line");
+        } finally {
+            if (!finished) {
+                // Give up on the rest of the body; closing it ends a read the interrupt cannot
+                reader.cancel(true);
+                body.close();
+            }
+        }
+    }
+
+    // Runs on a reader thread until the body ends, fails or the request gives up on it
+    private void readLines(InputStream body, BlockingQueue<Line> lines) {
+        InputStream in = new BufferedInputStream(body);
+        byte[] line = new byte[maxLineBytes];
+        try {
+            try {
+                int length;
+                while ((length = readLine(in, line)) != END_OF_STREAM) {
+                    if (length != 0) {
+                        lines.put(parse(line, length));
+                    }
+                }
+                lines.put(Line.END);
+            } catch (IOException e) {
+                lines.put(Line.failed(e));
+            }
+        } catch (InterruptedException e) {
+            // The request has stopped taking lines
+        }
+    }
+
+    private Line parse(byte[] line, int length) {
+        if (length == LINE_TOO_LONG) {
+            return Line.rejected("Line exceeds " + maxLineBytes + " bytes");
+        }
+        try {
+            return Line.reading(objectMapper.readValue(line, 0, length, Temperature.class));
+        } catch (JsonProcessingException e) {
+            return Line.rejected("Malformed reading: " + e.getOriginalMessage());
+        } catch (IOException e) {
+            return Line.failed(e);
+        }
+    }
+
+    private void commit(String apiKey, List<Temperature> batch, List<Long> batchSequences,
+            List<Map<String, Object>> rejected, long sequence, boolean done, OutputStream acks) throws IOException {
+        int created = 0;
+        int duplicates = 0;
+        if (!batch.isEmpty()) {
+            // Each micro-batch runs in its own transaction
+            List<BatchIngestResult> results = temperatureIngestService.ingestBatch(apiKey, batch);
+            for (BatchIngestResult result : results) {
+                if (BatchIngestResult.CREATED.equals(result.getStatus())) {
+                    created++;
+                } else if (BatchIngestResult.DUPLICATE.equals(result.getStatus())) {
+                    duplicates++;
+                } else {
+                    rejected.add(rejection(batchSequences.get(result.getIndex()), result.getError()));
+                }
+            }
+        }
+
+        Map<String, Object> ack = new LinkedHashMap<>();
+        ack.put("sequence", sequence);
+        ack.put("created", created);
+        ack.put("duplicates", duplicates);
+        ack.put("rejected", rejected);
+        if (done) {
+            ack.put("done", true);
+        }
+        acks.write(objectMapper.writeValueAsBytes(ack));
+        acks.write('\n');
+        acks.flush();
+
+        batch.clear();
+        batchSequences.clear();
+        rejected.clear();
+    }
+
+    private static Map<String, Object> rejection(long sequence, String error) {
+        Map<String, Object> rejection = new LinkedHashMap<>();
+        rejection.put("sequence", sequence);
+        rejection.put("error", error);
+        return rejection;
+    }
+
+    // Reads one line into the buffer and returns its length without the line terminator.
+    // A line longer than the buffer is skipped up to the next newline.
+    private static int readLine(InputStream in, byte[] line) throws IOException {
+        int length = 0;
+        boolean tooLong = false;
+        int b;
+        while ((b = in.read()) != -1) {
+            if (b == '\n') {
+                break;
+            }
+            if (length < line.length) {
+                line[length++] = (byte) b;
+            } else {
+                tooLong = true;
+            }
+        }
+        if (b == -1 && length == 0 && !tooLong) {
+            return END_OF_STREAM;
+        }
+        if (tooLong) {
+            return LINE_TOO_LONG;
+        }
+        while (length > 0 && (line[length - 1] == '\r' || line[length - 1] == ' ' || line[length - 1] == '\t')) {
+            length--;
+        }
+        return length;
+    }
+
+    // One non-blank line of the body as handed from the reader thread to the request thread
+    private static final class Line {
+        static final Line END = new Line(null, null, null);
+
+        final Temperature reading;
+        final String error;
+        final IOException failure;
+
+        private Line(Temperature reading, String error, IOException failure) {
+            this.reading = reading;
+            this.error = error;
+            this.failure = failure;
+        }
+
+        static Line reading(Temperature reading) {
+            return new Line(reading, null, null);
+        }
+
+        static Line rejected(String error) {
+            return new Line(null, error, null);
+        }
+
+        static Line failed(IOException failure) {
+            return new Line(null, null, failure);
+        }
+    }
+}
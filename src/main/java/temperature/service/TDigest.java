@@ -0,0 +1,157 @@
+package temperature.service;
+
+import java.util.Arrays;
+
+// Merging t-digest for approximate percentiles over ranges too large to hold in memory.
+// Values are buffered, sorted and folded into at most about 2 * compression centroids,
+// with small centroids near the tails so extreme percentiles stay accurate. Digests of
+// disjoint ranges can be merged.
+public final class TDigest {
+
+    private final double compression;
+
+    private double[] means;
+    private double[] weights;
+    private int centroids;
+
+    private final double[] buffer;
+    private int buffered;
+
+    private long count;
+    private double min = Double.POSITIVE_INFINITY;
+    private double max = Double.NEGATIVE_INFINITY;
+
+    public TDigest(double compression) {
+        this.compression = compression;
+        int capacity = (int) Math.ceil(2 * compression) + 10;
+        this.means = new double[capacity];
+        this.weights = new double[capacity];
+        this.buffer = new double[(int) Math.ceil(5 * compression)];
+    }
+
+    public void add(double value) {
+        if (buffered == buffer.length) {
+            compress();
+        }
+        buffer[buffered++] = value;
+        count++;
+        min = Math.min(min, value);
+        max = Math.max(max, value);
+    }
+
+    public void merge(TDigest other) {
+        if (other.count == 0) {
+            return;
+        }
+        compress();
+        other.compress();
+        fold(other.means, other.weights, other.centroids);
+        count += other.count;
+        min = Math.min(min, other.min);
+        max = Math.max(max, other.max);
+    }
+
+    public long size() {
+        return count;
+    }
+
+    // Estimated value at quantile q in [0, 1]; NaN when empty
+    public double quantile(double q) {
+        compress();
+        if (count == 0) {
+            return Double.NaN;
+        }
+        if (centroids == 1) {
+            return means[0];
+        }
+
+        double index = q * count;
+        if (index < weights[0] / 2) {
+            return min + (means[0] - min) * (index / (weights[0] / 2));
+        }
+
+        double cumulative = 0;
+        for (int i = 0; i < centroids - 1; i++) {
+            double center = cumulative + weights[i] / 2;
+            double nextCenter = cumulative + weights[i] + weights[i + 1] / 2;
+            if (index <= nextCenter) {
+                double fraction = (index - center) / (nextCenter - center);
+                return means[i] + (means[i + 1] - means[i]) * fraction;
+            }
+            cumulative += weights[i];
+        }
+
+        double lastHalf = weights[centroids - 1] / 2;
+        double fraction = Math.min(1.0, (index - (count - lastHalf)) / lastHalf);
+        return means[centroids - 1] + (max - means[centroids - 1]) * fraction;
+    }
+
+    private void compress() {
+        if (buffered == 0) {
+            return;
+        }
+        Arrays.sort(buffer, 0, buffered);
+        double[] unitWeights = new double[buffered];
+        Arrays.fill(unitWeights, 1.0);
+        fold(Arrays.copyOf(buffer, buffered), unitWeights, buffered);
+        buffered = 0;
+    }
+
+    // Merges sorted centroids into this digest and re-clusters everything in one sweep
+    private void fold(double[] otherMeans, double[] otherWeights, int otherCount) {
+        int total = centroids + otherCount;
+        double[] mergedMeans = new double[total];
+        double[] mergedWeights = new double[total];
+        int i = 0;
+        int j = 0;
+        for (int k = 0; k < total; k++) {
+            if (j >= otherCount || (i < centroids && means[i] <= otherMeans[j])) {
+                mergedMeans[k] = means[i];
+                mergedWeights[k] = weights[i++];
+            } else {
+                mergedMeans[k] = otherMeans[j];
+                mergedWeights[k] = otherWeights[j++];
+            }
+        }
+
+        double totalWeight = 0;
+        for (int k = 0; k < total; k++) {
+            totalWeight += mergedWeights[k];
+        }
+
+        int out = 0;
+        double weightSoFar = 0;
+        double currentMean = mergedMeans[0];
+        double currentWeight = mergedWeights[0];
+        double kLeft = scale(0, compression);
+        for (int k = 1; k < total; k++) {
+            double proposed = currentWeight + mergedWeights[k];
+            if (scale((weightSoFar + proposed) / totalWeight, compression) - kLeft <= 1) {
+                currentMean += (mergedMeans[k] - currentMean) * mergedWeights[k] / proposed;
+                currentWeight = proposed;
+            } else {
+                out = append(out, currentMean, currentWeight);
+                weightSoFar += currentWeight;
+                kLeft = scale(weightSoFar / totalWeight, compression);
+                currentMean = mergedMeans[k];
+                currentWeight = mergedWeights[k];
+            }
+        }
+        centroids = append(out, currentMean, currentWeight);
+    }
+
+    private int append(int index, double mean, double weight) {
+        if (index == means.length) {
+            means = Arrays.copyOf(means, index * 2);
+            weights = Arrays.copyOf(weights, index * 2);
+        }
+        means[index] = mean;
+        weights[index] = weight;
+        return index + 1;
+    }
+
+    // k1 scale function: centroid size shrinks towards q = 0 and q = 1
+    private static double scale(double q, double compression) {
+        return compression / (2 * Math.PI) * Math.asin(2 * Math.min(1.0, Math.max(0.0, q)) - 1);
+    }
+}
@@ -0,0 +1,109 @@
+package temperature.service;
+
+import temperature.exception.*;
+import temperature.model.*;
+import temperature.repository.*;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.jpa.domain.Specification;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+// Reduces each device's matching readings to a fixed number of points that keep the
+// visual shape of the line, spikes included. Per-device counts are read first to size
+// the buckets, then the rows are streamed once through one downsampler per device.
+@Service
+@Transactional(readOnly = true)
+public class TemperatureDownsampleService {
+
+    public static final int MAX_POINTS = 10000;
+
+    // Names accepted for metric, in ReadingAggregate metric order
+    static final String[] METRICS = { "temperatureC", "humidityPercent", "dewPoint" };
+
+    private final TemperatureRepository temperatureRepository;
+    private final TemperatureQueryService temperatureQueryService;
+    private final HotReadingStore hotReadingStore;
+
+    @Value("${temperature.export.fetch-size:1000}")
+    private int fetchSize;
+
+    public TemperatureDownsampleService(TemperatureRepository temperatureRepository,
+            TemperatureQueryService temperatureQueryService, HotReadingStore hotReadingStore) {
+        this.temperatureRepository = temperatureRepository;
+        this.temperatureQueryService = temperatureQueryService;
+        this.hotReadingStore = hotReadingStore;
+    }
+
+    public List<DownsampledSeries> downsample(TemperatureFilter filter, String metric, int points) {
+        int metricIndex = metricIndex(metric);
+        if (points < 3 || points > MAX_POINTS) {
+            throw new InvalidFilterException("points must be between 3 and " + MAX_POINTS);
+        }
+
+        List<TimeRange> timeRanges = temperatureQueryService.resolveTimeRanges(filter);
+        Map<UUID, LttbDownsampler> downsamplers = new HashMap<>();
+        Map<UUID, String> deviceNames = new HashMap<>();
+        Map<UUID, Long> counts;
+        if (hotReadingStore.covers(filter, timeRanges)) {
+            counts = hotReadingStore.countByDevice(filter, timeRanges);
+            hotReadingStore.forEachReading(filter, timeRanges, (deviceId, deviceName, timestamp, t, h, d) ->
+                    downsamplerFor(downsamplers, deviceNames, counts, points, deviceId, deviceName)
+                            .add(timestamp, metricIndex == 0 ? t : metricIndex == 1 ? h : d));
+        } else {
+            // Both queries run in the same read-only transaction and see the same rows
+            Specification<Temperature> specification = TemperatureSpecifications.matching(filter, timeRanges);
+            counts = temperatureRepository.countByDevice(specification);
+            if (counts.isEmpty()) {
+                return new ArrayList<>();
+            }
+            try {
+                temperatureRepository.forEachReading(specification, fetchSize,
+                        (id, timestamp, deviceId, deviceName, t, h, d) ->
+                                downsamplerFor(downsamplers, deviceNames, counts, points, deviceId, deviceName)
+                                        .add(timestamp, metricIndex == 0 ? t : metricIndex == 1 ? h : d));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        List<DownsampledSeries> series = new ArrayList<>(downsamplers.size());
+        for (Map.Entry<UUID, LttbDownsampler> entry : downsamplers.entrySet()) {
+            LttbDownsampler downsampler = entry.getValue();
+            downsampler.finish();
+            series.add(new DownsampledSeries(entry.getKey().toString(), deviceNames.get(entry.getKey()),
+                    counts.getOrDefault(entry.getKey(), 0L), downsampler.getTimestamps(),
+                    downsampler.getValues()));
+        }
+        series.sort((a, b) -> String.valueOf(a.getDeviceName()).compareToIgnoreCase(String.valueOf(b.getDeviceName())));
+        return series;
+    }
+
+    private static LttbDownsampler downsamplerFor(Map<UUID, LttbDownsampler> downsamplers,
+            Map<UUID, String> deviceNames, Map<UUID, Long> counts, int points, UUID deviceId, String deviceName) {
+        LttbDownsampler downsampler = downsamplers.get(deviceId);
+        if (downsampler == null) {
+            downsampler = new LttbDownsampler(counts.getOrDefault(deviceId, 0L), points);
+            downsamplers.put(deviceId, downsampler);
+            deviceNames.put(deviceId, deviceName);
+        }
+        return downsampler;
+    }
+
+    private static int metricIndex(String metric) {
+        for (int i = 0; i < METRICS.length; i++) {
+            if (METRICS[i].equalsIgnoreCase(metric)) {
+                return i;
+            }
+        }
+        throw new InvalidFilterException("metric must be one of temperatureC, humidityPercent or dewPoint");
+    }
+}
@@ -0,0 +1,138 @@
+package temperature.service;
+
+import temperature.exception.*;
+import temperature.model.*;
+import temperature.repository.*;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.jpa.domain.Specification;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+
+// Writes matching readings straight from the JDBC cursor to the response, so heap use
+// does not depend on the number of rows exported
+@Service
+public class TemperatureExportService {
+
+    public enum Format {
+        CSV("text/csv", "csv"),
+        NDJSON("application/x-ndjson", "ndjson");
+
+        private final String contentType;
+        private final String extension;
+
+        Format(String contentType, String extension) {
+            this.contentType = contentType;
+            this.extension = extension;
+        }
+
+        public String getContentType() {
+            return contentType;
+        }
+
+        public String getExtension() {
+            return extension;
+        }
+
+        public static Format of(String format) {
+            for (Format candidate : values()) {
+                if (candidate.extension.equalsIgnoreCase(format)) {
+                    return candidate;
+                }
+            }
+            throw new InvalidFilterException("Unsupported export format: " + format);
+        }
+    }
+
+    private static final String CSV_HEADER = "id,timestamp,deviceId,deviceName,temperatureC,humidityPercent,dewPoint";
+
+    private final TemperatureRepository temperatureRepository;
+    private final ObjectMapper objectMapper;
+
+    // Rows per round trip; on MySQL only with useCursorFetch=true, otherwise rows stream one by one
+    @Value("${temperature.export.fetch-size:1000}")
+    private int fetchSize;
+
+    public TemperatureExportService(TemperatureRepository temperatureRepository, ObjectMapper objectMapper) {
+        this.temperatureRepository = temperatureRepository;
+        this.objectMapper = objectMapper;
+    }
+
+    @Transactional(readOnly = true)
+    public void export(Specification<Temperature> specification, Format format, OutputStream out)
+            throws IOException {
+        if (format == Format.CSV) {
+            exportCsv(specification, out);
+        } else {
+            exportNdjson(specification, out);
+        }
+    }
+
+    private void exportCsv(Specification<Temperature> specification, OutputStream out) throws IOException {
+        Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+        writer.write(CSV_HEADER);
+        writer.write('\n');
+        temperatureRepository.forEachReading(specification, fetchSize,
+                (id, timestamp, deviceId, deviceName, temperatureC, humidityPercent, dewPoint) -> {
+                    writer.write(id.toString());
+                    writer.write(',');
+                    writer.write(Long.toString(timestamp));
+                    writer.write(',');
+                    writer.write(deviceId.toString());
+                    writer.write(',');
+                    writeCsvField(writer, deviceName);
+                    writer.write(',');
+                    writer.write(Double.toString(temperatureC));
+                    writer.write(',');
+                    writer.write(Double.toString(humidityPercent));
+                    writer.write(',');
+                    writer.write(Double.toString(dewPoint));
+                    writer.write('\n');
+                });
+        writer.flush();
+    }
+
+    private void exportNdjson(Specification<Temperature> specification, OutputStream out) throws IOException {
+        JsonGenerator generator = objectMapper.getFactory().createGenerator(out, JsonEncoding.UTF8);
+        // One object per line instead of the default space between root values
+        generator.setRootValueSeparator(null);
+        temperatureRepository.forEachReading(specification, fetchSize,
+                (id, timestamp, deviceId, deviceName, temperatureC, humidityPercent, dewPoint) -> {
+                    generator.writeStartObject();
+                    generator.writeStringField("id", id.toString());
+                    generator.writeNumberField("timestamp", timestamp);
+                    generator.writeStringField("deviceId", deviceId.toString());
+                    generator.writeStringField("deviceName", deviceName);
+                    generator.writeNumberField("temperatureC", temperatureC);
+                    generator.writeNumberField("humidityPercent", humidityPercent);
+                    generator.writeNumberField("dewPoint", dewPoint);
+                    generator.writeEndObject();
+                    generator.writeRaw('\n');
+                });
+        generator.flush();
+    }
+
+    private static void writeCsvField(Writer writer, String value) throws IOException {
+        if (value == null) {
+            return;
+        }
+        if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0
+                && value.indexOf('\r') < 0) {
+            writer.write(value);
+            return;
+        }
+        writer.write('"');
+        writer.write(value.replace("\"", "\"\""));
+        writer.write('"');
+    }
+}
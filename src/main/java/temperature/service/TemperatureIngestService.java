@@ -0,0 +1,354 @@
+package temperature.service;
+
+import temperature.exception.*;
+import temperature.model.*;
+import temperature.repository.*;
+
+import org.hibernate.Session;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.DeadlockLoserDataAccessException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+
+import java.nio.ByteBuffer;
+import java.sql.SQLIntegrityConstraintViolationException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.UUID;
+
+// Devices are resolved, and registered when new, before the transaction that stores the
+// readings opens, so a request never holds two pooled connections at once.
+@Service
+public class TemperatureIngestService {
+
+    private static final int MAX_DEADLOCK_ATTEMPTS = 3;
+
+    private final TemperatureRepository temperatureRepository;
+    private final DeviceRepository deviceRepository;
+    private final DeviceRegistry deviceRegistry;
+    private final ReadingDeduplicator readingDeduplicator;
+    private final RollupService rollupService;
+    private final ApplicationEventPublisher eventPublisher;
+    private final TransactionTemplate transactionTemplate;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Value("${temperature.ingest.batch.max-size:1000}")
+    private int maxBatchSize;
+
+    @Value("${temperature.ingest.batch.jdbc-batch-size:50}")
+    private int jdbcBatchSize;
+
+    public TemperatureIngestService(TemperatureRepository temperatureRepository, DeviceRepository deviceRepository,
+            DeviceRegistry deviceRegistry, ReadingDeduplicator readingDeduplicator, RollupService rollupService,
+            ApplicationEventPublisher eventPublisher, PlatformTransactionManager transactionManager) {
+        this.temperatureRepository = temperatureRepository;
+        this.deviceRepository = deviceRepository;
+        this.deviceRegistry = deviceRegistry;
+        this.readingDeduplicator = readingDeduplicator;
+        this.rollupService = rollupService;
+        this.eventPublisher = eventPublisher;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    public Temperature ingest(String apiKey, Temperature temperatureRequest) {
+        // Check if device is provided in the request
+        if (temperatureRequest.getDevice() == null) {
+            throw new IllegalArgumentException("Device is required in the request body");
+        }
+
+        // Resolve the device from memory, writing only when it is new or moved
+        Device device = deviceRegistry.resolve(apiKey, temperatureRequest.getDevice().getDeviceName(),
+                temperatureRequest.getDevice().getLocation());
+
+        Temperature reading = newReading(temperatureRequest, device, System.currentTimeMillis());
+        try {
+            return transactionTemplate.execute(status -> store(reading));
+        } catch (RuntimeException e) {
+            // Another instance stored the same retried reading first
+            UUID existing = reading.getSequence() != null && isUniqueViolation(e)
+                    ? readingDeduplicator.findCommitted(device.getId(), reading.getBoot(), reading.getSequence())
+                    : null;
+            if (existing == null) {
+                throw e;
+            }
+            return temperatureRepository.findById(existing).orElseThrow(() -> e);
+        }
+    }
+
+    private Temperature store(Temperature reading) {
+        if (reading.getSequence() == null) {
+            Temperature saved = temperatureRepository.save(reading);
+            rollupService.record(Collections.singletonList(saved));
+            eventPublisher.publishEvent(new ReadingsStoredEvent(Collections.singletonList(saved)));
+            return saved;
+        }
+
+        // A retried reading gets the originally stored one back
+        UUID existing = readingDeduplicator.storeOnce(reading.getDevice().getId(), reading.getBoot(),
+                reading.getSequence(), () -> temperatureRepository.save(reading).getId());
+        if (existing == null) {
+            rollupService.record(Collections.singletonList(reading));
+            eventPublisher.publishEvent(new ReadingsStoredEvent(Collections.singletonList(reading)));
+            return reading;
+        }
+        return temperatureRepository.findById(existing).orElseGet(() -> {
+            // Still being committed by a concurrent request
+            reading.setId(existing);
+            return reading;
+        });
+    }
+
+    // Stores a batch of readings for one or more devices in a single transaction. Rows
+    // that fail validation are reported and skipped; the rest are written with JDBC
+    // batch inserts after resolving every device of the batch through the registry.
+    public List<BatchIngestResult> ingestBatch(String apiKey, List<Temperature> temperatureRequests) {
+        return ingestBatch(apiKey, temperatureRequests, null);
+    }
+
+    // Same as ingestBatch, stamping each reading with the time it was received instead
+    // of the time it is written; used by the write-behind queue
+    public List<BatchIngestResult> ingestBatch(String apiKey, List<Temperature> temperatureRequests,
+            long[] receivedAt) {
+        if (temperatureRequests.size() > maxBatchSize) {
+            throw new InvalidReadingException("A batch may contain at most " + maxBatchSize + " readings");
+        }
+
+        BatchIngestResult[] results = new BatchIngestResult[temperatureRequests.size()];
+
+        // Validate the rows and collect the latest device details per device name
+        Map<String, Device> requestedDevices = new LinkedHashMap<>();
+        for (int i = 0; i < temperatureRequests.size(); i++) {
+            Temperature temperatureRequest = temperatureRequests.get(i);
+            String error = validate(temperatureRequest);
+            if (error != null) {
+                results[i] = BatchIngestResult.rejected(i, error);
+                continue;
+            }
+
+            Device requested = temperatureRequest.getDevice();
+            Device previous = requestedDevices.get(requested.getDeviceName());
+            if (previous == null || requested.getLocation() != null) {
+                requestedDevices.put(requested.getDeviceName(), requested);
+            }
+        }
+
+        Map<String, Device> devices = deviceRegistry.resolveAll(apiKey, requestedDevices);
+        try {
+            return transactionTemplate.execute(
+                    status -> store(temperatureRequests, results.clone(), devices, receivedAt));
+        } catch (RuntimeException e) {
+            // Readings another instance stored first are reported as duplicates on the retry
+            if (!isUniqueViolation(e) || !findCommitted(temperatureRequests, results, devices)) {
+                throw e;
+            }
+            return transactionTemplate.execute(
+                    status -> store(temperatureRequests, results.clone(), devices, receivedAt));
+        }
+    }
+
+    // Looks up the sequenced readings of a batch the unique index rejected; true if any
+    // of them turned out to be stored already
+    private boolean findCommitted(List<Temperature> temperatureRequests, BatchIngestResult[] results,
+            Map<String, Device> devices) {
+        boolean found = false;
+        for (int i = 0; i < temperatureRequests.size(); i++) {
+            Temperature temperatureRequest = temperatureRequests.get(i);
+            if (results[i] != null || temperatureRequest.getSequence() == null) {
+                continue;
+            }
+            Device device = devices.get(temperatureRequest.getDevice().getDeviceName());
+            if (readingDeduplicator.findCommitted(device.getId(), boot(temperatureRequest),
+                    temperatureRequest.getSequence()) != null) {
+                found = true;
+            }
+        }
+        return found;
+    }
+
+    // The violation surfaces translated at commit but as the raw JDBC error from a flush
+    private static boolean isUniqueViolation(RuntimeException e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof DataIntegrityViolationException
+                    || cause instanceof SQLIntegrityConstraintViolationException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private List<BatchIngestResult> store(List<Temperature> temperatureRequests, BatchIngestResult[] results,
+            Map<String, Device> devices, long[] receivedAt) {
+        Session session = entityManager.unwrap(Session.class);
+        session.setJdbcBatchSize(jdbcBatchSize);
+
+        long now = System.currentTimeMillis();
+        List<Temperature> stored = new ArrayList<>(temperatureRequests.size());
+        int pending = 0;
+        for (int i = 0; i < temperatureRequests.size(); i++) {
+            if (results[i] != null) {
+                continue;
+            }
+            Temperature temperatureRequest = temperatureRequests.get(i);
+            Temperature reading = newReading(temperatureRequest, devices.get(
+                    temperatureRequest.getDevice().getDeviceName()), receivedAt != null ? receivedAt[i] : now);
+            if (reading.getSequence() != null) {
+                UUID existing = readingDeduplicator.storeOnce(reading.getDevice().getId(), reading.getBoot(),
+                        reading.getSequence(), () -> {
+                            entityManager.persist(reading);
+                            return reading.getId();
+                        });
+                if (existing != null) {
+                    results[i] = BatchIngestResult.duplicate(i, existing.toString());
+                    continue;
+                }
+            } else {
+                entityManager.persist(reading);
+            }
+            results[i] = BatchIngestResult.created(i, reading.getId().toString());
+            stored.add(reading);
+
+            // Flush each full JDBC batch and keep the persistence context small
+            if (++pending % jdbcBatchSize == 0) {
+                entityManager.flush();
+                entityManager.clear();
+            }
+        }
+        entityManager.flush();
+        rollupService.record(stored);
+        if (!stored.isEmpty()) {
+            eventPublisher.publishEvent(new ReadingsStoredEvent(stored));
+        }
+
+        List<BatchIngestResult> resultList = new ArrayList<>(results.length);
+        for (BatchIngestResult result : results) {
+            resultList.add(result);
+        }
+        return resultList;
+    }
+
+    // Deletes a reading and rebuilds the rollup buckets it was counted in. A deadlock
+    // rolls the whole transaction back, so the delete is retried from the start.
+    public boolean delete(UUID id) {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return transactionTemplate.execute(status -> deleteReading(id));
+            } catch (DeadlockLoserDataAccessException e) {
+                if (attempt >= MAX_DEADLOCK_ATTEMPTS) {
+                    throw e;
+                }
+            }
+        }
+    }
+
+    private boolean deleteReading(UUID id) {
+        Optional<Temperature> reading = temperatureRepository.findById(id);
+        if (!reading.isPresent()) {
+            return false;
+        }
+        temperatureRepository.delete(reading.get());
+        temperatureRepository.flush();
+        rollupService.remove(reading.get());
+        eventPublisher.publishEvent(new ReadingDeletedEvent(reading.get()));
+        return true;
+    }
+
+    // Stores binary frames; see ReadingFrameCodec for the layout. Frames carry no sequence
+    // or device details to validate, so the decoded readings are persisted as they are.
+    public List<BatchIngestResult> ingestFrames(String apiKey, ByteBuffer body) {
+        List<Temperature> readings = decodeFrames(apiKey, body);
+        return transactionTemplate.execute(status -> storeFrames(readings));
+    }
+
+    private List<BatchIngestResult> storeFrames(List<Temperature> readings) {
+        Session session = entityManager.unwrap(Session.class);
+        session.setJdbcBatchSize(jdbcBatchSize);
+
+        List<BatchIngestResult> results = new ArrayList<>(readings.size());
+        for (int i = 0; i < readings.size(); i++) {
+            Temperature reading = readings.get(i);
+            entityManager.persist(reading);
+            results.add(BatchIngestResult.created(i, reading.getId().toString()));
+
+            // Flush each full JDBC batch and keep the persistence context small
+            if ((i + 1) % jdbcBatchSize == 0) {
+                entityManager.flush();
+                entityManager.clear();
+            }
+        }
+        entityManager.flush();
+        rollupService.record(readings);
+        eventPublisher.publishEvent(new ReadingsStoredEvent(readings));
+        return results;
+    }
+
+    // Decodes binary frames into the readings to store, bound to their registered devices,
+    // with the device timestamp or, when the frame carries 0, the receive time
+    public List<Temperature> decodeFrames(String apiKey, ByteBuffer body) {
+        int frames = ReadingFrameCodec.frameCount(body);
+        if (frames > maxBatchSize) {
+            throw new InvalidReadingException("A request may contain at most " + maxBatchSize + " frames");
+        }
+
+        long now = System.currentTimeMillis();
+        List<Temperature> readings = new ArrayList<>(frames);
+        ReadingFrameCodec.decode(body, (index, deviceId, timestamp, temperatureC, humidityPercent) -> {
+            Device device = deviceRegistry.findById(apiKey, deviceId)
+                    .orElseThrow(() -> new DeviceNotFoundException(deviceId.toString()));
+            Temperature reading = new Temperature(temperatureC, humidityPercent, timestamp != 0 ? timestamp : now,
+                    device);
+            reading.calculateAndSetDewPoint();
+            readings.add(reading);
+        });
+        return readings;
+    }
+
+    static String validate(Temperature temperatureRequest) {
+        if (temperatureRequest == null) {
+            return "Reading is empty";
+        }
+        if (temperatureRequest.getDevice() == null || temperatureRequest.getDevice().getDeviceName() == null
+                || temperatureRequest.getDevice().getDeviceName().isEmpty()) {
+            return "Device with a deviceName is required";
+        }
+        if (!Double.isFinite(temperatureRequest.getTemperatureC())
+                || !Double.isFinite(temperatureRequest.getHumidityPercent())) {
+            return "temperatureC and humidityPercent must be finite numbers";
+        }
+        if (temperatureRequest.getSequence() != null && temperatureRequest.getSequence() < 0) {
+            return "sequence must not be negative";
+        }
+        return null;
+    }
+
+    static Temperature newReading(Temperature temperatureRequest, Device device, long timestamp) {
+        Temperature reading = new Temperature(temperatureRequest.getTemperatureC(),
+                temperatureRequest.getHumidityPercent(), timestamp, device);
+        reading.setSequence(temperatureRequest.getSequence());
+        if (temperatureRequest.getSequence() != null) {
+            reading.setBoot(boot(temperatureRequest));
+        }
+
+        // Calculate and set the dew point
+        reading.calculateAndSetDewPoint();
+        return reading;
+    }
+
+    // Sequenced readings of devices that do not report boots all count in boot 0
+    private static long boot(Temperature temperatureRequest) {
+        return temperatureRequest.getBoot() != null ? temperatureRequest.getBoot() : 0L;
+    }
+}
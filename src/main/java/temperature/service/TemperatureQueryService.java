@@ -0,0 +1,124 @@
+package temperature.service;
+
+import temperature.exception.*;
+import temperature.model.*;
+import temperature.repository.*;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.domain.Specification;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.DateTimeException;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+
+@Service
+@Transactional(readOnly = true)
+public class TemperatureQueryService {
+
+    public static final int MAX_PAGE_SIZE = 1000;
+
+    private final TemperatureRepository temperatureRepository;
+
+    // Zone used for year/month/day/hour when the request does not pass tz
+    @Value("${temperature.query.default-time-zone:UTC}")
+    private String defaultTimeZone;
+
+    public TemperatureQueryService(TemperatureRepository temperatureRepository) {
+        this.temperatureRepository = temperatureRepository;
+    }
+
+    // Returns the readings matching the filter, oldest first
+    public List<Temperature> findAll(TemperatureFilter filter) {
+        return temperatureRepository.findAll(specification(filter), Sort.by(Sort.Direction.ASC, "timestamp"));
+    }
+
+    // Returns one page of matching readings after (or, for a backward cursor, before) the
+    // given cursor; each page is a single index seek no matter how deep it is
+    public TemperaturePage findPage(TemperatureFilter filter, String cursor, int size) {
+        KeysetCursor position = pagePosition(cursor, size);
+
+        // Fetch one extra row to learn whether another page follows in the scan direction
+        List<Temperature> rows = temperatureRepository.findPage(specification(filter), position, size + 1);
+        boolean more = rows.size() > size;
+        List<Temperature> temperatures = new ArrayList<>(more ? rows.subList(0, size) : rows);
+
+        boolean backward = position != null && position.isBackward();
+        if (backward) {
+            Collections.reverse(temperatures);
+        }
+        if (temperatures.isEmpty()) {
+            return new TemperaturePage(temperatures, null, null);
+        }
+
+        boolean hasNext = backward || more;
+        boolean hasPrevious = backward ? more : position != null;
+        return new TemperaturePage(temperatures,
+                hasNext ? KeysetCursor.after(temperatures.get(temperatures.size() - 1)).encode() : null,
+                hasPrevious ? KeysetCursor.before(temperatures.get(0)).encode() : null);
+    }
+
+    // Checks the page size and decodes the cursor; null for the first page
+    static KeysetCursor pagePosition(String cursor, int size) {
+        if (size < 1 || size > MAX_PAGE_SIZE) {
+            throw new InvalidFilterException("size must be between 1 and " + MAX_PAGE_SIZE);
+        }
+        KeysetCursor position = KeysetCursor.decode(cursor);
+        if (cursor != null && position == null) {
+            throw new InvalidFilterException("Invalid cursor: " + cursor);
+        }
+        return position;
+    }
+
+    public Specification<Temperature> specification(TemperatureFilter filter) {
+        return TemperatureSpecifications.matching(filter, resolveTimeRanges(filter));
+    }
+
+    // Combines startTimestamp/endTimestamp (both inclusive) and the calendar fields into
+    // [start, end) ranges; null means the filter places no bound on the timestamp
+    public List<TimeRange> resolveTimeRanges(TemperatureFilter filter) {
+        long lower = filter.getStartTimestamp() != null ? filter.getStartTimestamp() : Long.MIN_VALUE;
+        long upper = filter.getEndTimestamp() != null ? inclusiveToExclusive(filter.getEndTimestamp())
+                : Long.MAX_VALUE;
+
+        if (!filter.hasCalendarFields()) {
+            if (filter.getStartTimestamp() == null && filter.getEndTimestamp() == null) {
+                return null;
+            }
+            return Collections.singletonList(new TimeRange(lower, upper));
+        }
+
+        // Without a year or explicit range the expansion is bounded by the tenant's own data
+        if (filter.getYear() == null && (filter.getStartTimestamp() == null || filter.getEndTimestamp() == null)) {
+            Optional<Temperature> first = temperatureRepository
+                    .findFirstByApiKeyOrderByTimestampAsc(filter.getApiKey());
+            Optional<Temperature> last = temperatureRepository
+                    .findFirstByApiKeyOrderByTimestampDesc(filter.getApiKey());
+            if (!first.isPresent() || !last.isPresent()) {
+                return Collections.emptyList();
+            }
+            lower = Math.max(lower, first.get().getTimestamp());
+            upper = Math.min(upper, inclusiveToExclusive(last.get().getTimestamp()));
+        }
+
+        return CalendarFilterCompiler.compile(filter.getYear(), filter.getMonth(), filter.getDay(), filter.getHour(),
+                resolveZone(filter.getTimeZone()), new TimeRange(lower, upper));
+    }
+
+    public ZoneId resolveZone(String timeZone) {
+        try {
+            return ZoneId.of(timeZone != null ? timeZone : defaultTimeZone);
+        } catch (DateTimeException e) {
+            throw new InvalidFilterException("Unknown time zone: " + timeZone);
+        }
+    }
+
+    private static long inclusiveToExclusive(long timestamp) {
+        return timestamp == Long.MAX_VALUE ? timestamp : timestamp + 1;
+    }
+}
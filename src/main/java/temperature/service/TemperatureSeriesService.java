@@ -0,0 +1,309 @@
+package temperature.service;
+
+import temperature.exception.*;
+import temperature.model.*;
+import temperature.repository.*;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+// Groups the matching readings into fixed intervals per device and returns count, mean,
+// min and max per non-empty bucket. Bucket boundaries follow local midnight in the
+// requested zone, so a 1d bucket is a calendar day even across DST changes. Recent ranges
+// come from the hot tier; otherwise whole rollup buckets are read where they line up with
+// the boundaries and only the edges of each range come from raw rows, so the work and
+// the response grow with the number of buckets rather than the number of readings.
+@Service
+@Transactional(readOnly = true)
+public class TemperatureSeriesService {
+
+    static final int MAX_BUCKETS = 10000;
+
+    private static final Pattern INTERVAL = Pattern.compile("(\\d{1,4})([mhd])");
+
+    private final TemperatureRepository temperatureRepository;
+    private final TemperatureRollupRepository rollupRepository;
+    private final DeviceRepository deviceRepository;
+    private final TemperatureQueryService temperatureQueryService;
+    private final RollupService rollupService;
+    private final HotReadingStore hotReadingStore;
+
+    @Value("${temperature.export.fetch-size:1000}")
+    private int fetchSize;
+
+    public TemperatureSeriesService(TemperatureRepository temperatureRepository,
+            TemperatureRollupRepository rollupRepository, DeviceRepository deviceRepository,
+            TemperatureQueryService temperatureQueryService, RollupService rollupService,
+            HotReadingStore hotReadingStore) {
+        this.temperatureRepository = temperatureRepository;
+        this.rollupRepository = rollupRepository;
+        this.deviceRepository = deviceRepository;
+        this.temperatureQueryService = temperatureQueryService;
+        this.rollupService = rollupService;
+        this.hotReadingStore = hotReadingStore;
+    }
+
+    // interval is a number followed by m, h or d, e.g. 5m, 1h or 1d
+    public List<DeviceSeries> series(TemperatureFilter filter, String interval) {
+        Matcher matcher = INTERVAL.matcher(interval != null ? interval.trim() : "");
+        if (!matcher.matches() || Integer.parseInt(matcher.group(1)) == 0) {
+            throw new InvalidFilterException("Interval must be a positive number followed by m, h or d");
+        }
+        int amount = Integer.parseInt(matcher.group(1));
+        String unit = matcher.group(2);
+        long intervalMs = amount * ("m".equals(unit) ? RollupService.MINUTE : RollupService.HOUR);
+        if (!"d".equals(unit) && RollupService.DAY % intervalMs != 0) {
+            throw new InvalidFilterException("Intervals below a day must divide a day evenly");
+        }
+        ZoneId zone = temperatureQueryService.resolveZone(filter.getTimeZone());
+
+        UUID deviceId = null;
+        if (filter.getDeviceId() != null) {
+            deviceId = TimeOrderedUuid.parse(filter.getDeviceId());
+            if (deviceId == null) {
+                return new ArrayList<>();
+            }
+        }
+
+        List<TimeRange> ranges = boundedRanges(filter);
+        if (ranges.isEmpty()) {
+            return new ArrayList<>();
+        }
+        long[] boundaries = "d".equals(unit)
+                ? dayBoundaries(ranges.get(0).getStart(), ranges.get(ranges.size() - 1).getEnd(), amount, zone)
+                : intradayBoundaries(ranges.get(0).getStart(), ranges.get(ranges.size() - 1).getEnd(), intervalMs,
+                        zone);
+
+        Map<UUID, ReadingAggregate[]> buckets = new HashMap<>();
+        Map<UUID, String> deviceNames = new HashMap<>();
+        List<TimeRange> rawRanges = new ArrayList<>();
+        long rollupMs = rollupService.isEnabled() ? rollupSize(boundaries) : 0;
+        if (hotReadingStore.covers(filter, ranges)) {
+            hotReadingStore.forEachReading(filter, ranges, (device, deviceName, timestamp, t, h, d) -> {
+                ReadingAggregate bucket = bucketFor(buckets, boundaries, device, timestamp);
+                if (bucket != null) {
+                    bucket.add(t, h, d);
+                    deviceNames.put(device, deviceName);
+                }
+            });
+        } else if (rollupMs == 0) {
+            rawRanges.addAll(ranges);
+        } else {
+            Map<Long, List<TimeRange>> rollupRanges = new HashMap<>();
+            for (TimeRange range : ranges) {
+                // Daily ranges can only use buckets that tile their hour
+                long bucketMs = range.isDaily() ? RollupService.dailyBucketMs(range, rollupMs) : rollupMs;
+                long alignedStart = bucketMs > 0 ? RollupService.ceil(range.getStart(), bucketMs) : range.getEnd();
+                long alignedEnd = bucketMs > 0 ? RollupService.floor(range.getEnd(), bucketMs) : range.getEnd();
+                if (alignedStart >= alignedEnd) {
+                    rawRanges.add(range);
+                    continue;
+                }
+                rollupRanges.computeIfAbsent(bucketMs, size -> new ArrayList<>())
+                        .add(range.withBounds(alignedStart, alignedEnd));
+                addIfNotEmpty(rawRanges, range, range.getStart(), alignedStart);
+                addIfNotEmpty(rawRanges, range, alignedEnd, range.getEnd());
+            }
+            for (Map.Entry<Long, List<TimeRange>> entry : rollupRanges.entrySet()) {
+                rollupRepository.forEachBucket(filter, deviceId, entry.getKey(), entry.getValue(),
+                        (device, bucketStart, aggregate) -> {
+                            ReadingAggregate bucket = bucketFor(buckets, boundaries, device, bucketStart);
+                            if (bucket != null) {
+                                bucket.merge(aggregate);
+                            }
+                        });
+            }
+        }
+
+        if (!rawRanges.isEmpty()) {
+            try {
+                temperatureRepository.forEachReading(TemperatureSpecifications.matching(filter, rawRanges), fetchSize,
+                        (id, timestamp, device, deviceName, t, h, d) -> {
+                            ReadingAggregate bucket = bucketFor(buckets, boundaries, device, timestamp);
+                            if (bucket != null) {
+                                bucket.add(t, h, d);
+                                deviceNames.put(device, deviceName);
+                            }
+                        });
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        List<UUID> unnamed = new ArrayList<>(buckets.keySet());
+        unnamed.removeAll(deviceNames.keySet());
+        if (!unnamed.isEmpty()) {
+            for (Device device : deviceRepository.findAllById(unnamed)) {
+                deviceNames.put(device.getId(), device.getDeviceName());
+            }
+        }
+
+        List<DeviceSeries> series = new ArrayList<>(buckets.size());
+        for (Map.Entry<UUID, ReadingAggregate[]> entry : buckets.entrySet()) {
+            List<SeriesPoint> points = new ArrayList<>();
+            ReadingAggregate[] aggregates = entry.getValue();
+            for (int i = 0; i < aggregates.length; i++) {
+                if (aggregates[i] != null) {
+                    points.add(new SeriesPoint(boundaries[i], boundaries[i + 1], aggregates[i]));
+                }
+            }
+            series.add(new DeviceSeries(entry.getKey().toString(), deviceNames.get(entry.getKey()), points));
+        }
+        series.sort((a, b) -> String.valueOf(a.getDeviceName()).compareToIgnoreCase(String.valueOf(b.getDeviceName())));
+        return series;
+    }
+
+    // The filter's time ranges with open ends closed by the tenant's first and last reading
+    private List<TimeRange> boundedRanges(TemperatureFilter filter) {
+        List<TimeRange> ranges = temperatureQueryService.resolveTimeRanges(filter);
+        if (ranges != null && ranges.isEmpty()) {
+            return ranges;
+        }
+        long start = ranges != null ? ranges.get(0).getStart() : Long.MIN_VALUE;
+        long end = ranges != null ? ranges.get(ranges.size() - 1).getEnd() : Long.MAX_VALUE;
+        if (start != Long.MIN_VALUE && end != Long.MAX_VALUE) {
+            return ranges;
+        }
+
+        Optional<Temperature> first = temperatureRepository.findFirstByApiKeyOrderByTimestampAsc(filter.getApiKey());
+        Optional<Temperature> last = temperatureRepository.findFirstByApiKeyOrderByTimestampDesc(filter.getApiKey());
+        if (!first.isPresent() || !last.isPresent()) {
+            return new ArrayList<>();
+        }
+        if (ranges == null) {
+            ranges = new ArrayList<>();
+            ranges.add(new TimeRange(Long.MIN_VALUE, Long.MAX_VALUE));
+        }
+
+        List<TimeRange> bounded = new ArrayList<>(ranges.size());
+        for (TimeRange range : ranges) {
+            long boundedStart = Math.max(range.getStart(), first.get().getTimestamp());
+            long boundedEnd = Math.min(range.getEnd(), last.get().getTimestamp() + 1);
+            addIfNotEmpty(bounded, range, boundedStart, boundedEnd);
+        }
+        return bounded;
+    }
+
+    // Boundaries every days local days, starting at the local midnight on or before start
+    static long[] dayBoundaries(long start, long end, int days, ZoneId zone) {
+        BoundaryBuilder builder = new BoundaryBuilder(start, end);
+        LocalDate date = Instant.ofEpochMilli(start).atZone(zone).toLocalDate();
+        while (!builder.isComplete()) {
+            builder.offer(date.atStartOfDay(zone).toInstant().toEpochMilli());
+            date = date.plusDays(days);
+        }
+        return builder.toArray();
+    }
+
+    // Boundaries every intervalMs from each local midnight; a day shortened or lengthened
+    // by a DST change ends with a shorter or longer last bucket
+    static long[] intradayBoundaries(long start, long end, long intervalMs, ZoneId zone) {
+        BoundaryBuilder builder = new BoundaryBuilder(start, end);
+        LocalDate date = Instant.ofEpochMilli(start).atZone(zone).toLocalDate();
+        while (!builder.isComplete()) {
+            long dayStart = date.atStartOfDay(zone).toInstant().toEpochMilli();
+            date = date.plusDays(1);
+            long nextDayStart = date.atStartOfDay(zone).toInstant().toEpochMilli();
+            for (long boundary = dayStart; boundary < nextDayStart && !builder.isComplete(); boundary += intervalMs) {
+                builder.offer(boundary);
+            }
+        }
+        return builder.toArray();
+    }
+
+    // The coarsest rollup whose buckets each fall inside a single series bucket, or 0 when
+    // even minutes do not line up, e.g. in a zone with a seconds offset
+    static long rollupSize(long[] boundaries) {
+        for (long bucketMs : RollupService.BUCKET_SIZES) {
+            boolean aligned = true;
+            for (long boundary : boundaries) {
+                if (Math.floorMod(boundary, bucketMs) != 0) {
+                    aligned = false;
+                    break;
+                }
+            }
+            if (aligned) {
+                return bucketMs;
+            }
+        }
+        return 0;
+    }
+
+    private static ReadingAggregate bucketFor(Map<UUID, ReadingAggregate[]> buckets, long[] boundaries, UUID deviceId,
+            long timestamp) {
+        int index = Arrays.binarySearch(boundaries, timestamp);
+        if (index < 0) {
+            index = -index - 2;
+        }
+        if (index < 0 || index >= boundaries.length - 1) {
+            return null;
+        }
+        ReadingAggregate[] aggregates = buckets.computeIfAbsent(deviceId,
+                id -> new ReadingAggregate[boundaries.length - 1]);
+        if (aggregates[index] == null) {
+            aggregates[index] = new ReadingAggregate();
+        }
+        return aggregates[index];
+    }
+
+    // Adds the part of range within [start, end), if any, keeping its hours of the day
+    private static void addIfNotEmpty(List<TimeRange> ranges, TimeRange range, long start, long end) {
+        if (start < end) {
+            ranges.add(range.withBounds(start, end));
+        }
+    }
+
+    // Collects ascending boundaries from the last one at or before start through the first
+    // one at or after end
+    private static final class BoundaryBuilder {
+        private final long start;
+        private final long end;
+        private long[] boundaries = new long[16];
+        private int size;
+
+        BoundaryBuilder(long start, long end) {
+            this.start = start;
+            this.end = end;
+        }
+
+        void offer(long boundary) {
+            if (boundary <= start) {
+                boundaries[0] = boundary;
+                size = 1;
+                return;
+            }
+            if (size > MAX_BUCKETS) {
+                throw new InvalidFilterException("The series would have more than " + MAX_BUCKETS
+                        + " buckets; use a longer interval or a shorter time range");
+            }
+            if (size == boundaries.length) {
+                boundaries = Arrays.copyOf(boundaries, size * 2);
+            }
+            boundaries[size++] = boundary;
+        }
+
+        boolean isComplete() {
+            return size > 1 && boundaries[size - 1] >= end;
+        }
+
+        long[] toArray() {
+            return Arrays.copyOf(boundaries, size);
+        }
+    }
+}
@@ -0,0 +1,161 @@
+package temperature.service;
+
+import temperature.exception.*;
+import temperature.model.*;
+import temperature.repository.*;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.jpa.domain.Specification;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.List;
+
+// Computes count, mean, min, max, variance and percentiles of all three metrics with a
+// single scan. Ranges inside the hot tier are answered from memory. Otherwise, without
+// percentiles the answer comes from the rollup buckets plus the raw rows at the range
+// edges; with percentiles the numeric columns are loaded once and answered by selection,
+// or streamed through t-digests when an approximation is acceptable.
+@Service
+@Transactional(readOnly = true)
+public class TemperatureStatsService {
+
+    private final TemperatureRepository temperatureRepository;
+    private final TemperatureQueryService temperatureQueryService;
+    private final RollupService rollupService;
+    private final HotReadingStore hotReadingStore;
+
+    // Larger values keep more centroids per digest and give more accurate approximations
+    @Value("${temperature.stats.digest-compression:200}")
+    private double compression;
+
+    @Value("${temperature.export.fetch-size:1000}")
+    private int fetchSize;
+
+    public TemperatureStatsService(TemperatureRepository temperatureRepository,
+            TemperatureQueryService temperatureQueryService, RollupService rollupService,
+            HotReadingStore hotReadingStore) {
+        this.temperatureRepository = temperatureRepository;
+        this.temperatureQueryService = temperatureQueryService;
+        this.rollupService = rollupService;
+        this.hotReadingStore = hotReadingStore;
+    }
+
+    public ReadingStats stats(TemperatureFilter filter, double... percentiles) {
+        return stats(filter, false, percentiles);
+    }
+
+    // With approximate set the rows are streamed through t-digests instead of being
+    // loaded, so memory stays constant however many readings match
+    public ReadingStats stats(TemperatureFilter filter, boolean approximate, double... percentiles) {
+        for (double p : percentiles) {
+            if (!(p >= 0 && p <= 100)) {
+                throw new InvalidFilterException("Percentiles must be between 0 and 100");
+            }
+        }
+
+        List<TimeRange> timeRanges = temperatureQueryService.resolveTimeRanges(filter);
+        boolean recent = hotReadingStore.covers(filter, timeRanges);
+        if (percentiles.length == 0) {
+            if (!recent) {
+                return rollupService.aggregate(filter, timeRanges).toStats();
+            }
+            ReadingAggregate aggregate = new ReadingAggregate();
+            hotReadingStore.forEachReading(filter, timeRanges,
+                    (deviceId, deviceName, timestamp, t, h, d) -> aggregate.add(t, h, d));
+            return aggregate.toStats();
+        }
+
+        ReadingColumns readings;
+        if (recent) {
+            // Already in memory, so exact percentiles cost no more than approximate ones
+            ReadingColumns hotReadings = new ReadingColumns();
+            hotReadingStore.forEachReading(filter, timeRanges,
+                    (deviceId, deviceName, timestamp, t, h, d) -> hotReadings.add(timestamp, t, h, d));
+            readings = hotReadings;
+        } else {
+            Specification<Temperature> specification = TemperatureSpecifications.matching(filter, timeRanges);
+            if (approximate) {
+                return approximateStats(specification, percentiles);
+            }
+            readings = temperatureRepository.findReadingColumns(specification, fetchSize);
+        }
+        return new ReadingStats(readings.size(),
+                exactStats(readings.temperatureCValues(), percentiles),
+                exactStats(readings.humidityPercentValues(), percentiles),
+                exactStats(readings.dewPointValues(), percentiles));
+    }
+
+    private static MetricStats exactStats(double[] values, double[] percentiles) {
+        MetricAccumulator accumulator = new MetricAccumulator(null);
+        for (double value : values) {
+            accumulator.add(value);
+        }
+        MetricStats stats = accumulator.toStats(new double[0]);
+        if (values.length == 0) {
+            return stats;
+        }
+
+        // values is a private copy, so the selection may reorder it
+        double[] results = PercentileEngine.exact(values, percentiles);
+        for (int i = 0; i < percentiles.length; i++) {
+            stats.putPercentile(percentiles[i], results[i]);
+        }
+        return stats;
+    }
+
+    private ReadingStats approximateStats(Specification<Temperature> specification, double[] percentiles) {
+        MetricAccumulator temperatureC = new MetricAccumulator(new TDigest(compression));
+        MetricAccumulator humidityPercent = new MetricAccumulator(new TDigest(compression));
+        MetricAccumulator dewPoint = new MetricAccumulator(new TDigest(compression));
+        try {
+            temperatureRepository.forEachReading(specification, fetchSize,
+                    (id, timestamp, deviceId, deviceName, t, h, d) -> {
+                        temperatureC.add(t);
+                        humidityPercent.add(h);
+                        dewPoint.add(d);
+                    });
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return new ReadingStats(temperatureC.count, temperatureC.toStats(percentiles),
+                humidityPercent.toStats(percentiles), dewPoint.toStats(percentiles));
+    }
+
+    // Running count, sums, min and max of one metric, plus an optional digest
+    private static final class MetricAccumulator {
+        private final TDigest digest;
+        private long count;
+        private double sum;
+        private double sumOfSquares;
+        private double min = Double.POSITIVE_INFINITY;
+        private double max = Double.NEGATIVE_INFINITY;
+
+        MetricAccumulator(TDigest digest) {
+            this.digest = digest;
+        }
+
+        void add(double value) {
+            count++;
+            sum += value;
+            sumOfSquares += value * value;
+            min = Math.min(min, value);
+            max = Math.max(max, value);
+            if (digest != null) {
+                digest.add(value);
+            }
+        }
+
+        MetricStats toStats(double[] percentiles) {
+            MetricStats stats = MetricStats.of(count, sum, sumOfSquares, min, max);
+            if (count > 0 && digest != null) {
+                for (double p : percentiles) {
+                    stats.putPercentile(p, digest.quantile(p / 100.0));
+                }
+            }
+            return stats;
+        }
+    }
+}
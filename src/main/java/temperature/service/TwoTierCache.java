@@ -0,0 +1,231 @@
+package temperature.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+// Read-through cache with a small in-process L1 in front of Redis. A lookup is served
+// from L1 when it holds a fresh entry, otherwise with a single GET from Redis, and only
+// then from the loader, whose result is written to both tiers. L1 is bounded by entry
+// count (least recently used first) and by a short TTL; evictions are published over
+// Redis pub/sub so every instance drops its L1 copy. While the circuit breaker holds
+// Redis to be down, lookups skip it and go from L1 straight to the loader, and entries
+// are only kept in L1. Cached values are shared and must not be mutated.
+@Service
+public class TwoTierCache {
+
+    private static final Logger log = LoggerFactory.getLogger(TwoTierCache.class);
+
+    static final String CHANNEL = "temperature:cache:invalidations";
+
+    // Tells this instance's own messages apart from the other instances'
+    private final String instanceId = UUID.randomUUID().toString();
+
+    private final RedisTemplate<String, Object> redisTemplate;
+    private final RedisMessageListenerContainer listenerContainer;
+    private final ObjectMapper objectMapper;
+    private final RedisCircuitBreaker circuitBreaker;
+    private final Counter l1Hits;
+    private final Counter l2Hits;
+    private final Counter misses;
+
+    @Value("${temperature.cache.l1.max-entries:10000}")
+    private int l1MaxEntries;
+
+    // Bounds how long an instance can serve an entry whose invalidation it missed
+    @Value("${temperature.cache.l1.ttl-ms:30000}")
+    private long l1TtlMs;
+
+    @Value("${temperature.cache.ttl-ms:3600000}")
+    private long ttlMs;
+
+    // Keys evicted while Redis was unreachable, bounded like L1
+    private final Set<String> deferredEvictions = new LinkedHashSet<>();
+
+    // Access-ordered, so the eldest entry is the least recently used one
+    private final Map<String, Entry> l1 = new LinkedHashMap<String, Entry>(256, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+            return size() > l1MaxEntries;
+        }
+    };
+
+    public TwoTierCache(RedisTemplate<String, Object> redisTemplate, RedisMessageListenerContainer listenerContainer,
+            ObjectMapper objectMapper, RedisCircuitBreaker circuitBreaker, MeterRegistry meterRegistry) {
+        this.redisTemplate = redisTemplate;
+        this.listenerContainer = listenerContainer;
+        this.objectMapper = objectMapper;
+        this.circuitBreaker = circuitBreaker;
+        this.l1Hits = Counter.builder("temperature.cache.lookups").tag("result", "l1").register(meterRegistry);
+        this.l2Hits = Counter.builder("temperature.cache.lookups").tag("result", "l2").register(meterRegistry);
+        this.misses = Counter.builder("temperature.cache.lookups").tag("result", "miss").register(meterRegistry);
+    }
+
+    @PostConstruct
+    void subscribe() {
+        listenerContainer.addMessageListener(this::onMessage, new ChannelTopic(CHANNEL));
+        circuitBreaker.onRecovery(this::replayEvictions);
+    }
+
+    // The cached value of the key, or the loader's result, which is then cached. Exceptions
+    // thrown by the loader propagate and nothing is cached.
+    public <T> T get(String key, Class<T> type, Supplier<T> loader) {
+        T value = getLocal(key, type);
+        if (value != null) {
+            l1Hits.increment();
+            return value;
+        }
+
+        Object remote = null;
+        if (circuitBreaker.allowRequest()) {
+            try {
+                remote = redisTemplate.opsForValue().get(key);
+                circuitBreaker.recordSuccess();
+            } catch (RuntimeException e) {
+                circuitBreaker.recordFailure(e);
+                log.warn("Could not read {} from Redis: {}", key, e.getMessage());
+            }
+        }
+        if (type.isInstance(remote)) {
+            l2Hits.increment();
+            value = type.cast(remote);
+            putLocal(key, value);
+            return value;
+        }
+
+        misses.increment();
+        value = loader.get();
+        if (value != null) {
+            put(key, value);
+        }
+        return value;
+    }
+
+    // Caches a value known to be current, e.g. a reading that was just stored
+    public void put(String key, Object value) {
+        putLocal(key, value);
+        if (!circuitBreaker.allowRequest()) {
+            return;
+        }
+        try {
+            redisTemplate.opsForValue().set(key, value, ttlMs, TimeUnit.MILLISECONDS);
+            circuitBreaker.recordSuccess();
+        } catch (RuntimeException e) {
+            circuitBreaker.recordFailure(e);
+            log.warn("Could not write {} to Redis: {}", key, e.getMessage());
+        }
+    }
+
+    // Removes the key from Redis and from the L1 of every instance. Evictions that Redis
+    // is down for are queued and replayed once it is back.
+    public void evict(String key) {
+        removeLocal(key);
+        if (!circuitBreaker.allowRequest()) {
+            deferEviction(key);
+            return;
+        }
+        try {
+            redisTemplate.delete(key);
+            Map<String, Object> message = new LinkedHashMap<>();
+            message.put("origin", instanceId);
+            message.put("key", key);
+            redisTemplate.convertAndSend(CHANNEL, objectMapper.writeValueAsString(message));
+            circuitBreaker.recordSuccess();
+        } catch (RuntimeException e) {
+            circuitBreaker.recordFailure(e);
+            deferEviction(key);
+            log.warn("Could not evict {} from Redis: {}", key, e.getMessage());
+        } catch (IOException e) {
+            log.warn("Could not announce the eviction of {}: {}", key, e.getMessage());
+        }
+    }
+
+    private void deferEviction(String key) {
+        synchronized (deferredEvictions) {
+            if (deferredEvictions.size() < l1MaxEntries) {
+                deferredEvictions.add(key);
+            }
+        }
+    }
+
+    private void replayEvictions() {
+        List<String> keys;
+        synchronized (deferredEvictions) {
+            keys = new ArrayList<>(deferredEvictions);
+            deferredEvictions.clear();
+        }
+        for (String key : keys) {
+            evict(key);
+        }
+    }
+
+    private void onMessage(Message message, byte[] pattern) {
+        try {
+            JsonNode invalidation = objectMapper.readTree(new String(message.getBody(), StandardCharsets.UTF_8));
+            if (!instanceId.equals(invalidation.path("origin").asText())) {
+                removeLocal(invalidation.path("key").asText());
+            }
+        } catch (IOException e) {
+            log.warn("Ignoring malformed cache invalidation: {}", e.getMessage());
+        }
+    }
+
+    private <T> T getLocal(String key, Class<T> type) {
+        synchronized (l1) {
+            Entry entry = l1.get(key);
+            if (entry == null) {
+                return null;
+            }
+            if (System.currentTimeMillis() > entry.expiresAt || !type.isInstance(entry.value)) {
+                l1.remove(key);
+                return null;
+            }
+            return type.cast(entry.value);
+        }
+    }
+
+    private void putLocal(String key, Object value) {
+        synchronized (l1) {
+            l1.put(key, new Entry(value, System.currentTimeMillis() + l1TtlMs));
+        }
+    }
+
+    private void removeLocal(String key) {
+        synchronized (l1) {
+            l1.remove(key);
+        }
+    }
+
+    private static final class Entry {
+        private final Object value;
+        private final long expiresAt;
+
+        Entry(Object value, long expiresAt) {
+            this.value = value;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
@@ -0,0 +1,269 @@
+package temperature.service;
+
+import temperature.exception.*;
+import temperature.model.*;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.dao.RecoverableDataAccessException;
+import org.springframework.dao.TransientDataAccessException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.CannotCreateTransactionException;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import java.sql.SQLRecoverableException;
+import java.sql.SQLTransientException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+// Optional ingest mode that acknowledges a reading as soon as it is queued. Writer
+// threads drain the bounded queue and store readings in group commits closed by
+// either batch size or elapsed time; a full queue is reported as 503 + Retry-After.
+// Each tenant's share of a group commits on its own, and a group that fails for any
+// reason other than a transient database error is stored reading by reading, so a
+// reading that cannot be stored is the only one dropped.
+@Service
+public class WriteBehindIngestQueue {
+
+    private static final Logger log = LoggerFactory.getLogger(WriteBehindIngestQueue.class);
+
+    private static final int MAX_COMMIT_ATTEMPTS = 3;
+
+    private final TemperatureIngestService temperatureIngestService;
+
+    @Value("${temperature.ingest.write-behind.enabled:false}")
+    private boolean enabled;
+
+    @Value("${temperature.ingest.write-behind.queue-capacity:10000}")
+    private int queueCapacity;
+
+    @Value("${temperature.ingest.write-behind.batch-size:200}")
+    private int batchSize;
+
+    @Value("${temperature.ingest.write-behind.max-delay-ms:200}")
+    private long maxDelayMs;
+
+    // A tenant's share of a group goes through the batch path and its size limit
+    @Value("${temperature.ingest.batch.max-size:1000}")
+    private int maxBatchSize;
+
+    @Value("${temperature.ingest.write-behind.writers:1}")
+    private int writerCount;
+
+    @Value("${temperature.ingest.write-behind.retry-after-seconds:1}")
+    private long retryAfterSeconds;
+
+    @Value("${temperature.ingest.write-behind.shutdown-timeout-ms:30000}")
+    private long shutdownTimeoutMs;
+
+    private BlockingQueue<QueuedReading> queue;
+    private final List<Thread> writers = new ArrayList<>();
+    private volatile boolean running;
+
+    public WriteBehindIngestQueue(TemperatureIngestService temperatureIngestService) {
+        this.temperatureIngestService = temperatureIngestService;
+    }
+
+    @PostConstruct
+    void start() {
+        if (!enabled) {
+            return;
+        }
+        if (batchSize > maxBatchSize) {
+            throw new IllegalStateException("temperature.ingest.write-behind.batch-size (" + batchSize
+                    + ") must not exceed temperature.ingest.batch.max-size (" + maxBatchSize + ")");
+        }
+        queue = new ArrayBlockingQueue<>(queueCapacity);
+        running = true;
+        for (int i = 0; i < writerCount; i++) {
+            Thread writer = new Thread(this::runWriter, "ingest-writer-" + i);
+            writer.setDaemon(true);
+            writer.start();
+            writers.add(writer);
+        }
+        log.info("Write-behind ingest enabled with capacity {}, batch size {} and max delay {} ms",
+                queueCapacity, batchSize, maxDelayMs);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    // Validates and queues the reading, returning it with its dew point and receive
+    // time filled in. The id is assigned once the group commit stores it.
+    public Temperature submit(String apiKey, Temperature temperatureRequest) {
+        return submit(apiKey, temperatureRequest, System.currentTimeMillis());
+    }
+
+    // Queues a reading whose timestamp was supplied by the device
+    public Temperature submit(String apiKey, Temperature temperatureRequest, long receivedAt) {
+        String error = TemperatureIngestService.validate(temperatureRequest);
+        if (error != null) {
+            throw new InvalidReadingException(error);
+        }
+        if (!running) {
+            throw new IngestBackpressureException(retryAfterSeconds);
+        }
+
+        if (!queue.offer(new QueuedReading(apiKey, temperatureRequest, receivedAt))) {
+            throw new IngestBackpressureException(retryAfterSeconds);
+        }
+
+        Device device = new Device(temperatureRequest.getDevice().getDeviceName(),
+                temperatureRequest.getDevice().getLocation());
+        return TemperatureIngestService.newReading(temperatureRequest, device, receivedAt);
+    }
+
+    public int size() {
+        return queue != null ? queue.size() : 0;
+    }
+
+    private void runWriter() {
+        List<QueuedReading> batch = new ArrayList<>(batchSize);
+        while (running || !queue.isEmpty()) {
+            try {
+                QueuedReading first = queue.poll(maxDelayMs, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+
+                // Keep filling the group until it is full or the oldest reading has waited long enough
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(maxDelayMs);
+                while (batch.size() < batchSize) {
+                    queue.drainTo(batch, batchSize - batch.size());
+                    long remaining = deadline - System.nanoTime();
+                    if (batch.size() >= batchSize || remaining <= 0 || !running) {
+                        break;
+                    }
+                    QueuedReading next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+
+                commit(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    // Stores each tenant's readings in a transaction of its own
+    private void commit(List<QueuedReading> batch) throws InterruptedException {
+        Map<String, List<QueuedReading>> byApiKey = new LinkedHashMap<>();
+        for (QueuedReading reading : batch) {
+            byApiKey.computeIfAbsent(reading.apiKey, key -> new ArrayList<>()).add(reading);
+        }
+        for (Map.Entry<String, List<QueuedReading>> entry : byApiKey.entrySet()) {
+            commit(entry.getKey(), entry.getValue());
+        }
+    }
+
+    // Retries transient failures. Any other failure, e.g. a constraint violation, would
+    // fail again, so the readings are stored one at a time to drop only the bad ones.
+    private void commit(String apiKey, List<QueuedReading> readings) throws InterruptedException {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                // The ingest service resolves the devices and then opens the transaction
+                storeGroup(apiKey, readings);
+                return;
+            } catch (RuntimeException e) {
+                if (!isTransient(e)) {
+                    if (readings.size() == 1) {
+                        log.error("Dropping queued reading of device {}: {}",
+                                readings.get(0).temperatureRequest.getDevice().getDeviceName(), e.getMessage());
+                        return;
+                    }
+                    log.warn("Group commit of {} readings failed, storing them one by one: {}", readings.size(),
+                            e.getMessage());
+                    for (QueuedReading reading : readings) {
+                        commit(apiKey, Collections.singletonList(reading));
+                    }
+                    return;
+                }
+                if (attempt >= MAX_COMMIT_ATTEMPTS) {
+                    log.error("Dropping {} queued readings after {} failed commits", readings.size(), attempt, e);
+                    return;
+                }
+                log.warn("Group commit of {} readings failed, retrying: {}", readings.size(), e.getMessage());
+                Thread.sleep(running ? 1000L * attempt : 100L);
+            }
+        }
+    }
+
+    // Failures that may pass on a later attempt: lost connections, lock timeouts, deadlocks.
+    // A flush inside the ingest service surfaces untranslated, so the causes are checked too.
+    private static boolean isTransient(RuntimeException e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof TransientDataAccessException || cause instanceof RecoverableDataAccessException
+                    || cause instanceof DataAccessResourceFailureException
+                    || cause instanceof CannotCreateTransactionException || cause instanceof SQLTransientException
+                    || cause instanceof SQLRecoverableException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void storeGroup(String apiKey, List<QueuedReading> readings) {
+        List<Temperature> temperatureRequests = new ArrayList<>(readings.size());
+        long[] receivedAt = new long[readings.size()];
+        for (int i = 0; i < readings.size(); i++) {
+            temperatureRequests.add(readings.get(i).temperatureRequest);
+            receivedAt[i] = readings.get(i).receivedAt;
+        }
+
+        for (BatchIngestResult result : temperatureIngestService.ingestBatch(apiKey, temperatureRequests,
+                receivedAt)) {
+            if (BatchIngestResult.REJECTED.equals(result.getStatus())) {
+                log.warn("Queued reading rejected: {}", result.getError());
+            }
+        }
+    }
+
+    // Stops accepting readings and flushes everything already queued before the
+    // data source is closed
+    @PreDestroy
+    void shutdown() throws InterruptedException {
+        if (!enabled) {
+            return;
+        }
+        running = false;
+        log.info("Flushing {} queued readings before shutdown", queue.size());
+
+        long deadline = System.currentTimeMillis() + shutdownTimeoutMs;
+        for (Thread writer : writers) {
+            writer.join(Math.max(1, deadline - System.currentTimeMillis()));
+        }
+        if (!queue.isEmpty()) {
+            log.error("Shutdown timed out with {} readings still queued", queue.size());
+        }
+    }
+
+    private static class QueuedReading {
+        private final String apiKey;
+        private final Temperature temperatureRequest;
+        private final long receivedAt;
+
+        QueuedReading(String apiKey, Temperature temperatureRequest, long receivedAt) {
+            this.apiKey = apiKey;
+            this.temperatureRequest = temperatureRequest;
+            this.receivedAt = receivedAt;
+        }
+    }
+}
@@ -0,0 +1,27 @@
+-- Schema as previously generated by Hibernate; existing databases are baselined at this version
+CREATE TABLE IF NOT EXISTS device (
+    id VARCHAR(36) NOT NULL,
+    api_key VARCHAR(255),
+    device_name VARCHAR(255),
+    location VARCHAR(255),
+    PRIMARY KEY (id)
+);
+
+CREATE TABLE IF NOT EXISTS temperature (
+    id VARCHAR(36) NOT NULL,
+    dew_point DOUBLE NOT NULL,
+    humidity_percent DOUBLE NOT NULL,
+    temperaturec DOUBLE NOT NULL,
+    timestamp BIGINT NOT NULL,
+    device_id VARCHAR(36),
+    PRIMARY KEY (id),
+    CONSTRAINT fk_temperature_device FOREIGN KEY (device_id) REFERENCES device (id)
+);
+
+CREATE TABLE IF NOT EXISTS `user` (
+    id VARCHAR(36) NOT NULL,
+    api_key VARCHAR(255),
+    password VARCHAR(255),
+    username VARCHAR(255),
+    PRIMARY KEY (id)
+);
@@ -0,0 +1,16 @@
+-- Denormalized owner key so tenant-scoped queries do not have to join device
+ALTER TABLE temperature ADD COLUMN api_key VARCHAR(255);
+
+UPDATE temperature SET api_key = (SELECT d.api_key FROM device d WHERE d.id = temperature.device_id);
+
+-- Latest reading and time ranges per device
+CREATE INDEX idx_temperature_device_timestamp ON temperature (device_id, timestamp);
+
+-- Time ranges across all devices
+CREATE INDEX idx_temperature_timestamp ON temperature (timestamp);
+
+-- Latest reading and time ranges per tenant
+CREATE INDEX idx_temperature_api_key_timestamp ON temperature (api_key, timestamp);
+
+-- Device resolution on ingest
+CREATE INDEX idx_device_api_key_device_name ON device (api_key, device_name);
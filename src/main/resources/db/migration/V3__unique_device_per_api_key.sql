@@ -0,0 +1,21 @@
+-- Fold devices registered twice under the same api_key and name into the one with the
+-- lowest id, moving their readings to it. Ids are random UUIDs, so this is an arbitrary
+-- but deterministic pick, not the first registration.
+UPDATE temperature SET device_id = (
+    SELECT MIN(k.id) FROM device d
+    JOIN device k ON k.api_key = d.api_key AND k.device_name = d.device_name
+    WHERE d.id = temperature.device_id)
+WHERE device_id IN (
+    SELECT id FROM (
+        SELECT d.id FROM device d
+        JOIN device k ON k.api_key = d.api_key AND k.device_name = d.device_name AND k.id < d.id) duplicate);
+
+DELETE FROM device WHERE id IN (
+    SELECT id FROM (
+        SELECT d.id FROM device d
+        JOIN device k ON k.api_key = d.api_key AND k.device_name = d.device_name AND k.id < d.id) duplicate);
+
+-- Concurrent first contact from the same device can no longer create two rows
+DROP INDEX idx_device_api_key_device_name ON device;
+
+CREATE UNIQUE INDEX uk_device_api_key_device_name ON device (api_key, device_name);
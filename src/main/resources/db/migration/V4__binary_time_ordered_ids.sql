@@ -0,0 +1,46 @@
+-- Store device and temperature ids as BINARY(16) instead of VARCHAR(36). New ids are
+-- time-ordered UUIDv7 values generated by the application; existing random ids are
+-- converted byte for byte, so /temperatures/{id} and /devices/{id} keep resolving.
+-- The tables are rebuilt and swapped so the foreign key name Hibernate generated for
+-- the old schema does not need to be known.
+-- Hibernate named the temperature column temperaturec; it becomes temperature_c here.
+CREATE TABLE device_v4 (
+    id BINARY(16) NOT NULL,
+    api_key VARCHAR(255),
+    device_name VARCHAR(255),
+    location VARCHAR(255),
+    PRIMARY KEY (id)
+);
+
+INSERT INTO device_v4 (id, api_key, device_name, location)
+SELECT UNHEX(REPLACE(id, '-', '')), api_key, device_name, location FROM device;
+
+CREATE TABLE temperature_v4 (
+    id BINARY(16) NOT NULL,
+    dew_point DOUBLE NOT NULL,
+    humidity_percent DOUBLE NOT NULL,
+    temperature_c DOUBLE NOT NULL,
+    timestamp BIGINT NOT NULL,
+    device_id BINARY(16),
+    api_key VARCHAR(255),
+    PRIMARY KEY (id)
+);
+
+INSERT INTO temperature_v4 (id, dew_point, humidity_percent, temperature_c, timestamp, device_id, api_key)
+SELECT UNHEX(REPLACE(id, '-', '')), dew_point, humidity_percent, temperaturec, timestamp,
+       UNHEX(REPLACE(device_id, '-', '')), api_key
+FROM temperature;
+
+DROP TABLE temperature;
+DROP TABLE device;
+
+ALTER TABLE device_v4 RENAME TO device;
+ALTER TABLE temperature_v4 RENAME TO temperature;
+
+CREATE UNIQUE INDEX uk_device_api_key_device_name ON device (api_key, device_name);
+CREATE INDEX idx_temperature_device_timestamp ON temperature (device_id, timestamp);
+CREATE INDEX idx_temperature_timestamp ON temperature (timestamp);
+CREATE INDEX idx_temperature_api_key_timestamp ON temperature (api_key, timestamp);
+
+ALTER TABLE temperature
+    ADD CONSTRAINT fk_temperature_device_id FOREIGN KEY (device_id) REFERENCES device (id);
@@ -0,0 +1,7 @@
+-- Optional device-side sequence number used to suppress retried readings, and the boot
+-- it was counted in, so a counter that restarts when the device reboots starts afresh
+ALTER TABLE temperature ADD COLUMN device_sequence BIGINT NULL;
+ALTER TABLE temperature ADD COLUMN device_boot BIGINT NULL;
+
+-- Backstop for duplicates the in-memory window cannot see, e.g. across instances
+CREATE UNIQUE INDEX uk_temperature_device_sequence ON temperature (device_id, device_boot, device_sequence);
@@ -0,0 +1,40 @@
+-- Per-device count, sum, sum of squares, min and max of each metric per minute, hour
+-- and day bucket. bucket_ms is the bucket length and bucket_start is aligned to it in
+-- epoch milliseconds. Kept up to date by the application on every insert and delete.
+CREATE TABLE temperature_rollup (
+    bucket_ms BIGINT NOT NULL,
+    device_id BINARY(16) NOT NULL,
+    bucket_start BIGINT NOT NULL,
+    api_key VARCHAR(255),
+    reading_count BIGINT NOT NULL,
+    temperature_c_sum DOUBLE NOT NULL,
+    temperature_c_sum_sq DOUBLE NOT NULL,
+    temperature_c_min DOUBLE NOT NULL,
+    temperature_c_max DOUBLE NOT NULL,
+    humidity_percent_sum DOUBLE NOT NULL,
+    humidity_percent_sum_sq DOUBLE NOT NULL,
+    humidity_percent_min DOUBLE NOT NULL,
+    humidity_percent_max DOUBLE NOT NULL,
+    dew_point_sum DOUBLE NOT NULL,
+    dew_point_sum_sq DOUBLE NOT NULL,
+    dew_point_min DOUBLE NOT NULL,
+    dew_point_max DOUBLE NOT NULL,
+    PRIMARY KEY (bucket_ms, device_id, bucket_start)
+);
+
+CREATE INDEX idx_temperature_rollup_api_key ON temperature_rollup (bucket_ms, api_key, bucket_start);
+
+-- Backfill from the readings stored so far
+INSERT INTO temperature_rollup (bucket_ms, device_id, bucket_start, api_key, reading_count,
+    temperature_c_sum, temperature_c_sum_sq, temperature_c_min, temperature_c_max,
+    humidity_percent_sum, humidity_percent_sum_sq, humidity_percent_min, humidity_percent_max,
+    dew_point_sum, dew_point_sum_sq, dew_point_min, dew_point_max)
+SELECT b.bucket_ms, t.device_id, FLOOR(t.timestamp / b.bucket_ms) * b.bucket_ms, MIN(t.api_key), COUNT(*),
+       SUM(t.temperature_c), SUM(t.temperature_c * t.temperature_c), MIN(t.temperature_c), MAX(t.temperature_c),
+       SUM(t.humidity_percent), SUM(t.humidity_percent * t.humidity_percent), MIN(t.humidity_percent),
+       MAX(t.humidity_percent),
+       SUM(t.dew_point), SUM(t.dew_point * t.dew_point), MIN(t.dew_point), MAX(t.dew_point)
+FROM temperature t
+CROSS JOIN (SELECT 60000 AS bucket_ms UNION ALL SELECT 3600000 UNION ALL SELECT 86400000) b
+WHERE t.device_id IS NOT NULL
+GROUP BY b.bucket_ms, t.device_id, FLOOR(t.timestamp / b.bucket_ms) * b.bucket_ms;
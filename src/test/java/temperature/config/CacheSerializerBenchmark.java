@@ -0,0 +1,126 @@
+package temperature.config;
+
+import temperature.model.*;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.data.redis.serializer.GenericJackson2JsonRedisSerializer;
+import org.springframework.data.redis.serializer.RedisSerializer;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+// Compares the binary cache encoding with the JSON one it replaced on synthetic values
+// shaped like the cached ones. Run it with
+//   mvn test-compile exec:java -Dexec.classpathScope=test \
+//       -Dexec.mainClass=temperature.config.CacheSerializerBenchmark
+// The encoded size of each sample is printed once per fork before the measurements.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CacheSerializerBenchmark {
+
+    @Param({ "json", "binary" })
+    public String format;
+
+    @Param({ "reading", "page10", "page1000", "keys10000" })
+    public String sample;
+
+    private RedisSerializer<Object> serializer;
+    private Object value;
+    private byte[] encoded;
+
+    @Setup
+    public void setUp() {
+        serializer = "json".equals(format) ? new GenericJackson2JsonRedisSerializer() : new CacheValueSerializer();
+        value = sample(sample);
+        encoded = serializer.serialize(value);
+        System.out.println(format + " " + sample + ": " + encoded.length + " bytes");
+    }
+
+    @Benchmark
+    public byte[] encode() {
+        return serializer.serialize(value);
+    }
+
+    @Benchmark
+    public Object decode() {
+        return serializer.deserialize(encoded);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(CacheSerializerBenchmark.class.getSimpleName()).build()).run();
+    }
+
+    static Object sample(String name) {
+        Random random = new Random(42);
+        List<Device> devices = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            Device device = new Device("sensor-" + i, "room-" + i, "5f0c2d4e-8a1b-4c3d-9e2f-" + (100000000000L + i));
+            device.setId(UUID.randomUUID());
+            devices.add(device);
+        }
+
+        switch (name) {
+            case "reading":
+                return reading(random, devices.get(0), 0);
+            case "page10":
+                return new TemperaturePage(readings(random, devices.subList(0, 1), 10), "AQAAAYvZ", "AAAAAYvZ");
+            case "page1000":
+                return new TemperaturePage(readings(random, devices, 1000), "AQAAAYvZ", null);
+            case "keys10000":
+                return keys(random, 10000);
+            default:
+                throw new IllegalArgumentException("Unknown sample " + name);
+        }
+    }
+
+    private static List<Temperature> readings(Random random, List<Device> devices, int count) {
+        List<Temperature> readings = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            readings.add(reading(random, devices.get(i % devices.size()), i));
+        }
+        return readings;
+    }
+
+    private static Temperature reading(Random random, Device device, int index) {
+        Temperature reading = new Temperature(Math.round((18 + random.nextDouble() * 8) * 10) / 10.0,
+                Math.round((35 + random.nextDouble() * 30) * 10) / 10.0, 1700000000000L + index * 60000L, device);
+        reading.setId(TimeOrderedUuid.next());
+        reading.calculateAndSetDewPoint();
+        return reading;
+    }
+
+    private static ReadingKeys keys(Random random, int count) {
+        long[] timestamps = new long[count];
+        long[] idHigh = new long[count];
+        long[] idLow = new long[count];
+        long timestamp = 1700000000000L;
+        for (int i = 0; i < count; i++) {
+            timestamp += random.nextInt(60000);
+            UUID id = TimeOrderedUuid.next();
+            timestamps[i] = timestamp;
+            idHigh[i] = id.getMostSignificantBits();
+            idLow[i] = id.getLeastSignificantBits();
+        }
+        return new ReadingKeys(timestamps, idHigh, idLow, true);
+    }
+}
@@ -0,0 +1,175 @@
+package temperature.config;
+
+import temperature.model.*;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.serializer.SerializationException;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CacheValueSerializerTest {
+
+    private final CacheValueSerializer serializer = new CacheValueSerializer();
+
+    @Test
+    void readingRoundTrips() {
+        Temperature reading = reading(device("sensor", "room", "key"), 1);
+        reading.setSequence(42L);
+        reading.setBoot(3L);
+
+        Temperature copy = (Temperature) roundTrip(reading);
+
+        assertReading(reading, copy);
+        assertEquals(Long.valueOf(42), copy.getSequence());
+        assertEquals(Long.valueOf(3), copy.getBoot());
+        assertEquals("key", copy.getApiKey());
+    }
+
+    @Test
+    void nullStringsStayNull() {
+        Device device = device("sensor", null, null);
+        TemperaturePage page = new TemperaturePage(Collections.singletonList(reading(device, 1)), null, null);
+
+        TemperaturePage copy = (TemperaturePage) roundTrip(page);
+
+        assertNull(copy.getNextCursor());
+        assertNull(copy.getPreviousCursor());
+        Device copiedDevice = copy.getTemperatures().get(0).getDevice();
+        assertEquals("sensor", copiedDevice.getDeviceName());
+        assertNull(copiedDevice.getLocation());
+        assertNull(copiedDevice.getApiKey());
+    }
+
+    @Test
+    void missingDeviceSequenceAndIdStayMissing() {
+        Temperature reading = new Temperature(21.5, 40, 1_700_000_000_000L, null);
+
+        Temperature copy = (Temperature) roundTrip(reading);
+
+        assertNull(copy.getId());
+        assertNull(copy.getDevice());
+        assertNull(copy.getSequence());
+        assertNull(copy.getBoot());
+        assertEquals(21.5, copy.getTemperatureC());
+        assertEquals(1_700_000_000_000L, copy.getTimestamp());
+    }
+
+    @Test
+    void devicesSharedAcrossReadingsAreWrittenOnce() {
+        Device first = device("first", "hall", "key");
+        Device second = device("second", "attic", "key");
+        // Another instance of the first device, e.g. loaded by a different query
+        Device firstAgain = device("first", "hall", "key");
+        firstAgain.setId(first.getId());
+        List<Temperature> readings = Arrays.asList(reading(first, 1), reading(second, 2), reading(firstAgain, 3),
+                reading(null, 4));
+
+        @SuppressWarnings("unchecked")
+        List<Temperature> copy = (List<Temperature>) roundTrip(readings);
+
+        assertEquals(4, copy.size());
+        for (int i = 0; i < readings.size(); i++) {
+            assertReading(readings.get(i), copy.get(i));
+        }
+        assertSame(copy.get(0).getDevice(), copy.get(2).getDevice());
+        assertNotSame(copy.get(0).getDevice(), copy.get(1).getDevice());
+        assertEquals(first.getId(), copy.get(0).getDevice().getId());
+        assertEquals("attic", copy.get(1).getDevice().getLocation());
+        assertNull(copy.get(3).getDevice());
+
+        byte[] shared = serializer.serialize(readings);
+        byte[] single = serializer.serialize(Collections.singletonList(readings.get(0)));
+        // The first device's name, location and key are not repeated for the third reading
+        assertTrue(shared.length < 4 * single.length);
+    }
+
+    @Test
+    void readingKeysRoundTrip() {
+        long[] timestamps = { 1_700_000_000_000L, 1_700_000_000_000L, 1_700_000_060_000L };
+        long[] idHigh = { 1, 2, 3 };
+        long[] idLow = { -1, -2, -3 };
+
+        ReadingKeys copy = (ReadingKeys) roundTrip(new ReadingKeys(timestamps, idHigh, idLow, false));
+
+        assertArrayEquals(timestamps, copy.getTimestamps());
+        assertArrayEquals(idHigh, copy.getIdHigh());
+        assertArrayEquals(idLow, copy.getIdLow());
+        assertEquals(false, copy.isComplete());
+    }
+
+    @Test
+    void otherValuesFallBackToJson() {
+        Map<String, Object> value = new LinkedHashMap<>();
+        value.put("count", 3);
+
+        assertEquals(value, roundTrip(value));
+    }
+
+    @Test
+    void truncatedValuesAreRejected() {
+        List<Temperature> readings = Arrays.asList(reading(device("sensor", "room", "key"), 1),
+                reading(device("other", "room", "key"), 2));
+        byte[] bytes = serializer.serialize(new TemperaturePage(readings, "next", null));
+
+        // Every proper prefix past the header is either rejected or too short to hold any
+        // value; none decodes into a partial page
+        for (int length = 2; length < bytes.length; length++) {
+            byte[] truncated = Arrays.copyOf(bytes, length);
+            assertThrows(SerializationException.class, () -> serializer.deserialize(truncated),
+                    "length " + length);
+        }
+    }
+
+    @Test
+    void otherFormatVersionReadsAsNull() {
+        byte[] bytes = serializer.serialize(reading(device("sensor", "room", "key"), 1));
+        bytes[0] = (byte) (CacheValueSerializer.VERSION - 1);
+
+        assertNull(serializer.deserialize(bytes));
+        assertNull(serializer.deserialize(new byte[] { CacheValueSerializer.VERSION }));
+        assertNull(serializer.deserialize(new byte[0]));
+        assertNull(serializer.deserialize(null));
+    }
+
+    private Object roundTrip(Object value) {
+        return serializer.deserialize(serializer.serialize(value));
+    }
+
+    private static void assertReading(Temperature expected, Temperature actual) {
+        assertEquals(expected.getId(), actual.getId());
+        assertEquals(expected.getTimestamp(), actual.getTimestamp());
+        assertEquals(expected.getTemperatureC(), actual.getTemperatureC());
+        assertEquals(expected.getHumidityPercent(), actual.getHumidityPercent());
+        assertEquals(expected.getDewPoint(), actual.getDewPoint());
+        if (expected.getDevice() != null) {
+            assertEquals(expected.getDevice().getDeviceName(), actual.getDevice().getDeviceName());
+        }
+    }
+
+    private static Device device(String name, String location, String apiKey) {
+        Device device = new Device(name, location, apiKey);
+        device.setId(TimeOrderedUuid.next());
+        return device;
+    }
+
+    private static Temperature reading(Device device, int index) {
+        Temperature reading = new Temperature(20 + index / 10.0, 45 + index, 1_700_000_000_000L + index * 60_000L,
+                device);
+        reading.setId(UUID.randomUUID());
+        reading.calculateAndSetDewPoint();
+        return reading;
+    }
+}
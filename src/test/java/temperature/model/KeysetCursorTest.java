@@ -0,0 +1,61 @@
+package temperature.model;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Base64;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class KeysetCursorTest {
+
+    private static final UUID ID = UUID.fromString("0190a6c2-3b4f-7d2e-bfff-fffffffffffe");
+
+    @Test
+    void forwardCursorRoundTrips() {
+        KeysetCursor cursor = KeysetCursor.decode(new KeysetCursor(1_700_000_000_000L, ID, false).encode());
+
+        assertEquals(1_700_000_000_000L, cursor.getTimestamp());
+        assertEquals(ID, cursor.getId());
+        assertFalse(cursor.isBackward());
+    }
+
+    @Test
+    void backwardCursorRoundTrips() {
+        Temperature reading = new Temperature(21.5, 40, -1L, null);
+        reading.setId(ID);
+
+        KeysetCursor cursor = KeysetCursor.decode(KeysetCursor.before(reading).encode());
+
+        assertEquals(-1L, cursor.getTimestamp());
+        assertEquals(ID, cursor.getId());
+        assertTrue(cursor.isBackward());
+        assertFalse(KeysetCursor.decode(KeysetCursor.after(reading).encode()).isBackward());
+    }
+
+    // Cursors go into query strings as they are
+    @Test
+    void encodingIsUrlSafeWithoutPadding() {
+        String encoded = new KeysetCursor(Long.MAX_VALUE, new UUID(-1L, -1L), true).encode();
+
+        assertEquals(34, encoded.length());
+        assertTrue(encoded.matches("[A-Za-z0-9_-]+"), encoded);
+    }
+
+    @Test
+    void malformedCursorsDecodeToNull() {
+        String valid = new KeysetCursor(1_700_000_000_000L, ID, false).encode();
+        byte[] bytes = Base64.getUrlDecoder().decode(valid);
+        bytes[0] = 2;
+
+        assertNull(KeysetCursor.decode(null));
+        assertNull(KeysetCursor.decode(""));
+        assertNull(KeysetCursor.decode("not a cursor!"));
+        assertNull(KeysetCursor.decode(valid.substring(0, valid.length() - 2)));
+        assertNull(KeysetCursor.decode(valid + "AA"));
+        assertNull(KeysetCursor.decode(Base64.getUrlEncoder().withoutPadding().encodeToString(bytes)));
+    }
+}
@@ -0,0 +1,20 @@
+package temperature.repository;
+
+// MySQL functions the migrations use that H2 lacks even in MySQL mode; registered on
+// every test connection by the INIT clause of the test datasource URL
+public final class H2Functions {
+
+    private H2Functions() {
+    }
+
+    public static byte[] unhex(String hex) {
+        if (hex == null) {
+            return null;
+        }
+        byte[] bytes = new byte[hex.length() / 2];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = (byte) Integer.parseInt(hex.substring(i * 2, i * 2 + 2), 16);
+        }
+        return bytes;
+    }
+}
@@ -0,0 +1,179 @@
+package temperature.repository;
+
+import org.flywaydb.core.Flyway;
+import org.flywaydb.core.api.MigrationInfo;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// Runs V1 through V6 against an empty H2 database in MySQL mode, with rows written by the
+// old schema before the id conversion, and checks the resulting tables and indexes
+class MigrationTest {
+
+    private static final String DEVICE_ID = "3f2b8c1e-5a4d-4e6f-9b7a-1c2d3e4f5a6b";
+    private static final String READING_ID = "0a1b2c3d-4e5f-4a6b-8c7d-8e9fa0b1c2d3";
+
+    private DriverManagerDataSource dataSource;
+    private JdbcTemplate jdbc;
+
+    @BeforeEach
+    void setUp() {
+        // A database of its own so the Spring test contexts' schema is not touched
+        dataSource = new DriverManagerDataSource("jdbc:h2:mem:migration-" + UUID.randomUUID()
+                + ";MODE=MySQL;DB_CLOSE_DELAY=-1;"
+                + "INIT=CREATE ALIAS IF NOT EXISTS UNHEX FOR \"temperature.repository.H2Functions.unhex\"");
+        jdbc = new JdbcTemplate(dataSource);
+    }
+
+    @Test
+    void allMigrationsApply() {
+        Flyway flyway = flyway(null);
+        flyway.migrate();
+
+        List<String> versions = new ArrayList<>();
+        for (MigrationInfo info : flyway.info().applied()) {
+            assertTrue(info.getState().isApplied() && !info.getState().isFailed(), info.getVersion().toString());
+            versions.add(info.getVersion().getVersion());
+        }
+        assertEquals(Arrays.asList("1", "2", "3", "4", "5", "6"), versions);
+        assertEquals(0, flyway.info().pending().length);
+    }
+
+    @Test
+    void tablesHaveTheColumnsTheEntitiesMap() {
+        flyway(null).migrate();
+
+        assertColumns("DEVICE", "ID", "API_KEY", "DEVICE_NAME", "LOCATION");
+        assertColumns("TEMPERATURE", "ID", "DEW_POINT", "HUMIDITY_PERCENT", "TEMPERATURE_C", "TIMESTAMP",
+                "DEVICE_ID", "API_KEY", "DEVICE_SEQUENCE", "DEVICE_BOOT");
+        assertColumns("TEMPERATURE_ROLLUP", "BUCKET_MS", "DEVICE_ID", "BUCKET_START", "API_KEY", "READING_COUNT",
+                "TEMPERATURE_C_SUM", "TEMPERATURE_C_SUM_SQ", "TEMPERATURE_C_MIN", "TEMPERATURE_C_MAX",
+                "HUMIDITY_PERCENT_SUM", "HUMIDITY_PERCENT_SUM_SQ", "HUMIDITY_PERCENT_MIN", "HUMIDITY_PERCENT_MAX",
+                "DEW_POINT_SUM", "DEW_POINT_SUM_SQ", "DEW_POINT_MIN", "DEW_POINT_MAX");
+    }
+
+    @Test
+    void indexesCoverTheRepositoryQueries() {
+        flyway(null).migrate();
+
+        assertIndex("DEVICE", "UK_DEVICE_API_KEY_DEVICE_NAME", true, "API_KEY", "DEVICE_NAME");
+        assertIndex("TEMPERATURE", "IDX_TEMPERATURE_DEVICE_TIMESTAMP", false, "DEVICE_ID", "TIMESTAMP");
+        assertIndex("TEMPERATURE", "IDX_TEMPERATURE_TIMESTAMP", false, "TIMESTAMP");
+        assertIndex("TEMPERATURE", "IDX_TEMPERATURE_API_KEY_TIMESTAMP", false, "API_KEY", "TIMESTAMP");
+        assertIndex("TEMPERATURE", "UK_TEMPERATURE_DEVICE_SEQUENCE", true, "DEVICE_ID", "DEVICE_BOOT",
+                "DEVICE_SEQUENCE");
+        assertIndex("TEMPERATURE_ROLLUP", "IDX_TEMPERATURE_ROLLUP_API_KEY", false, "BUCKET_MS", "API_KEY",
+                "BUCKET_START");
+    }
+
+    // Rows stored before V4 keep resolving under the same ids and are counted in the
+    // rollups V6 backfills
+    @Test
+    void existingRowsSurviveTheIdConversion() {
+        flyway("3").migrate();
+        jdbc.update("INSERT INTO device (id, api_key, device_name, location) VALUES (?, 'key', 'sensor', 'room')",
+                DEVICE_ID);
+        jdbc.update("INSERT INTO temperature (id, dew_point, humidity_percent, temperaturec, timestamp, device_id,"
+                + " api_key) VALUES (?, 10.5, 40, 21.5, 1700000030000, ?, 'key')", READING_ID, DEVICE_ID);
+        jdbc.update("INSERT INTO temperature (id, dew_point, humidity_percent, temperaturec, timestamp, device_id,"
+                + " api_key) VALUES (?, 11.5, 50, 23.5, 1700000010000, ?, 'key')", UUID.randomUUID().toString(),
+                DEVICE_ID);
+
+        flyway(null).migrate();
+
+        Map<String, Object> reading = jdbc.queryForMap(
+                "SELECT id, device_id, temperature_c FROM temperature WHERE timestamp = 1700000030000");
+        assertArrayEquals(bytes(READING_ID), (byte[]) reading.get("ID"));
+        assertArrayEquals(bytes(DEVICE_ID), (byte[]) reading.get("DEVICE_ID"));
+        assertEquals(21.5, ((Number) reading.get("TEMPERATURE_C")).doubleValue());
+
+        List<Map<String, Object>> rollups = jdbc.queryForList(
+                "SELECT bucket_ms, bucket_start, reading_count, temperature_c_sum, temperature_c_max"
+                        + " FROM temperature_rollup ORDER BY bucket_ms");
+        assertEquals(3, rollups.size());
+        long[] bucketSizes = { 60_000L, 3_600_000L, 86_400_000L };
+        for (int i = 0; i < bucketSizes.length; i++) {
+            Map<String, Object> rollup = rollups.get(i);
+            assertEquals(bucketSizes[i], ((Number) rollup.get("BUCKET_MS")).longValue());
+            assertEquals(Math.floorDiv(1_700_000_030_000L, bucketSizes[i]) * bucketSizes[i],
+                    ((Number) rollup.get("BUCKET_START")).longValue());
+            assertEquals(2, ((Number) rollup.get("READING_COUNT")).longValue());
+            assertEquals(45.0, ((Number) rollup.get("TEMPERATURE_C_SUM")).doubleValue());
+            assertEquals(23.5, ((Number) rollup.get("TEMPERATURE_C_MAX")).doubleValue());
+        }
+    }
+
+    @Test
+    void uniqueIndexesRejectDuplicates() {
+        flyway(null).migrate();
+        byte[] device = bytes(DEVICE_ID);
+        jdbc.update("INSERT INTO device (id, api_key, device_name) VALUES (?, 'key', 'sensor')", (Object) device);
+
+        assertThrows(DataIntegrityViolationException.class, () -> jdbc.update(
+                "INSERT INTO device (id, api_key, device_name) VALUES (?, 'key', 'sensor')",
+                (Object) bytes(UUID.randomUUID().toString())));
+
+        String insert = "INSERT INTO temperature (id, dew_point, humidity_percent, temperature_c, timestamp,"
+                + " device_id, api_key, device_boot, device_sequence) VALUES (?, 0, 0, 0, 0, ?, 'key', ?, ?)";
+        jdbc.update(insert, bytes(UUID.randomUUID().toString()), device, 1L, 7L);
+        // The same sequence after a reboot is a new reading
+        jdbc.update(insert, bytes(UUID.randomUUID().toString()), device, 2L, 7L);
+        // Readings without a sequence are never duplicates of each other
+        jdbc.update(insert, bytes(UUID.randomUUID().toString()), device, null, null);
+        jdbc.update(insert, bytes(UUID.randomUUID().toString()), device, null, null);
+
+        assertThrows(DataIntegrityViolationException.class,
+                () -> jdbc.update(insert, bytes(UUID.randomUUID().toString()), device, 1L, 7L));
+    }
+
+    private Flyway flyway(String target) {
+        return Flyway.configure()
+                .dataSource(dataSource)
+                .locations("classpath:db/migration")
+                .target(target == null ? "latest" : target)
+                .load();
+    }
+
+    private void assertColumns(String table, String... columns) {
+        List<String> actual = jdbc.queryForList("SELECT column_name FROM information_schema.columns"
+                + " WHERE table_name = ? ORDER BY ordinal_position", String.class, table);
+        for (String column : columns) {
+            assertTrue(actual.contains(column), table + " has no " + column + ": " + actual);
+        }
+    }
+
+    private void assertIndex(String table, String index, boolean unique, String... columns) {
+        List<Map<String, Object>> rows = jdbc.queryForList("SELECT column_name, non_unique"
+                + " FROM information_schema.indexes WHERE table_name = ? AND index_name = ?"
+                + " ORDER BY ordinal_position", table, index);
+        List<String> actual = new ArrayList<>();
+        for (Map<String, Object> row : rows) {
+            actual.add((String) row.get("COLUMN_NAME"));
+            assertEquals(!unique, row.get("NON_UNIQUE"), index);
+        }
+        assertEquals(Arrays.asList(columns), actual, index);
+    }
+
+    private static byte[] bytes(String uuid) {
+        UUID id = UUID.fromString(uuid);
+        byte[] bytes = new byte[16];
+        for (int i = 0; i < 8; i++) {
+            bytes[i] = (byte) (id.getMostSignificantBits() >>> (56 - 8 * i));
+            bytes[8 + i] = (byte) (id.getLeastSignificantBits() >>> (56 - 8 * i));
+        }
+        return bytes;
+    }
+}
@@ -0,0 +1,210 @@
+package temperature.repository;
+
+import temperature.model.*;
+import temperature.repository.StatementRecorder.RecordedStatement;
+import temperature.service.RollupService;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.domain.Specification;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import javax.persistence.EntityManager;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+// Runs the repository queries the application issues against H2 in MySQL mode, records
+// the SQL they emit with its parameters, and fails when the EXPLAIN plan of any of them
+// scans a whole table instead of seeking an index
+@DataJpaTest
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Import({ StatementRecorder.class, TemperatureRollupRepository.class, RollupService.class })
+class QueryPlanTest {
+
+    private static final int TENANTS = 3;
+    private static final int DEVICES_PER_TENANT = 5;
+    private static final int READINGS_PER_DEVICE = 100;
+    private static final long START = 1_700_000_000_000L;
+
+    @Autowired
+    private TemperatureRepository temperatureRepository;
+
+    @Autowired
+    private DeviceRepository deviceRepository;
+
+    @Autowired
+    private TemperatureRollupRepository rollupRepository;
+
+    @Autowired
+    private RollupService rollupService;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private EntityManager entityManager;
+
+    @Autowired
+    private StatementRecorder recorder;
+
+    private Device device;
+    private Temperature reading;
+
+    // Several tenants with several devices each, so a scan is never the cheaper plan
+    @BeforeEach
+    void seed() {
+        List<Temperature> readings = new ArrayList<>();
+        for (int tenant = 0; tenant < TENANTS; tenant++) {
+            for (int d = 0; d < DEVICES_PER_TENANT; d++) {
+                Device stored = deviceRepository.save(new Device("sensor-" + d, "room-" + d, "key-" + tenant));
+                for (int i = 0; i < READINGS_PER_DEVICE; i++) {
+                    Temperature temperature = new Temperature(20 + i % 7, 40 + i % 11, START + i * 30_000L,
+                            stored);
+                    temperature.setDewPoint(10);
+                    temperature.setSequence((long) i);
+                    temperature.setBoot(0L);
+                    readings.add(temperature);
+                }
+            }
+        }
+        temperatureRepository.saveAll(readings);
+        rollupService.record(readings);
+        entityManager.flush();
+        entityManager.clear();
+
+        reading = readings.get(readings.size() / 2);
+        device = reading.getDevice();
+    }
+
+    @Test
+    void derivedTemperatureQueriesUseIndexes() {
+        assertIndexed(() -> {
+            temperatureRepository.findById(reading.getId());
+            temperatureRepository.findAllById(Arrays.asList(reading.getId(), TimeOrderedUuid.next()));
+            temperatureRepository.findByTimestampBetween(START, START + 60_000L);
+            temperatureRepository.findFirstByApiKeyOrderByTimestampDesc("key-1");
+            temperatureRepository.findFirstByApiKeyOrderByTimestampAsc("key-1");
+            temperatureRepository.findIdBySequence(device.getId(), 0L, 7L);
+            temperatureRepository.findMaxSequence(device.getId(), 0L);
+            temperatureRepository.findLatestByDeviceId(device.getId());
+        });
+    }
+
+    @Test
+    void deviceQueriesUseIndexes() {
+        assertIndexed(() -> {
+            deviceRepository.findById(device.getId());
+            deviceRepository.findAllById(Collections.singletonList(device.getId()));
+            deviceRepository.findByDeviceNameAndApiKey("sensor-1", "key-1");
+            deviceRepository.findByApiKeyAndDeviceNameIn("key-1", Arrays.asList("sensor-1", "sensor-2"));
+            deviceRepository.findAllByApiKey("key-1");
+        });
+    }
+
+    @Test
+    void filteredQueriesUseIndexes() {
+        List<TimeRange> ranges = Arrays.asList(new TimeRange(START, START + 600_000L),
+                new TimeRange(START + 1_200_000L, START + 1_800_000L),
+                TimeRange.daily(START + 1_800_000L, START + 3_600_000L, 5 * TimeRange.HOUR_MS));
+        for (TemperatureFilter filter : filters()) {
+            Specification<Temperature> unbounded = TemperatureSpecifications.matching(filter, null);
+            Specification<Temperature> bounded = TemperatureSpecifications.matching(filter, ranges);
+            assertIndexed(() -> {
+                temperatureRepository.findAll(bounded, Sort.by(Sort.Direction.ASC, "timestamp"));
+                temperatureRepository.findReadingColumns(bounded, 100);
+                temperatureRepository.findAggregate(bounded);
+                temperatureRepository.countByDevice(unbounded);
+                temperatureRepository.findKeys(bounded, 50);
+                temperatureRepository.findPage(unbounded, null, 51);
+                temperatureRepository.findPage(unbounded, KeysetCursor.after(reading), 51);
+                temperatureRepository.findPage(unbounded, KeysetCursor.before(reading), 51);
+                try {
+                    temperatureRepository.forEachReading(bounded, 100, (id, timestamp, deviceId, deviceName,
+                            temperatureC, humidityPercent, dewPoint) -> {
+                    });
+                } catch (java.io.IOException e) {
+                    throw new IllegalStateException(e);
+                }
+            });
+        }
+    }
+
+    @Test
+    void rollupQueriesUseIndexes() {
+        List<TimeRange> hours = Arrays.asList(new TimeRange(START, START + 2 * RollupService.HOUR),
+                TimeRange.daily(START + 2 * RollupService.HOUR, START + 4 * RollupService.HOUR, 0));
+        for (TemperatureFilter filter : filters()) {
+            UUID deviceId = TimeOrderedUuid.parse(filter.getDeviceId());
+            assertIndexed(() -> {
+                rollupRepository.aggregate(filter, deviceId, RollupService.DAY, null);
+                rollupRepository.aggregate(filter, deviceId, RollupService.HOUR, hours);
+                rollupRepository.forEachBucket(filter, deviceId, RollupService.MINUTE, hours,
+                        (bucketDevice, bucketStart, aggregate) -> {
+                        });
+            });
+        }
+        assertIndexed(() -> rollupRepository.recompute(RollupService.MINUTE, device.getId(),
+                reading.getTimestamp() / RollupService.MINUTE * RollupService.MINUTE));
+    }
+
+    // The tenant alone, one device by id, and one by name and location through the join
+    private List<TemperatureFilter> filters() {
+        TemperatureFilter tenant = new TemperatureFilter();
+        tenant.setApiKey(device.getApiKey());
+
+        TemperatureFilter byId = new TemperatureFilter();
+        byId.setApiKey(device.getApiKey());
+        byId.setDeviceId(device.getId().toString());
+
+        TemperatureFilter byName = new TemperatureFilter();
+        byName.setApiKey(device.getApiKey());
+        byName.setDeviceName(device.getDeviceName().toUpperCase());
+        byName.setLocation(device.getLocation());
+        return Arrays.asList(tenant, byId, byName);
+    }
+
+    private void assertIndexed(Runnable queries) {
+        recorder.start();
+        try {
+            queries.run();
+            entityManager.flush();
+        } finally {
+            entityManager.clear();
+        }
+        List<RecordedStatement> statements = recorder.stop();
+        assertFalse(statements.isEmpty(), "No statements recorded");
+
+        List<String> fullScans = new ArrayList<>();
+        for (RecordedStatement statement : statements) {
+            String sql = statement.getSql().trim();
+            // Plain inserts read nothing
+            if (sql.toLowerCase().startsWith("insert") && !sql.toLowerCase().contains("select")) {
+                continue;
+            }
+            String plan = jdbcTemplate.query("EXPLAIN " + sql, rs -> {
+                StringBuilder rows = new StringBuilder();
+                while (rs.next()) {
+                    rows.append(rs.getString(1)).append('\n');
+                }
+                return rows.toString();
+            }, statement.getParameters().toArray());
+            // H2 reports the access path of each table as a comment, e.g. /* PUBLIC.TEMPERATURE.tableScan */
+            if (plan.contains(".tableScan")) {
+                fullScans.add(plan);
+            }
+        }
+        assertEquals(Collections.emptyList(), fullScans);
+    }
+}
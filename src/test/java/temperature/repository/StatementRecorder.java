@@ -0,0 +1,119 @@
+package temperature.repository;
+
+import org.springframework.beans.factory.config.BeanPostProcessor;
+
+import javax.sql.DataSource;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+// Wraps the data source so every prepared statement the repositories execute, through
+// Hibernate or JdbcTemplate, is recorded with its bound parameters while recording
+class StatementRecorder implements BeanPostProcessor {
+
+    private final List<RecordedStatement> statements = new CopyOnWriteArrayList<>();
+    private volatile boolean recording;
+
+    void start() {
+        statements.clear();
+        recording = true;
+    }
+
+    List<RecordedStatement> stop() {
+        recording = false;
+        return new ArrayList<>(statements);
+    }
+
+    @Override
+    public Object postProcessAfterInitialization(Object bean, String beanName) {
+        return bean instanceof DataSource ? wrap((DataSource) bean) : bean;
+    }
+
+    private DataSource wrap(DataSource dataSource) {
+        return proxy(DataSource.class, (method, args) -> {
+            Object result = invoke(dataSource, method, args);
+            return result instanceof Connection ? wrap((Connection) result) : result;
+        });
+    }
+
+    private Connection wrap(Connection connection) {
+        return proxy(Connection.class, (method, args) -> {
+            Object result = invoke(connection, method, args);
+            if (result instanceof PreparedStatement && "prepareStatement".equals(method.getName())) {
+                return wrap((PreparedStatement) result, (String) args[0]);
+            }
+            return result;
+        });
+    }
+
+    private PreparedStatement wrap(PreparedStatement statement, String sql) {
+        Map<Integer, Object> parameters = new TreeMap<>();
+        return proxy(PreparedStatement.class, (method, args) -> {
+            String name = method.getName();
+            if (name.startsWith("set") && args != null && args.length >= 2 && args[0] instanceof Integer) {
+                parameters.put((Integer) args[0], "setNull".equals(name) ? null : args[1]);
+            } else if ("clearParameters".equals(name)) {
+                parameters.clear();
+            } else if (recording && (args == null || args.length == 0)
+                    && ("execute".equals(name) || "executeQuery".equals(name) || "executeUpdate".equals(name)
+                            || "addBatch".equals(name))) {
+                statements.add(new RecordedStatement(sql, new ArrayList<>(parameters.values())));
+            }
+            return invoke(statement, method, args);
+        });
+    }
+
+    private static Object invoke(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T proxy(Class<T> type, Handler handler) {
+        return (T) Proxy.newProxyInstance(StatementRecorder.class.getClassLoader(), new Class<?>[] { type },
+                (proxy, method, args) -> {
+                    // Identity, so transaction synchronization can match the wrapped connections
+                    if ("equals".equals(method.getName()) && args != null && args.length == 1) {
+                        return proxy == args[0];
+                    }
+                    if ("hashCode".equals(method.getName()) && args == null) {
+                        return System.identityHashCode(proxy);
+                    }
+                    return handler.invoke(method, args);
+                });
+    }
+
+    private interface Handler {
+        Object invoke(Method method, Object[] args) throws Throwable;
+    }
+
+    static final class RecordedStatement {
+        private final String sql;
+        private final List<Object> parameters;
+
+        RecordedStatement(String sql, List<Object> parameters) {
+            this.sql = sql;
+            this.parameters = Collections.unmodifiableList(parameters);
+        }
+
+        String getSql() {
+            return sql;
+        }
+
+        List<Object> getParameters() {
+            return parameters;
+        }
+    }
+}
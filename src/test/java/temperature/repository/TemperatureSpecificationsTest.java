@@ -0,0 +1,51 @@
+package temperature.repository;
+
+import temperature.model.*;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+@DataJpaTest
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+class TemperatureSpecificationsTest {
+
+    private static final long DAY = TimeRange.DAY_MS;
+    private static final long HOUR = TimeRange.HOUR_MS;
+
+    @Autowired
+    private TemperatureRepository temperatureRepository;
+
+    @Autowired
+    private DeviceRepository deviceRepository;
+
+    // The time-of-day check runs in the database; one reading every 20 minutes for three
+    // days leaves three a day inside the hour
+    @Test
+    void dailyRangeSelectsItsHourOfEveryDay() {
+        Device device = deviceRepository.save(new Device("sensor", "room", "key"));
+        long start = 1_700_006_400_000L; // midnight UTC
+        List<Temperature> readings = new ArrayList<>();
+        for (long t = start; t < start + 3 * DAY; t += 20 * 60_000L) {
+            readings.add(new Temperature(20, 40, t, device));
+        }
+        temperatureRepository.saveAll(readings);
+
+        TemperatureFilter filter = new TemperatureFilter();
+        filter.setApiKey("key");
+        List<TimeRange> ranges = Collections.singletonList(TimeRange.daily(start, start + 3 * DAY, 5 * HOUR));
+        List<Temperature> matched = temperatureRepository.findAll(TemperatureSpecifications.matching(filter, ranges));
+
+        assertEquals(9, matched.size());
+        for (Temperature temperature : matched) {
+            assertEquals(5, Math.floorMod(temperature.getTimestamp(), DAY) / HOUR);
+        }
+    }
+}
@@ -0,0 +1,164 @@
+package temperature.service;
+
+import temperature.exception.*;
+import temperature.model.*;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CalendarFilterCompilerTest {
+
+    private static final ZoneId UTC = ZoneOffset.UTC;
+    private static final ZoneId NEW_YORK = ZoneId.of("America/New_York");
+    private static final TimeRange ALL = new TimeRange(Long.MIN_VALUE, Long.MAX_VALUE);
+
+    @Test
+    void yearIsOneRangeInTheZone() {
+        List<TimeRange> ranges = CalendarFilterCompiler.compile(2024, null, null, null, NEW_YORK, ALL);
+
+        assertEquals(1, ranges.size());
+        assertEquals(at(2024, 1, 1, 0, NEW_YORK), ranges.get(0).getStart());
+        assertEquals(at(2025, 1, 1, 0, NEW_YORK), ranges.get(0).getEnd());
+        assertFalse(ranges.get(0).isDaily());
+    }
+
+    @Test
+    void rangesAreClippedToTheBounds() {
+        TimeRange bounds = new TimeRange(at(2024, 3, 5, 12, UTC), at(2024, 3, 20, 0, UTC));
+        List<TimeRange> ranges = CalendarFilterCompiler.compile(null, 3, null, null, UTC, bounds);
+
+        assertEquals(1, ranges.size());
+        assertEquals(bounds.getStart(), ranges.get(0).getStart());
+        assertEquals(bounds.getEnd(), ranges.get(0).getEnd());
+    }
+
+    // ?hour=5 over years of data is one daily range per stretch of constant offset, not
+    // one range per day
+    @Test
+    void hourWithoutYearIsDaily() {
+        TimeRange bounds = new TimeRange(at(2019, 6, 1, 0, UTC), at(2024, 6, 1, 0, UTC));
+        List<TimeRange> ranges = CalendarFilterCompiler.compile(null, null, null, 5, UTC, bounds);
+
+        assertEquals(1, ranges.size());
+        TimeRange range = ranges.get(0);
+        assertTrue(range.isDaily());
+        assertEquals(5 * TimeRange.HOUR_MS, range.getHourStart());
+        assertTrue(range.contains(at(2021, 2, 28, 5, UTC) + 59 * 60_000L));
+        assertFalse(range.contains(at(2021, 2, 28, 6, UTC)));
+        assertFalse(range.contains(at(2021, 2, 28, 4, UTC)));
+    }
+
+    @Test
+    void dailyRangesFollowTheOffset() {
+        List<TimeRange> ranges = CalendarFilterCompiler.compile(2024, null, null, 5, NEW_YORK, ALL);
+
+        // EST until 10 March, EDT until 3 November, then EST again
+        assertEquals(3, ranges.size());
+        assertEquals(10 * TimeRange.HOUR_MS, ranges.get(0).getHourStart());
+        assertEquals(9 * TimeRange.HOUR_MS, ranges.get(1).getHourStart());
+        assertEquals(10 * TimeRange.HOUR_MS, ranges.get(2).getHourStart());
+        assertEquals(at(2024, 1, 1, 0, NEW_YORK), ranges.get(0).getStart());
+        assertEquals(ranges.get(0).getEnd(), ranges.get(1).getStart());
+        assertEquals(at(2025, 1, 1, 0, NEW_YORK), ranges.get(2).getEnd());
+
+        for (int month = 1; month <= 12; month++) {
+            assertTrue(contains(ranges, at(2024, month, 15, 5, NEW_YORK)), "month " + month);
+            assertFalse(contains(ranges, at(2024, month, 15, 6, NEW_YORK)), "month " + month);
+        }
+    }
+
+    @Test
+    void hourSkippedByDstGapMatchesNothing() {
+        assertTrue(CalendarFilterCompiler.compile(2024, 3, 10, 2, NEW_YORK, ALL).isEmpty());
+
+        List<TimeRange> month = CalendarFilterCompiler.compile(2024, 3, null, 2, NEW_YORK, ALL);
+        long gap = at(2024, 3, 10, 7, UTC);
+        for (long t = gap - 2 * TimeRange.HOUR_MS; t < gap + 2 * TimeRange.HOUR_MS; t += 60_000L) {
+            assertFalse(contains(month, t));
+        }
+        assertTrue(contains(month, at(2024, 3, 9, 2, NEW_YORK)));
+        assertTrue(contains(month, at(2024, 3, 11, 2, NEW_YORK)));
+    }
+
+    @Test
+    void hourRepeatedByDstOverlapCoversBothOccurrences() {
+        // 01:00 EDT is 05:00 UTC, the repeated 01:00 EST is 06:00 UTC
+        List<TimeRange> day = CalendarFilterCompiler.compile(2024, 11, 3, 1, NEW_YORK, ALL);
+        assertEquals(1, day.size());
+        assertEquals(at(2024, 11, 3, 5, UTC), day.get(0).getStart());
+        assertEquals(at(2024, 11, 3, 7, UTC), day.get(0).getEnd());
+
+        List<TimeRange> month = CalendarFilterCompiler.compile(2024, 11, null, 1, NEW_YORK, ALL);
+        assertTrue(contains(month, at(2024, 11, 3, 5, UTC) + 1));
+        assertTrue(contains(month, at(2024, 11, 3, 6, UTC) + 1));
+        assertFalse(contains(month, at(2024, 11, 3, 7, UTC)));
+        assertFalse(contains(month, at(2024, 11, 3, 4, UTC) + 1));
+    }
+
+    @Test
+    void halfHourOffsetZone() {
+        ZoneId kolkata = ZoneId.of("Asia/Kolkata");
+        List<TimeRange> ranges = CalendarFilterCompiler.compile(2024, 1, null, 0, kolkata, ALL);
+
+        assertEquals(1, ranges.size());
+        assertEquals(18 * TimeRange.HOUR_MS + 30 * 60_000L, ranges.get(0).getHourStart());
+        assertTrue(contains(ranges, at(2024, 1, 20, 0, kolkata)));
+        assertFalse(contains(ranges, at(2024, 1, 20, 1, kolkata)));
+    }
+
+    @Test
+    void dayMissingFromMonthIsSkipped() {
+        List<TimeRange> ranges = CalendarFilterCompiler.compile(2023, null, 31, null, UTC, ALL);
+
+        assertEquals(7, ranges.size());
+        assertEquals(at(2023, 1, 31, 0, UTC), ranges.get(0).getStart());
+        assertEquals(at(2023, 3, 31, 0, UTC), ranges.get(1).getStart());
+    }
+
+    @Test
+    void dayWithoutYearExpandsPerMonth() {
+        TimeRange bounds = new TimeRange(at(2014, 1, 1, 0, UTC), at(2024, 1, 1, 0, UTC));
+        List<TimeRange> ranges = CalendarFilterCompiler.compile(null, null, 1, 12, UTC, bounds);
+
+        assertEquals(120, ranges.size());
+        assertEquals(at(2014, 1, 1, 12, UTC), ranges.get(0).getStart());
+        assertEquals(at(2014, 1, 1, 13, UTC), ranges.get(0).getEnd());
+    }
+
+    @Test
+    void emptyBoundsMatchNothing() {
+        assertTrue(CalendarFilterCompiler.compile(null, null, null, 5, UTC, new TimeRange(10, 10)).isEmpty());
+    }
+
+    @Test
+    void outOfRangeFieldsAreRejected() {
+        assertThrows(InvalidFilterException.class,
+                () -> CalendarFilterCompiler.compile(null, 13, null, null, UTC, ALL));
+        assertThrows(InvalidFilterException.class,
+                () -> CalendarFilterCompiler.compile(null, null, 32, null, UTC, ALL));
+        assertThrows(InvalidFilterException.class,
+                () -> CalendarFilterCompiler.compile(null, null, null, 24, UTC, ALL));
+    }
+
+    private static boolean contains(List<TimeRange> ranges, long timestamp) {
+        for (TimeRange range : ranges) {
+            if (range.contains(timestamp)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static long at(int year, int month, int day, int hour, ZoneId zone) {
+        return LocalDateTime.of(year, month, day, hour, 0).atZone(zone).toInstant().toEpochMilli();
+    }
+}
@@ -0,0 +1,163 @@
+package temperature.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LttbDownsamplerTest {
+
+    @Test
+    void shortSeriesPassesThrough() {
+        double[] values = { 3, 1, 4, 1, 5 };
+        LttbDownsampler downsampler = downsample(values, values.length, 5);
+
+        assertArrayEquals(new long[] { 0, 1, 2, 3, 4 }, downsampler.getTimestamps());
+        assertArrayEquals(values, downsampler.getValues());
+    }
+
+    @Test
+    void spikeInsideABucketIsKept() {
+        double[] values = new double[100];
+        values[42] = 10;
+        LttbDownsampler downsampler = downsample(values, values.length, 10);
+
+        long[] timestamps = downsampler.getTimestamps();
+        assertEquals(10, timestamps.length);
+        assertTrue(Arrays.binarySearch(timestamps, 42) >= 0);
+    }
+
+    // With 8 points and a threshold of 5 the inner points split into the buckets [1, 3),
+    // [3, 5) and [5, 7); every kept point comes from its own bucket
+    @Test
+    void keptPointsComeFromConsecutiveBuckets() {
+        Random random = new Random(1);
+        for (int count = 5; count < 300; count += 7) {
+            for (int threshold = 3; threshold < count; threshold += 4) {
+                double every = (double) (count - 2) / (threshold - 2);
+                LttbDownsampler downsampler = downsample(random(random, count), count, threshold);
+
+                long[] timestamps = downsampler.getTimestamps();
+                assertEquals(threshold, timestamps.length, count + "/" + threshold);
+                assertEquals(0, timestamps[0]);
+                assertEquals(count - 1, timestamps[threshold - 1]);
+                for (int bucket = 0; bucket < threshold - 2; bucket++) {
+                    long kept = timestamps[bucket + 1];
+                    long end = bucket == threshold - 3 ? count - 1 : (long) Math.floor((bucket + 1) * every) + 1;
+                    assertTrue(kept >= (long) Math.floor(bucket * every) + 1, count + "/" + threshold);
+                    assertTrue(kept < end, count + "/" + threshold);
+                }
+            }
+        }
+    }
+
+    @Test
+    void matchesTheInMemoryAlgorithm() {
+        Random random = new Random(2);
+        for (int run = 0; run < 100; run++) {
+            int count = 3 + random.nextInt(2000);
+            int threshold = 3 + random.nextInt(Math.max(1, count - 3));
+            double[] values = random(random, count);
+
+            LttbDownsampler downsampler = downsample(values, count, threshold);
+
+            assertArrayEquals(reference(values, threshold), downsampler.getTimestamps(), count + "/" + threshold);
+        }
+    }
+
+    // The expected count comes from a separate query and may be off by the time the
+    // readings are scanned
+    @Test
+    void miscountedSeriesStillKeepsItsEnds() {
+        double[] values = random(new Random(3), 500);
+
+        LttbDownsampler shorter = downsample(values, 800, 50);
+        long[] timestamps = shorter.getTimestamps();
+        assertEquals(0, timestamps[0]);
+        assertEquals(499, timestamps[timestamps.length - 1]);
+        assertTrue(timestamps.length <= 50);
+
+        LttbDownsampler longer = downsample(values, 200, 50);
+        timestamps = longer.getTimestamps();
+        assertEquals(50, timestamps.length);
+        assertEquals(0, timestamps[0]);
+        assertEquals(499, timestamps[49]);
+        assertStrictlyIncreasing(timestamps);
+    }
+
+    @Test
+    void emptyAndSinglePointSeries() {
+        assertEquals(0, downsample(new double[0], 0, 10).getTimestamps().length);
+        assertArrayEquals(new double[] { 7 }, downsample(new double[] { 7 }, 1, 10).getValues());
+        assertArrayEquals(new double[] { 7 }, downsample(new double[] { 7 }, 100, 10).getValues());
+    }
+
+    @Test
+    void thresholdBelowThreeIsRejected() {
+        assertThrows(IllegalArgumentException.class, () -> new LttbDownsampler(100, 2));
+    }
+
+    private static LttbDownsampler downsample(double[] values, long count, int threshold) {
+        LttbDownsampler downsampler = new LttbDownsampler(count, threshold);
+        for (int i = 0; i < values.length; i++) {
+            downsampler.add(i, values[i]);
+        }
+        downsampler.finish();
+        return downsampler;
+    }
+
+    // Textbook LTTB over the whole series, returning the kept indexes. The last bucket ends
+    // right before the final point even where (threshold - 2) * every rounds below count - 2.
+    private static long[] reference(double[] values, int threshold) {
+        int count = values.length;
+        long[] kept = new long[threshold];
+        double every = (double) (count - 2) / (threshold - 2);
+        int a = 0;
+        for (int bucket = 0; bucket < threshold - 2; bucket++) {
+            boolean last = bucket == threshold - 3;
+            int nextStart = last ? count - 1 : (int) Math.floor((bucket + 1) * every) + 1;
+            int nextEnd = last ? count : Math.min((int) Math.floor((bucket + 2) * every) + 1, count - 1);
+            double meanX = 0;
+            double meanY = 0;
+            for (int i = nextStart; i < nextEnd; i++) {
+                meanX += i;
+                meanY += values[i];
+            }
+            meanX /= nextEnd - nextStart;
+            meanY /= nextEnd - nextStart;
+
+            int best = -1;
+            double bestArea = -1;
+            for (int i = (int) Math.floor(bucket * every) + 1; i < nextStart; i++) {
+                double area = Math.abs((a - meanX) * (values[i] - values[a]) - (a - i) * (meanY - values[a]));
+                if (area > bestArea) {
+                    bestArea = area;
+                    best = i;
+                }
+            }
+            kept[bucket + 1] = best;
+            a = best;
+        }
+        kept[threshold - 1] = count - 1;
+        return kept;
+    }
+
+    private static double[] random(Random random, int count) {
+        double[] values = new double[count];
+        for (int i = 0; i < count; i++) {
+            values[i] = 20 + 5 * Math.sin(i / 30.0) + random.nextGaussian();
+        }
+        return values;
+    }
+
+    private static void assertStrictlyIncreasing(long[] timestamps) {
+        for (int i = 1; i < timestamps.length; i++) {
+            assertTrue(timestamps[i] > timestamps[i - 1]);
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package temperature.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PercentileEngineTest {
+
+    @Test
+    void medianOfEvenCountIsTheMeanOfTheMiddleValues() {
+        double[] results = PercentileEngine.exact(new double[] { 4, 1, 3, 2 }, 50);
+
+        assertEquals(2.5, results[0]);
+    }
+
+    @Test
+    void ranksBetweenValuesAreInterpolated() {
+        // Ranks 0.9, 2.7 and 3.6 of five values
+        double[] results = PercentileEngine.exact(new double[] { 50, 10, 40, 20, 30 }, 22.5, 67.5, 90);
+
+        assertEquals(19, results[0], 1e-9);
+        assertEquals(37, results[1], 1e-9);
+        assertEquals(46, results[2], 1e-9);
+    }
+
+    @Test
+    void resultsFollowTheRequestedOrder() {
+        double[] results = PercentileEngine.exact(new double[] { 3, 1, 2 }, 100, 0, 50);
+
+        assertArrayEquals(new double[] { 3, 1, 2 }, results);
+    }
+
+    @Test
+    void singleValueAnswersEveryPercentile() {
+        assertArrayEquals(new double[] { 7, 7, 7 }, PercentileEngine.exact(new double[] { 7 }, 0, 50, 100));
+    }
+
+    @Test
+    void emptyValuesAreNaN() {
+        double[] results = PercentileEngine.exact(new double[0], 50, 99);
+
+        assertTrue(Double.isNaN(results[0]));
+        assertTrue(Double.isNaN(results[1]));
+    }
+
+    @Test
+    void matchesSortingOnRandomValuesWithDuplicates() {
+        Random random = new Random(7);
+        double[] percentiles = { 99.9, 0, 25, 50, 50, 75, 90, 99, 100, 12.5 };
+        for (int run = 0; run < 200; run++) {
+            double[] values = new double[1 + random.nextInt(500)];
+            for (int i = 0; i < values.length; i++) {
+                // Few distinct values so the pivot often equals its neighbours
+                values[i] = random.nextInt(20) / 2.0;
+            }
+            double[] sorted = values.clone();
+            Arrays.sort(sorted);
+
+            double[] results = PercentileEngine.exact(values, percentiles);
+
+            for (int i = 0; i < percentiles.length; i++) {
+                assertEquals(sorted(sorted, percentiles[i]), results[i], 1e-9,
+                        "run " + run + " p" + percentiles[i]);
+            }
+        }
+    }
+
+    @Test
+    void selectPartitionsAroundTheKthValue() {
+        Random random = new Random(11);
+        double[] values = new double[1000];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = random.nextGaussian();
+        }
+        double[] sorted = values.clone();
+        Arrays.sort(sorted);
+
+        double selected = PercentileEngine.select(values, 0, values.length - 1, 321);
+
+        assertEquals(sorted[321], selected);
+        for (int i = 0; i < 321; i++) {
+            assertTrue(values[i] <= selected);
+        }
+        for (int i = 322; i < values.length; i++) {
+            assertTrue(values[i] >= selected);
+        }
+    }
+
+    private static double sorted(double[] sorted, double percentile) {
+        double rank = percentile / 100.0 * (sorted.length - 1);
+        int lower = (int) Math.floor(rank);
+        if (lower + 1 >= sorted.length) {
+            return sorted[lower];
+        }
+        return sorted[lower] + (sorted[lower + 1] - sorted[lower]) * (rank - lower);
+    }
+}
@@ -0,0 +1,116 @@
+package temperature.service;
+
+import temperature.repository.*;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Optional;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class ReadingDeduplicatorTest {
+
+    private static final UUID DEVICE = UUID.fromString("0190a6c2-0000-7000-8000-000000000001");
+
+    private TemperatureRepository temperatureRepository;
+    private ReadingDeduplicator deduplicator;
+
+    @BeforeEach
+    void setUp() {
+        temperatureRepository = mock(TemperatureRepository.class);
+        // Mockito answers 0 for a Long; a boot with nothing stored has no maximum
+        when(temperatureRepository.findMaxSequence(eq(DEVICE), anyLong())).thenReturn(null);
+        deduplicator = new ReadingDeduplicator(temperatureRepository);
+        ReflectionTestUtils.setField(deduplicator, "maxDevices", 100);
+    }
+
+    @Test
+    void newSequencesAreStoredWithoutLookups() {
+        for (long sequence = 0; sequence < 10; sequence++) {
+            assertNull(store(1, sequence));
+        }
+
+        verify(temperatureRepository, times(1)).findMaxSequence(DEVICE, 1);
+        verify(temperatureRepository, never()).findIdBySequence(eq(DEVICE), anyLong(), anyLong());
+    }
+
+    @Test
+    void retryReturnsTheStoredId() {
+        UUID stored = UUID.randomUUID();
+        assertNull(deduplicator.storeOnce(DEVICE, 1, 5, () -> stored));
+        when(temperatureRepository.findIdBySequence(DEVICE, 1, 5)).thenReturn(Optional.of(stored));
+
+        UUID[] second = new UUID[1];
+        assertEquals(stored, deduplicator.storeOnce(DEVICE, 1, 5, () -> second[0] = UUID.randomUUID()));
+        assertNull(second[0]);
+    }
+
+    // A device that reboots restarts its counter; the readings of the new boot are new
+    // even though the old boot already stored the same sequences
+    @Test
+    void counterResetInNewBootStoresReadings() {
+        for (long sequence = 0; sequence < 100; sequence++) {
+            store(1, sequence);
+        }
+        when(temperatureRepository.findIdBySequence(eq(DEVICE), eq(1L), anyLong()))
+                .thenReturn(Optional.of(UUID.randomUUID()));
+
+        for (long sequence = 0; sequence < 100; sequence++) {
+            assertNull(store(2, sequence));
+        }
+
+        verify(temperatureRepository).findMaxSequence(DEVICE, 2);
+        verify(temperatureRepository, never()).findIdBySequence(eq(DEVICE), eq(2L), anyLong());
+    }
+
+    // The same boot seen for the first time by this instance starts above what is stored
+    @Test
+    void sequencesUpToStoredMaximumAreLookedUp() {
+        when(temperatureRepository.findMaxSequence(DEVICE, 3)).thenReturn(40L);
+        UUID stored = UUID.randomUUID();
+        when(temperatureRepository.findIdBySequence(DEVICE, 3, 40)).thenReturn(Optional.of(stored));
+
+        assertEquals(stored, store(3, 40));
+        assertNull(store(3, 12));
+        assertNull(store(3, 41));
+
+        verify(temperatureRepository).findIdBySequence(DEVICE, 3, 12);
+        verify(temperatureRepository, never()).findIdBySequence(DEVICE, 3, 41);
+    }
+
+    @Test
+    void windowSlidesPastOldSequences() {
+        store(1, 0);
+        store(1, 1);
+        long far = ReadingDeduplicator.WINDOW + 10;
+        store(1, far);
+
+        // 1 fell out of the window and needs the database; the cleared slot 1 + WINDOW is new
+        store(1, 1);
+        verify(temperatureRepository).findIdBySequence(DEVICE, 1, 1);
+        assertNull(store(1, 1 + ReadingDeduplicator.WINDOW));
+        verify(temperatureRepository, never()).findIdBySequence(DEVICE, 1, 1 + ReadingDeduplicator.WINDOW);
+
+        // A short step keeps the slots in between, a marked one is still a duplicate
+        store(1, far + 3);
+        store(1, far);
+        verify(temperatureRepository).findIdBySequence(DEVICE, 1, far);
+        assertNull(store(1, far + 2));
+        verify(temperatureRepository, never()).findIdBySequence(DEVICE, 1, far + 2);
+    }
+
+    private UUID store(long boot, long sequence) {
+        return deduplicator.storeOnce(DEVICE, boot, sequence, UUID::randomUUID);
+    }
+}
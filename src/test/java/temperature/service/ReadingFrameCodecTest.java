@@ -0,0 +1,93 @@
+package temperature.service;
+
+import temperature.exception.*;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ReadingFrameCodecTest {
+
+    private static final UUID DEVICE = UUID.fromString("0190a6c2-3b4f-7d2e-8000-0000000000ab");
+
+    @Test
+    void framesDecodeInOrder() {
+        ByteBuffer body = ByteBuffer.allocate(2 * ReadingFrameCodec.FRAME_LENGTH);
+        frame(body, ReadingFrameCodec.VERSION, DEVICE, 1_700_000_000_000L, (short) 2150, (short) 4025);
+        frame(body, ReadingFrameCodec.VERSION, DEVICE, 0, (short) -1234, (short) 10000);
+        body.flip();
+
+        List<Object[]> frames = decode(body);
+
+        assertEquals(2, frames.size());
+        assertFrame(frames.get(0), 0, 1_700_000_000_000L, 21.5, 40.25);
+        assertFrame(frames.get(1), 1, 0, -12.34, 100.0);
+        // The caller's buffer is left as it was
+        assertEquals(0, body.position());
+    }
+
+    // Humidity is unsigned so the whole 16 bits are usable
+    @Test
+    void humidityIsUnsigned() {
+        ByteBuffer body = ByteBuffer.allocate(ReadingFrameCodec.FRAME_LENGTH);
+        frame(body, ReadingFrameCodec.VERSION, DEVICE, 1, Short.MIN_VALUE, (short) 0xFFFF);
+        body.flip();
+
+        Object[] frame = decode(body).get(0);
+
+        assertEquals(-327.68, (double) frame[3], 1e-9);
+        assertEquals(655.35, (double) frame[4], 1e-9);
+    }
+
+    @Test
+    void partialFramesAreRejected() {
+        assertThrows(InvalidReadingException.class, () -> ReadingFrameCodec.frameCount(ByteBuffer.allocate(0)));
+        assertThrows(InvalidReadingException.class,
+                () -> ReadingFrameCodec.frameCount(ByteBuffer.allocate(ReadingFrameCodec.FRAME_LENGTH + 1)));
+        assertEquals(3, ReadingFrameCodec.frameCount(ByteBuffer.allocate(3 * ReadingFrameCodec.FRAME_LENGTH)));
+    }
+
+    @Test
+    void unknownVersionIsRejected() {
+        ByteBuffer body = ByteBuffer.allocate(2 * ReadingFrameCodec.FRAME_LENGTH);
+        frame(body, ReadingFrameCodec.VERSION, DEVICE, 1, (short) 0, (short) 0);
+        frame(body, (byte) 2, DEVICE, 1, (short) 0, (short) 0);
+        body.flip();
+
+        InvalidReadingException e = assertThrows(InvalidReadingException.class, () -> decode(body));
+        assertTrue(e.getMessage().contains("frame 1"), e.getMessage());
+    }
+
+    private static List<Object[]> decode(ByteBuffer body) {
+        List<Object[]> frames = new ArrayList<>();
+        ReadingFrameCodec.decode(body, (index, deviceId, timestamp, temperatureC, humidityPercent) ->
+                frames.add(new Object[] { index, deviceId, timestamp, temperatureC, humidityPercent }));
+        return frames;
+    }
+
+    private static void frame(ByteBuffer body, byte version, UUID deviceId, long timestamp, short temperature,
+            short humidity) {
+        body.put(version);
+        body.putLong(deviceId.getMostSignificantBits());
+        body.putLong(deviceId.getLeastSignificantBits());
+        body.putLong(timestamp);
+        body.putShort(temperature);
+        body.putShort(humidity);
+    }
+
+    private static void assertFrame(Object[] frame, int index, long timestamp, double temperatureC,
+            double humidityPercent) {
+        assertEquals(index, frame[0]);
+        assertEquals(DEVICE, frame[1]);
+        assertEquals(timestamp, frame[2]);
+        assertEquals(temperatureC, (double) frame[3], 1e-9);
+        assertEquals(humidityPercent, (double) frame[4], 1e-9);
+    }
+}
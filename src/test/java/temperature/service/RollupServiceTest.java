@@ -0,0 +1,181 @@
+package temperature.service;
+
+import temperature.model.*;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static temperature.service.RollupService.DAY;
+import static temperature.service.RollupService.HOUR;
+import static temperature.service.RollupService.MINUTE;
+
+class RollupServiceTest {
+
+    private static final long MIDNIGHT = 1_700_006_400_000L;
+
+    private final Map<Long, List<TimeRange>> bucketRanges = new HashMap<>();
+    private final List<TimeRange> rawRanges = new ArrayList<>();
+
+    @Test
+    void rangeSplitsIntoTheLargestWholeBuckets() {
+        // 10:20:30 on the first day until 02:15:45 two days later
+        long start = MIDNIGHT + 10 * HOUR + 20 * MINUTE + 30_000;
+        long end = MIDNIGHT + 2 * DAY + 2 * HOUR + 15 * MINUTE + 45_000;
+
+        RollupService.decompose(start, end, 0, bucketRanges, rawRanges);
+
+        assertRanges(bucketRanges.get(DAY), MIDNIGHT + DAY, MIDNIGHT + 2 * DAY);
+        assertRanges(bucketRanges.get(HOUR), MIDNIGHT + 11 * HOUR, MIDNIGHT + DAY,
+                MIDNIGHT + 2 * DAY, MIDNIGHT + 2 * DAY + 2 * HOUR);
+        assertRanges(bucketRanges.get(MINUTE), MIDNIGHT + 10 * HOUR + 21 * MINUTE, MIDNIGHT + 11 * HOUR,
+                MIDNIGHT + 2 * DAY + 2 * HOUR, MIDNIGHT + 2 * DAY + 2 * HOUR + 15 * MINUTE);
+        assertRanges(rawRanges, start, MIDNIGHT + 10 * HOUR + 21 * MINUTE,
+                MIDNIGHT + 2 * DAY + 2 * HOUR + 15 * MINUTE, end);
+    }
+
+    @Test
+    void rangeInsideOneMinuteIsReadRaw() {
+        RollupService.decompose(MIDNIGHT + 1_000, MIDNIGHT + 59_000, 0, bucketRanges, rawRanges);
+
+        assertTrue(bucketRanges.isEmpty());
+        assertRanges(rawRanges, MIDNIGHT + 1_000, MIDNIGHT + 59_000);
+    }
+
+    @Test
+    void alignedRangeNeedsNoFinerBuckets() {
+        RollupService.decompose(MIDNIGHT, MIDNIGHT + 3 * DAY, 0, bucketRanges, rawRanges);
+
+        assertRanges(bucketRanges.get(DAY), MIDNIGHT, MIDNIGHT + 3 * DAY);
+        assertNull(bucketRanges.get(HOUR));
+        assertNull(bucketRanges.get(MINUTE));
+        assertTrue(rawRanges.isEmpty());
+    }
+
+    @Test
+    void openEndsNeverProduceRawEdges() {
+        RollupService.decompose(Long.MIN_VALUE, MIDNIGHT + 90 * MINUTE, 0, bucketRanges, rawRanges);
+
+        assertRanges(bucketRanges.get(DAY), Long.MIN_VALUE, MIDNIGHT);
+        assertRanges(bucketRanges.get(HOUR), MIDNIGHT, MIDNIGHT + HOUR);
+        assertRanges(bucketRanges.get(MINUTE), MIDNIGHT + HOUR, MIDNIGHT + 90 * MINUTE);
+        assertTrue(rawRanges.isEmpty());
+
+        bucketRanges.clear();
+        RollupService.decompose(MIDNIGHT - 1, Long.MAX_VALUE, 0, bucketRanges, rawRanges);
+
+        assertRanges(bucketRanges.get(DAY), MIDNIGHT, Long.MAX_VALUE);
+        assertRanges(rawRanges, MIDNIGHT - 1, MIDNIGHT);
+    }
+
+    @Test
+    void emptyRangeProducesNothing() {
+        RollupService.decompose(MIDNIGHT, MIDNIGHT, 0, bucketRanges, rawRanges);
+
+        assertTrue(bucketRanges.isEmpty());
+        assertTrue(rawRanges.isEmpty());
+    }
+
+    // Every instant of the range is covered exactly once, by whole buckets or by raw edges
+    // that hold no whole minute
+    @Test
+    void piecesTileTheRange() {
+        Random random = new Random(4);
+        for (int run = 0; run < 1000; run++) {
+            long start = MIDNIGHT + (long) (random.nextDouble() * 5 * DAY);
+            long end = start + (long) (Math.pow(random.nextDouble(), 3) * 10 * DAY);
+            bucketRanges.clear();
+            rawRanges.clear();
+
+            RollupService.decompose(start, end, 0, bucketRanges, rawRanges);
+
+            List<TimeRange> pieces = new ArrayList<>(rawRanges);
+            assertTrue(rawRanges.size() <= 2);
+            for (TimeRange raw : rawRanges) {
+                assertTrue(RollupService.ceil(raw.getStart(), MINUTE) + MINUTE > raw.getEnd());
+            }
+            for (Map.Entry<Long, List<TimeRange>> entry : bucketRanges.entrySet()) {
+                for (TimeRange range : entry.getValue()) {
+                    assertEquals(0, Math.floorMod(range.getStart(), entry.getKey()));
+                    assertEquals(0, Math.floorMod(range.getEnd(), entry.getKey()));
+                    pieces.add(range);
+                }
+            }
+            pieces.sort(Comparator.comparingLong(TimeRange::getStart));
+            long covered = start;
+            for (TimeRange piece : pieces) {
+                assertTrue(piece.getEnd() > piece.getStart());
+                assertEquals(covered, piece.getStart(), "run " + run);
+                covered = piece.getEnd();
+            }
+            assertEquals(end, covered, "run " + run);
+        }
+    }
+
+    @Test
+    void dailyRangeReadsHourBucketsBetweenRawEdges() {
+        TimeRange range = TimeRange.daily(MIDNIGHT + 30 * MINUTE, MIDNIGHT + 3 * DAY + 5 * MINUTE, 5 * HOUR);
+
+        RollupService.decomposeDaily(range, bucketRanges, rawRanges);
+
+        List<TimeRange> hours = bucketRanges.get(HOUR);
+        assertRanges(hours, MIDNIGHT + HOUR, MIDNIGHT + 3 * DAY);
+        assertEquals(5 * HOUR, hours.get(0).getHourStart());
+        assertRanges(rawRanges, MIDNIGHT + 30 * MINUTE, MIDNIGHT + HOUR,
+                MIDNIGHT + 3 * DAY, MIDNIGHT + 3 * DAY + 5 * MINUTE);
+        for (TimeRange raw : rawRanges) {
+            assertEquals(5 * HOUR, raw.getHourStart());
+        }
+    }
+
+    // A zone half an hour off UTC starts its hours on the half hour, which only minute
+    // buckets tile; an hour starting off the minute is read raw
+    @Test
+    void dailyRangeOffTheHourFallsBackToFinerBuckets() {
+        TimeRange halfHour = TimeRange.daily(MIDNIGHT, MIDNIGHT + 2 * DAY, 18 * HOUR + 30 * MINUTE);
+        assertEquals(MINUTE, RollupService.dailyBucketMs(halfHour, HOUR));
+        assertEquals(0, RollupService.dailyBucketMs(TimeRange.daily(0, DAY, 1_000), HOUR));
+        assertEquals(MINUTE, RollupService.dailyBucketMs(TimeRange.daily(0, DAY, 5 * HOUR), MINUTE));
+
+        RollupService.decomposeDaily(halfHour, bucketRanges, rawRanges);
+        assertRanges(bucketRanges.get(MINUTE), MIDNIGHT, MIDNIGHT + 2 * DAY);
+        assertTrue(rawRanges.isEmpty());
+
+        bucketRanges.clear();
+        TimeRange offMinute = TimeRange.daily(MIDNIGHT, MIDNIGHT + 2 * DAY, 1_000);
+        RollupService.decomposeDaily(offMinute, bucketRanges, rawRanges);
+        assertTrue(bucketRanges.isEmpty());
+        assertEquals(1, rawRanges.size());
+        assertSame(offMinute, rawRanges.get(0));
+    }
+
+    @Test
+    void floorAndCeilAlignToTheBucket() {
+        assertEquals(MIDNIGHT, RollupService.floor(MIDNIGHT + HOUR - 1, DAY));
+        assertEquals(MIDNIGHT + DAY, RollupService.ceil(MIDNIGHT + 1, DAY));
+        assertEquals(MIDNIGHT, RollupService.ceil(MIDNIGHT, DAY));
+        assertEquals(-MINUTE, RollupService.floor(-1, MINUTE));
+        assertEquals(0, RollupService.ceil(-1, MINUTE));
+        assertEquals(Long.MAX_VALUE, RollupService.floor(Long.MAX_VALUE, DAY));
+        assertEquals(Long.MIN_VALUE, RollupService.ceil(Long.MIN_VALUE, DAY));
+    }
+
+    private static void assertRanges(List<TimeRange> ranges, long... bounds) {
+        assertEquals(bounds.length / 2, ranges.size(), String.valueOf(ranges));
+        List<TimeRange> sorted = new ArrayList<>(ranges);
+        sorted.sort(Comparator.comparingLong(TimeRange::getStart));
+        for (int i = 0; i < sorted.size(); i++) {
+            assertEquals(bounds[2 * i], sorted.get(i).getStart());
+            assertEquals(bounds[2 * i + 1], sorted.get(i).getEnd());
+        }
+    }
+}
@@ -0,0 +1,202 @@
+package temperature.service;
+
+import temperature.model.*;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class StreamingIngestServiceTest {
+
+    private static final String READING =
+            "{\"temperatureC\":21.5,\"humidityPercent\":40,\"timestamp\":1700000000000}";
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final List<Integer> batchSizes = new ArrayList<>();
+    private TemperatureIngestService temperatureIngestService;
+    private StreamingIngestService service;
+
+    @BeforeEach
+    void setUp() {
+        temperatureIngestService = mock(TemperatureIngestService.class);
+        when(temperatureIngestService.ingestBatch(eq("key"), anyList())).thenAnswer(invocation -> {
+            List<Temperature> batch = invocation.getArgument(1);
+            batchSizes.add(batch.size());
+            List<BatchIngestResult> results = new ArrayList<>();
+            for (int i = 0; i < batch.size(); i++) {
+                results.add(batch.get(i).getTemperatureC() < 0 ? BatchIngestResult.rejected(i, "Too cold")
+                        : BatchIngestResult.created(i, "id-" + i));
+            }
+            return results;
+        });
+        service = new StreamingIngestService(temperatureIngestService, objectMapper);
+        ReflectionTestUtils.setField(service, "batchSize", 200);
+        ReflectionTestUtils.setField(service, "maxDelayMs", 60_000L);
+        ReflectionTestUtils.setField(service, "maxLineBytes", 128);
+        service.start();
+    }
+
+    @AfterEach
+    void tearDown() {
+        service.stop();
+    }
+
+    @Test
+    void linesAreNumberedSkippingBlankOnes() throws IOException {
+        StringBuilder longLine = new StringBuilder("{\"temperatureC\":");
+        while (longLine.length() <= 128) {
+            longLine.append('1');
+        }
+        String body = READING + "\r\n\r\n   \n{not json\n" + longLine + "}\n" + READING.replace("21.5", "-60")
+                + "\n" + READING;
+
+        List<Map<String, Object>> acks = ingest(body);
+
+        assertEquals(1, acks.size());
+        Map<String, Object> ack = acks.get(0);
+        assertEquals(5, ack.get("sequence"));
+        assertEquals(2, ack.get("created"));
+        assertEquals(true, ack.get("done"));
+        List<Map<String, Object>> rejected = rejected(ack);
+        assertEquals(3, rejected.size());
+        assertEquals(2, rejected.get(0).get("sequence"));
+        assertTrue(((String) rejected.get(0).get("error")).startsWith("Malformed reading"));
+        assertEquals(3, rejected.get(1).get("sequence"));
+        assertEquals("Line exceeds 128 bytes", rejected.get(1).get("error"));
+        assertEquals(4, rejected.get(2).get("sequence"));
+        assertEquals("Too cold", rejected.get(2).get("error"));
+    }
+
+    @Test
+    void fullBatchesAreCommittedAsTheyFill() throws IOException {
+        ReflectionTestUtils.setField(service, "batchSize", 2);
+        StringBuilder body = new StringBuilder();
+        for (int i = 0; i < 5; i++) {
+            body.append(READING).append('\n');
+        }
+
+        List<Map<String, Object>> acks = ingest(body.toString());
+
+        assertEquals(3, acks.size());
+        assertEquals(2, acks.get(0).get("sequence"));
+        assertEquals(4, acks.get(1).get("sequence"));
+        assertEquals(5, acks.get(2).get("sequence"));
+        assertEquals(true, acks.get(2).get("done"));
+        assertEquals(Arrays.asList(2, 2, 1), batchSizes);
+    }
+
+    @Test
+    void emptyBodyIsAcknowledgedAsDone() throws IOException {
+        List<Map<String, Object>> acks = ingest("");
+
+        assertEquals(1, acks.size());
+        assertEquals(0, acks.get(0).get("sequence"));
+        assertEquals(true, acks.get(0).get("done"));
+        assertTrue(batchSizes.isEmpty());
+    }
+
+    // A pause in the upload alone does not commit; the pending line waits for max-delay-ms
+    // even though no further bytes arrive
+    @Test
+    void idleClientIsCommittedAfterMaxDelay() throws Exception {
+        ReflectionTestUtils.setField(service, "maxDelayMs", 300L);
+        PipedOutputStream upload = new PipedOutputStream();
+        PipedInputStream body = new PipedInputStream(upload);
+        AckCollector acks = new AckCollector();
+        CompletableFuture<Void> ingest = CompletableFuture.runAsync(() -> {
+            try {
+                service.ingest("key", body, acks);
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        });
+
+        long sentAt = System.currentTimeMillis();
+        upload.write((READING + "\n").getBytes(StandardCharsets.UTF_8));
+        upload.flush();
+
+        assertNull(acks.lines.poll(150, TimeUnit.MILLISECONDS));
+        String first = acks.lines.poll(5, TimeUnit.SECONDS);
+        assertNotNull(first);
+        assertTrue(System.currentTimeMillis() - sentAt >= 300);
+        Map<String, Object> ack = parse(first);
+        assertEquals(1, ack.get("sequence"));
+        assertEquals(1, ack.get("created"));
+        assertNull(ack.get("done"));
+
+        upload.close();
+        ingest.get(5, TimeUnit.SECONDS);
+        Map<String, Object> last = parse(acks.lines.poll(5, TimeUnit.SECONDS));
+        assertEquals(1, last.get("sequence"));
+        assertEquals(0, last.get("created"));
+        assertEquals(true, last.get("done"));
+        assertEquals(Collections.singletonList(1), batchSizes);
+    }
+
+    private List<Map<String, Object>> ingest(String body) throws IOException {
+        InputStream in = new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        service.ingest("key", in, out);
+
+        List<Map<String, Object>> acks = new ArrayList<>();
+        for (String line : out.toString("UTF-8").split("\n")) {
+            acks.add(parse(line));
+        }
+        return acks;
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<String, Object> parse(String line) throws IOException {
+        return objectMapper.readValue(line, Map.class);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<Map<String, Object>> rejected(Map<String, Object> ack) {
+        return (List<Map<String, Object>>) ack.get("rejected");
+    }
+
+    // Hands each acknowledgement line to the test thread as it is written
+    private static final class AckCollector extends OutputStream {
+        final BlockingQueue<String> lines = new LinkedBlockingQueue<>();
+        private final ByteArrayOutputStream line = new ByteArrayOutputStream();
+
+        @Override
+        public synchronized void write(int b) throws IOException {
+            if (b == '\n') {
+                lines.add(line.toString("UTF-8"));
+                line.reset();
+            } else {
+                line.write(b);
+            }
+        }
+    }
+}
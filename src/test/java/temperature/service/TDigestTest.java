@@ -0,0 +1,112 @@
+package temperature.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TDigestTest {
+
+    private static final double COMPRESSION = 100;
+
+    @Test
+    void emptyDigestIsNaN() {
+        assertTrue(Double.isNaN(new TDigest(COMPRESSION).quantile(0.5)));
+    }
+
+    @Test
+    void singleValueAnswersEveryQuantile() {
+        TDigest digest = new TDigest(COMPRESSION);
+        digest.add(21.5);
+
+        assertEquals(21.5, digest.quantile(0));
+        assertEquals(21.5, digest.quantile(0.5));
+        assertEquals(21.5, digest.quantile(1));
+    }
+
+    @Test
+    void extremesAreTheExactMinimumAndMaximum() {
+        TDigest digest = digest(gaussian(new Random(3), 100_000));
+        double[] sorted = gaussian(new Random(3), 100_000);
+        Arrays.sort(sorted);
+
+        assertEquals(sorted[0], digest.quantile(0));
+        assertEquals(sorted[sorted.length - 1], digest.quantile(1));
+        assertEquals(100_000, digest.size());
+    }
+
+    // The error is measured in rank, which is what the scale function bounds; it is
+    // smallest near the tails
+    @Test
+    void quantilesAreCloseInRank() {
+        double[] values = gaussian(new Random(5), 200_000);
+        TDigest digest = digest(values);
+        Arrays.sort(values);
+
+        for (double q : new double[] { 0.001, 0.01, 0.1, 0.25, 0.5, 0.75, 0.9, 0.99, 0.999 }) {
+            double rank = rank(values, digest.quantile(q)) / values.length;
+            double tolerance = q < 0.05 || q > 0.95 ? 0.001 : 0.01;
+            assertEquals(q, rank, tolerance, "q " + q);
+        }
+    }
+
+    @Test
+    void mergedDigestsMatchOneDigestOfEverything() {
+        double[] values = gaussian(new Random(9), 100_000);
+        TDigest whole = digest(values);
+        TDigest merged = new TDigest(COMPRESSION);
+        for (int part = 0; part < 10; part++) {
+            TDigest digest = new TDigest(COMPRESSION);
+            for (int i = part; i < values.length; i += 10) {
+                digest.add(values[i]);
+            }
+            merged.merge(digest);
+        }
+        merged.merge(new TDigest(COMPRESSION));
+        Arrays.sort(values);
+
+        assertEquals(whole.size(), merged.size());
+        assertEquals(values[0], merged.quantile(0));
+        assertEquals(values[values.length - 1], merged.quantile(1));
+        for (double q : new double[] { 0.01, 0.5, 0.99 }) {
+            assertEquals(q, rank(values, merged.quantile(q)) / values.length, 0.01, "q " + q);
+        }
+    }
+
+    @Test
+    void constantValuesStayExact() {
+        TDigest digest = new TDigest(COMPRESSION);
+        for (int i = 0; i < 10_000; i++) {
+            digest.add(18.0);
+        }
+
+        assertEquals(18.0, digest.quantile(0.01));
+        assertEquals(18.0, digest.quantile(0.5));
+        assertEquals(18.0, digest.quantile(0.99));
+    }
+
+    private static TDigest digest(double[] values) {
+        TDigest digest = new TDigest(COMPRESSION);
+        for (double value : values) {
+            digest.add(value);
+        }
+        return digest;
+    }
+
+    private static double[] gaussian(Random random, int count) {
+        double[] values = new double[count];
+        for (int i = 0; i < count; i++) {
+            values[i] = 20 + 3 * random.nextGaussian();
+        }
+        return values;
+    }
+
+    // Number of sorted values below the estimate
+    private static double rank(double[] sorted, double value) {
+        int index = Arrays.binarySearch(sorted, value);
+        return index >= 0 ? index : -index - 1;
+    }
+}
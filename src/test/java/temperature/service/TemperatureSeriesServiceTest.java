@@ -0,0 +1,107 @@
+package temperature.service;
+
+import temperature.exception.*;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static temperature.service.RollupService.DAY;
+import static temperature.service.RollupService.HOUR;
+import static temperature.service.RollupService.MINUTE;
+
+class TemperatureSeriesServiceTest {
+
+    private static final ZoneId UTC = ZoneOffset.UTC;
+    private static final ZoneId NEW_YORK = ZoneId.of("America/New_York");
+
+    @Test
+    void dayBoundariesStartAtTheMidnightBeforeStart() {
+        long[] boundaries = TemperatureSeriesService.dayBoundaries(at(2024, 5, 1, 13, UTC), at(2024, 5, 3, 1, UTC),
+                1, UTC);
+
+        assertArrayEquals(new long[] { at(2024, 5, 1, 0, UTC), at(2024, 5, 2, 0, UTC), at(2024, 5, 3, 0, UTC),
+                at(2024, 5, 4, 0, UTC) }, boundaries);
+    }
+
+    @Test
+    void boundariesOnStartAndEndAreNotPadded() {
+        long[] boundaries = TemperatureSeriesService.dayBoundaries(at(2024, 5, 1, 0, UTC), at(2024, 5, 15, 0, UTC),
+                7, UTC);
+
+        assertArrayEquals(new long[] { at(2024, 5, 1, 0, UTC), at(2024, 5, 8, 0, UTC), at(2024, 5, 15, 0, UTC) },
+                boundaries);
+    }
+
+    @Test
+    void localDaysFollowDaylightSaving() {
+        long[] boundaries = TemperatureSeriesService.dayBoundaries(at(2024, 3, 9, 12, NEW_YORK),
+                at(2024, 3, 11, 12, NEW_YORK), 1, NEW_YORK);
+
+        assertEquals(4, boundaries.length);
+        assertEquals(at(2024, 3, 9, 0, NEW_YORK), boundaries[0]);
+        assertEquals(DAY, boundaries[1] - boundaries[0]);
+        // 10 March loses an hour
+        assertEquals(DAY - HOUR, boundaries[2] - boundaries[1]);
+        assertEquals(DAY, boundaries[3] - boundaries[2]);
+    }
+
+    @Test
+    void intradayBoundariesRestartAtEveryLocalMidnight() {
+        long[] boundaries = TemperatureSeriesService.intradayBoundaries(at(2024, 3, 10, 0, NEW_YORK),
+                at(2024, 3, 11, 0, NEW_YORK), 6 * HOUR, NEW_YORK);
+
+        // 23 hours: three 6-hour buckets and a 5-hour one
+        long midnight = at(2024, 3, 10, 0, NEW_YORK);
+        assertArrayEquals(new long[] { midnight, midnight + 6 * HOUR, midnight + 12 * HOUR, midnight + 18 * HOUR,
+                at(2024, 3, 11, 0, NEW_YORK) }, boundaries);
+        assertEquals(5 * HOUR, boundaries[4] - boundaries[3]);
+    }
+
+    @Test
+    void intradayBoundariesAroundStartAndEnd() {
+        long[] boundaries = TemperatureSeriesService.intradayBoundaries(at(2024, 5, 1, 1, UTC) + 7 * MINUTE,
+                at(2024, 5, 1, 2, UTC) + 1, 15 * MINUTE, UTC);
+
+        long first = at(2024, 5, 1, 1, UTC);
+        assertArrayEquals(new long[] { first, first + 15 * MINUTE, first + 30 * MINUTE, first + 45 * MINUTE,
+                first + HOUR, first + HOUR + 15 * MINUTE }, boundaries);
+    }
+
+    @Test
+    void tooManyBucketsAreRejected() {
+        long start = at(2024, 1, 1, 0, UTC);
+        long end = start + (TemperatureSeriesService.MAX_BUCKETS + 1) * MINUTE;
+
+        assertThrows(InvalidFilterException.class,
+                () -> TemperatureSeriesService.intradayBoundaries(start, end, MINUTE, UTC));
+        assertEquals(TemperatureSeriesService.MAX_BUCKETS + 1,
+                TemperatureSeriesService.intradayBoundaries(start, end - MINUTE, MINUTE, UTC).length);
+    }
+
+    @Test
+    void rollupSizeIsTheCoarsestAlignedBucket() {
+        long start = at(2024, 5, 1, 0, UTC);
+        long end = at(2024, 6, 1, 0, UTC);
+
+        assertEquals(DAY, TemperatureSeriesService.rollupSize(
+                TemperatureSeriesService.dayBoundaries(start, end, 1, UTC)));
+        assertEquals(HOUR, TemperatureSeriesService.rollupSize(
+                TemperatureSeriesService.dayBoundaries(start, end, 1, NEW_YORK)));
+        assertEquals(MINUTE, TemperatureSeriesService.rollupSize(
+                TemperatureSeriesService.dayBoundaries(start, end, 1, ZoneId.of("Asia/Kolkata"))));
+        assertEquals(MINUTE, TemperatureSeriesService.rollupSize(
+                TemperatureSeriesService.intradayBoundaries(start, start + DAY, 5 * MINUTE, UTC)));
+        assertEquals(0, TemperatureSeriesService.rollupSize(
+                TemperatureSeriesService.dayBoundaries(start, end, 1, ZoneOffset.ofHoursMinutesSeconds(0, 0, 30))));
+    }
+
+    private static long at(int year, int month, int day, int hour, ZoneId zone) {
+        return LocalDateTime.of(year, month, day, hour, 0).atZone(zone).toInstant().toEpochMilli();
+    }
+}